@@ -49,8 +49,6 @@ import bagaturchess.bitboard.impl.Constants;
 import bagaturchess.bitboard.impl.Fields;
 import bagaturchess.bitboard.impl.Figures;
 import bagaturchess.bitboard.impl.eval.pawns.model.PawnsModelEval;
-import bagaturchess.bitboard.impl.movelist.BaseMoveList;
-import bagaturchess.bitboard.impl.movelist.IMoveList;
 import bagaturchess.bitboard.impl.state.PiecesList;
 import bagaturchess.bitboard.impl1.internal.CastlingConfig;
 import bagaturchess.bitboard.impl1.internal.CheckUtil;
@@ -77,8 +75,6 @@ public class BoardImpl implements IBitBoard {
 	private IBoardConfig boardConfig;
 	private IMoveOps moveOps;
 	
-	private IMoveList hasMovesList;
-	
 	private MoveListener[] moveListeners;
 	
 	private NNUE_Input nnue_input;
@@ -106,8 +102,6 @@ public class BoardImpl implements IBitBoard {
 		
 		moveOps = new MoveOpsImpl();
 		
-		hasMovesList = new BaseMoveList(250);
-		
 		castledByColour = new IBoard.CastlingType[2];
 		castledByColour[Constants.COLOUR_WHITE] = IBoard.CastlingType.NONE;
 		castledByColour[Constants.COLOUR_BLACK] = IBoard.CastlingType.NONE;
@@ -216,7 +210,7 @@ public class BoardImpl implements IBitBoard {
 	
 	
 	@Override
-	public synchronized int genAllMoves(IInternalMoveList list) {
+	public int genAllMoves(IInternalMoveList list) {
 		
 		generator.startPly();
 		
@@ -256,7 +250,7 @@ public class BoardImpl implements IBitBoard {
 	
 	
 	@Override
-	public synchronized int genCapturePromotionMoves(IInternalMoveList list) {
+	public int genCapturePromotionMoves(IInternalMoveList list) {
 		generator.startPly();
 		
 		generator.generateAttacks(chessBoard);
@@ -751,26 +745,28 @@ public class BoardImpl implements IBitBoard {
 	
 	
 	@Override
-	public synchronized boolean hasMoveInCheck() {
-		hasMovesList.clear();
-		genKingEscapes(hasMovesList);
-		return hasMovesList.reserved_getCurrentSize() > 0;
+	public boolean hasMoveInCheck() {
+		return chessBoard.countLegalMoves(1) > 0;
 	}
 	
 	
 	@Override
-	public synchronized boolean hasMoveInNonCheck() {
-		hasMovesList.clear();
-		genAllMoves(hasMovesList);
-		return hasMovesList.reserved_getCurrentSize() > 0;
+	public boolean hasMoveInNonCheck() {
+		return chessBoard.countLegalMoves(1) > 0;
 	}
 	
 	
 	@Override
-	public synchronized boolean hasSingleMove() {
-		hasMovesList.clear();
-		genAllMoves(hasMovesList);
-		return hasMovesList.reserved_getCurrentSize() == 1;
+	public boolean hasSingleMove() {
+		return chessBoard.countLegalMoves(2) == 1;
+	}
+	
+	
+	/**
+	 * @return the count of the legal moves, the same as the count of the moves generated by genAllMoves, but without generating them
+	 */
+	public int countLegalMoves() {
+		return chessBoard.countLegalMoves(Integer.MAX_VALUE);
 	}
 	
 	
@@ -808,7 +804,7 @@ public class BoardImpl implements IBitBoard {
 	
 	@Override
 	public long getHashKeyAfterMove(int move) {
-		throw new UnsupportedOperationException("TODO");
+		return chessBoard.getZobristKeyAfterMove(move);
 	}
 	
 	
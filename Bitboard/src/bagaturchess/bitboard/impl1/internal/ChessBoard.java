@@ -367,6 +367,92 @@ public final class ChessBoard {
 	}
 
 	
+	/**
+	 * Computes the zobrist key of the position after the move without making the move.
+	 * The key updates are the same as in doMove and doCastling960.
+	 */
+	public long getZobristKeyAfterMove(final int move) {
+		
+		final int fromIndex = MoveUtil.getFromIndex(move);
+		final int toIndex = MoveUtil.getToIndex(move);
+		final int sourcePieceIndex = MoveUtil.getSourcePieceIndex(move);
+		final int attackedPieceIndex = MoveUtil.getAttackedPieceIndex(move);
+		
+		long key = zobristKey ^ Zobrist.sideToMove;
+		if (epIndex != 0) {
+			key ^= Zobrist.epIndex[epIndex];
+		}
+		
+		int newCastlingRights = castlingRights;
+		
+		if (MoveUtil.isCastlingMove(move)) {
+			
+			CastlingUtil.getRookFromToSquareIDs(this, toIndex, buff_castling_rook_from_to);
+			
+			key ^= Zobrist.piece[fromIndex][colorToMove][KING] ^ Zobrist.piece[toIndex][colorToMove][KING];
+			key ^= Zobrist.piece[buff_castling_rook_from_to[0]][colorToMove][ROOK] ^ Zobrist.piece[buff_castling_rook_from_to[1]][colorToMove][ROOK];
+			
+			if (newCastlingRights != 0) {
+				newCastlingRights = CastlingUtil.getKingMovedCastlingRights(newCastlingRights, colorToMove, castlingConfig);
+			}
+			
+		} else {
+			
+			key ^= Zobrist.piece[fromIndex][colorToMove][sourcePieceIndex] ^ Zobrist.piece[toIndex][colorToMove][sourcePieceIndex];
+			
+			switch (sourcePieceIndex) {
+			case PAWN:
+				if (MoveUtil.isPromotion(move)) {
+					key ^= Zobrist.piece[toIndex][colorToMove][PAWN] ^ Zobrist.piece[toIndex][colorToMove][MoveUtil.getMoveType(move)];
+				} else if (ChessConstants.IN_BETWEEN[fromIndex][toIndex] != 0) {
+					// 2-move
+					final int newEpIndex = Long.numberOfTrailingZeros(ChessConstants.IN_BETWEEN[fromIndex][toIndex]);
+					if ((StaticMoves.PAWN_ATTACKS[colorToMove][newEpIndex] & pieces[colorToMoveInverse][PAWN]) != 0) {
+						key ^= Zobrist.epIndex[newEpIndex];
+					}
+				}
+				break;
+			case ROOK:
+				if (newCastlingRights != 0) {
+					newCastlingRights = CastlingUtil.getRookMovedOrAttackedCastlingRights(newCastlingRights, fromIndex, castlingConfig);
+				}
+				break;
+			case KING:
+				if (newCastlingRights != 0) {
+					newCastlingRights = CastlingUtil.getKingMovedCastlingRights(newCastlingRights, colorToMove, castlingConfig);
+				}
+			}
+			
+			// piece hit?
+			switch (attackedPieceIndex) {
+			case EMPTY:
+				break;
+			case PAWN:
+				if (MoveUtil.isEPMove(move)) {
+					key ^= Zobrist.piece[toIndex + ChessConstants.COLOR_FACTOR_8[colorToMoveInverse]][colorToMoveInverse][PAWN];
+				} else {
+					key ^= Zobrist.piece[toIndex][colorToMoveInverse][PAWN];
+				}
+				break;
+			case ROOK:
+				if (newCastlingRights != 0) {
+					newCastlingRights = CastlingUtil.getRookMovedOrAttackedCastlingRights(newCastlingRights, toIndex, castlingConfig);
+				}
+				key ^= Zobrist.piece[toIndex][colorToMoveInverse][ROOK];
+				break;
+			default:
+				key ^= Zobrist.piece[toIndex][colorToMoveInverse][attackedPieceIndex];
+			}
+		}
+		
+		if (newCastlingRights != castlingRights) {
+			key ^= Zobrist.castling[castlingRights] ^ Zobrist.castling[newCastlingRights];
+		}
+		
+		return key;
+	}
+	
+	
 	private void doCastling960(int move) {
 		
 		
@@ -982,6 +1068,143 @@ public final class ChessBoard {
 	}
 	
 	
+	/**
+	 * Counts the legal moves with the check and pin masks, without generating the moves and checking each of them.
+	 * The count is the same as the count of the moves generated by MoveGenerator and filtered by isValidMove and isLegal.
+	 * Only the castling and en passant moves, which are rare, are checked one by one.
+	 * @return the count of the legal moves or limit if there are at least limit legal moves
+	 */
+	public int countLegalMoves(final int limit) {
+		
+		final int kingIndex = this.kingIndex[colorToMove];
+		final long friendly = friendlyPieces[colorToMove];
+		final long enemies = friendlyPieces[colorToMoveInverse];
+		final long kingSquare = Util.POWER_LOOKUP[kingIndex];
+		final int enemyMajorPieces = MaterialUtil.getMajorPieces(materialKey, colorToMoveInverse);
+		
+		int count = 0;
+		
+		// king moves
+		long moves = StaticMoves.KING_MOVES[kingIndex] & ~friendly;
+		while (moves != 0) {
+			if (!CheckUtil.isInCheckIncludingKing(Long.numberOfTrailingZeros(moves), colorToMove, pieces[colorToMoveInverse],
+					allPieces ^ kingSquare, enemyMajorPieces)) {
+				if (++count >= limit) {
+					return limit;
+				}
+			}
+			moves &= moves - 1;
+		}
+		
+		// double check, only the king can move
+		if (Long.bitCount(checkingPieces) >= 2) {
+			return count;
+		}
+		
+		// the squares, on which the other pieces can move, and the pieces, which can move
+		final long targets;
+		final long movable;
+		if (checkingPieces != 0) {
+			// capture or block the checking piece, a pinned piece can do neither
+			targets = checkingPieces | ChessConstants.IN_BETWEEN[kingIndex][Long.numberOfTrailingZeros(checkingPieces)];
+			movable = friendly & ~pinnedPieces & ~kingSquare;
+		} else {
+			targets = ~friendly;
+			movable = friendly & ~kingSquare;
+		}
+		
+		final int promotions = EngineConstants.GENERATE_BR_PROMOTIONS ? 4 : 2;
+		
+		long piece = movable;
+		while (piece != 0) {
+			
+			final int fromIndex = Long.numberOfTrailingZeros(piece);
+			final long fromSquare = Util.POWER_LOOKUP[fromIndex];
+			
+			long allowed = targets;
+			if ((fromSquare & pinnedPieces) != 0) {
+				allowed &= ChessConstants.PINNED_MOVEMENT[fromIndex][kingIndex];
+			}
+			
+			switch (pieceIndexes[fromIndex]) {
+			case PAWN:
+				long pawnMoves;
+				if (colorToMove == WHITE) {
+					pawnMoves = (fromSquare << 8) & emptySpaces;
+					if (pawnMoves != 0 && (fromSquare & Bitboard.RANK_2) != 0) {
+						pawnMoves |= (fromSquare << 16) & emptySpaces;
+					}
+				} else {
+					pawnMoves = (fromSquare >>> 8) & emptySpaces;
+					if (pawnMoves != 0 && (fromSquare & Bitboard.RANK_7) != 0) {
+						pawnMoves |= (fromSquare >>> 16) & emptySpaces;
+					}
+				}
+				pawnMoves |= StaticMoves.PAWN_ATTACKS[colorToMove][fromIndex] & enemies;
+				pawnMoves &= allowed;
+				if ((fromSquare & Bitboard.RANK_PROMOTION[colorToMove]) != 0) {
+					count += promotions * Long.bitCount(pawnMoves);
+				} else {
+					count += Long.bitCount(pawnMoves);
+				}
+				break;
+			case NIGHT:
+				if ((fromSquare & pinnedPieces) == 0) {
+					count += Long.bitCount(StaticMoves.KNIGHT_MOVES[fromIndex] & allowed);
+				}
+				break;
+			case BISHOP:
+				count += Long.bitCount(MagicUtil.getBishopMoves(fromIndex, allPieces) & allowed);
+				break;
+			case ROOK:
+				count += Long.bitCount(MagicUtil.getRookMoves(fromIndex, allPieces) & allowed);
+				break;
+			case QUEEN:
+				count += Long.bitCount(MagicUtil.getQueenMoves(fromIndex, allPieces) & allowed);
+				break;
+			}
+			
+			if (count >= limit) {
+				return limit;
+			}
+			
+			piece &= piece - 1;
+		}
+		
+		// en passant
+		if (epIndex != 0) {
+			long pawns = pieces[colorToMove][PAWN] & StaticMoves.PAWN_ATTACKS[colorToMoveInverse][epIndex];
+			while (pawns != 0) {
+				if (isLegalEPMove(Long.numberOfTrailingZeros(pawns))) {
+					if (++count >= limit) {
+						return limit;
+					}
+				}
+				pawns &= pawns - 1;
+			}
+		}
+		
+		// castling
+		if (checkingPieces == 0) {
+			long castlingIndexes = CastlingUtil.getCastlingIndexes(colorToMove, castlingRights, castlingConfig);
+			while (castlingIndexes != 0) {
+				final int toIndex = Long.numberOfTrailingZeros(castlingIndexes);
+				if (CastlingUtil.isValidCastlingMove(this, kingIndex, toIndex)) {
+					final int move = MoveUtil.createCastlingMove(kingIndex, toIndex);
+					if (isValidMove(move) && isLegal(move)) {
+						if (++count >= limit) {
+							return limit;
+						}
+					}
+				}
+				castlingIndexes &= castlingIndexes - 1;
+			}
+		}
+		
+		return count;
+	}
+	
+	
 	public int getRepetition() {
 		int count = playedBoardStates.get(zobristKey);
 		if (count == StackLongInt.NO_VALUE) {
@@ -10,6 +10,7 @@ public class EngineConstants {
 	public static final int MAX_THREADS							= 64;
 	public static final boolean ENABLE_PONDERING				= true;
 	public static final boolean GENERATE_BR_PROMOTIONS 			= true;
+	public static final boolean ENABLE_FLAT_MAGICS 				= false;
 
 	public static final boolean ASSERT 							= false;
 
@@ -6,7 +6,23 @@ public final class MagicUtil {
 	// rook-size: 800kb
 	// bishop-size: 40kb
 
-	// TODO smaller tables?
+	// With ENABLE_FLAT_MAGICS, the moves of all squares of rook and bishop are in one table (fancy magic bitboards)
+	// and the mask, magic number, shift and offset of each square are next to each other in MAGICS.
+	// Otherwise, each square has its own moves array and the mask, magic number and shift are in separate arrays.
+
+	private static final int ROOK_MAGICS 	= 0;
+	private static final int BISHOP_MAGICS 	= 64 * 4;
+
+	private static final int MASK 			= 0;
+	private static final int MAGIC 			= 1;
+	private static final int SHIFT 			= 2;
+	private static final int OFFSET 		= 3;
+
+	private static final int ROOK_MOVES_SIZE 	= 102400;
+	private static final int BISHOP_MOVES_SIZE 	= 5248;
+
+	private static final long[] MAGICS = new long[2 * 64 * 4];
+	private static final long[] MAGIC_MOVES = new long[EngineConstants.ENABLE_FLAT_MAGICS ? ROOK_MOVES_SIZE + BISHOP_MOVES_SIZE : 0];
 
 	private static final long[] rookMovementMasks = new long[64];
 	private static final long[] bishopMovementMasks = new long[64];
@@ -36,34 +52,46 @@ public final class MagicUtil {
 	private static final int[] bishopShifts = new int[64];
 
 	public static long getRookMoves(final int fromIndex, final long allPieces) {
+		if (EngineConstants.ENABLE_FLAT_MAGICS) {
+			final int i = ROOK_MAGICS + (fromIndex << 2);
+			return MAGIC_MOVES[(int) MAGICS[i + OFFSET] + (int) ((allPieces & MAGICS[i + MASK]) * MAGICS[i + MAGIC] >>> MAGICS[i + SHIFT])];
+		}
 		return rookMagicMoves[fromIndex][(int) ((allPieces & rookMovementMasks[fromIndex]) * rookMagicNumbers[fromIndex] >>> rookShifts[fromIndex])];
 	}
 
 	public static long getBishopMoves(final int fromIndex, final long allPieces) {
+		if (EngineConstants.ENABLE_FLAT_MAGICS) {
+			final int i = BISHOP_MAGICS + (fromIndex << 2);
+			return MAGIC_MOVES[(int) MAGICS[i + OFFSET] + (int) ((allPieces & MAGICS[i + MASK]) * MAGICS[i + MAGIC] >>> MAGICS[i + SHIFT])];
+		}
 		return bishopMagicMoves[fromIndex][(int) ((allPieces & bishopMovementMasks[fromIndex]) * bishopMagicNumbers[fromIndex] >>> bishopShifts[fromIndex])];
 	}
 
 	public static long getQueenMoves(final int fromIndex, final long allPieces) {
+		if (EngineConstants.ENABLE_FLAT_MAGICS) {
+			return getRookMoves(fromIndex, allPieces) | getBishopMoves(fromIndex, allPieces);
+		}
 		return rookMagicMoves[fromIndex][(int) ((allPieces & rookMovementMasks[fromIndex]) * rookMagicNumbers[fromIndex] >>> rookShifts[fromIndex])]
 				| bishopMagicMoves[fromIndex][(int) ((allPieces & bishopMovementMasks[fromIndex]) * bishopMagicNumbers[fromIndex] >>> bishopShifts[fromIndex])];
 	}
 
 	public static long getRookMovesEmptyBoard(final int fromIndex) {
-		return rookMagicMoves[fromIndex][0];
+		return getRookMoves(fromIndex, 0);
 	}
 
 	public static long getBishopMovesEmptyBoard(final int fromIndex) {
-		return bishopMagicMoves[fromIndex][0];
+		return getBishopMoves(fromIndex, 0);
 	}
 
 	public static long getQueenMovesEmptyBoard(final int fromIndex) {
-		return bishopMagicMoves[fromIndex][0] | rookMagicMoves[fromIndex][0];
+		return getQueenMoves(fromIndex, 0);
 	}
 
 	static {
 		calculateBishopMovementMasks();
 		calculateRookMovementMasks();
 		generateShiftArrys();
+		generateMagicsArray();
 		long[][] bishopOccupancyVariations = calculateVariations(bishopMovementMasks);
 		long[][] rookOccupancyVariations = calculateVariations(rookMovementMasks);
 		generateBishopMoveDatabase(bishopOccupancyVariations);
@@ -77,6 +105,35 @@ public final class MagicUtil {
 		}
 	}
 
+	private static void generateMagicsArray() {
+		int offset = 0;
+		for (int i = 0; i < 64; i++) {
+			MAGICS[ROOK_MAGICS + (i << 2) + MASK] = rookMovementMasks[i];
+			MAGICS[ROOK_MAGICS + (i << 2) + MAGIC] = rookMagicNumbers[i];
+			MAGICS[ROOK_MAGICS + (i << 2) + SHIFT] = rookShifts[i];
+			MAGICS[ROOK_MAGICS + (i << 2) + OFFSET] = offset;
+			offset += 1 << Long.bitCount(rookMovementMasks[i]);
+		}
+		for (int i = 0; i < 64; i++) {
+			MAGICS[BISHOP_MAGICS + (i << 2) + MASK] = bishopMovementMasks[i];
+			MAGICS[BISHOP_MAGICS + (i << 2) + MAGIC] = bishopMagicNumbers[i];
+			MAGICS[BISHOP_MAGICS + (i << 2) + SHIFT] = bishopShifts[i];
+			MAGICS[BISHOP_MAGICS + (i << 2) + OFFSET] = offset;
+			offset += 1 << Long.bitCount(bishopMovementMasks[i]);
+		}
+		if (offset != ROOK_MOVES_SIZE + BISHOP_MOVES_SIZE) {
+			throw new IllegalStateException("offset=" + offset);
+		}
+	}
+
+	private static void setMoves(final int magicsIndex, final long[] squareMoves, final int magicIndex, final long validMoves) {
+		if (EngineConstants.ENABLE_FLAT_MAGICS) {
+			MAGIC_MOVES[(int) MAGICS[magicsIndex + OFFSET] + magicIndex] = validMoves;
+		} else {
+			squareMoves[magicIndex] = validMoves;
+		}
+	}
+
 	private static long[][] calculateVariations(long[] movementMasks) {
 
 		long[][] occupancyVariations = new long[64][];
@@ -145,7 +202,9 @@ public final class MagicUtil {
 
 	private static void generateRookMoveDatabase(long[][] rookOccupancyVariations) {
 		for (int index = 0; index < 64; index++) {
-			rookMagicMoves[index] = new long[rookOccupancyVariations[index].length];
+			if (!EngineConstants.ENABLE_FLAT_MAGICS) {
+				rookMagicMoves[index] = new long[rookOccupancyVariations[index].length];
+			}
 			for (int variationIndex = 0; variationIndex < rookOccupancyVariations[index].length; variationIndex++) {
 				long validMoves = 0;
 				int magicIndex = (int) ((rookOccupancyVariations[index][variationIndex] * rookMagicNumbers[index]) >>> rookShifts[index]);
@@ -175,14 +234,16 @@ public final class MagicUtil {
 					}
 				}
 
-				rookMagicMoves[index][magicIndex] = validMoves;
+				setMoves(ROOK_MAGICS + (index << 2), rookMagicMoves[index], magicIndex, validMoves);
 			}
 		}
 	}
 
 	private static void generateBishopMoveDatabase(long[][] bishopOccupancyVariations) {
 		for (int index = 0; index < 64; index++) {
-			bishopMagicMoves[index] = new long[bishopOccupancyVariations[index].length];
+			if (!EngineConstants.ENABLE_FLAT_MAGICS) {
+				bishopMagicMoves[index] = new long[bishopOccupancyVariations[index].length];
+			}
 			for (int variationIndex = 0; variationIndex < bishopOccupancyVariations[index].length; variationIndex++) {
 				long validMoves = 0;
 				int magicIndex = (int) ((bishopOccupancyVariations[index][variationIndex] * bishopMagicNumbers[index]) >>> bishopShifts[index]);
@@ -216,7 +277,7 @@ public final class MagicUtil {
 					}
 				}
 
-				bishopMagicMoves[index][magicIndex] = validMoves;
+				setMoves(BISHOP_MAGICS + (index << 2), bishopMagicMoves[index], magicIndex, validMoves);
 			}
 		}
 	}
@@ -730,6 +730,27 @@ public final class MoveGenerator {
 	}
 	
 	
+	/**
+	 * Gives the ordered moves scores above the scores set by setRootScores (including the TT move),
+	 * so they are searched first, in the given order. Used for the root moves of MultiPV search.
+	 */
+	public void setRootOrderedScores(final int[] ordered_moves, final int ordered_count) {
+		
+		for (int j = nextToMove[currentPly]; j < nextToGenerate[currentPly]; j++) {
+			
+			for (int i = 0; i < ordered_count; i++) {
+				
+				if (moves[j] == ordered_moves[i]) {
+					
+					moveScores[j] = (20000 - i) * 100;
+					
+					break;
+				}
+			}
+		}
+	}
+	
+	
 	/*public void setAllScores(final ChessBoard cb, final int parentMove, final int ttMove, int counterMove, int killer1Move, int killer2Move) {
 		for (int j = nextToMove[currentPly]; j < nextToGenerate[currentPly]; j++) {
 			if (ttMove == moves[j]) {
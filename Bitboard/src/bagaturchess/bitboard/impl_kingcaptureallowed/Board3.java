@@ -872,6 +872,13 @@ abstract class Board3 extends Fields implements IBitBoard, Cloneable {
 		final int toFieldID = MoveInt.getToFieldID(move);
 		
 		
+		if (playedBoardStates.dec(hashkey) <= -1) {
+			if (Properties.DEBUG_MODE) {
+				throw new IllegalStateException("hashkey " + hashkey + " not found");
+			}
+		}
+		
+		
 		//Update enpassant flag and colour
 		BackupInfo curInfo = backupInfo[playedMovesCount];
 		BackupInfo prevInfo = playedMovesCount > 0 ? backupInfo[playedMovesCount - 1] : null;
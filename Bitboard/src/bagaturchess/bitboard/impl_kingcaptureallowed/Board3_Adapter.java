@@ -264,6 +264,7 @@ public class Board3_Adapter extends Board3 implements IBitBoard {
 	@Override
 	public void addMoveListener(MoveListener listener) {
 		
-		throw new UnsupportedOperationException();
+		//Board3 registers its own listeners in the constructor
+		super.addMoveListener(listener);
 	}
 }
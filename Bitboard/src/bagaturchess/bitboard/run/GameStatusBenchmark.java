@@ -0,0 +1,260 @@
+/*
+ *  BagaturChess (UCI chess engine and tools)
+ *  Copyright (C) 2005 Krasimir I. Topchiyski (k_topchiyski@yahoo.com)
+ *
+ *  Open Source project location: http://sourceforge.net/projects/bagaturchess/develop
+ *  SVN repository https://bagaturchess.svn.sourceforge.net/svnroot/bagaturchess
+ *
+ *  This file is part of BagaturChess program.
+ *
+ *  BagaturChess is open software: you can redistribute it and/or modify
+ *  it under the terms of the Eclipse Public License version 1.0 as published by
+ *  the Eclipse Foundation.
+ *
+ *  BagaturChess is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  Eclipse Public License for more details.
+ *
+ *  You should have received a copy of the Eclipse Public License version 1.0
+ *  along with BagaturChess. If not, see <http://www.eclipse.org/legal/epl-v10.html/>.
+ *
+ */
+package bagaturchess.bitboard.run;
+
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import bagaturchess.bitboard.api.IGameStatus;
+import bagaturchess.bitboard.api.IInternalMoveList;
+import bagaturchess.bitboard.impl.movelist.BaseMoveList;
+import bagaturchess.bitboard.impl1.BoardImpl;
+
+
+/**
+ * Measures getStatus() of BoardImpl, which is called for each position by MatchRunner and PositionsTraverser,
+ * together with the legal move checks it uses: the count of the legal moves with the check and pin masks (the current hasMoveInCheck,
+ * hasMoveInNonCheck and hasSingleMove) and the generation of all legal moves into a list (how they were implemented before).
+ * The positions are the positions of random games played from the standard perft positions (see Perft.POSITIONS).
+ * Each measurement replays the games and calls the measured method REPEATS times after each move,
+ * the time of the replay alone is measured too and subtracted.
+ * First, the count of the legal moves of each position is checked against the count of the generated moves.
+ *
+ * Usage: GameStatusBenchmark [positions=20000] [rounds=5] [seed=1]
+ */
+public class GameStatusBenchmark {
+	
+	
+	private static final int MAX_GAME_PLIES 	= 300;
+	
+	private static final int REPEATS 			= 16;
+	
+	private static final int REPLAY 			= 0;
+	private static final int GET_STATUS 		= 1;
+	private static final int HAS_MOVE_COUNT 	= 2;
+	private static final int HAS_MOVE_GENERATE 	= 3;
+	private static final int COUNT_MOVES 		= 4;
+	private static final int GENERATE_MOVES 	= 5;
+	
+	
+	public static void main(String[] args) {
+		
+		try {
+			
+			int positions_count = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+			int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+			long seed = args.length > 2 ? Long.parseLong(args[2]) : 1;
+			
+			List<BoardImpl> boards = new ArrayList<BoardImpl>();
+			List<int[]> games = new ArrayList<int[]>();
+			
+			playGames(positions_count, new Random(seed), boards, games);
+			
+			check(boards, games);
+			
+			for (int round = 1; round <= rounds; round++) {
+				
+				double replay = measure(boards, games, REPLAY, positions_count);
+				
+				System.out.println("GameStatusBenchmark: round=" + round
+						+ ", getStatus ns=" + format(measure(boards, games, GET_STATUS, positions_count) - replay)
+						+ ", hasMove with counting ns=" + format(measure(boards, games, HAS_MOVE_COUNT, positions_count) - replay)
+						+ ", hasMove with generation ns=" + format(measure(boards, games, HAS_MOVE_GENERATE, positions_count) - replay)
+						+ ", countLegalMoves ns=" + format(measure(boards, games, COUNT_MOVES, positions_count) - replay)
+						+ ", genAllMoves ns=" + format(measure(boards, games, GENERATE_MOVES, positions_count) - replay));
+			}
+		
+		} catch (Throwable t) {
+			
+			t.printStackTrace();
+			
+			System.exit(1);
+		}
+		
+		System.exit(0);
+	}
+	
+	
+	/**
+	 * Plays random games with the given count of positions after the moves, until mate, stalemate or MAX_GAME_PLIES.
+	 * Each board is left in the initial position of its game.
+	 */
+	private static void playGames(int positions_count, Random random, List<BoardImpl> boards, List<int[]> games) {
+		
+		IInternalMoveList list = new BaseMoveList(250);
+		
+		int positions = 0;
+		int without_moves = 0;
+		
+		while (positions < positions_count) {
+			
+			BoardImpl board = (BoardImpl) Perft.Implementation.IMPL1.createBoard(Perft.POSITIONS[random.nextInt(Perft.POSITIONS.length)]);
+			
+			int[] moves = new int[Math.min(MAX_GAME_PLIES, positions_count - positions)];
+			
+			int plies = 0;
+			while (plies < moves.length) {
+				
+				list.reserved_clear();
+				board.genAllMoves(list);
+				
+				if (list.reserved_getCurrentSize() == 0) {
+					without_moves++;
+					break;
+				}
+				
+				moves[plies] = list.reserved_getMovesBuffer()[random.nextInt(list.reserved_getCurrentSize())];
+				board.makeMoveForward(moves[plies]);
+				plies++;
+			}
+			
+			for (int i = plies - 1; i >= 0; i--) {
+				board.makeMoveBackward(moves[i]);
+			}
+			
+			int[] game = new int[plies];
+			System.arraycopy(moves, 0, game, 0, plies);
+			
+			boards.add(board);
+			games.add(game);
+			
+			positions += plies;
+		}
+		
+		System.out.println("GameStatusBenchmark: played " + games.size() + " games with " + positions + " positions, "
+				+ without_moves + " of them end without moves");
+	}
+	
+	
+	private static void check(List<BoardImpl> boards, List<int[]> games) {
+		
+		IInternalMoveList list = new BaseMoveList(250);
+		
+		for (int i = 0; i < boards.size(); i++) {
+			
+			BoardImpl board = boards.get(i);
+			int[] game = games.get(i);
+			
+			for (int j = 0; j < game.length; j++) {
+				
+				board.makeMoveForward(game[j]);
+				
+				list.reserved_clear();
+				int generated = board.genAllMoves(list);
+				
+				boolean hasMove = board.isInCheck() ? board.hasMoveInCheck() : board.hasMoveInNonCheck();
+				
+				if (board.countLegalMoves() != generated || hasMove != (generated > 0) || board.hasSingleMove() != (generated == 1)) {
+					throw new IllegalStateException("Position " + board.toEPD() + ": countLegalMoves=" + board.countLegalMoves()
+							+ ", generated moves=" + generated + ", hasMove=" + hasMove + ", hasSingleMove=" + board.hasSingleMove());
+				}
+			}
+			
+			for (int j = game.length - 1; j >= 0; j--) {
+				board.makeMoveBackward(game[j]);
+			}
+		}
+		
+		System.out.println("GameStatusBenchmark: legal moves counts OK");
+	}
+	
+	
+	/**
+	 * @return nanoseconds per call, for REPLAY nanoseconds per position divided by REPEATS
+	 */
+	private static double measure(List<BoardImpl> boards, List<int[]> games, int type, int positions) {
+		
+		IInternalMoveList list = new BaseMoveList(250);
+		
+		int repeats = type == REPLAY ? 1 : REPEATS;
+		
+		long result = 0;
+		
+		long start_time = System.nanoTime();
+		
+		for (int i = 0; i < boards.size(); i++) {
+			
+			BoardImpl board = boards.get(i);
+			int[] game = games.get(i);
+			
+			for (int j = 0; j < game.length; j++) {
+				
+				board.makeMoveForward(game[j]);
+				
+				for (int repeat = 0; repeat < repeats; repeat++) {
+				
+					switch (type) {
+						
+						case REPLAY:
+							result += board.getHashKey();
+								break;
+						
+						case GET_STATUS:
+							result += board.getStatus() == IGameStatus.NONE ? 1 : 0;
+							break;
+						
+						case HAS_MOVE_COUNT:
+							result += (board.isInCheck() ? board.hasMoveInCheck() : board.hasMoveInNonCheck()) ? 1 : 0;
+							break;
+						
+						case HAS_MOVE_GENERATE:
+							list.reserved_clear();
+							result += (board.isInCheck() ? board.genKingEscapes(list) : board.genAllMoves(list)) > 0 ? 1 : 0;
+							break;
+						
+						case COUNT_MOVES:
+							result += board.countLegalMoves();
+							break;
+						
+						case GENERATE_MOVES:
+							list.reserved_clear();
+							result += board.genAllMoves(list);
+							break;
+						
+						default:
+							throw new IllegalStateException("type=" + type);
+					}
+				}
+			}
+			
+			for (int j = game.length - 1; j >= 0; j--) {
+				board.makeMoveBackward(game[j]);
+			}
+		}
+		
+		long time = System.nanoTime() - start_time;
+		
+		if (result == 0) {
+			throw new IllegalStateException();
+		}
+		
+		return time / (double) (positions * REPEATS);
+	}
+	
+	
+	private static String format(double value) {
+		return String.format("%.1f", value);
+	}
+}
@@ -0,0 +1,199 @@
+/*
+ *  BagaturChess (UCI chess engine and tools)
+ *  Copyright (C) 2005 Krasimir I. Topchiyski (k_topchiyski@yahoo.com)
+ *
+ *  Open Source project location: http://sourceforge.net/projects/bagaturchess/develop
+ *  SVN repository https://bagaturchess.svn.sourceforge.net/svnroot/bagaturchess
+ *
+ *  This file is part of BagaturChess program.
+ *
+ *  BagaturChess is open software: you can redistribute it and/or modify
+ *  it under the terms of the Eclipse Public License version 1.0 as published by
+ *  the Eclipse Foundation.
+ *
+ *  BagaturChess is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  Eclipse Public License for more details.
+ *
+ *  You should have received a copy of the Eclipse Public License version 1.0
+ *  along with BagaturChess. If not, see <http://www.eclipse.org/legal/epl-v10.html/>.
+ *
+ */
+package bagaturchess.bitboard.run;
+
+
+import java.util.Random;
+
+import bagaturchess.bitboard.impl1.internal.EngineConstants;
+import bagaturchess.bitboard.impl1.internal.MagicUtil;
+
+
+/**
+ * Measures the sliding pieces attacks of impl1 (MagicUtil) with the layout selected by EngineConstants.ENABLE_FLAT_MAGICS:
+ * the lookups for random occupancies and perft with bulk counting of the standard positions with many sliding pieces.
+ * To compare the layouts, run it once with each value of ENABLE_FLAT_MAGICS.
+ * First, the attacks are checked against attacks computed square by square along the rays.
+ *
+ * Usage: MagicsBenchmark [lookups in millions=20] [perft depth=4] [rounds=5]
+ */
+public class MagicsBenchmark {
+	
+	
+	//Indexes of Perft.POSITIONS with many sliding pieces
+	private static final int[] SLIDERS_POSITIONS = new int[] {1, 3, 4, 5};
+	
+	private static final int OCCUPANCIES = 4096;
+	
+	private static final int CHECKED_OCCUPANCIES = 100000;
+	
+	private static final int[][] ROOK_DIRECTIONS = new int[][] {{1, 0}, {-1, 0}, {0, 1}, {0, -1}};
+	
+	private static final int[][] BISHOP_DIRECTIONS = new int[][] {{1, 1}, {1, -1}, {-1, 1}, {-1, -1}};
+	
+	
+	public static void main(String[] args) {
+		
+		try {
+			
+			int lookups = (args.length > 0 ? Integer.parseInt(args[0]) : 20) * 1000000;
+			int depth = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+			int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+			
+			String layout = EngineConstants.ENABLE_FLAT_MAGICS ? "flat" : "jagged";
+			
+			Random random = new Random(1);
+			
+			check(random);
+			
+			long[] occupancies = new long[OCCUPANCIES];
+			for (int i = 0; i < occupancies.length; i++) {
+				//About 1/4 of the squares are occupied, as in a middlegame
+				occupancies[i] = random.nextLong() & random.nextLong();
+			}
+			
+			for (int round = 1; round <= rounds; round++) {
+				
+				System.out.println("MagicsBenchmark: round=" + round + ", layout=" + layout
+						+ ", queen lookup ns=" + String.format("%.2f", lookups(occupancies, lookups))
+						+ ", perft NPS=" + perft(depth));
+			}
+		
+		} catch (Throwable t) {
+			
+			t.printStackTrace();
+			
+			System.exit(1);
+		}
+		
+		System.exit(0);
+	}
+	
+	
+	private static void check(Random random) {
+		
+		for (int i = 0; i < CHECKED_OCCUPANCIES; i++) {
+			
+			long occupancy = random.nextLong() & random.nextLong();
+			
+			for (int square = 0; square < 64; square++) {
+				
+				long rook = getMoves(square, occupancy, ROOK_DIRECTIONS);
+				long bishop = getMoves(square, occupancy, BISHOP_DIRECTIONS);
+				
+				if (MagicUtil.getRookMoves(square, occupancy) != rook
+						|| MagicUtil.getBishopMoves(square, occupancy) != bishop
+						|| MagicUtil.getQueenMoves(square, occupancy) != (rook | bishop)) {
+					throw new IllegalStateException("square=" + square + ", occupancy=" + Long.toHexString(occupancy));
+				}
+			}
+		}
+		
+		for (int square = 0; square < 64; square++) {
+			if (MagicUtil.getRookMovesEmptyBoard(square) != getMoves(square, 0, ROOK_DIRECTIONS)
+					|| MagicUtil.getBishopMovesEmptyBoard(square) != getMoves(square, 0, BISHOP_DIRECTIONS)) {
+				throw new IllegalStateException("square=" + square);
+			}
+		}
+		
+		System.out.println("MagicsBenchmark: attacks OK");
+	}
+	
+	
+	/**
+	 * @return the attacks along the rays until the first occupied square (included), square 0 is h1 and 63 is a8
+	 */
+	private static long getMoves(int square, long occupancy, int[][] directions) {
+		
+		long result = 0;
+		
+		for (int[] direction: directions) {
+			
+			int file = square % 8 + direction[0];
+			int rank = square / 8 + direction[1];
+			
+			while (file >= 0 && file < 8 && rank >= 0 && rank < 8) {
+				
+				long bit = 1L << (8 * rank + file);
+				
+				result |= bit;
+				
+				if ((occupancy & bit) != 0) {
+					break;
+				}
+				
+				file += direction[0];
+				rank += direction[1];
+			}
+		}
+		
+		return result;
+	}
+	
+	
+	/**
+	 * @return nanoseconds per getQueenMoves call
+	 */
+	private static double lookups(long[] occupancies, int count) {
+		
+		long result = 0;
+		
+		long start_time = System.nanoTime();
+		
+		for (int i = 0; i < count; i++) {
+			result ^= MagicUtil.getQueenMoves(i & 63, occupancies[(i >>> 6) & (OCCUPANCIES - 1)]);
+		}
+		
+		long time = System.nanoTime() - start_time;
+		
+		if (result == 0) {
+			throw new IllegalStateException();
+		}
+		
+		return time / (double) count;
+	}
+	
+	
+	private static long perft(int depth) throws InterruptedException {
+		
+		long nodes = 0;
+		
+		long start_time = System.nanoTime();
+		
+		for (int index: SLIDERS_POSITIONS) {
+			
+			long position_nodes = Perft.perft(Perft.Implementation.IMPL1, Perft.POSITIONS[index], depth, 1, true, null);
+			
+			if (depth < Perft.EXPECTED[index].length && position_nodes != Perft.EXPECTED[index][depth]) {
+				throw new IllegalStateException("Position " + Perft.POSITIONS[index] + ", depth " + depth
+						+ ": nodes=" + position_nodes + ", expected=" + Perft.EXPECTED[index][depth]);
+			}
+			
+			nodes += position_nodes;
+		}
+		
+		long time = Math.max(1, System.nanoTime() - start_time);
+		
+		return 1000000000L * nodes / time;
+	}
+}
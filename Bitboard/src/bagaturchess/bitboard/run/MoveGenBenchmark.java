@@ -0,0 +1,287 @@
+/*
+ *  BagaturChess (UCI chess engine and tools)
+ *  Copyright (C) 2005 Krasimir I. Topchiyski (k_topchiyski@yahoo.com)
+ *  
+ *  Open Source project location: http://sourceforge.net/projects/bagaturchess/develop
+ *  SVN repository https://bagaturchess.svn.sourceforge.net/svnroot/bagaturchess
+ *
+ *  This file is part of BagaturChess program.
+ * 
+ *  BagaturChess is open software: you can redistribute it and/or modify
+ *  it under the terms of the Eclipse Public License version 1.0 as published by
+ *  the Eclipse Foundation.
+ *
+ *  BagaturChess is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  Eclipse Public License for more details.
+ *
+ *  You should have received a copy of the Eclipse Public License version 1.0
+ *  along with BagaturChess. If not, see <http://www.eclipse.org/legal/epl-v10.html/>.
+ *
+ */
+package bagaturchess.bitboard.run;
+
+
+import bagaturchess.bitboard.api.IBitBoard;
+import bagaturchess.bitboard.api.IInternalMoveList;
+import bagaturchess.bitboard.impl.movelist.BaseMoveList;
+
+
+/**
+ * Measures the move generation of the board implementations on the standard perft positions (see Perft.POSITIONS):
+ * genAllMoves, makeMoveForward with makeMoveBackward, isPossible and perft with bulk counting.
+ * First, the perft results of all positions are checked up to the given depth, so a broken move generation is not measured.
+ * Each measurement is repeated in rounds, the first rounds warm up the JIT.
+ *
+ * Usage: MoveGenBenchmark [iterations in thousands=100] [perft depth=4] [rounds=5] [implementations=impl1,impl,kingcaptureallowed]
+ */
+public class MoveGenBenchmark {
+	
+	
+	private static final int CHECKED_NODES_LIMIT = 1000000;
+	
+	
+	public static void main(String[] args) {
+		
+		try {
+			
+			int iterations = (args.length > 0 ? Integer.parseInt(args[0]) : 100) * 1000;
+			int depth = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+			int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+			
+			Perft.Implementation[] implementations = Perft.Implementation.values();
+			
+			if (args.length > 3) {
+				String[] names = args[3].split(",");
+				implementations = new Perft.Implementation[names.length];
+				for (int i = 0; i < names.length; i++) {
+					implementations[i] = Perft.Implementation.get(names[i]);
+				}
+			}
+			
+			for (Perft.Implementation implementation: implementations) {
+				check(implementation, depth);
+			}
+			
+			for (int round = 1; round <= rounds; round++) {
+				
+				for (Perft.Implementation implementation: implementations) {
+					
+					IBitBoard[] boards = new IBitBoard[Perft.POSITIONS.length];
+					for (int i = 0; i < boards.length; i++) {
+						boards[i] = implementation.createBoard(Perft.POSITIONS[i]);
+					}
+					
+					String prefix = "MoveGenBenchmark: round=" + round + ", implementation=" + implementation.getName();
+					
+					System.out.println(prefix + ", genAllMoves ns=" + format(genAllMoves(boards, iterations))
+							+ ", make/unmake ns=" + format(makeUnmake(boards, iterations))
+							+ ", isPossible ns=" + (implementation.isLegalMoves() ? format(isPossible(boards, iterations)) : "n/a")
+							+ ", perft NPS=" + perft(implementation, depth));
+				}
+			}
+		
+		} catch (Throwable t) {
+			
+			t.printStackTrace();
+			
+			System.exit(1);
+		}
+		
+		System.exit(0);
+	}
+	
+	
+	/**
+	 * Checks the perft results of all positions up to the given depth, with and without bulk counting and hash table.
+	 */
+	private static void check(Perft.Implementation implementation, int depth) throws InterruptedException {
+		
+		for (int i = 0; i < Perft.POSITIONS.length; i++) {
+			
+			for (int d = 1; d <= depth && d < Perft.EXPECTED[i].length && Perft.EXPECTED[i][d] <= CHECKED_NODES_LIMIT; d++) {
+				
+				long nodes = Perft.perft(implementation, Perft.POSITIONS[i], d, 1, false, null);
+				long nodes_bulk_hash = Perft.perft(implementation, Perft.POSITIONS[i], d, 1, true, new Perft.HashTable(16));
+				
+				if (nodes != Perft.EXPECTED[i][d] || nodes_bulk_hash != Perft.EXPECTED[i][d]) {
+					throw new IllegalStateException("Implementation " + implementation.getName() + ", position " + Perft.POSITIONS[i]
+							+ ", depth " + d + ": nodes=" + nodes + ", nodes with bulk and hash=" + nodes_bulk_hash + ", expected=" + Perft.EXPECTED[i][d]);
+				}
+			}
+		}
+		
+		System.out.println("MoveGenBenchmark: implementation=" + implementation.getName() + ", perft results OK");
+	}
+	
+	
+	/**
+	 * @return nanoseconds per call
+	 */
+	private static double genAllMoves(IBitBoard[] boards, int iterations) {
+		
+		IInternalMoveList list = new BaseMoveList(250);
+		
+		long moves = 0;
+		
+		long start_time = System.nanoTime();
+		
+		for (int i = 0; i < iterations; i++) {
+			
+			IBitBoard board = boards[i % boards.length];
+			
+			list.reserved_clear();
+			
+			if (board.isInCheck()) {
+				board.genKingEscapes(list);
+			} else {
+				board.genAllMoves(list);
+			}
+			
+			moves += list.reserved_getCurrentSize();
+		}
+		
+		long time = System.nanoTime() - start_time;
+		
+		if (moves == 0) {
+			throw new IllegalStateException();
+		}
+		
+		return time / (double) iterations;
+	}
+	
+	
+	/**
+	 * @return nanoseconds per pair of makeMoveForward and makeMoveBackward
+	 */
+	private static double makeUnmake(IBitBoard[] boards, int iterations) {
+		
+		int[][] moves = getMoves(boards);
+		
+		long pairs = 0;
+		
+		//Each move changes the hash key, so the count of the changed keys has to be the count of the pairs
+		long changed_hashkeys = 0;
+		
+		long start_time = System.nanoTime();
+		
+		for (int i = 0; i < iterations; i++) {
+			
+			IBitBoard board = boards[i % boards.length];
+			
+			int[] board_moves = moves[i % boards.length];
+			
+			long hashkey = board.getHashKey();
+			
+			for (int j = 0; j < board_moves.length; j++) {
+				
+				board.makeMoveForward(board_moves[j]);
+				
+				if (board.getHashKey() != hashkey) {
+					changed_hashkeys++;
+				}
+				
+				board.makeMoveBackward(board_moves[j]);
+			}
+			
+			pairs += board_moves.length;
+		}
+		
+		long time = System.nanoTime() - start_time;
+		
+		if (changed_hashkeys != pairs) {
+			throw new IllegalStateException("changed_hashkeys=" + changed_hashkeys + ", pairs=" + pairs);
+		}
+		
+		return time / (double) pairs;
+	}
+	
+	
+	/**
+	 * The checked moves are the moves of all positions, so most of them are not possible in the given position,
+	 * as with the moves from the transposition table or the killers of other positions.
+	 * @return nanoseconds per call
+	 */
+	private static double isPossible(IBitBoard[] boards, int iterations) {
+		
+		int[][] moves = getMoves(boards);
+		
+		long calls = 0;
+		
+		long possible = 0;
+		
+		long start_time = System.nanoTime();
+		
+		for (int i = 0; i < iterations; i++) {
+			
+			IBitBoard board = boards[i % boards.length];
+			
+			for (int j = 0; j < moves.length; j++) {
+				
+				int[] board_moves = moves[j];
+				
+				for (int k = 0; k < board_moves.length; k++) {
+					if (board.isPossible(board_moves[k])) {
+						possible++;
+					}
+				}
+				
+				calls += board_moves.length;
+			}
+		}
+		
+		long time = System.nanoTime() - start_time;
+		
+		if (possible == 0) {
+			throw new IllegalStateException();
+		}
+		
+		return time / (double) calls;
+	}
+	
+	
+	private static long perft(Perft.Implementation implementation, int depth) throws InterruptedException {
+		
+		long nodes = 0;
+		
+		long start_time = System.nanoTime();
+		
+		for (int i = 0; i < Perft.POSITIONS.length; i++) {
+			nodes += Perft.perft(implementation, Perft.POSITIONS[i], depth, 1, true, null);
+		}
+		
+		long time = Math.max(1, System.nanoTime() - start_time);
+		
+		return 1000000000L * nodes / time;
+	}
+	
+	
+	private static int[][] getMoves(IBitBoard[] boards) {
+		
+		int[][] result = new int[boards.length][];
+		
+		IInternalMoveList list = new BaseMoveList(250);
+		
+		for (int i = 0; i < boards.length; i++) {
+			
+			list.reserved_clear();
+			
+			if (boards[i].isInCheck()) {
+				boards[i].genKingEscapes(list);
+			} else {
+				boards[i].genAllMoves(list);
+			}
+			
+			result[i] = new int[list.reserved_getCurrentSize()];
+			System.arraycopy(list.reserved_getMovesBuffer(), 0, result[i], 0, result[i].length);
+		}
+		
+		return result;
+	}
+	
+	
+	private static String format(double value) {
+		return String.format("%.1f", value);
+	}
+}
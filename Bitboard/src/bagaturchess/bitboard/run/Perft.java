@@ -0,0 +1,444 @@
+/*
+ *  BagaturChess (UCI chess engine and tools)
+ *  Copyright (C) 2005 Krasimir I. Topchiyski (k_topchiyski@yahoo.com)
+ *  
+ *  Open Source project location: http://sourceforge.net/projects/bagaturchess/develop
+ *  SVN repository https://bagaturchess.svn.sourceforge.net/svnroot/bagaturchess
+ *
+ *  This file is part of BagaturChess program.
+ * 
+ *  BagaturChess is open software: you can redistribute it and/or modify
+ *  it under the terms of the Eclipse Public License version 1.0 as published by
+ *  the Eclipse Foundation.
+ *
+ *  BagaturChess is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  Eclipse Public License for more details.
+ *
+ *  You should have received a copy of the Eclipse Public License version 1.0
+ *  along with BagaturChess. If not, see <http://www.eclipse.org/legal/epl-v10.html/>.
+ *
+ */
+package bagaturchess.bitboard.run;
+
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import bagaturchess.bitboard.api.BoardUtils;
+import bagaturchess.bitboard.api.IBitBoard;
+import bagaturchess.bitboard.api.IInternalMoveList;
+import bagaturchess.bitboard.impl.Constants;
+import bagaturchess.bitboard.impl.movelist.BaseMoveList;
+import bagaturchess.bitboard.impl1.BoardImpl;
+import bagaturchess.bitboard.impl_kingcaptureallowed.Board3_Adapter;
+
+
+/**
+ * Counts the leaf nodes of the legal moves tree (perft) of the board implementations.
+ *
+ * With bulk counting, the moves at depth 1 are counted without making them. It is used only for the implementations, which generate legal moves,
+ * the others are checked for a king left in check after each move.
+ * With a hash table, the counts of the subtrees are stored by hashkey and depth, so the transpositions are counted once.
+ * The table is shared by the threads and a slot is checked with the XOR of its key and count, so a torn write is a miss and not a wrong count.
+ * With more threads, the root moves are split between the threads, each with its own board.
+ *
+ * Usage: Perft [depth=5] [FEN or "startpos"] [impl1 | impl | kingcaptureallowed] [threads=1] [hash MB=0] [bulk=true] [divide=false]
+ */
+public class Perft {
+	
+	
+	//Known results of the standard positions (https://www.chessprogramming.org/Perft_Results), the index is the depth
+	public static final String[] POSITIONS = new String[] {
+		Constants.INITIAL_BOARD,
+		"r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+		"8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+		"r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1",
+		"rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8",
+		"r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 10",
+	};
+	
+	public static final long[][] EXPECTED = new long[][] {
+		{1, 20, 400, 8902, 197281, 4865609, 119060324},
+		{1, 48, 2039, 97862, 4085603, 193690690},
+		{1, 14, 191, 2812, 43238, 674624, 11030083},
+		{1, 6, 264, 9467, 422333, 15833292},
+		{1, 44, 1486, 62379, 2103487, 89941194},
+		{1, 46, 2079, 89890, 3894594, 164075551},
+	};
+	
+	private static final int MAX_DEPTH 			= 64;
+	
+	
+	public static enum Implementation {
+		
+		
+		IMPL1("impl1", true),
+		IMPL("impl", true),
+		KING_CAPTURE_ALLOWED("kingcaptureallowed", false);
+		
+		
+		private final String name;
+		
+		private final boolean legalMoves;
+		
+		
+		private Implementation(String _name, boolean _legalMoves) {
+			name = _name;
+			legalMoves = _legalMoves;
+		}
+		
+		
+		public String getName() {
+			return name;
+		}
+		
+		
+		/**
+		 * @return true if the generated moves are legal, otherwise the moves which leave the king in check are generated too
+		 */
+		public boolean isLegalMoves() {
+			return legalMoves;
+		}
+		
+		
+		public IBitBoard createBoard(String fen) {
+			
+			switch (this) {
+				
+				case IMPL1:
+					return new BoardImpl(fen, null, false);
+				
+				case IMPL:
+					return BoardUtils.createBoard_WithPawnsCache(fen, bagaturchess.bitboard.impl.eval.pawns.model.PawnsModelEvalFactory.class.getName(), null, 1000, false);
+				
+				case KING_CAPTURE_ALLOWED:
+					return new Board3_Adapter(fen, null);
+				
+				default:
+					throw new IllegalStateException(name);
+			}
+		}
+		
+		
+		public static Implementation get(String name) {
+			
+			for (Implementation implementation: values()) {
+				if (implementation.name.equals(name)) {
+					return implementation;
+				}
+			}
+			
+			throw new IllegalStateException("Unknown implementation " + name);
+		}
+	}
+	
+	
+	private final IBitBoard board;
+	
+	private final boolean legalMoves;
+	
+	private final boolean bulk;
+	
+	private final HashTable hashTable;
+	
+	private final IInternalMoveList[] lists;
+	
+	
+	public Perft(IBitBoard _board, boolean _legalMoves, boolean _bulk, HashTable _hashTable) {
+		
+		board = _board;
+		legalMoves = _legalMoves;
+		bulk = _bulk && _legalMoves;
+		hashTable = _hashTable;
+		
+		lists = new IInternalMoveList[MAX_DEPTH + 1];
+		for (int i = 0; i < lists.length; i++) {
+			lists[i] = new BaseMoveList(250);
+		}
+	}
+	
+	
+	public long perft(int depth) {
+		
+		if (depth == 0) {
+			return 1;
+		}
+		
+		if (bulk && depth == 1) {
+			IInternalMoveList list = generate(depth);
+			return list.reserved_getCurrentSize();
+		}
+		
+		long hashkey = 0;
+		
+		if (hashTable != null && depth > 1) {
+			
+			hashkey = board.getHashKey();
+			
+			long count = hashTable.get(hashkey, depth);
+			
+			if (count != -1) {
+				return count;
+			}
+		}
+		
+		IInternalMoveList list = generate(depth);
+		
+		int size = list.reserved_getCurrentSize();
+		int[] moves = list.reserved_getMovesBuffer();
+		
+		long count = 0;
+		
+		for (int i = 0; i < size; i++) {
+			
+			int move = moves[i];
+			
+			int colour = board.getColourToMove();
+			
+			board.makeMoveForward(move);
+			
+			if (legalMoves || !board.isInCheck(colour)) {
+				count += perft(depth - 1);
+			}
+			
+			board.makeMoveBackward(move);
+		}
+		
+		if (hashTable != null && depth > 1) {
+			hashTable.put(hashkey, depth, count);
+		}
+		
+		return count;
+	}
+	
+	
+	/**
+	 * Prints the count of each root move and returns the total.
+	 */
+	public long divide(int depth) {
+		
+		IInternalMoveList list = generate(MAX_DEPTH);
+		
+		int size = list.reserved_getCurrentSize();
+		int[] moves = list.reserved_getMovesBuffer();
+		
+		long total = 0;
+		
+		for (int i = 0; i < size; i++) {
+			
+			int move = moves[i];
+			
+			String move_str = board.getMoveOps().moveToString(move);
+			
+			int colour = board.getColourToMove();
+			
+			board.makeMoveForward(move);
+			
+			if (legalMoves || !board.isInCheck(colour)) {
+				
+				long count = perft(depth - 1);
+				
+				System.out.println(move_str + ": " + count);
+				
+				total += count;
+			}
+			
+			board.makeMoveBackward(move);
+		}
+		
+		System.out.println("Total: " + total);
+		
+		return total;
+	}
+	
+	
+	private IInternalMoveList generate(int depth) {
+		
+		IInternalMoveList list = lists[depth];
+		
+		list.reserved_clear();
+		
+		if (board.isInCheck()) {
+			board.genKingEscapes(list);
+		} else {
+			board.genAllMoves(list);
+		}
+		
+		return list;
+	}
+	
+	
+	/**
+	 * Splits the root moves between the threads. Each thread takes the next root move, when it finishes the previous one.
+	 */
+	public static long perft(final Implementation implementation, final String fen, final int depth, int threads, final boolean bulk, final HashTable hashTable) throws InterruptedException {
+		
+		if (threads <= 1 || depth <= 1) {
+			return new Perft(implementation.createBoard(fen), implementation.isLegalMoves(), bulk, hashTable).perft(depth);
+		}
+		
+		IBitBoard root = implementation.createBoard(fen);
+		
+		IInternalMoveList list = new BaseMoveList(250);
+		if (root.isInCheck()) {
+			root.genKingEscapes(list);
+		} else {
+			root.genAllMoves(list);
+		}
+		
+		final int[] moves = new int[list.reserved_getCurrentSize()];
+		System.arraycopy(list.reserved_getMovesBuffer(), 0, moves, 0, moves.length);
+		
+		final AtomicInteger next = new AtomicInteger();
+		final AtomicLong total = new AtomicLong();
+		final Throwable[] error = new Throwable[1];
+		
+		Thread[] workers = new Thread[threads];
+		
+		for (int t = 0; t < workers.length; t++) {
+			
+			workers[t] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						
+						IBitBoard board = implementation.createBoard(fen);
+						
+						Perft perft = new Perft(board, implementation.isLegalMoves(), bulk, hashTable);
+						
+						int index;
+						while ((index = next.getAndIncrement()) < moves.length) {
+							
+							int colour = board.getColourToMove();
+							
+							board.makeMoveForward(moves[index]);
+							
+							if (implementation.isLegalMoves() || !board.isInCheck(colour)) {
+								total.addAndGet(perft.perft(depth - 1));
+							}
+							
+							board.makeMoveBackward(moves[index]);
+						}
+					
+					} catch (Throwable t) {
+						synchronized (error) {
+							error[0] = t;
+						}
+					}
+				}
+			}, "Perft-" + t);
+			
+			workers[t].start();
+		}
+		
+		for (int t = 0; t < workers.length; t++) {
+			workers[t].join();
+		}
+		
+		synchronized (error) {
+			if (error[0] != null) {
+				throw new IllegalStateException(error[0]);
+			}
+		}
+		
+		return total.get();
+	}
+	
+	
+	public static void main(String[] args) {
+		
+		try {
+			
+			int depth 						= args.length > 0 ? Integer.parseInt(args[0]) : 5;
+			String fen 						= args.length > 1 && !args[1].equals("startpos") ? args[1] : Constants.INITIAL_BOARD;
+			Implementation implementation 	= args.length > 2 ? Implementation.get(args[2]) : Implementation.IMPL1;
+			int threads 					= args.length > 3 ? Integer.parseInt(args[3]) : 1;
+			int hashMB 						= args.length > 4 ? Integer.parseInt(args[4]) : 0;
+			boolean bulk 					= args.length > 5 ? Boolean.parseBoolean(args[5]) : true;
+			boolean divide 					= args.length > 6 ? Boolean.parseBoolean(args[6]) : false;
+			
+			HashTable hashTable = hashMB > 0 ? new HashTable(hashMB) : null;
+			
+			long start_time = System.currentTimeMillis();
+			
+			long nodes;
+			
+			if (divide) {
+				nodes = new Perft(implementation.createBoard(fen), implementation.isLegalMoves(), bulk, hashTable).divide(depth);
+			} else {
+				nodes = perft(implementation, fen, depth, threads, bulk, hashTable);
+			}
+			
+			long time = Math.max(1, System.currentTimeMillis() - start_time);
+			
+			System.out.println("Perft: implementation=" + implementation.getName() + ", depth=" + depth + ", nodes=" + nodes
+					+ ", time=" + time + "ms, NPS=" + (1000 * nodes / time));
+		
+		} catch (Throwable t) {
+			
+			t.printStackTrace();
+		}
+	}
+	
+	
+	/**
+	 * Stores the counts of the subtrees by hashkey and depth. Always replaces.
+	 */
+	public static final class HashTable {
+		
+		
+		private final long[] keys;
+		
+		private final long[] counts;
+		
+		private final int mask;
+		
+		
+		public HashTable(int sizeMB) {
+			
+			int entries = Integer.highestOneBit(Math.max(1, (int) Math.min(1L << 30, (sizeMB * 1024L * 1024L) / 16)));
+			
+			keys = new long[entries];
+			counts = new long[entries];
+			mask = entries - 1;
+		}
+		
+		
+		/**
+		 * @return the count or -1 if it is not found
+		 */
+		long get(long hashkey, int depth) {
+			
+			long key = key(hashkey, depth);
+			
+			int index = (int) key & mask;
+			
+			long count = counts[index];
+			
+			if ((keys[index] ^ count) == key) {
+				return count;
+			}
+			
+			return -1;
+		}
+		
+		
+		void put(long hashkey, int depth, long count) {
+			
+			long key = key(hashkey, depth);
+			
+			int index = (int) key & mask;
+			
+			counts[index] = count;
+			keys[index] = key ^ count;
+		}
+		
+		
+		private static long key(long hashkey, int depth) {
+			//The depth is mixed in with an odd constant, so the same position at different depths has different slots
+			return hashkey ^ (depth * 0x9E3779B97F4A7C15L);
+		}
+	}
+}
@@ -18,8 +18,12 @@ import bagaturchess.uci.api.ChannelManager;
  */
 public class SyzygyJNIBridge {
 
-    private static boolean libLoaded = false;
-    private static int tbLargest = 0;
+    private static volatile boolean libLoaded = false;
+    private static volatile int tbLargest = 0;
+    
+    //The DTZ (and DTM) probing of the native library is not thread safe and crashes with SIGSEGV in probe_dtz, if called by many threads at the same time.
+    //The WDL probing is thread safe and is not synchronized.
+    private static final Object DTZ_LOCK = new Object();
 
     private SyzygyJNIBridge(){}
 
@@ -133,7 +137,9 @@ public class SyzygyJNIBridge {
      * @return WDL result (see c code)
      */
     public static int probeSyzygyDTM(long white, long black, long kings, long queens, long rooks, long bishops, long knights, long pawns, int rule50, int ep, boolean turn){ //NOSONAR
-        return probeDTM(white, black, kings, queens, rooks, bishops, knights, pawns, rule50, ep, turn);
+        synchronized (DTZ_LOCK) {
+            return probeDTM(white, black, kings, queens, rooks, bishops, knights, pawns, rule50, ep, turn);
+        }
     }
     
     /**
@@ -170,6 +176,8 @@ public class SyzygyJNIBridge {
      * @return DTZ result (see c code)
      */
     public static int probeSyzygyDTZ(long white, long black, long kings, long queens, long rooks, long bishops, long knights, long pawns, int rule50, int ep, boolean turn){ //NOSONAR
-        return probeDTZ(white, black, kings, queens, rooks, bishops, knights, pawns, rule50, ep, turn);
+        synchronized (DTZ_LOCK) {
+            return probeDTZ(white, black, kings, queens, rooks, bishops, knights, pawns, rule50, ep, turn);
+        }
     }
 }
@@ -0,0 +1,382 @@
+package bagaturchess.egtb.syzygy;
+
+
+/**
+ * Minimal position used by the pure Java Syzygy reader. It has the same bitboards as the ones passed to SyzygyJNIBridge
+ * and generates only the captures, which are needed for the capture resolution of the WDL probing.
+ * Java port of the position and move generation code of Fathom (tbchess.c).
+ * Positions with en passant rights are not probed (as with SyzygyJNIBridge), so en passant is not supported.
+ */
+final class SyzygyPosition {
+
+
+	static final int BLACK 		= 0;
+	static final int WHITE 		= 1;
+
+	static final int PAWN 		= 1;
+	static final int KNIGHT 	= 2;
+	static final int BISHOP 	= 3;
+	static final int ROOK 		= 4;
+	static final int QUEEN 		= 5;
+	static final int KING 		= 6;
+
+	//Captures of a position with max 7 pieces, with all promotions
+	static final int MAX_CAPTURES = 64;
+
+	private static final long PRIME_WHITE_QUEEN 	= 0xA3EC1ABC71E90863L; //11811845319353239651
+	private static final long PRIME_WHITE_ROOK 		= 0x985DEB9FC49333F9L; //10979190538029446137
+	private static final long PRIME_WHITE_BISHOP 	= 0xAADC1A2BE446234DL; //12311744257139811149
+	private static final long PRIME_WHITE_KNIGHT 	= 0xD2FB81862830191FL; //15202887380319082783
+	private static final long PRIME_WHITE_PAWN 		= 0xEC0ADE190C0F6003L; //17008651141875982339
+	private static final long PRIME_BLACK_QUEEN 	= 0xD6E4E47D24962951L; //15484752644942473553
+	private static final long PRIME_BLACK_ROOK 		= 0xFD7866B439B94495L; //18264461213049635989
+	private static final long PRIME_BLACK_BISHOP 	= 0xD5A4C95928F2FBE3L; //15394650811035483107
+	private static final long PRIME_BLACK_KNIGHT 	= 0xBAEB854CD3259441L; //13469005675588064321
+	private static final long PRIME_BLACK_PAWN 		= 0xA24F0F571BB202E7L; //11695583624105689831
+
+	private static final int PROMOTES_NONE 		= 0;
+	private static final int PROMOTES_QUEEN 	= 1;
+	private static final int PROMOTES_ROOK 		= 2;
+	private static final int PROMOTES_BISHOP 	= 3;
+	private static final int PROMOTES_KNIGHT 	= 4;
+
+	private static final long[] KING_ATTACKS 		= new long[64];
+	private static final long[] KNIGHT_ATTACKS 		= new long[64];
+	private static final long[][] PAWN_ATTACKS 		= new long[2][64];
+
+	private static final int[][] ROOK_DIRECTIONS 	= new int[][] {{1, 0}, {-1, 0}, {0, 1}, {0, -1}};
+	private static final int[][] BISHOP_DIRECTIONS 	= new int[][] {{1, 1}, {1, -1}, {-1, 1}, {-1, -1}};
+
+
+	static {
+
+		for (int square = 0; square < 64; square++) {
+
+			KING_ATTACKS[square] = steps(square, new int[][] {{1, 0}, {-1, 0}, {0, 1}, {0, -1}, {1, 1}, {1, -1}, {-1, 1}, {-1, -1}});
+
+			KNIGHT_ATTACKS[square] = steps(square, new int[][] {{1, 2}, {2, 1}, {-1, 2}, {-2, 1}, {1, -2}, {2, -1}, {-1, -2}, {-2, -1}});
+
+			PAWN_ATTACKS[WHITE][square] = steps(square, new int[][] {{-1, 1}, {1, 1}});
+
+			PAWN_ATTACKS[BLACK][square] = steps(square, new int[][] {{-1, -1}, {1, -1}});
+		}
+	}
+
+
+	long white;
+	long black;
+	long kings;
+	long queens;
+	long rooks;
+	long bishops;
+	long knights;
+	long pawns;
+	boolean turn; //true if white is to move
+
+
+	SyzygyPosition() {
+
+	}
+
+
+	SyzygyPosition(long _white, long _black, long _kings, long _queens, long _rooks, long _bishops, long _knights, long _pawns, boolean _turn) {
+
+		white 	= _white;
+		black 	= _black;
+		kings 	= _kings;
+		queens 	= _queens;
+		rooks 	= _rooks;
+		bishops = _bishops;
+		knights = _knights;
+		pawns 	= _pawns;
+		turn 	= _turn;
+	}
+
+
+	long getPieces(int color, int type) {
+
+		long mask = color == WHITE ? white : black;
+
+		switch (type) {
+			case PAWN:
+				return pawns & mask;
+			case KNIGHT:
+				return knights & mask;
+			case BISHOP:
+				return bishops & mask;
+			case ROOK:
+				return rooks & mask;
+			case QUEEN:
+				return queens & mask;
+			case KING:
+				return kings & mask;
+			default:
+				throw new IllegalStateException("type=" + type);
+		}
+	}
+
+
+	/**
+	 * @return the material signature of the position, with swapped colours if mirror is true
+	 */
+	long calcKey(boolean mirror) {
+
+		long w = mirror ? black : white;
+		long b = mirror ? white : black;
+
+		return Long.bitCount(w & queens) * PRIME_WHITE_QUEEN
+				+ Long.bitCount(w & rooks) * PRIME_WHITE_ROOK
+				+ Long.bitCount(w & bishops) * PRIME_WHITE_BISHOP
+				+ Long.bitCount(w & knights) * PRIME_WHITE_KNIGHT
+				+ Long.bitCount(w & pawns) * PRIME_WHITE_PAWN
+				+ Long.bitCount(b & queens) * PRIME_BLACK_QUEEN
+				+ Long.bitCount(b & rooks) * PRIME_BLACK_ROOK
+				+ Long.bitCount(b & bishops) * PRIME_BLACK_BISHOP
+				+ Long.bitCount(b & knights) * PRIME_BLACK_KNIGHT
+				+ Long.bitCount(b & pawns) * PRIME_BLACK_PAWN;
+	}
+
+
+	/**
+	 * @param counts the number of pieces per piece code: 1-6 are the white pawn-king and 9-14 the black pawn-king
+	 * @return the material signature of the pieces, with swapped colours if mirror is true
+	 */
+	static long calcKey(int[] counts, boolean mirror) {
+
+		int w = mirror ? 8 : 0;
+		int b = mirror ? 0 : 8;
+
+		return counts[w | QUEEN] * PRIME_WHITE_QUEEN
+				+ counts[w | ROOK] * PRIME_WHITE_ROOK
+				+ counts[w | BISHOP] * PRIME_WHITE_BISHOP
+				+ counts[w | KNIGHT] * PRIME_WHITE_KNIGHT
+				+ counts[w | PAWN] * PRIME_WHITE_PAWN
+				+ counts[b | QUEEN] * PRIME_BLACK_QUEEN
+				+ counts[b | ROOK] * PRIME_BLACK_ROOK
+				+ counts[b | BISHOP] * PRIME_BLACK_BISHOP
+				+ counts[b | KNIGHT] * PRIME_BLACK_KNIGHT
+				+ counts[b | PAWN] * PRIME_BLACK_PAWN;
+	}
+
+
+	/**
+	 * Generates all captures, including all under promotions. Some of them may be illegal.
+	 * @return the number of moves
+	 */
+	int genCaptures(int[] moves) {
+
+		long occ = white | black;
+		long us = turn ? white : black;
+		long them = turn ? black : white;
+
+		int count = 0;
+
+		for (long b = us & ~pawns; b != 0; b &= b - 1) {
+
+			int from = Long.numberOfTrailingZeros(b);
+
+			long att;
+
+			if ((kings & (1L << from)) != 0) {
+				att = KING_ATTACKS[from];
+			} else if ((knights & (1L << from)) != 0) {
+				att = KNIGHT_ATTACKS[from];
+			} else {
+				att = 0;
+				if ((queens & (1L << from)) != 0 || (rooks & (1L << from)) != 0) att |= rookAttacks(from, occ);
+				if ((queens & (1L << from)) != 0 || (bishops & (1L << from)) != 0) att |= bishopAttacks(from, occ);
+			}
+
+			for (att &= them; att != 0; att &= att - 1) {
+
+				moves[count++] = makeMove(PROMOTES_NONE, from, Long.numberOfTrailingZeros(att));
+			}
+		}
+
+		for (long b = us & pawns; b != 0; b &= b - 1) {
+
+			int from = Long.numberOfTrailingZeros(b);
+
+			for (long att = PAWN_ATTACKS[turn ? WHITE : BLACK][from] & them; att != 0; att &= att - 1) {
+
+				int to = Long.numberOfTrailingZeros(att);
+
+				if ((to >>> 3) == 7 || (to >>> 3) == 0) {
+
+					moves[count++] = makeMove(PROMOTES_QUEEN, from, to);
+					moves[count++] = makeMove(PROMOTES_KNIGHT, from, to);
+					moves[count++] = makeMove(PROMOTES_ROOK, from, to);
+					moves[count++] = makeMove(PROMOTES_BISHOP, from, to);
+
+				} else {
+
+					moves[count++] = makeMove(PROMOTES_NONE, from, to);
+				}
+			}
+		}
+
+		return count;
+	}
+
+
+	/**
+	 * Makes the move of this position in the result position.
+	 * @return false if the move is illegal
+	 */
+	boolean doMove(int move, SyzygyPosition result) {
+
+		int from 		= (move >>> 6) & 0x3F;
+		int to 			= move & 0x3F;
+		int promotes 	= (move >>> 12) & 0x7;
+
+		result.turn 	= !turn;
+		result.white 	= moveBB(white, from, to);
+		result.black 	= moveBB(black, from, to);
+		result.kings 	= moveBB(kings, from, to);
+		result.queens 	= moveBB(queens, from, to);
+		result.rooks 	= moveBB(rooks, from, to);
+		result.bishops 	= moveBB(bishops, from, to);
+		result.knights 	= moveBB(knights, from, to);
+		result.pawns 	= moveBB(pawns, from, to);
+
+		if (promotes != PROMOTES_NONE) {
+
+			result.pawns &= ~(1L << to);
+
+			switch (promotes) {
+				case PROMOTES_QUEEN:
+					result.queens |= 1L << to;
+					break;
+				case PROMOTES_ROOK:
+					result.rooks |= 1L << to;
+					break;
+				case PROMOTES_BISHOP:
+					result.bishops |= 1L << to;
+					break;
+				case PROMOTES_KNIGHT:
+					result.knights |= 1L << to;
+					break;
+			}
+		}
+
+		return result.isLegal();
+	}
+
+
+	/**
+	 * @return false if the king of the side, which is not to move, can be captured
+	 */
+	boolean isLegal() {
+
+		long occ = white | black;
+		long us = turn ? black : white;
+		long them = turn ? white : black;
+
+		long king = kings & us;
+
+		if (king == 0) {
+
+			return false;
+		}
+
+		int square = Long.numberOfTrailingZeros(king);
+
+		if ((KING_ATTACKS[square] & kings & them) != 0) {
+			return false;
+		}
+
+		long ratt = rookAttacks(square, occ);
+		long batt = bishopAttacks(square, occ);
+
+		if ((ratt & (rooks | queens) & them) != 0) {
+			return false;
+		}
+
+		if ((batt & (bishops | queens) & them) != 0) {
+			return false;
+		}
+
+		if ((KNIGHT_ATTACKS[square] & knights & them) != 0) {
+			return false;
+		}
+
+		//The pawns of the side to move, which attack the square
+		if ((PAWN_ATTACKS[turn ? BLACK : WHITE][square] & pawns & them) != 0) {
+			return false;
+		}
+
+		return true;
+	}
+
+
+	private static int makeMove(int promotes, int from, int to) {
+
+		return ((promotes & 0x7) << 12) | ((from & 0x3F) << 6) | (to & 0x3F);
+	}
+
+
+	private static long moveBB(long bb, int from, int to) {
+
+		return (bb & ~(1L << to) & ~(1L << from)) | (((bb >>> from) & 0x1) << to);
+	}
+
+
+	static long rookAttacks(int square, long occ) {
+
+		return slide(square, occ, ROOK_DIRECTIONS);
+	}
+
+
+	static long bishopAttacks(int square, long occ) {
+
+		return slide(square, occ, BISHOP_DIRECTIONS);
+	}
+
+
+	private static long slide(int square, long occ, int[][] directions) {
+
+		long result = 0;
+
+		for (int i = 0; i < directions.length; i++) {
+
+			int file = (square & 7) + directions[i][0];
+			int rank = (square >>> 3) + directions[i][1];
+
+			while (file >= 0 && file <= 7 && rank >= 0 && rank <= 7) {
+
+				long bb = 1L << (8 * rank + file);
+
+				result |= bb;
+
+				if ((occ & bb) != 0) {
+
+					break;
+				}
+
+				file += directions[i][0];
+				rank += directions[i][1];
+			}
+		}
+
+		return result;
+	}
+
+
+	private static long steps(int square, int[][] directions) {
+
+		long result = 0;
+
+		for (int i = 0; i < directions.length; i++) {
+
+			int file = (square & 7) + directions[i][0];
+			int rank = (square >>> 3) + directions[i][1];
+
+			if (file >= 0 && file <= 7 && rank >= 0 && rank <= 7) {
+
+				result |= 1L << (8 * rank + file);
+			}
+		}
+
+		return result;
+	}
+}
@@ -39,13 +39,33 @@ public class SyzygyTBProbing {
 	private static int MAX_PIECES_COUNT = 7;//Including both kings
 	
 	
+	private static final int PROBE_WDL = 0;
+	private static final int PROBE_DTZ = 1;
+	private static final int PROBE_DTM = 2;
+	
+	//Added to the cache key of the DTZ results, so the WDL and DTZ results of the same position can be stored in one cache
+	private static final long CACHE_KEY_DTZ_SALT = 0x9E3779B97F4A7C15L;
+	
+	
 	private static boolean loadingInitiated;
 	
-	private static SyzygyTBProbing instance;
+	private static volatile SyzygyTBProbing instance;
+	
+	private static volatile boolean switched_off = false;
+	
+	
+	//Used for the WDL probes if the native library is not loaded or the Java reader is selected
+	private volatile SyzygyWDLReader wdl_reader;
+	
+	private volatile boolean java_wdl;
 	
-	private static boolean switched_off = false;
+	//The tables are shared by all engine instances of the JVM (e.g. the sessions of the UCI server), so the same path is loaded only once
+	private String loaded_path;
 	
 	
+	/**
+	 * Called by all search threads on each node, so only the first call is synchronized.
+	 */
     public static final SyzygyTBProbing getSingleton() {
     	
     	if (switched_off) {
@@ -53,21 +73,31 @@ public class SyzygyTBProbing {
     		return null;
     	}
     	
-    	if (instance == null && !loadingInitiated) {
-    		
-    		loadingInitiated = true;
-    		
-    		instance = new SyzygyTBProbing();
+    	SyzygyTBProbing result = instance;
+    	
+    	if (result != null) {
     		
-    		if (!instance.loadNativeLibrary()) {
-    			
-    			instance = null;
-    			
-    			switched_off = true;
-    		}
+    		return result;
     	}
     	
-    	return instance;
+    	synchronized (SyzygyTBProbing.class) {
+    		
+	    	if (instance == null && !loadingInitiated && !switched_off) {
+	    		
+	    		loadingInitiated = true;
+	    		
+	    		SyzygyTBProbing probing = new SyzygyTBProbing();
+	    		
+	    		if (!probing.loadNativeLibrary()) {
+	    			
+	    			if (ChannelManager.getChannel() != null) ChannelManager.getChannel().dump("SyzygyTBProbing: the JSyzygy library is not loaded, only the WDL tables will be probed with the Java reader");
+	    		}
+	    		
+	    		instance = probing;
+	    	}
+	    	
+	    	return switched_off ? null : instance;
+    	}
     }
 	
     
@@ -79,7 +109,16 @@ public class SyzygyTBProbing {
     }
     
     
-    public synchronized final void load(String path) {
+    public final void load(String path) {
+    	
+    	load(path, false);
+    }
+    
+    
+    /**
+     * @param _java_wdl if true, the WDL tables are probed with the Java reader even if the native library is loaded
+     */
+    public synchronized final void load(String path, boolean _java_wdl) {
     	
     	if (path == null) {
     		
@@ -88,7 +127,19 @@ public class SyzygyTBProbing {
     		return;
     	}
     	
-    	SyzygyJNIBridge.load(path);
+    	if (SyzygyJNIBridge.isLibLoaded() && !path.equals(loaded_path)) {
+    		
+    		SyzygyJNIBridge.load(path);
+    		
+    		loaded_path = path;
+    	}
+    	
+    	if ((_java_wdl || !SyzygyJNIBridge.isLibLoaded()) && wdl_reader == null) {
+    		
+    		wdl_reader = new SyzygyWDLReader(path);
+    	}
+    	
+    	java_wdl = _java_wdl;
     }
     
     
@@ -116,49 +167,67 @@ public class SyzygyTBProbing {
     		return false;
     	}
     	
+    	SyzygyWDLReader reader = getWDLReader();
+    	
+    	if (reader != null) {
+    		
+    		return piecesLeft <= reader.getLargest();
+    	}
+    	
         return SyzygyJNIBridge.isAvailable(piecesLeft);
     }
     
     
     /**
-     * probes the Syzygy TableBases for a DTM result
+     * @return the max pieces count (including both kings) of the loaded tablebases or 0 if they are not loaded
      */
-    public int probeDTM(IBitBoard board) {
+    public int getCardinality() {
     	
+    	SyzygyWDLReader reader = getWDLReader();
     	
-    	if (board.getMaterialState().getPiecesCount() > MAX_PIECES_COUNT) {
+    	int size = reader != null ? reader.getLargest() : SyzygyJNIBridge.getSupportedSize();
+    	
+    	return Math.max(0, Math.min(MAX_PIECES_COUNT, size));
+    }
+    
+    
+    /**
+     * @return the Java reader, if it is used for the WDL probes, or null if the native library is used
+     */
+    private SyzygyWDLReader getWDLReader() {
+    	
+    	if (java_wdl || !SyzygyJNIBridge.isLibLoaded()) {
     		
-    		return -1;
+    		return wdl_reader;
     	}
     	
+    	return null;
+    }
+    
+    
+    /**
+     * The probe results depend on the 50 moves rule counter, so it is mixed into the hash key of the position.
+     * @return key of the WDL (dtz = false) or DTZ (dtz = true) result of the position, for caches shared between the search threads
+     */
+    public static long getCacheKey(IBitBoard board, boolean dtz) {
     	
-        if (board.hasRightsToKingCastle(Constants.COLOUR_WHITE)
-        		|| board.hasRightsToQueenCastle(Constants.COLOUR_WHITE)
-        		|| board.hasRightsToKingCastle(Constants.COLOUR_BLACK)
-        		|| board.hasRightsToQueenCastle(Constants.COLOUR_BLACK)) {
-        	
-            return -1;
-        }
-        
-        if (board.getEnpassantSquareID() != 0) {
-        	
-        	return -1;
-        }
-        
-        
-        return SyzygyJNIBridge.probeSyzygyDTM(
-        		convertBB(board.getFiguresBitboardByColour(Constants.COLOUR_WHITE)),
-        		convertBB(board.getFiguresBitboardByColour(Constants.COLOUR_BLACK)),
-        		convertBB(board.getFiguresBitboardByColourAndType(Constants.COLOUR_WHITE, Constants.TYPE_KING)) | convertBB(board.getFiguresBitboardByColourAndType(Constants.COLOUR_BLACK, Constants.TYPE_KING)),
-        		convertBB(board.getFiguresBitboardByColourAndType(Constants.COLOUR_WHITE, Constants.TYPE_QUEEN)) | convertBB(board.getFiguresBitboardByColourAndType(Constants.COLOUR_BLACK, Constants.TYPE_QUEEN)),
-        		convertBB(board.getFiguresBitboardByColourAndType(Constants.COLOUR_WHITE, Constants.TYPE_ROOK)) | convertBB(board.getFiguresBitboardByColourAndType(Constants.COLOUR_BLACK, Constants.TYPE_ROOK)),
-        		convertBB(board.getFiguresBitboardByColourAndType(Constants.COLOUR_WHITE, Constants.TYPE_BISHOP)) | convertBB(board.getFiguresBitboardByColourAndType(Constants.COLOUR_BLACK, Constants.TYPE_BISHOP)),
-        		convertBB(board.getFiguresBitboardByColourAndType(Constants.COLOUR_WHITE, Constants.TYPE_KNIGHT)) | convertBB(board.getFiguresBitboardByColourAndType(Constants.COLOUR_BLACK, Constants.TYPE_KNIGHT)),
-        		convertBB(board.getFiguresBitboardByColourAndType(Constants.COLOUR_WHITE, Constants.TYPE_PAWN)) | convertBB(board.getFiguresBitboardByColourAndType(Constants.COLOUR_BLACK, Constants.TYPE_PAWN)),
-        		board.getDraw50movesRule(),
-                0, //Enpassant index
-                board.getColourToMove() == Constants.COLOUR_WHITE
-        );
+    	long hash50movesRule = 128 + board.getDraw50movesRule();
+	    hash50movesRule += hash50movesRule << 8;
+	    hash50movesRule += hash50movesRule << 16;
+	    hash50movesRule += hash50movesRule << 32;
+	    
+	    long hashkey = hash50movesRule ^ board.getHashKey();
+	    
+	    return dtz ? hashkey + CACHE_KEY_DTZ_SALT : hashkey;
+    }
+    
+    
+    /**
+     * probes the Syzygy TableBases for a DTM result
+     */
+    public int probeDTM(IBitBoard board) {
+    	
+    	return probe(board, PROBE_DTM);
     }
     
     
@@ -167,40 +236,7 @@ public class SyzygyTBProbing {
      */
     public int probeWDL(IBitBoard board) {
     	
-    	
-    	if (board.getMaterialState().getPiecesCount() > MAX_PIECES_COUNT) {
-    		
-    		return -1;
-    	}
-    	
-    	
-        if (board.hasRightsToKingCastle(Constants.COLOUR_WHITE)
-        		|| board.hasRightsToQueenCastle(Constants.COLOUR_WHITE)
-        		|| board.hasRightsToKingCastle(Constants.COLOUR_BLACK)
-        		|| board.hasRightsToQueenCastle(Constants.COLOUR_BLACK)) {
-        	
-            return -1;
-        }
-        
-        if (board.getEnpassantSquareID() != 0) {
-        	
-        	return -1;
-        }
-        
-        
-        return SyzygyJNIBridge.probeSyzygyWDL(
-        		convertBB(board.getFiguresBitboardByColour(Constants.COLOUR_WHITE)),
-        		convertBB(board.getFiguresBitboardByColour(Constants.COLOUR_BLACK)),
-        		convertBB(board.getFiguresBitboardByColourAndType(Constants.COLOUR_WHITE, Constants.TYPE_KING)) | convertBB(board.getFiguresBitboardByColourAndType(Constants.COLOUR_BLACK, Constants.TYPE_KING)),
-        		convertBB(board.getFiguresBitboardByColourAndType(Constants.COLOUR_WHITE, Constants.TYPE_QUEEN)) | convertBB(board.getFiguresBitboardByColourAndType(Constants.COLOUR_BLACK, Constants.TYPE_QUEEN)),
-        		convertBB(board.getFiguresBitboardByColourAndType(Constants.COLOUR_WHITE, Constants.TYPE_ROOK)) | convertBB(board.getFiguresBitboardByColourAndType(Constants.COLOUR_BLACK, Constants.TYPE_ROOK)),
-        		convertBB(board.getFiguresBitboardByColourAndType(Constants.COLOUR_WHITE, Constants.TYPE_BISHOP)) | convertBB(board.getFiguresBitboardByColourAndType(Constants.COLOUR_BLACK, Constants.TYPE_BISHOP)),
-        		convertBB(board.getFiguresBitboardByColourAndType(Constants.COLOUR_WHITE, Constants.TYPE_KNIGHT)) | convertBB(board.getFiguresBitboardByColourAndType(Constants.COLOUR_BLACK, Constants.TYPE_KNIGHT)),
-        		convertBB(board.getFiguresBitboardByColourAndType(Constants.COLOUR_WHITE, Constants.TYPE_PAWN)) | convertBB(board.getFiguresBitboardByColourAndType(Constants.COLOUR_BLACK, Constants.TYPE_PAWN)),
-        		board.getDraw50movesRule(),
-                0, //Enpassant index
-                board.getColourToMove() == Constants.COLOUR_WHITE
-        );
+    	return probe(board, PROBE_WDL);
     }
     
 
@@ -210,6 +246,12 @@ public class SyzygyTBProbing {
      */
     public int probeDTZ(IBitBoard board) {
     	
+    	return probe(board, PROBE_DTZ);
+    }
+    
+    
+    private int probe(IBitBoard board, int probe_type) {
+    	
     	
     	if (board.getMaterialState().getPiecesCount() > MAX_PIECES_COUNT) {
     		
@@ -231,22 +273,48 @@ public class SyzygyTBProbing {
         }
         
         
-        int score = SyzygyJNIBridge.probeSyzygyDTZ(
+        long white 		= convertBB(board.getFiguresBitboardByColour(Constants.COLOUR_WHITE));
+        long black 		= convertBB(board.getFiguresBitboardByColour(Constants.COLOUR_BLACK));
+        long kings 		= convertBB(board.getFiguresBitboardByColourAndType(Constants.COLOUR_WHITE, Constants.TYPE_KING)) | convertBB(board.getFiguresBitboardByColourAndType(Constants.COLOUR_BLACK, Constants.TYPE_KING));
+        long queens 	= convertBB(board.getFiguresBitboardByColourAndType(Constants.COLOUR_WHITE, Constants.TYPE_QUEEN)) | convertBB(board.getFiguresBitboardByColourAndType(Constants.COLOUR_BLACK, Constants.TYPE_QUEEN));
+        long rooks 		= convertBB(board.getFiguresBitboardByColourAndType(Constants.COLOUR_WHITE, Constants.TYPE_ROOK)) | convertBB(board.getFiguresBitboardByColourAndType(Constants.COLOUR_BLACK, Constants.TYPE_ROOK));
+        long bishops 	= convertBB(board.getFiguresBitboardByColourAndType(Constants.COLOUR_WHITE, Constants.TYPE_BISHOP)) | convertBB(board.getFiguresBitboardByColourAndType(Constants.COLOUR_BLACK, Constants.TYPE_BISHOP));
+        long knights 	= convertBB(board.getFiguresBitboardByColourAndType(Constants.COLOUR_WHITE, Constants.TYPE_KNIGHT)) | convertBB(board.getFiguresBitboardByColourAndType(Constants.COLOUR_BLACK, Constants.TYPE_KNIGHT));
+        long pawns 		= convertBB(board.getFiguresBitboardByColourAndType(Constants.COLOUR_WHITE, Constants.TYPE_PAWN)) | convertBB(board.getFiguresBitboardByColourAndType(Constants.COLOUR_BLACK, Constants.TYPE_PAWN));
+        int rule50 		= board.getDraw50movesRule();
+        int ep 			= 0; //Enpassant index
+        boolean turn 	= board.getColourToMove() == Constants.COLOUR_WHITE;
+        
+        SyzygyWDLReader reader = getWDLReader();
+        
+        if (reader != null) {
+        	
+        	if (probe_type == PROBE_WDL) {
         		
-    		convertBB(board.getFiguresBitboardByColour(Constants.COLOUR_WHITE)),
-    		convertBB(board.getFiguresBitboardByColour(Constants.COLOUR_BLACK)),
-    		convertBB(board.getFiguresBitboardByColourAndType(Constants.COLOUR_WHITE, Constants.TYPE_KING)) | convertBB(board.getFiguresBitboardByColourAndType(Constants.COLOUR_BLACK, Constants.TYPE_KING)),
-    		convertBB(board.getFiguresBitboardByColourAndType(Constants.COLOUR_WHITE, Constants.TYPE_QUEEN)) | convertBB(board.getFiguresBitboardByColourAndType(Constants.COLOUR_BLACK, Constants.TYPE_QUEEN)),
-    		convertBB(board.getFiguresBitboardByColourAndType(Constants.COLOUR_WHITE, Constants.TYPE_ROOK)) | convertBB(board.getFiguresBitboardByColourAndType(Constants.COLOUR_BLACK, Constants.TYPE_ROOK)),
-    		convertBB(board.getFiguresBitboardByColourAndType(Constants.COLOUR_WHITE, Constants.TYPE_BISHOP)) | convertBB(board.getFiguresBitboardByColourAndType(Constants.COLOUR_BLACK, Constants.TYPE_BISHOP)),
-    		convertBB(board.getFiguresBitboardByColourAndType(Constants.COLOUR_WHITE, Constants.TYPE_KNIGHT)) | convertBB(board.getFiguresBitboardByColourAndType(Constants.COLOUR_BLACK, Constants.TYPE_KNIGHT)),
-    		convertBB(board.getFiguresBitboardByColourAndType(Constants.COLOUR_WHITE, Constants.TYPE_PAWN)) | convertBB(board.getFiguresBitboardByColourAndType(Constants.COLOUR_BLACK, Constants.TYPE_PAWN)),
-            board.getDraw50movesRule(),
-            0, //Enpassant index
-            board.getColourToMove() == Constants.COLOUR_WHITE
-        );
-	        
-        return score;
+        		return reader.probeWDL(white, black, kings, queens, rooks, bishops, knights, pawns, turn);
+        	}
+        	
+        	//DTZ and DTM are available only with the native library
+        	if (!SyzygyJNIBridge.isLibLoaded()) {
+        		
+        		return -1;
+        	}
+        }
+        
+        switch (probe_type) {
+        
+        	case PROBE_WDL:
+        		return SyzygyJNIBridge.probeSyzygyWDL(white, black, kings, queens, rooks, bishops, knights, pawns, rule50, ep, turn);
+        		
+        	case PROBE_DTZ:
+        		return SyzygyJNIBridge.probeSyzygyDTZ(white, black, kings, queens, rooks, bishops, knights, pawns, rule50, ep, turn);
+        		
+        	case PROBE_DTM:
+        		return SyzygyJNIBridge.probeSyzygyDTM(white, black, kings, queens, rooks, bishops, knights, pawns, rule50, ep, turn);
+        		
+        	default:
+        		throw new IllegalStateException("probe_type=" + probe_type);
+        }
     }
 
 
@@ -277,6 +345,13 @@ public class SyzygyTBProbing {
         	
         	return;
         }
+        
+        
+        //The moves are ordered by DTZ
+        if (!SyzygyJNIBridge.isLibLoaded()) {
+        	
+        	return;
+        }
 
         
     	IMoveList temp_moves_list = new BaseMoveList();
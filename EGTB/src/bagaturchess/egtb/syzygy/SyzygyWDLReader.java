@@ -0,0 +1,1428 @@
+/*
+ *  BagaturChess (UCI chess engine and tools)
+ *  Copyright (C) 2005 Krasimir I. Topchiyski (k_topchiyski@yahoo.com)
+ *
+ *  Open Source project location: http://sourceforge.net/projects/bagaturchess/develop
+ *  SVN repository https://bagaturchess.svn.sourceforge.net/svnroot/bagaturchess
+ *
+ *  This file is part of BagaturChess program.
+ *
+ *  BagaturChess is open software: you can redistribute it and/or modify
+ *  it under the terms of the Eclipse Public License version 1.0 as published by
+ *  the Eclipse Foundation.
+ *
+ *  BagaturChess is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  Eclipse Public License for more details.
+ *
+ *  You should have received a copy of the Eclipse Public License version 1.0
+ *  along with BagaturChess. If not, see <http://www.eclipse.org/legal/epl-v10.html/>.
+ *
+ */
+package bagaturchess.egtb.syzygy;
+
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.HashSet;
+import java.util.Set;
+
+import bagaturchess.uci.api.ChannelManager;
+
+
+/**
+ * Pure Java reader of the Syzygy WDL tables (.rtbw files), a port of the WDL probing of Fathom (tbprobe.c).
+ * The files are memory-mapped read-only, so the operating system shares their pages between all threads and processes,
+ * and the blocks are decompressed on demand with absolute reads from the mapped buffers.
+ * After the lazy initialization of a table, the probing has no shared mutable state, so it is safe for any number of threads.
+ * The results are the same as the results of SyzygyJNIBridge.probeSyzygyWDL.
+ */
+public class SyzygyWDLReader {
+
+
+	public static final int RESULT_FAILED 		= -1;
+
+	private static final int WDL_MAGIC 			= 0x5d23e871;
+
+	private static final String WDL_SUFFIX 		= ".rtbw";
+
+	private static final int MAX_PIECES 		= 7;
+
+	private static final int HASH_BITS 			= 12;
+
+	private static final int PIECE_ENC 			= 0;
+
+	private static final int FILE_ENC 			= 1;
+
+	private static final int[] FILE_TO_FILE 	= new int[] {0, 1, 2, 3, 3, 2, 1, 0};
+
+	private static final int[] OFF_DIAG = new int[] {
+		  0,  -1,  -1,  -1,  -1,  -1,  -1,  -1,
+		  1,   0,  -1,  -1,  -1,  -1,  -1,  -1,
+		  1,   1,   0,  -1,  -1,  -1,  -1,  -1,
+		  1,   1,   1,   0,  -1,  -1,  -1,  -1,
+		  1,   1,   1,   1,   0,  -1,  -1,  -1,
+		  1,   1,   1,   1,   1,   0,  -1,  -1,
+		  1,   1,   1,   1,   1,   1,   0,  -1,
+		  1,   1,   1,   1,   1,   1,   1,   0,
+	};
+
+	private static final int[] TRIANGLE = new int[] {
+		  6,   0,   1,   2,   2,   1,   0,   6,
+		  0,   7,   3,   4,   4,   3,   7,   0,
+		  1,   3,   8,   5,   5,   8,   3,   1,
+		  2,   4,   5,   9,   9,   5,   4,   2,
+		  2,   4,   5,   9,   9,   5,   4,   2,
+		  1,   3,   8,   5,   5,   8,   3,   1,
+		  0,   7,   3,   4,   4,   3,   7,   0,
+		  6,   0,   1,   2,   2,   1,   0,   6,
+	};
+
+	private static final int[] FLIP_DIAG = new int[] {
+		  0,   8,  16,  24,  32,  40,  48,  56,
+		  1,   9,  17,  25,  33,  41,  49,  57,
+		  2,  10,  18,  26,  34,  42,  50,  58,
+		  3,  11,  19,  27,  35,  43,  51,  59,
+		  4,  12,  20,  28,  36,  44,  52,  60,
+		  5,  13,  21,  29,  37,  45,  53,  61,
+		  6,  14,  22,  30,  38,  46,  54,  62,
+		  7,  15,  23,  31,  39,  47,  55,  63,
+	};
+
+	private static final int[] LOWER = new int[] {
+		 28,   0,   1,   2,   3,   4,   5,   6,
+		  0,  29,   7,   8,   9,  10,  11,  12,
+		  1,   7,  30,  13,  14,  15,  16,  17,
+		  2,   8,  13,  31,  18,  19,  20,  21,
+		  3,   9,  14,  18,  32,  22,  23,  24,
+		  4,  10,  15,  19,  22,  33,  25,  26,
+		  5,  11,  16,  20,  23,  25,  34,  27,
+		  6,  12,  17,  21,  24,  26,  27,  35,
+	};
+
+	private static final int[] DIAG = new int[] {
+		  0,   0,   0,   0,   0,   0,   0,   8,
+		  0,   1,   0,   0,   0,   0,   9,   0,
+		  0,   0,   2,   0,   0,  10,   0,   0,
+		  0,   0,   0,   3,  11,   0,   0,   0,
+		  0,   0,   0,  12,   4,   0,   0,   0,
+		  0,   0,  13,   0,   0,   5,   0,   0,
+		  0,  14,   0,   0,   0,   0,   6,   0,
+		 15,   0,   0,   0,   0,   0,   0,   7,
+	};
+
+	private static final int[] FLAP = new int[] {
+		  0,   0,   0,   0,   0,   0,   0,   0,
+		  0,   6,  12,  18,  18,  12,   6,   0,
+		  1,   7,  13,  19,  19,  13,   7,   1,
+		  2,   8,  14,  20,  20,  14,   8,   2,
+		  3,   9,  15,  21,  21,  15,   9,   3,
+		  4,  10,  16,  22,  22,  16,  10,   4,
+		  5,  11,  17,  23,  23,  17,  11,   5,
+		  0,   0,   0,   0,   0,   0,   0,   0,
+	};
+
+	private static final int[] PAWN_TWIST = new int[] {
+		  0,   0,   0,   0,   0,   0,   0,   0,
+		 47,  35,  23,  11,  10,  22,  34,  46,
+		 45,  33,  21,   9,   8,  20,  32,  44,
+		 43,  31,  19,   7,   6,  18,  30,  42,
+		 41,  29,  17,   5,   4,  16,  28,  40,
+		 39,  27,  15,   3,   2,  14,  26,  38,
+		 37,  25,  13,   1,   0,  12,  24,  36,
+		  0,   0,   0,   0,   0,   0,   0,   0,
+	};
+
+	private static final int[][] KK_IDX = new int[][] {
+		{
+			 -1,  -1,  -1,   0,   1,   2,   3,   4,
+			 -1,  -1,  -1,   5,   6,   7,   8,   9,
+			 10,  11,  12,  13,  14,  15,  16,  17,
+			 18,  19,  20,  21,  22,  23,  24,  25,
+			 26,  27,  28,  29,  30,  31,  32,  33,
+			 34,  35,  36,  37,  38,  39,  40,  41,
+			 42,  43,  44,  45,  46,  47,  48,  49,
+			 50,  51,  52,  53,  54,  55,  56,  57,
+		},
+		{
+			 58,  -1,  -1,  -1,  59,  60,  61,  62,
+			 63,  -1,  -1,  -1,  64,  65,  66,  67,
+			 68,  69,  70,  71,  72,  73,  74,  75,
+			 76,  77,  78,  79,  80,  81,  82,  83,
+			 84,  85,  86,  87,  88,  89,  90,  91,
+			 92,  93,  94,  95,  96,  97,  98,  99,
+			100, 101, 102, 103, 104, 105, 106, 107,
+			108, 109, 110, 111, 112, 113, 114, 115,
+		},
+		{
+			116, 117,  -1,  -1,  -1, 118, 119, 120,
+			121, 122,  -1,  -1,  -1, 123, 124, 125,
+			126, 127, 128, 129, 130, 131, 132, 133,
+			134, 135, 136, 137, 138, 139, 140, 141,
+			142, 143, 144, 145, 146, 147, 148, 149,
+			150, 151, 152, 153, 154, 155, 156, 157,
+			158, 159, 160, 161, 162, 163, 164, 165,
+			166, 167, 168, 169, 170, 171, 172, 173,
+		},
+		{
+			174,  -1,  -1,  -1, 175, 176, 177, 178,
+			179,  -1,  -1,  -1, 180, 181, 182, 183,
+			184,  -1,  -1,  -1, 185, 186, 187, 188,
+			189, 190, 191, 192, 193, 194, 195, 196,
+			197, 198, 199, 200, 201, 202, 203, 204,
+			205, 206, 207, 208, 209, 210, 211, 212,
+			213, 214, 215, 216, 217, 218, 219, 220,
+			221, 222, 223, 224, 225, 226, 227, 228,
+		},
+		{
+			229, 230,  -1,  -1,  -1, 231, 232, 233,
+			234, 235,  -1,  -1,  -1, 236, 237, 238,
+			239, 240,  -1,  -1,  -1, 241, 242, 243,
+			244, 245, 246, 247, 248, 249, 250, 251,
+			252, 253, 254, 255, 256, 257, 258, 259,
+			260, 261, 262, 263, 264, 265, 266, 267,
+			268, 269, 270, 271, 272, 273, 274, 275,
+			276, 277, 278, 279, 280, 281, 282, 283,
+		},
+		{
+			284, 285, 286, 287, 288, 289, 290, 291,
+			292, 293,  -1,  -1,  -1, 294, 295, 296,
+			297, 298,  -1,  -1,  -1, 299, 300, 301,
+			302, 303,  -1,  -1,  -1, 304, 305, 306,
+			307, 308, 309, 310, 311, 312, 313, 314,
+			315, 316, 317, 318, 319, 320, 321, 322,
+			323, 324, 325, 326, 327, 328, 329, 330,
+			331, 332, 333, 334, 335, 336, 337, 338,
+		},
+		{
+			 -1,  -1, 339, 340, 341, 342, 343, 344,
+			 -1,  -1, 345, 346, 347, 348, 349, 350,
+			 -1,  -1, 441, 351, 352, 353, 354, 355,
+			 -1,  -1,  -1, 442, 356, 357, 358, 359,
+			 -1,  -1,  -1,  -1, 443, 360, 361, 362,
+			 -1,  -1,  -1,  -1,  -1, 444, 363, 364,
+			 -1,  -1,  -1,  -1,  -1,  -1, 445, 365,
+			 -1,  -1,  -1,  -1,  -1,  -1,  -1, 446,
+		},
+		{
+			 -1,  -1,  -1, 366, 367, 368, 369, 370,
+			 -1,  -1,  -1, 371, 372, 373, 374, 375,
+			 -1,  -1,  -1, 376, 377, 378, 379, 380,
+			 -1,  -1,  -1, 447, 381, 382, 383, 384,
+			 -1,  -1,  -1,  -1, 448, 385, 386, 387,
+			 -1,  -1,  -1,  -1,  -1, 449, 388, 389,
+			 -1,  -1,  -1,  -1,  -1,  -1, 450, 390,
+			 -1,  -1,  -1,  -1,  -1,  -1,  -1, 451,
+		},
+		{
+			452, 391, 392, 393, 394, 395, 396, 397,
+			 -1,  -1,  -1,  -1, 398, 399, 400, 401,
+			 -1,  -1,  -1,  -1, 402, 403, 404, 405,
+			 -1,  -1,  -1,  -1, 406, 407, 408, 409,
+			 -1,  -1,  -1,  -1, 453, 410, 411, 412,
+			 -1,  -1,  -1,  -1,  -1, 454, 413, 414,
+			 -1,  -1,  -1,  -1,  -1,  -1, 455, 415,
+			 -1,  -1,  -1,  -1,  -1,  -1,  -1, 456,
+		},
+		{
+			457, 416, 417, 418, 419, 420, 421, 422,
+			 -1, 458, 423, 424, 425, 426, 427, 428,
+			 -1,  -1,  -1,  -1,  -1, 429, 430, 431,
+			 -1,  -1,  -1,  -1,  -1, 432, 433, 434,
+			 -1,  -1,  -1,  -1,  -1, 435, 436, 437,
+			 -1,  -1,  -1,  -1,  -1, 459, 438, 439,
+			 -1,  -1,  -1,  -1,  -1,  -1, 460, 440,
+			 -1,  -1,  -1,  -1,  -1,  -1,  -1, 461,
+		},
+	};
+
+	private static final long[][] BINOMIAL 			= new long[7][64];
+
+	private static final long[][] PAWN_IDX 			= new long[6][24];
+
+	private static final long[][] PAWN_FACTOR_FILE 	= new long[6][4];
+
+
+	static {
+
+		for (int i = 0; i < 7; i++) {
+			for (int j = 0; j < 64; j++) {
+				long f = 1;
+				long l = 1;
+				for (int k = 0; k < i; k++) {
+					f *= (j - k);
+					l *= (k + 1);
+				}
+				BINOMIAL[i][j] = f / l;
+			}
+		}
+
+		for (int i = 0; i < 6; i++) {
+			long s = 0;
+			for (int j = 0; j < 24; j++) {
+				PAWN_IDX[i][j] = s;
+				s += BINOMIAL[i][PAWN_TWIST[(1 + (j % 6)) * 8 + (j / 6)]];
+				if ((j + 1) % 6 == 0) {
+					PAWN_FACTOR_FILE[i][j / 6] = s;
+					s = 0;
+				}
+			}
+		}
+	}
+
+
+	private final long[] hash_keys;
+
+	private final TableEntry[] hash_entries;
+
+	private final int largest;
+
+	private final int tables_count;
+
+
+	/**
+	 * Finds the WDL tables in the given directories, the tables are mapped at the first probe.
+	 * @param path directories separated by File.pathSeparator
+	 */
+	public SyzygyWDLReader(String path) {
+
+		hash_keys 		= new long[1 << HASH_BITS];
+		hash_entries 	= new TableEntry[1 << HASH_BITS];
+
+		int max_pieces = 0;
+		int count = 0;
+
+		Set<String> names = new HashSet<String>();
+
+		String[] dirs = path == null ? new String[0] : path.split(File.pathSeparator);
+
+		for (int i = 0; i < dirs.length; i++) {
+
+			File[] files = new File(dirs[i]).listFiles();
+
+			if (files == null) {
+
+				continue;
+			}
+
+			for (int j = 0; j < files.length; j++) {
+
+				String file_name = files[j].getName();
+
+				if (!file_name.endsWith(WDL_SUFFIX)) {
+
+					continue;
+				}
+
+				String name = file_name.substring(0, file_name.length() - WDL_SUFFIX.length());
+
+				//The first directory wins, as in Fathom
+				if (names.contains(name)) {
+
+					continue;
+				}
+
+				if ((files[j].length() & 63) != 16) {
+
+					if (ChannelManager.getChannel() != null) ChannelManager.getChannel().dump("SyzygyWDLReader: " + files[j] + " has wrong size and is skipped");
+
+					continue;
+				}
+
+				TableEntry entry = TableEntry.create(name, files[j]);
+
+				if (entry == null) {
+
+					continue;
+				}
+
+				names.add(name);
+
+				addToHash(entry, entry.key);
+
+				if (!entry.symmetric) {
+
+					addToHash(entry, entry.key2);
+				}
+
+				max_pieces = Math.max(max_pieces, entry.num);
+
+				count++;
+			}
+		}
+
+		largest = max_pieces;
+
+		tables_count = count;
+
+		if (ChannelManager.getChannel() != null) ChannelManager.getChannel().dump("SyzygyWDLReader: " + tables_count + " WDL tables found in " + path + ", largest=" + largest);
+	}
+
+
+	public int getLargest() {
+
+		return largest;
+	}
+
+
+	public int getTablesCount() {
+
+		return tables_count;
+	}
+
+
+	/**
+	 * Same contract as SyzygyJNIBridge.probeSyzygyWDL, positions with en passant rights are not supported.
+	 * @return the WDL value + 2 (0 loss, 1 blessed loss, 2 draw, 3 cursed win, 4 win) from the side to move point of view, or RESULT_FAILED
+	 */
+	public int probeWDL(long white, long black, long kings, long queens, long rooks, long bishops, long knights, long pawns, boolean white_to_move) {
+
+		SyzygyPosition pos = new SyzygyPosition(white, black, kings, queens, rooks, bishops, knights, pawns, white_to_move);
+
+		if (Long.bitCount(white | black) > largest) {
+
+			return RESULT_FAILED;
+		}
+
+		int[] success = new int[1];
+
+		int v = probeWDL(pos, success);
+
+		if (success[0] == 0) {
+
+			return RESULT_FAILED;
+		}
+
+		return v + 2;
+	}
+
+
+	/**
+	 * Capture resolution: a capture may be better than the value in the table, which assumes that the best move is not a capture.
+	 */
+	private int probeWDL(SyzygyPosition pos, int[] success) {
+
+		success[0] = 1;
+
+		int[] moves = new int[SyzygyPosition.MAX_CAPTURES];
+
+		int count = pos.genCaptures(moves);
+
+		SyzygyPosition pos1 = new SyzygyPosition();
+
+		int bestCap = -3;
+
+		for (int i = 0; i < count; i++) {
+
+			if (!pos.doMove(moves[i], pos1)) {
+
+				continue;
+			}
+
+			int v = -probeAB(pos1, -2, -bestCap, success);
+
+			if (success[0] == 0) {
+
+				return 0;
+			}
+
+			if (v > bestCap) {
+
+				if (v == 2) {
+
+					return 2;
+				}
+
+				bestCap = v;
+			}
+		}
+
+		int v = probeTable(pos, success);
+
+		if (success[0] == 0) {
+
+			return 0;
+		}
+
+		return bestCap >= v ? bestCap : v;
+	}
+
+
+	private int probeAB(SyzygyPosition pos, int alpha, int beta, int[] success) {
+
+		int[] moves = new int[SyzygyPosition.MAX_CAPTURES];
+
+		int count = pos.genCaptures(moves);
+
+		SyzygyPosition pos1 = new SyzygyPosition();
+
+		for (int i = 0; i < count; i++) {
+
+			if (!pos.doMove(moves[i], pos1)) {
+
+				continue;
+			}
+
+			int v = -probeAB(pos1, -beta, -alpha, success);
+
+			if (success[0] == 0) {
+
+				return 0;
+			}
+
+			if (v > alpha) {
+
+				if (v >= beta) {
+
+					return v;
+				}
+
+				alpha = v;
+			}
+		}
+
+		int v = probeTable(pos, success);
+
+		return alpha >= v ? alpha : v;
+	}
+
+
+	private int probeTable(SyzygyPosition pos, int[] success) {
+
+		long key = pos.calcKey(false);
+
+		//KvK
+		if (key == 0) {
+
+			return 0;
+		}
+
+		TableEntry entry = getEntry(key);
+
+		if (entry == null || !entry.init()) {
+
+			success[0] = 0;
+
+			return 0;
+		}
+
+		boolean flip;
+		boolean bside;
+
+		if (!entry.symmetric) {
+
+			flip = key != entry.key;
+			bside = pos.turn == flip;
+
+		} else {
+
+			flip = !pos.turn;
+			bside = false;
+		}
+
+		int[] p = new int[MAX_PIECES];
+
+		EncInfo ei;
+		long idx;
+
+		if (!entry.hasPawns) {
+
+			ei = entry.ei[bside ? 1 : 0];
+
+			for (int i = 0; i < entry.num;) {
+
+				i = fillSquares(pos, ei.pieces, flip, 0, p, i);
+			}
+
+			idx = encode(p, ei, entry, PIECE_ENC);
+
+		} else {
+
+			int i = fillSquares(pos, entry.ei[0].pieces, flip, flip ? 0x38 : 0, p, 0);
+
+			int t = leadingPawn(p, entry);
+
+			ei = entry.ei[t + (bside ? 4 : 0)];
+
+			while (i < entry.num) {
+
+				i = fillSquares(pos, ei.pieces, flip, flip ? 0x38 : 0, p, i);
+			}
+
+			idx = encode(p, ei, entry, FILE_ENC);
+		}
+
+		if (ei.precomp == null) {
+
+			success[0] = 0;
+
+			return 0;
+		}
+
+		return ei.precomp.decompress(entry.buffer, idx) - 2;
+	}
+
+
+	private void addToHash(TableEntry entry, long key) {
+
+		int idx = (int) (key >>> (64 - HASH_BITS));
+
+		while (hash_entries[idx] != null) {
+
+			idx = (idx + 1) & ((1 << HASH_BITS) - 1);
+		}
+
+		hash_keys[idx] = key;
+		hash_entries[idx] = entry;
+	}
+
+
+	private TableEntry getEntry(long key) {
+
+		int idx = (int) (key >>> (64 - HASH_BITS));
+
+		while (hash_entries[idx] != null) {
+
+			if (hash_keys[idx] == key) {
+
+				return hash_entries[idx];
+			}
+
+			idx = (idx + 1) & ((1 << HASH_BITS) - 1);
+		}
+
+		return null;
+	}
+
+
+	/**
+	 * Fills the squares of the pieces of the same type as pieces[i], the pieces of one type are consecutive.
+	 */
+	private static int fillSquares(SyzygyPosition pos, int[] pieces, boolean flip, int mirror, int[] p, int i) {
+
+		int color = (pieces[i] >>> 3) == 0 ? SyzygyPosition.WHITE : SyzygyPosition.BLACK;
+
+		if (flip) {
+
+			color = 1 - color;
+		}
+
+		long bb = pos.getPieces(color, pieces[i] & 0x7);
+
+		do {
+
+			p[i++] = Long.numberOfTrailingZeros(bb) ^ mirror;
+
+			bb &= bb - 1;
+
+		} while (bb != 0);
+
+		return i;
+	}
+
+
+	private static int leadingPawn(int[] p, TableEntry entry) {
+
+		for (int i = 1; i < entry.pawns[0]; i++) {
+
+			if (FLAP[p[0]] > FLAP[p[i]]) {
+
+				int tmp = p[0];
+				p[0] = p[i];
+				p[i] = tmp;
+			}
+		}
+
+		return FILE_TO_FILE[p[0] & 7];
+	}
+
+
+	private static long encode(int[] p, EncInfo ei, TableEntry entry, int enc) {
+
+		int n = entry.num;
+		long idx;
+		int k;
+
+		if ((p[0] & 0x04) != 0) {
+
+			for (int i = 0; i < n; i++) {
+				p[i] ^= 0x07;
+			}
+		}
+
+		if (enc == PIECE_ENC) {
+
+			if ((p[0] & 0x20) != 0) {
+
+				for (int i = 0; i < n; i++) {
+					p[i] ^= 0x38;
+				}
+			}
+
+			for (int i = 0; i < n; i++) {
+
+				if (OFF_DIAG[p[i]] != 0) {
+
+					if (OFF_DIAG[p[i]] > 0 && i < (entry.kk_enc ? 2 : 3)) {
+
+						for (int j = 0; j < n; j++) {
+							p[j] = FLIP_DIAG[p[j]];
+						}
+					}
+
+					break;
+				}
+			}
+
+			if (entry.kk_enc) {
+
+				idx = KK_IDX[TRIANGLE[p[0]]][p[1]];
+				k = 2;
+
+			} else {
+
+				int s1 = p[1] > p[0] ? 1 : 0;
+				int s2 = (p[2] > p[0] ? 1 : 0) + (p[2] > p[1] ? 1 : 0);
+
+				if (OFF_DIAG[p[0]] != 0) {
+					idx = TRIANGLE[p[0]] * 63 * 62 + (p[1] - s1) * 62 + (p[2] - s2);
+				} else if (OFF_DIAG[p[1]] != 0) {
+					idx = 6 * 63 * 62 + DIAG[p[0]] * 28 * 62 + LOWER[p[1]] * 62 + p[2] - s2;
+				} else if (OFF_DIAG[p[2]] != 0) {
+					idx = 6 * 63 * 62 + 4 * 28 * 62 + DIAG[p[0]] * 7 * 28 + (DIAG[p[1]] - s1) * 28 + LOWER[p[2]];
+				} else {
+					idx = 6 * 63 * 62 + 4 * 28 * 62 + 4 * 7 * 28 + DIAG[p[0]] * 7 * 6 + (DIAG[p[1]] - s1) * 6 + (DIAG[p[2]] - s2);
+				}
+
+				k = 3;
+			}
+
+			idx *= ei.factor[0];
+
+		} else {
+
+			for (int i = 1; i < entry.pawns[0]; i++) {
+				for (int j = i + 1; j < entry.pawns[0]; j++) {
+					if (PAWN_TWIST[p[i]] < PAWN_TWIST[p[j]]) {
+						int tmp = p[i];
+						p[i] = p[j];
+						p[j] = tmp;
+					}
+				}
+			}
+
+			k = entry.pawns[0];
+
+			idx = PAWN_IDX[k - 1][FLAP[p[0]]];
+
+			for (int i = 1; i < k; i++) {
+				idx += BINOMIAL[k - i][PAWN_TWIST[p[i]]];
+			}
+
+			idx *= ei.factor[0];
+
+			//Pawns of the other color
+			if (entry.pawns[1] != 0) {
+
+				int t = k + entry.pawns[1];
+
+				sort(p, k, t);
+
+				long s = 0;
+
+				for (int i = k; i < t; i++) {
+
+					int sq = p[i];
+					int skips = 0;
+
+					for (int j = 0; j < k; j++) {
+						skips += sq > p[j] ? 1 : 0;
+					}
+
+					s += BINOMIAL[i - k + 1][sq - skips - 8];
+				}
+
+				idx += s * ei.factor[k];
+
+				k = t;
+			}
+		}
+
+		while (k < n) {
+
+			int t = k + ei.norm[k];
+
+			sort(p, k, t);
+
+			long s = 0;
+
+			for (int i = k; i < t; i++) {
+
+				int sq = p[i];
+				int skips = 0;
+
+				for (int j = 0; j < k; j++) {
+					skips += sq > p[j] ? 1 : 0;
+				}
+
+				s += BINOMIAL[i - k + 1][sq - skips];
+			}
+
+			idx += s * ei.factor[k];
+
+			k = t;
+		}
+
+		return idx;
+	}
+
+
+	private static void sort(int[] p, int from, int to) {
+
+		for (int i = from; i < to; i++) {
+			for (int j = i + 1; j < to; j++) {
+				if (p[i] > p[j]) {
+					int tmp = p[i];
+					p[i] = p[j];
+					p[j] = tmp;
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * Number of placements of k like pieces on n squares
+	 */
+	private static long subfactor(long k, long n) {
+
+		long f = n;
+		long l = 1;
+
+		for (long i = 1; i < k; i++) {
+			f *= n - i;
+			l *= i + 1;
+		}
+
+		return f / l;
+	}
+
+
+	/**
+	 * One table file: the material, parsed from the file name, and the encoding and compression data, read at the first probe.
+	 */
+	private static final class TableEntry {
+
+
+		private final File file;
+
+		private final long key;
+
+		private final long key2;
+
+		private final boolean symmetric;
+
+		private final boolean hasPawns;
+
+		private final int num;
+
+		private final boolean kk_enc;
+
+		private final int[] pawns = new int[2];
+
+		//Pieces: [bside], pawns: [file + 4 * bside]
+		private final EncInfo[] ei;
+
+		private volatile boolean ready;
+
+		private volatile boolean failed;
+
+		private ByteBuffer buffer;
+
+
+		private TableEntry(File _file, int[] counts) {
+
+			file = _file;
+
+			key = SyzygyPosition.calcKey(counts, false);
+			key2 = SyzygyPosition.calcKey(counts, true);
+
+			symmetric = key == key2;
+
+			hasPawns = counts[SyzygyPosition.PAWN] != 0 || counts[8 | SyzygyPosition.PAWN] != 0;
+
+			int pieces_count = 0;
+			int singles = 0;
+
+			for (int i = 0; i < counts.length; i++) {
+
+				pieces_count += counts[i];
+
+				if (counts[i] == 1) {
+					singles++;
+				}
+			}
+
+			num = pieces_count;
+
+			kk_enc = !hasPawns && singles == 2;
+
+			if (hasPawns) {
+
+				pawns[0] = counts[SyzygyPosition.PAWN];
+				pawns[1] = counts[8 | SyzygyPosition.PAWN];
+
+				if (pawns[1] != 0 && (pawns[0] == 0 || pawns[0] > pawns[1])) {
+
+					int tmp = pawns[0];
+					pawns[0] = pawns[1];
+					pawns[1] = tmp;
+				}
+			}
+
+			ei = new EncInfo[hasPawns ? 8 : 2];
+
+			for (int i = 0; i < ei.length; i++) {
+
+				ei[i] = new EncInfo();
+			}
+		}
+
+
+		/**
+		 * @return the entry of the table name, e.g. KRPvKR, or null if the name is not valid
+		 */
+		static TableEntry create(String name, File file) {
+
+			int[] counts = new int[16];
+
+			int color = 0;
+
+			for (int i = 0; i < name.length(); i++) {
+
+				char c = name.charAt(i);
+
+				if (c == 'v') {
+
+					if (color != 0) {
+						return null;
+					}
+
+					color = 8;
+
+					continue;
+				}
+
+				int type = "PNBRQK".indexOf(c) + 1;
+
+				if (type == 0) {
+
+					return null;
+				}
+
+				counts[type | color]++;
+			}
+
+			if (color == 0 || counts[SyzygyPosition.KING] != 1 || counts[8 | SyzygyPosition.KING] != 1) {
+
+				return null;
+			}
+
+			TableEntry entry = new TableEntry(file, counts);
+
+			if (entry.num > MAX_PIECES) {
+
+				return null;
+			}
+
+			return entry;
+		}
+
+
+		/**
+		 * Maps the file and reads the table headers once, with double-checked locking as in Fathom.
+		 * @return false if the table can not be used
+		 */
+		boolean init() {
+
+			if (ready) {
+
+				return true;
+			}
+
+			synchronized (this) {
+
+				if (!ready && !failed) {
+
+					try {
+
+						initTable();
+
+						ready = true;
+
+					} catch (Exception e) {
+
+						failed = true;
+
+						if (ChannelManager.getChannel() != null) ChannelManager.getChannel().dump("SyzygyWDLReader: " + file + " can not be loaded: " + e);
+					}
+				}
+
+				return ready;
+			}
+		}
+
+
+		private void initTable() throws IOException {
+
+			RandomAccessFile raf = new RandomAccessFile(file, "r");
+
+			try {
+
+				FileChannel channel = raf.getChannel();
+
+				if (channel.size() > Integer.MAX_VALUE) {
+
+					throw new IOException("files with more than " + Integer.MAX_VALUE + " bytes are not supported");
+				}
+
+				//The mapping stays valid after the file is closed
+				buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+
+			} finally {
+
+				raf.close();
+			}
+
+			if (buffer.getInt(0) != WDL_MAGIC) {
+
+				throw new IOException("corrupted table");
+			}
+
+			boolean split = (u8(buffer, 4) & 0x01) != 0;
+
+			int data = 5;
+
+			int num_tables = hasPawns ? 4 : 1;
+
+			int enc = hasPawns ? FILE_ENC : PIECE_ENC;
+
+			long[][] tb_size = new long[num_tables][2];
+
+			for (int t = 0; t < num_tables; t++) {
+
+				tb_size[t][0] = initEncInfo(ei[t], data, 0, t, enc);
+
+				if (split) {
+
+					tb_size[t][1] = initEncInfo(ei[num_tables + t], data, 4, t, enc);
+				}
+
+				data += num + 1 + (hasPawns && pawns[1] != 0 ? 1 : 0);
+			}
+
+			data += data & 1;
+
+			long[][][] size = new long[num_tables][2][3];
+
+			for (int t = 0; t < num_tables; t++) {
+
+				ei[t].precomp = new PairsData();
+				data = ei[t].precomp.setup(buffer, data, tb_size[t][0], size[t][0]);
+
+				if (split) {
+
+					ei[num_tables + t].precomp = new PairsData();
+					data = ei[num_tables + t].precomp.setup(buffer, data, tb_size[t][1], size[t][1]);
+				}
+			}
+
+			long pos = data;
+
+			for (int t = 0; t < num_tables; t++) {
+
+				ei[t].precomp.indexTable = checkPosition(pos);
+				pos += size[t][0][0];
+
+				if (split) {
+
+					ei[num_tables + t].precomp.indexTable = checkPosition(pos);
+					pos += size[t][1][0];
+				}
+			}
+
+			for (int t = 0; t < num_tables; t++) {
+
+				ei[t].precomp.sizeTable = checkPosition(pos);
+				pos += size[t][0][1];
+
+				if (split) {
+
+					ei[num_tables + t].precomp.sizeTable = checkPosition(pos);
+					pos += size[t][1][1];
+				}
+			}
+
+			for (int t = 0; t < num_tables; t++) {
+
+				pos = (pos + 0x3f) & ~0x3fL;
+				ei[t].precomp.data = checkPosition(pos);
+				pos += size[t][0][2];
+
+				if (split) {
+
+					pos = (pos + 0x3f) & ~0x3fL;
+					ei[num_tables + t].precomp.data = checkPosition(pos);
+					pos += size[t][1][2];
+				}
+			}
+
+			checkPosition(pos);
+		}
+
+
+		private int checkPosition(long pos) throws IOException {
+
+			if (pos > buffer.limit()) {
+
+				throw new IOException("corrupted table, position " + pos + " is after the end of the file");
+			}
+
+			return (int) pos;
+		}
+
+
+		private long initEncInfo(EncInfo info, int tb, int shift, int t, int enc) {
+
+			boolean morePawns = enc != PIECE_ENC && pawns[1] > 0;
+
+			for (int i = 0; i < num; i++) {
+
+				info.pieces[i] = (u8(buffer, tb + i + 1 + (morePawns ? 1 : 0)) >>> shift) & 0x0f;
+				info.norm[i] = 0;
+			}
+
+			int order = (u8(buffer, tb) >>> shift) & 0x0f;
+			int order2 = morePawns ? (u8(buffer, tb + 1) >>> shift) & 0x0f : 0x0f;
+
+			int k = info.norm[0] = enc != PIECE_ENC ? pawns[0] : kk_enc ? 2 : 3;
+
+			if (morePawns) {
+
+				info.norm[k] = pawns[1];
+				k += info.norm[k];
+			}
+
+			for (int i = k; i < num; i += info.norm[i]) {
+				for (int j = i; j < num && info.pieces[j] == info.pieces[i]; j++) {
+					info.norm[i]++;
+				}
+			}
+
+			int n = 64 - k;
+			long f = 1;
+
+			for (int i = 0; k < num || i == order || i == order2; i++) {
+
+				if (i == order) {
+
+					info.factor[0] = f;
+					f *= enc == FILE_ENC ? PAWN_FACTOR_FILE[info.norm[0] - 1][t] : kk_enc ? 462 : 31332;
+
+				} else if (i == order2) {
+
+					info.factor[info.norm[0]] = f;
+					f *= subfactor(info.norm[info.norm[0]], 48 - info.norm[0]);
+
+				} else {
+
+					info.factor[k] = f;
+					f *= subfactor(info.norm[k], n);
+					n -= info.norm[k];
+					k += info.norm[k];
+				}
+			}
+
+			return f;
+		}
+	}
+
+
+	private static final class EncInfo {
+
+
+		private PairsData precomp;
+
+		private final long[] factor = new long[MAX_PIECES];
+
+		private final int[] pieces = new int[MAX_PIECES];
+
+		private final int[] norm = new int[MAX_PIECES];
+	}
+
+
+	/**
+	 * Huffman-like compressed pairs of symbols: positions of the tables in the buffer and the decoding data.
+	 */
+	private static final class PairsData {
+
+
+		private int idxBits;
+
+		private int constValue;
+
+		private int blockSize;
+
+		private int minLen;
+
+		//The code lengths start from minLen
+		private int offset;
+
+		private int symPat;
+
+		private int[] symLen;
+
+		private long[] base;
+
+		private int indexTable;
+
+		private int sizeTable;
+
+		private int data;
+
+
+		/**
+		 * @param size filled with the sizes of the index table, the size table and the data
+		 * @return the position after the header
+		 */
+		int setup(ByteBuffer buffer, int ptr, long tb_size, long[] size) {
+
+			if ((u8(buffer, ptr) & 0x80) != 0) {
+
+				idxBits = 0;
+				constValue = u8(buffer, ptr + 1);
+
+				size[0] = size[1] = size[2] = 0;
+
+				return ptr + 2;
+			}
+
+			blockSize = u8(buffer, ptr + 1);
+			idxBits = u8(buffer, ptr + 2);
+
+			long realNumBlocks = u32(buffer, ptr + 4);
+			long numBlocks = realNumBlocks + u8(buffer, ptr + 3);
+
+			int maxLen = u8(buffer, ptr + 8);
+			minLen = u8(buffer, ptr + 9);
+
+			int h = maxLen - minLen + 1;
+
+			int numSyms = u16(buffer, ptr + 10 + 2 * h);
+
+			offset = ptr + 10;
+			symPat = ptr + 12 + 2 * h;
+
+			long num_indices = (tb_size + (1L << idxBits) - 1) >>> idxBits;
+
+			size[0] = 6 * num_indices;
+			size[1] = 2 * numBlocks;
+			size[2] = realNumBlocks << blockSize;
+
+			symLen = new int[numSyms];
+
+			boolean[] tmp = new boolean[numSyms];
+
+			for (int s = 0; s < numSyms; s++) {
+
+				if (!tmp[s]) {
+
+					calcSymLen(buffer, s, tmp);
+				}
+			}
+
+			base = new long[h];
+
+			base[h - 1] = 0;
+
+			for (int i = h - 2; i >= 0; i--) {
+
+				base[i] = (base[i + 1] + u16(buffer, offset + 2 * i) - u16(buffer, offset + 2 * (i + 1))) / 2;
+			}
+
+			for (int i = 0; i < h; i++) {
+
+				base[i] <<= 64 - (minLen + i);
+			}
+
+			return ptr + 12 + 2 * h + 3 * numSyms + (numSyms & 1);
+		}
+
+
+		private void calcSymLen(ByteBuffer buffer, int s, boolean[] tmp) {
+
+			int w = symPat + 3 * s;
+
+			int s2 = (u8(buffer, w + 2) << 4) | (u8(buffer, w + 1) >>> 4);
+
+			if (s2 == 0x0fff) {
+
+				symLen[s] = 0;
+
+			} else {
+
+				int s1 = ((u8(buffer, w + 1) & 0xf) << 8) | u8(buffer, w);
+
+				if (!tmp[s1]) calcSymLen(buffer, s1, tmp);
+				if (!tmp[s2]) calcSymLen(buffer, s2, tmp);
+
+				//8 bits as in Fathom
+				symLen[s] = (symLen[s1] + symLen[s2] + 1) & 0xff;
+			}
+
+			tmp[s] = true;
+		}
+
+
+		/**
+		 * @return the first byte of the symbol at the given index
+		 */
+		int decompress(ByteBuffer buffer, long idx) {
+
+			if (idxBits == 0) {
+
+				return constValue;
+			}
+
+			int mainIdx = (int) (idx >>> idxBits);
+
+			int litIdx = (int) (idx & ((1L << idxBits) - 1)) - (1 << (idxBits - 1));
+
+			int block = (int) u32(buffer, indexTable + 6 * mainIdx);
+
+			litIdx += u16(buffer, indexTable + 6 * mainIdx + 4);
+
+			if (litIdx < 0) {
+
+				while (litIdx < 0) {
+					litIdx += u16(buffer, sizeTable + 2 * --block) + 1;
+				}
+
+			} else {
+
+				while (litIdx > u16(buffer, sizeTable + 2 * block)) {
+					litIdx -= u16(buffer, sizeTable + 2 * block++) + 1;
+				}
+			}
+
+			int ptr = data + (block << blockSize);
+
+			long code = be64(buffer, ptr);
+
+			ptr += 8;
+
+			//Number of empty bits in code
+			int bitCnt = 0;
+
+			int sym;
+
+			for (;;) {
+
+				int l = 0;
+
+				//Unsigned comparison
+				while ((code ^ Long.MIN_VALUE) < (base[l] ^ Long.MIN_VALUE)) {
+					l++;
+				}
+
+				sym = u16(buffer, offset + 2 * l) + (int) ((code - base[l]) >>> (64 - (l + minLen)));
+
+				if (litIdx < symLen[sym] + 1) {
+					break;
+				}
+
+				litIdx -= symLen[sym] + 1;
+
+				code <<= l + minLen;
+
+				bitCnt += l + minLen;
+
+				if (bitCnt >= 32) {
+
+					bitCnt -= 32;
+
+					code |= be32(buffer, ptr) << bitCnt;
+
+					ptr += 4;
+				}
+			}
+
+			while (symLen[sym] != 0) {
+
+				int w = symPat + 3 * sym;
+
+				int s1 = ((u8(buffer, w + 1) & 0xf) << 8) | u8(buffer, w);
+
+				if (litIdx < symLen[s1] + 1) {
+
+					sym = s1;
+
+				} else {
+
+					litIdx -= symLen[s1] + 1;
+
+					sym = (u8(buffer, w + 2) << 4) | (u8(buffer, w + 1) >>> 4);
+				}
+			}
+
+			return u8(buffer, symPat + 3 * sym);
+		}
+	}
+
+
+	private static int u8(ByteBuffer buffer, int pos) {
+
+		return buffer.get(pos) & 0xff;
+	}
+
+
+	private static int u16(ByteBuffer buffer, int pos) {
+
+		return buffer.getShort(pos) & 0xffff;
+	}
+
+
+	private static long u32(ByteBuffer buffer, int pos) {
+
+		return buffer.getInt(pos) & 0xffffffffL;
+	}
+
+
+	private static long be32(ByteBuffer buffer, int pos) {
+
+		//The last block of the file may end before the 4 bytes
+		if (pos + 4 > buffer.limit()) {
+
+			long result = 0;
+
+			for (int i = 0; i < 4; i++) {
+				result = (result << 8) | (pos + i < buffer.limit() ? u8(buffer, pos + i) : 0);
+			}
+
+			return result;
+		}
+
+		return Integer.reverseBytes(buffer.getInt(pos)) & 0xffffffffL;
+	}
+
+
+	private static long be64(ByteBuffer buffer, int pos) {
+
+		return (be32(buffer, pos) << 32) | be32(buffer, pos + 4);
+	}
+}
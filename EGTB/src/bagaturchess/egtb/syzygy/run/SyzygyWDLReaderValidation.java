@@ -0,0 +1,361 @@
+package bagaturchess.egtb.syzygy.run;
+
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import bagaturchess.bitboard.api.BoardUtils;
+import bagaturchess.bitboard.api.IBitBoard;
+import bagaturchess.bitboard.impl.Constants;
+import bagaturchess.egtb.syzygy.SyzygyJNIBridge;
+import bagaturchess.egtb.syzygy.SyzygyWDLReader;
+
+
+/**
+ * Compares the WDL results of the pure Java reader with the results of the native library (JSyzygy) on random positions
+ * of all tables with up to the given pieces count. The colours of the material are swapped in half of the positions.
+ * After that, the Java reader probes the same positions from many threads and the results are compared again.
+ *
+ * Usage: SyzygyWDLReaderValidation <syzygy path> [max pieces=5] [positions per table=2000] [threads=8]
+ * The path can be omitted, if the environment variable SYZYGY_HOME is set.
+ */
+public class SyzygyWDLReaderValidation {
+
+
+	private static final String PIECES = "PNBRQK";
+
+
+	public static void main(String[] args) {
+
+		String path 		= args.length > 0 ? args[0] : System.getenv("SYZYGY_HOME");
+		int max_pieces 		= args.length > 1 ? Integer.parseInt(args[1]) : 5;
+		int per_table 		= args.length > 2 ? Integer.parseInt(args[2]) : 2000;
+		int threads 		= args.length > 3 ? Integer.parseInt(args[3]) : 8;
+
+		final SyzygyWDLReader reader = new SyzygyWDLReader(path);
+
+		System.out.println("SyzygyWDLReaderValidation: " + reader.getTablesCount() + " tables found, largest=" + reader.getLargest());
+
+		boolean jni = SyzygyJNIBridge.loadNativeLibrary() && SyzygyJNIBridge.load(path) > 0;
+
+		if (!jni) {
+
+			System.out.println("SyzygyWDLReaderValidation: the JSyzygy library is not loaded, the results are compared only between the threads");
+		}
+
+
+		final List<long[]> positions = new ArrayList<long[]>();
+
+		Random random = new Random(1);
+
+		String[] names = getTableNames(path);
+
+		for (int i = 0; i < names.length; i++) {
+
+			if (names[i].length() - 1 > max_pieces) {
+
+				continue;
+			}
+
+			for (int j = 0; j < per_table; j++) {
+
+				positions.add(createPosition(names[i], random));
+			}
+		}
+
+		System.out.println("SyzygyWDLReaderValidation: " + positions.size() + " positions");
+
+
+		//Single threaded, Java reader and native library
+		final int[] expected = new int[positions.size()];
+
+		long errors = 0;
+
+		long[] histogram = new long[6];
+
+		long time_java = 0;
+		long time_jni = 0;
+
+		for (int i = 0; i < positions.size(); i++) {
+
+			long[] p = positions.get(i);
+
+			long start = System.nanoTime();
+
+			expected[i] = reader.probeWDL(p[0], p[1], p[2], p[3], p[4], p[5], p[6], p[7], p[8] == 1);
+
+			time_java += System.nanoTime() - start;
+
+			histogram[expected[i] + 1]++;
+
+			if (jni) {
+
+				start = System.nanoTime();
+
+				int jni_result = SyzygyJNIBridge.probeSyzygyWDL(p[0], p[1], p[2], p[3], p[4], p[5], p[6], p[7], 0, 0, p[8] == 1);
+
+				time_jni += System.nanoTime() - start;
+
+				if (jni_result != expected[i]) {
+
+					if (errors < 10) {
+
+						System.out.println("SyzygyWDLReaderValidation: " + toFEN(p) + " java=" + expected[i] + ", jni=" + jni_result);
+					}
+
+					errors++;
+				}
+			}
+		}
+
+		System.out.println("SyzygyWDLReaderValidation: results (failed, loss, blessed loss, draw, cursed win, win)=" + Arrays.toString(histogram));
+
+		System.out.println("SyzygyWDLReaderValidation: java " + (time_java / Math.max(1, positions.size())) + "ns per probe"
+				+ (jni ? ", jni " + (time_jni / Math.max(1, positions.size())) + "ns per probe, differences=" + errors : ""));
+
+
+		//Multi threaded, Java reader only
+		final AtomicLong thread_errors = new AtomicLong();
+
+		List<Thread> list = new ArrayList<Thread>();
+
+		for (int t = 0; t < threads; t++) {
+
+			final int offset = t * positions.size() / Math.max(1, threads);
+
+			Thread thread = new Thread(new Runnable() {
+
+
+				@Override
+				public void run() {
+
+					for (int i = 0; i < positions.size(); i++) {
+
+						int index = (i + offset) % positions.size();
+
+						long[] p = positions.get(index);
+
+						if (reader.probeWDL(p[0], p[1], p[2], p[3], p[4], p[5], p[6], p[7], p[8] == 1) != expected[index]) {
+
+							thread_errors.incrementAndGet();
+						}
+					}
+				}
+			});
+
+			list.add(thread);
+
+			thread.start();
+		}
+
+		for (int t = 0; t < list.size(); t++) {
+
+			try {
+
+				list.get(t).join();
+
+			} catch (InterruptedException e) {
+
+				throw new IllegalStateException(e);
+			}
+		}
+
+		System.out.println("SyzygyWDLReaderValidation: " + threads + " threads, differences=" + thread_errors.get());
+
+		if (errors != 0 || thread_errors.get() != 0) {
+
+			System.exit(1);
+		}
+	}
+
+
+	private static String[] getTableNames(String path) {
+
+		List<String> names = new ArrayList<String>();
+
+		String[] dirs = path.split(File.pathSeparator);
+
+		for (int i = 0; i < dirs.length; i++) {
+
+			String[] files = new File(dirs[i]).list();
+
+			if (files == null) {
+
+				continue;
+			}
+
+			for (int j = 0; j < files.length; j++) {
+
+				if (files[j].endsWith(".rtbw") && !names.contains(files[j])) {
+
+					names.add(files[j].substring(0, files[j].length() - 5));
+				}
+			}
+		}
+
+		String[] result = names.toArray(new String[names.size()]);
+
+		Arrays.sort(result);
+
+		return result;
+	}
+
+
+	/**
+	 * @return random legal position of the material: white, black, kings, queens, rooks, bishops, knights, pawns and 1 if white is to move
+	 */
+	private static long[] createPosition(String name, Random random) {
+
+		boolean swap = random.nextBoolean();
+
+		for (;;) {
+
+			char[] squares = new char[64];
+
+			Arrays.fill(squares, ' ');
+
+			boolean valid = true;
+
+			int color = 0;
+
+			for (int i = 0; i < name.length(); i++) {
+
+				char c = name.charAt(i);
+
+				if (c == 'v') {
+
+					color = 1;
+
+					continue;
+				}
+
+				boolean white = (color == 0) != swap;
+
+				int square = random.nextInt(64);
+
+				if (squares[square] != ' ' || (c == 'P' && (square < 8 || square >= 56))) {
+
+					valid = false;
+
+					break;
+				}
+
+				squares[square] = white ? c : Character.toLowerCase(c);
+			}
+
+			if (!valid) {
+
+				continue;
+			}
+
+			int white_king = new String(squares).indexOf('K');
+			int black_king = new String(squares).indexOf('k');
+
+			if (Math.abs((white_king & 7) - (black_king & 7)) <= 1 && Math.abs((white_king >> 3) - (black_king >> 3)) <= 1) {
+
+				continue;
+			}
+
+			long[] position = new long[9];
+
+			position[8] = random.nextBoolean() ? 1 : 0;
+
+			String fen = toFEN(squares, position[8] == 1);
+
+			IBitBoard board = BoardUtils.createBoard_WithPawnsCache(fen);
+
+			//The side, which is not to move, must not be in check
+			if (board.isInCheck(board.getColourToMove() == Constants.COLOUR_WHITE ? Constants.COLOUR_BLACK : Constants.COLOUR_WHITE)) {
+
+				continue;
+			}
+
+			//The same bitboards as in SyzygyTBProbing
+			position[0] = board.getFiguresBitboardByColour(Constants.COLOUR_WHITE);
+			position[1] = board.getFiguresBitboardByColour(Constants.COLOUR_BLACK);
+			position[2] = getBoth(board, Constants.TYPE_KING);
+			position[3] = getBoth(board, Constants.TYPE_QUEEN);
+			position[4] = getBoth(board, Constants.TYPE_ROOK);
+			position[5] = getBoth(board, Constants.TYPE_BISHOP);
+			position[6] = getBoth(board, Constants.TYPE_KNIGHT);
+			position[7] = getBoth(board, Constants.TYPE_PAWN);
+
+			return position;
+		}
+	}
+
+
+	private static long getBoth(IBitBoard board, int type) {
+
+		return board.getFiguresBitboardByColourAndType(Constants.COLOUR_WHITE, type)
+				| board.getFiguresBitboardByColourAndType(Constants.COLOUR_BLACK, type);
+	}
+
+
+	/**
+	 * @param squares a1 = 0, h8 = 63
+	 */
+	private static String toFEN(char[] squares, boolean white_to_move) {
+
+		StringBuilder fen = new StringBuilder();
+
+		for (int rank = 7; rank >= 0; rank--) {
+
+			int empty = 0;
+
+			for (int file = 0; file < 8; file++) {
+
+				char c = squares[8 * rank + file];
+
+				if (c == ' ') {
+
+					empty++;
+
+				} else {
+
+					if (empty > 0) fen.append(empty);
+
+					empty = 0;
+
+					fen.append(c);
+				}
+			}
+
+			if (empty > 0) fen.append(empty);
+
+			if (rank > 0) fen.append('/');
+		}
+
+		return fen.append(white_to_move ? " w - - 0 1" : " b - - 0 1").toString();
+	}
+
+
+	/**
+	 * @return the position as FEN with the squares of the bitboards, only for the error messages
+	 */
+	private static String toFEN(long[] position) {
+
+		char[] squares = new char[64];
+
+		Arrays.fill(squares, ' ');
+
+		for (int square = 0; square < 64; square++) {
+
+			for (int type = 0; type < PIECES.length(); type++) {
+
+				if ((position[7 - type] & (1L << square)) != 0) {
+
+					boolean white = (position[0] & (1L << square)) != 0;
+
+					squares[square] = white ? PIECES.charAt(type) : Character.toLowerCase(PIECES.charAt(type));
+				}
+			}
+		}
+
+		return toFEN(squares, position[8] == 1);
+	}
+}
@@ -12,6 +12,7 @@ import bagaturchess.search.api.ISearchConfig_AB;
 import bagaturchess.uci.api.IUCIOptionsProvider;
 import bagaturchess.uci.api.IUCIOptionsRegistry;
 import bagaturchess.uci.impl.commands.options.UCIOption;
+import bagaturchess.uci.impl.commands.options.UCIOptionCombo;
 import bagaturchess.uci.impl.commands.options.UCIOptionSpin_Integer;
 import bagaturchess.uci.impl.commands.options.UCIOptionString;
 import bagaturchess.uci.impl.commands.options.UCIOptions;
@@ -29,12 +30,37 @@ public abstract class RootSearchConfig_BaseImpl implements IRootSearchConfig, IU
 	
 	private static final boolean DEFAULT_SyzygyOnline 				= false;
 	
+	private static final int DEFAULT_SyzygyProbeDepth 				= 1;
+	
+	private static final boolean DEFAULT_SyzygyJavaWDL 				= false;
+	
 	private static final int DEFAULT_MEM_USAGE_percent 				= 73;
 	
 	private static final boolean DEFAULT_UseTranspositionTable 		= true;
 	private static final boolean DEFAULT_UseEvalCache 				= true;
 	private static final boolean DEFAULT_UseSyzygyDTZCache 			= true;
 	
+	private static final String TPT_TYPE_NAME_ON_HEAP 				= "on heap";
+	private static final String TPT_TYPE_NAME_OFF_HEAP 				= "off heap";
+	private static final String DEFAULT_TranspositionTableType 		= TPT_TYPE_NAME_ON_HEAP;
+	
+	//0 means that the size is computed from the JVM memory in the same way as for the on heap Transposition Table
+	private static final int DEFAULT_OffHeapHash 					= 0;
+	
+	//Empty string means that the Transposition Table is not loaded at startup
+	private static final String DEFAULT_HashFile 					= "";
+	private static final int DEFAULT_HashFileMinDepth 				= 4;
+	
+	//Empty string means that the Transposition Table is not shared with other processes
+	private static final String DEFAULT_SharedHashFile 				= "";
+	
+	//0 means that the memory of the caches is computed from the JVM memory and the MemoryUsagePercent option
+	private static final int DEFAULT_MemoryLimit 					= 0;
+	
+	private static final String EVALCACHE_TYPE_NAME_PER_THREAD 		= "per thread";
+	private static final String EVALCACHE_TYPE_NAME_SHARED 			= "shared";
+	private static final String DEFAULT_EvalCacheType 				= EVALCACHE_TYPE_NAME_PER_THREAD;
+	
 	private UCIOption[] options 									= new UCIOption[] {
 			
 			new UCIOptionSpin_Integer(UCIOptions.OPTION_NAME_MemoryUsagePercent	, DEFAULT_MEM_USAGE_percent				, "type spin default " + DEFAULT_MEM_USAGE_percent + " min 50 max 90"),
@@ -44,6 +70,15 @@ public abstract class RootSearchConfig_BaseImpl implements IRootSearchConfig, IU
 			new UCIOption(UCIOptions.OPTION_NAME_SyzygyOnline					, DEFAULT_SyzygyOnline				, "type check default " + DEFAULT_SyzygyOnline),
 			new UCIOption(UCIOptions.OPTION_NAME_SyzygyDTZCache					, DEFAULT_UseSyzygyDTZCache		, "type check default " + DEFAULT_UseSyzygyDTZCache),
 			new UCIOptionSpin_Integer(UCIOptions.OPTION_NAME_MultiPV			, new Integer(1)						, "type spin default 1 min 1 max 100"),
+			new UCIOptionCombo(UCIOptions.OPTION_NAME_TranspositionTableType	, DEFAULT_TranspositionTableType		, "type combo default " + DEFAULT_TranspositionTableType + " var " + TPT_TYPE_NAME_ON_HEAP + " var " + TPT_TYPE_NAME_OFF_HEAP),
+			new UCIOptionSpin_Integer(UCIOptions.OPTION_NAME_OffHeapHash		, DEFAULT_OffHeapHash					, "type spin default " + DEFAULT_OffHeapHash + " min 0 max 1048576"),
+			new UCIOptionString(UCIOptions.OPTION_NAME_HashFile					, DEFAULT_HashFile						, "type string default " + DEFAULT_HashFile),
+			new UCIOptionSpin_Integer(UCIOptions.OPTION_NAME_HashFileMinDepth	, DEFAULT_HashFileMinDepth				, "type spin default " + DEFAULT_HashFileMinDepth + " min 0 max 255"),
+			new UCIOptionCombo(UCIOptions.OPTION_NAME_EvalCacheType				, DEFAULT_EvalCacheType					, "type combo default " + DEFAULT_EvalCacheType + " var " + EVALCACHE_TYPE_NAME_PER_THREAD + " var " + EVALCACHE_TYPE_NAME_SHARED),
+			new UCIOptionSpin_Integer(UCIOptions.OPTION_NAME_SyzygyProbeDepth	, DEFAULT_SyzygyProbeDepth				, "type spin default " + DEFAULT_SyzygyProbeDepth + " min 1 max 100"),
+			new UCIOption<Boolean>(UCIOptions.OPTION_NAME_SyzygyJavaWDL			, DEFAULT_SyzygyJavaWDL				, "type check default " + DEFAULT_SyzygyJavaWDL),
+			new UCIOptionString(UCIOptions.OPTION_NAME_SharedHashFile			, DEFAULT_SharedHashFile				, "type string default " + DEFAULT_SharedHashFile),
+			new UCIOptionSpin_Integer(UCIOptions.OPTION_NAME_MemoryLimit		, DEFAULT_MemoryLimit					, "type spin default " + DEFAULT_MemoryLimit + " min 0 max 1048576"),
 			//new UCIOptionSpin_Integer("UCIOptions.OPTION_NAME_Hidden Depth"		, 0										, "type spin default 0 min 0 max 10"),
 	};
 	
@@ -207,6 +242,20 @@ public abstract class RootSearchConfig_BaseImpl implements IRootSearchConfig, IU
 	}
 	
 	
+	@Override
+	public int getSyzygyProbeDepth() {
+		
+		return (Integer) options[12].getValue();
+	}
+	
+	
+	@Override
+	public boolean useSyzygyJavaWDL() {
+		
+		return (Boolean) options[13].getValue();
+	}
+	
+	
 	@Override
 	public double getTPTUsagePercent() {
 		
@@ -228,6 +277,79 @@ public abstract class RootSearchConfig_BaseImpl implements IRootSearchConfig, IU
 	}
 	
 	
+	@Override
+	public int getTPTType() {
+		
+		if (((String) options[7].getValue()).equals(TPT_TYPE_NAME_ON_HEAP)) {
+			
+			return TPT_TYPE_ON_HEAP;
+			
+		} else if (((String) options[7].getValue()).equals(TPT_TYPE_NAME_OFF_HEAP)) {
+			
+			return TPT_TYPE_OFF_HEAP;
+		}
+		
+		throw new IllegalStateException(UCIOptions.OPTION_NAME_TranspositionTableType + " set to illegal value = " + options[7].getValue());
+	}
+	
+	
+	@Override
+	public int getTPTOffHeapSize_InMegabytes() {
+		
+		return (Integer) options[8].getValue();
+	}
+	
+	
+	@Override
+	public String getTPTSnapshotFile() {
+		
+		//The value is null, if the option is set to empty string
+		String file = (String) options[9].getValue();
+		
+		return file == null ? "" : file;
+	}
+	
+	
+	@Override
+	public int getTPTSnapshotMinDepth() {
+		
+		return (Integer) options[10].getValue();
+	}
+	
+	
+	@Override
+	public String getTPTSharedFile() {
+		
+		//The value is null, if the option is set to empty string
+		String file = (String) options[14].getValue();
+		
+		return file == null ? "" : file;
+	}
+	
+	
+	@Override
+	public int getMemoryLimit_InMegabytes() {
+		
+		return (Integer) options[15].getValue();
+	}
+	
+	
+	@Override
+	public int getEvalCacheType() {
+		
+		if (((String) options[11].getValue()).equals(EVALCACHE_TYPE_NAME_PER_THREAD)) {
+			
+			return EVALCACHE_TYPE_PER_THREAD;
+			
+		} else if (((String) options[11].getValue()).equals(EVALCACHE_TYPE_NAME_SHARED)) {
+			
+			return EVALCACHE_TYPE_SHARED;
+		}
+		
+		throw new IllegalStateException(UCIOptions.OPTION_NAME_EvalCacheType + " set to illegal value = " + options[11].getValue());
+	}
+	
+	
 	@Override
 	public int getMultiPVsCount() {
 		
@@ -324,6 +446,42 @@ public abstract class RootSearchConfig_BaseImpl implements IRootSearchConfig, IU
 			
 			return true;
 			
+		} else if (UCIOptions.OPTION_NAME_TranspositionTableType.equals(option.getName())) {
+			
+			return true;
+			
+		} else if (UCIOptions.OPTION_NAME_OffHeapHash.equals(option.getName())) {
+			
+			return true;
+			
+		} else if (UCIOptions.OPTION_NAME_HashFile.equals(option.getName())) {
+			
+			return true;
+			
+		} else if (UCIOptions.OPTION_NAME_HashFileMinDepth.equals(option.getName())) {
+			
+			return true;
+			
+		} else if (UCIOptions.OPTION_NAME_EvalCacheType.equals(option.getName())) {
+			
+			return true;
+			
+		} else if (UCIOptions.OPTION_NAME_SyzygyProbeDepth.equals(option.getName())) {
+			
+			return true;
+			
+		} else if (UCIOptions.OPTION_NAME_SyzygyJavaWDL.equals(option.getName())) {
+			
+			return true;
+			
+		} else if (UCIOptions.OPTION_NAME_SharedHashFile.equals(option.getName())) {
+			
+			return true;
+			
+		} else if (UCIOptions.OPTION_NAME_MemoryLimit.equals(option.getName())) {
+			
+			return true;
+			
 		}
 		
 		return false;
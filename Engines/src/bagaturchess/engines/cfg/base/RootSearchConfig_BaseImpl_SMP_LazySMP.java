@@ -0,0 +1,49 @@
+package bagaturchess.engines.cfg.base;
+
+
+import java.util.ArrayList;
+import java.util.List;
+
+import bagaturchess.uci.impl.commands.options.UCIOption;
+import bagaturchess.uci.impl.commands.options.UCIOptions;
+
+
+/**
+ * Config of bagaturchess.search.impl.rootsearch.parallel.LazySMPSearch.
+ * The threads share the search results only through the transposition table, so there is always one table
+ * and the option CountTranspositionTables is not supported.
+ */
+public class RootSearchConfig_BaseImpl_SMP_LazySMP extends RootSearchConfig_BaseImpl_SMP_Threads {
+	
+	
+	public RootSearchConfig_BaseImpl_SMP_LazySMP(String[] args) {
+		
+		super(args);
+	}
+	
+	
+	@Override
+	public int getTPTsCount() {
+		
+		return 1;
+	}
+	
+	
+	@Override
+	public UCIOption[] getSupportedOptions() {
+		
+		UCIOption[] parentOptions = super.getSupportedOptions();
+		
+		List<UCIOption<?>> result = new ArrayList<UCIOption<?>>();
+		
+		for (int i = 0; i < parentOptions.length; i++) {
+			
+			if (!UCIOptions.OPTION_NAME_CountTranspositionTables.equals(parentOptions[i].getName())) {
+				
+				result.add(parentOptions[i]);
+			}
+		}
+		
+		return result.toArray(new UCIOption[result.size()]);
+	}
+}
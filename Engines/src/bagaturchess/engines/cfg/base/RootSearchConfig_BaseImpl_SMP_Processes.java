@@ -1,6 +1,11 @@
 package bagaturchess.engines.cfg.base;
 
 
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+
+import bagaturchess.uci.api.ChannelManager;
 import bagaturchess.uci.impl.commands.options.UCIOption;
 import bagaturchess.uci.impl.commands.options.UCIOptionSpin_Integer;
 
@@ -10,12 +15,24 @@ public class RootSearchConfig_BaseImpl_SMP_Processes extends RootSearchConfig_Ba
 	
 	private int currentThreadMemory = 1024;
 	
+	//0 means that each worker process has its own Transposition Table
+	private int currentSharedHash = 256;
+	
+	private String sharedHashFile;
+	
+	private static final String SHARED_HASH_FILE_PREFIX = "bagatur_tt_";
+	private static final String SHARED_HASH_FILE_SUFFIX = ".bin";
+	
 	//setoption name UCIOptions.OPTION_NAME_SMP_Threads value 16
 	private UCIOption[] options = new UCIOption[] {
 			new UCIOptionSpin_Integer("Thread Memory (MB)", currentThreadMemory,
 					"type spin default " + currentThreadMemory
 											+ " min 256"
-											+ " max 1024")
+											+ " max 1024"),
+			new UCIOptionSpin_Integer("Shared Hash (MB)", currentSharedHash,
+					"type spin default " + currentSharedHash
+											+ " min 0"
+											+ " max 1048576")
 	};
 	
 	
@@ -42,6 +59,9 @@ public class RootSearchConfig_BaseImpl_SMP_Processes extends RootSearchConfig_Ba
 		if ("Thread Memory (MB)".equals(option.getName())) {
 			currentThreadMemory = (Integer) option.getValue();
 			return true;
+		} else if ("Shared Hash (MB)".equals(option.getName())) {
+			currentSharedHash = (Integer) option.getValue();
+			return true;
 		}
 		
 		return super.applyOption(option);
@@ -58,4 +78,119 @@ public class RootSearchConfig_BaseImpl_SMP_Processes extends RootSearchConfig_Ba
 	public boolean initCaches() {
 		return false;
 	}
+	
+	
+	@Override
+	public int getTPTOffHeapSize_InMegabytes() {
+		return currentSharedHash > 0 ? currentSharedHash : super.getTPTOffHeapSize_InMegabytes();
+	}
+	
+	
+	@Override
+	public synchronized String getTPTSharedFile() {
+		
+		if (currentSharedHash <= 0) {
+			return "";
+		}
+		
+		if (sharedHashFile == null) {
+			
+			//The name contains the pid of the master process, so the engines running on the same machine use different files.
+			//The workers are started in the same working directory, so the relative path is the same for them, if there is no /dev/shm.
+			String name = SHARED_HASH_FILE_PREFIX + getPID() + SHARED_HASH_FILE_SUFFIX;
+			
+			File shm = new File("/dev/shm");
+			
+			File file = shm.isDirectory() && shm.canWrite() ? new File(shm, name) : new File(name);
+			
+			//deleteOnExit is not called, if the engine is killed
+			deleteStaleFiles(file.getAbsoluteFile().getParentFile());
+			
+			file.deleteOnExit();
+			
+			sharedHashFile = file.getPath();
+		}
+		
+		return sharedHashFile;
+	}
+	
+	
+	/**
+	 * Deletes the shared Transposition Table files of master processes, which are not running anymore.
+	 */
+	private static void deleteStaleFiles(File dir) {
+		
+		File[] files = dir.listFiles();
+		
+		if (files == null) {
+			return;
+		}
+		
+		for (File file: files) {
+			
+			String name = file.getName();
+			
+			if (!name.startsWith(SHARED_HASH_FILE_PREFIX) || !name.endsWith(SHARED_HASH_FILE_SUFFIX)) {
+				continue;
+			}
+			
+			long pid;
+			
+			try {
+				
+				pid = Long.parseLong(name.substring(SHARED_HASH_FILE_PREFIX.length(), name.length() - SHARED_HASH_FILE_SUFFIX.length()));
+				
+			} catch (NumberFormatException e) {
+				
+				continue;
+			}
+			
+			if (!isProcessAlive(pid) && file.delete()) {
+				
+				if (ChannelManager.getChannel() != null) ChannelManager.getChannel().dump("RootSearchConfig_BaseImpl_SMP_Processes: stale file deleted " + file.getAbsolutePath());
+			}
+		}
+	}
+	
+	
+	/**
+	 * ProcessHandle is available only since Java 9, so it is called with reflection and on Java 8 /proc is checked.
+	 * @return true if the process is running or if this cannot be checked
+	 */
+	private static boolean isProcessAlive(long pid) {
+		
+		if (pid == getPID()) {
+			return true;
+		}
+		
+		try {
+			
+			Class<?> processHandle = Class.forName("java.lang.ProcessHandle");
+			
+			Method of = processHandle.getMethod("of", long.class);
+			
+			Object optional = of.invoke(null, pid);
+			
+			return (Boolean) optional.getClass().getMethod("isPresent").invoke(optional);
+			
+		} catch (Throwable t) {
+			
+			//Java 8
+		}
+		
+		File proc = new File("/proc");
+		
+		if (proc.isDirectory()) {
+			
+			return new File(proc, String.valueOf(pid)).exists();
+		}
+		
+		return true;
+	}
+	
+	
+	private static long getPID() {
+		
+		return Long.parseLong(ManagementFactory.getRuntimeMXBean().getName().split("@")[0]);
+	}
 }
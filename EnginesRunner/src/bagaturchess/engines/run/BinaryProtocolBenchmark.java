@@ -0,0 +1,209 @@
+/*
+ *  BagaturChess (UCI chess engine and tools)
+ *  Copyright (C) 2005 Krasimir I. Topchiyski (k_topchiyski@yahoo.com)
+ *  
+ *  Open Source project location: http://sourceforge.net/projects/bagaturchess/develop
+ *  SVN repository https://bagaturchess.svn.sourceforge.net/svnroot/bagaturchess
+ *
+ *  This file is part of BagaturChess program.
+ * 
+ *  BagaturChess is open software: you can redistribute it and/or modify
+ *  it under the terms of the Eclipse Public License version 1.0 as published by
+ *  the Eclipse Foundation.
+ *
+ *  BagaturChess is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  Eclipse Public License for more details.
+ *
+ *  You should have received a copy of the Eclipse Public License version 1.0
+ *  along with BagaturChess. If not, see <http://www.eclipse.org/legal/epl-v10.html/>.
+ *
+ */
+
+
+package bagaturchess.engines.run;
+
+
+import java.io.File;
+import java.io.IOException;
+
+import bagaturchess.bitboard.api.BoardUtils;
+import bagaturchess.bitboard.api.IBitBoard;
+import bagaturchess.uci.api.ChannelManager;
+import bagaturchess.uci.engine.EngineProcess;
+import bagaturchess.uci.impl.Channel_Console;
+import bagaturchess.uci.impl.binary.BinaryConnection;
+import bagaturchess.uci.impl.binary.BinaryProtocol;
+
+
+/**
+ * Measures the round trip of the position setup between the master engine and a worker process (see SequentialSearch_SeparateProcess):
+ * UCI 'position startpos moves ...' followed by 'isready' against a binary moves frame followed by a ping frame.
+ * The game grows by one move per setup, as in a real game, and starts again after its last move.
+ * The worker process is started with the classpath of this JVM.
+ *
+ * Usage: BinaryProtocolBenchmark [setups=20000]
+ */
+public class BinaryProtocolBenchmark {
+	
+	
+	private static final String[] GAME = new String[] {
+			"e2e4", "e7e5", "g1f3", "b8c6", "f1b5", "a7a6", "b5a4", "g8f6", "e1g1", "f8e7",
+			"f1e1", "b7b5", "a4b3", "d7d6", "c2c3", "e8g8", "h2h3", "c6a5", "b3c2", "c7c5",
+			"d2d4", "d8c7", "b1d2", "c5d4", "c3d4", "a5c6", "d2b3", "a6a5", "c1e3", "a5a4",
+			"b3d2", "c8d7", "a1c1", "c7b7", "d2f1", "f8c8", "f1g3", "c6b4", "c2b1", "c8c1",
+	};
+	
+	private static final String WORKER_ARGS = "bagaturchess.engines.cfg.base.UCIConfig_BaseImpl"
+			+ " bagaturchess.search.impl.uci_adaptor.UCISearchAdaptorImpl_PonderingOpponentMove"
+			+ " bagaturchess.engines.cfg.base.UCISearchAdaptorConfig_BaseImpl"
+			+ " bagaturchess.search.impl.rootsearch.sequential.SequentialSearch_MTD"
+			+ " bagaturchess.engines.cfg.base.RootSearchConfig_BaseImpl_1Core"
+			+ " bagaturchess.search.impl.alg.impl1.Search_PVS_NWS"
+			+ " bagaturchess.engines.cfg.base.SearchConfigImpl_AB"
+			+ " bagaturchess.learning.goldmiddle.impl4.cfg.BoardConfigImpl_V20"
+			+ " bagaturchess.learning.goldmiddle.impl4.cfg.EvaluationConfig_V20";
+	
+	
+	public static void main(String[] args) {
+		
+		int setups = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+		
+		ChannelManager.setChannel(new Channel_Console());
+		
+		try {
+			
+			short[] codes = validateGame();
+			
+			String java = new File(new File(System.getProperty("java.home"), "bin"), "java").getAbsolutePath();
+			
+			EngineProcess engine = new EngineProcess("BinaryProtocolBenchmark_Worker",
+					java + " -Xmx256M -cp " + System.getProperty("java.class.path") + " bagaturchess.uci.run.Boot " + WORKER_ARGS,
+					null, ".");
+			
+			engine.start();
+			
+			if (!engine.supportsUCI() || !engine.isReady()) {
+				throw new IllegalStateException("The worker process doesn't start");
+			}
+			
+			
+			//Warm up both sides of both protocols, the text is measured first
+			runText(engine, setups / 10);
+			
+			long time_text = runText(engine, setups);
+			
+			if (!engine.startBinary(5000)) {
+				throw new IllegalStateException("The worker process doesn't support the binary protocol");
+			}
+			
+			BinaryConnection binary = engine.getBinaryConnection();
+			
+			runBinary(binary, codes, setups / 10);
+			
+			long time_binary = runBinary(binary, codes, setups);
+			
+			
+			System.out.println("BinaryProtocolBenchmark: " + setups + " position setups with " + GAME.length + " moves game");
+			System.out.println("BinaryProtocolBenchmark: UCI text " + (time_text / setups / 1000) + " microseconds per round trip");
+			System.out.println("BinaryProtocolBenchmark: binary   " + (time_binary / setups / 1000) + " microseconds per round trip");
+			
+			engine.destroy();
+			
+		} catch (Throwable t) {
+			
+			t.printStackTrace();
+		}
+		
+		//The channel has non daemon threads
+		System.exit(0);
+	}
+	
+	
+	private static long runText(EngineProcess engine, int setups) throws IOException {
+		
+		long start = System.nanoTime();
+		
+		for (int i = 0; i < setups; i++) {
+			
+			int count = 1 + i % GAME.length;
+			
+			StringBuilder moves = new StringBuilder();
+			
+			for (int j = 0; j < count; j++) {
+				moves.append(' ').append(GAME[j]);
+			}
+			
+			engine.setupPossition("startpos moves" + moves);
+			
+			if (!engine.isReady()) {
+				throw new IllegalStateException("No readyok");
+			}
+		}
+		
+		return System.nanoTime() - start;
+	}
+	
+	
+	private static long runBinary(BinaryConnection binary, short[] codes, int setups) throws IOException {
+		
+		binary.writePosition("startpos");
+		
+		int played = 0;
+		
+		long start = System.nanoTime();
+		
+		for (int i = 0; i < setups; i++) {
+			
+			int count = 1 + i % GAME.length;
+			
+			binary.writeMoves(Math.min(played, count - 1), codes, count);
+			
+			played = count;
+			
+			binary.writePing(i);
+			
+			while (true) {
+				
+				int type = binary.readFrame();
+				
+				if (type == BinaryProtocol.FRAME_PONG && binary.getPayload().getLong() == i) {
+					break;
+				}
+				
+				if (type == -1) {
+					throw new IllegalStateException("The binary connection is closed");
+				}
+			}
+		}
+		
+		return System.nanoTime() - start;
+	}
+	
+	
+	/**
+	 * @return the binary codes of the game moves, after they are played on a board
+	 */
+	private static short[] validateGame() {
+		
+		IBitBoard board = BoardUtils.createBoard_WithPawnsCache();
+		
+		short[] codes = new short[GAME.length];
+		
+		for (int i = 0; i < GAME.length; i++) {
+			
+			int move = board.getMoveOps().stringToMove(GAME[i]);
+			
+			board.makeMoveForward(move);
+			
+			codes[i] = BinaryProtocol.encodeMove(board.getMoveOps().moveToString(move));
+			
+			if (!BinaryProtocol.decodeMove(codes[i]).equals(GAME[i])) {
+				throw new IllegalStateException("Wrong code of " + GAME[i]);
+			}
+		}
+		
+		return codes;
+	}
+}
@@ -0,0 +1,218 @@
+/*
+ *  BagaturChess (UCI chess engine and tools)
+ *  Copyright (C) 2005 Krasimir I. Topchiyski (k_topchiyski@yahoo.com)
+ *  
+ *  Open Source project location: http://sourceforge.net/projects/bagaturchess/develop
+ *  SVN repository https://bagaturchess.svn.sourceforge.net/svnroot/bagaturchess
+ *
+ *  This file is part of BagaturChess program.
+ * 
+ *  BagaturChess is open software: you can redistribute it and/or modify
+ *  it under the terms of the Eclipse Public License version 1.0 as published by
+ *  the Eclipse Foundation.
+ *
+ *  BagaturChess is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  Eclipse Public License for more details.
+ *
+ *  You should have received a copy of the Eclipse Public License version 1.0
+ *  along with BagaturChess. If not, see <http://www.eclipse.org/legal/epl-v10.html/>.
+ *
+ */
+package bagaturchess.engines.run;
+
+
+import java.util.concurrent.CountDownLatch;
+
+import bagaturchess.bitboard.api.BoardUtils;
+import bagaturchess.bitboard.api.IBitBoard;
+import bagaturchess.bitboard.impl.Constants;
+import bagaturchess.engines.cfg.base.RootSearchConfig_BaseImpl_SMP_LazySMP;
+import bagaturchess.engines.cfg.base.TimeConfigImpl;
+import bagaturchess.search.api.IRootSearch;
+import bagaturchess.search.api.internal.ISearchMediator;
+import bagaturchess.search.impl.alg.impl1.Search_PVS_NWS;
+import bagaturchess.search.impl.env.SharedData;
+import bagaturchess.search.impl.rootsearch.parallel.LazySMPSearch;
+import bagaturchess.search.impl.uci_adaptor.UCISearchMediatorImpl_NormalSearch;
+import bagaturchess.search.impl.uci_adaptor.timemanagement.ITimeController;
+import bagaturchess.search.impl.uci_adaptor.timemanagement.TimeControllerFactory;
+import bagaturchess.uci.api.BestMoveSender;
+import bagaturchess.uci.api.ChannelManager;
+import bagaturchess.uci.impl.Channel_Console;
+import bagaturchess.uci.impl.commands.Go;
+import bagaturchess.uci.impl.commands.options.UCIOption;
+import bagaturchess.uci.impl.commands.options.UCIOptions;
+
+
+/**
+ * Measures how LazySMPSearch scales with the threads count: time to reach a fixed depth and NPS for 1, 2, 4, 8, 16 and 32 threads.
+ * Each threads count runs with a new SharedData, so all measurements start with an empty transposition table.
+ * The time to depth varies between runs, because the threads are not deterministic, so the depth should be big enough.
+ *
+ * Usage: LazySMPBenchmark [depth] [max threads]
+ */
+public class LazySMPBenchmark {
+	
+	
+	private static final int[] THREADS = new int[] {1, 2, 4, 8, 16, 32};
+	
+	
+	//The root search works on one game, so the positions are given as moves from the initial position
+	private static final String[] GAMES = new String[] {
+			"",
+			"e2e4 e7e5 g1f3 b8c6 f1b5 a7a6 b5a4 g8f6 e1g1 f8e7",
+			"d2d4 g8f6 c2c4 e7e6 b1c3 f8b4 e2e3 e8g8 f1d3 d7d5",
+			"e2e4 c7c5 g1f3 d7d6 d2d4 c5d4 f3d4 g8f6 b1c3 a7a6",
+			"d2d4 d7d5 c2c4 e7e6 b1c3 g8f6 c1g5 f8e7 e2e3 e8g8 g1f3 b8d7",
+			"c2c4 e7e5 b1c3 g8f6 g1f3 b8c6 g2g3 d7d5 c4d5 f6d5 f1g2 d5b6",
+	};
+	
+	
+	public static void main(String[] args) {
+		
+		int depth = args.length > 0 ? Integer.parseInt(args[0]) : 14;
+		
+		int max_threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+		
+		ChannelManager.setChannel(new Channel_Console(System.in, System.out, System.out));
+		
+		StringBuilder results = new StringBuilder();
+		
+		long time_1_thread = 0;
+		
+		long nps_1_thread = 0;
+		
+		for (int t = 0; t < THREADS.length && THREADS[t] <= max_threads; t++) {
+			
+			long[] time_and_nodes = run(THREADS[t], depth);
+			
+			long time = Math.max(1, time_and_nodes[0]);
+			
+			long nps = time_and_nodes[1] * 1000 / time;
+			
+			if (t == 0) {
+				
+				time_1_thread = time;
+				
+				nps_1_thread = Math.max(1, nps);
+			}
+			
+			results.append("LazySMPBenchmark: threads=" + THREADS[t] + ", depth=" + depth
+					+ ", time to depth=" + time + "ms (speedup " + String.format("%.2f", time_1_thread / (double) time) + ")"
+					+ ", NPS=" + nps + " (speedup " + String.format("%.2f", nps / (double) nps_1_thread) + ")\r\n");
+		}
+		
+		System.out.println(results);
+		
+		System.exit(0);
+	}
+	
+	
+	private static long[] run(int threads, int depth) {
+		
+		RootSearchConfig_BaseImpl_SMP_LazySMP cfg = new RootSearchConfig_BaseImpl_SMP_LazySMP(
+				
+				new String[] {
+								Search_PVS_NWS.class.getName(),
+								bagaturchess.engines.cfg.base.SearchConfigImpl_AB.class.getName(),
+								bagaturchess.learning.goldmiddle.impl4.cfg.BoardConfigImpl_V20.class.getName(),
+								bagaturchess.learning.goldmiddle.impl4.cfg.EvaluationConfig_V20.class.getName(),
+					}
+				);
+		
+		setOption(cfg, UCIOptions.OPTION_NAME_SMP_Threads, threads);
+		
+		SharedData sharedData = new SharedData(ChannelManager.getChannel(), cfg);
+		
+		IRootSearch search = new LazySMPSearch(new Object[] {cfg, sharedData});
+		
+		search.createBoard(BoardUtils.createBoard_WithPawnsCache(Constants.INITIAL_BOARD, cfg.getBoardConfig()));
+		
+		long total_nodes = 0;
+		
+		long total_time = 0;
+		
+		for (int i = 0; i < GAMES.length; i++) {
+			
+			IBitBoard bitboard = BoardUtils.createBoard_WithPawnsCache(Constants.INITIAL_BOARD, cfg.getBoardConfig());
+			
+			BoardUtils.playGameUCI(bitboard, GAMES[i]);
+			
+			long start_time = System.currentTimeMillis();
+			
+			total_nodes += search(search, bitboard, depth);
+			
+			total_time += System.currentTimeMillis() - start_time;
+		}
+		
+		search.shutDown();
+		
+		sharedData.clear();
+		
+		return new long[] {total_time, total_nodes};
+	}
+	
+	
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static void setOption(RootSearchConfig_BaseImpl_SMP_LazySMP cfg, String name, Object value) {
+		
+		UCIOption[] options = cfg.getSupportedOptions();
+		
+		for (int i = 0; i < options.length; i++) {
+			
+			if (options[i].getName().equals(name)) {
+				
+				options[i].setValue(value);
+				
+				return;
+			}
+		}
+		
+		throw new IllegalStateException("Option not found: " + name);
+	}
+	
+	
+	private static long search(IRootSearch search, IBitBoard bitboard, int depth) {
+		
+		final CountDownLatch finished = new CountDownLatch(1);
+		
+		//Each position is a new search, so the transposition table entries of the previous positions age
+		search.getSharedData().newSearch();
+		
+		Go go = new Go(ChannelManager.getChannel(), "go depth " + depth);
+		
+		ITimeController timeController = TimeControllerFactory.createTimeController(new TimeConfigImpl(), bitboard.getColourToMove(), go);
+		
+		ISearchMediator mediator = new UCISearchMediatorImpl_NormalSearch(ChannelManager.getChannel(),
+				
+				go,
+				
+				timeController,
+				
+				bitboard.getColourToMove(),
+				
+				new BestMoveSender() {
+					@Override
+					public void sendBestMove() {
+						finished.countDown();
+					}
+				},
+				
+				search, false);
+		
+		search.negamax(bitboard, mediator, timeController, go);
+		
+		try {
+			
+			finished.await();
+			
+		} catch (InterruptedException e) {
+			
+			throw new IllegalStateException(e);
+		}
+		
+		return mediator.getLastInfo() == null ? 0 : mediator.getLastInfo().getSearchedNodes();
+	}
+}
@@ -0,0 +1,166 @@
+/*
+ *  BagaturChess (UCI chess engine and tools)
+ *  Copyright (C) 2005 Krasimir I. Topchiyski (k_topchiyski@yahoo.com)
+ *
+ *  Open Source project location: http://sourceforge.net/projects/bagaturchess/develop
+ *  SVN repository https://bagaturchess.svn.sourceforge.net/svnroot/bagaturchess
+ *
+ *  This file is part of BagaturChess program.
+ *
+ *  BagaturChess is open software: you can redistribute it and/or modify
+ *  it under the terms of the Eclipse Public License version 1.0 as published by
+ *  the Eclipse Foundation.
+ *
+ *  BagaturChess is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  Eclipse Public License for more details.
+ *
+ *  You should have received a copy of the Eclipse Public License version 1.0
+ *  along with BagaturChess. If not, see <http://www.eclipse.org/legal/epl-v10.html/>.
+ *
+ */
+
+
+package bagaturchess.engines.run;
+
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+import bagaturchess.uci.api.ILogMessage;
+import bagaturchess.uci.impl.Channel_Base;
+import bagaturchess.uci.impl.DummyPrintStream;
+
+
+/**
+ * Measures the cost of the logging for the calling threads of the channel:
+ * sendCommandToGUI with an info line (the GUI output is thrown away), dump of a message, dump of a lazy message
+ * and dump of a message guarded by isDumpEnabled, as at the call sites in the search,
+ * with the log written into a file and with logging policy 'none'.
+ * At the end a bestmove is sent, which waits until the log is written.
+ *
+ * Run one policy per JVM for exact numbers, otherwise the second run is compiled with the profile of the first.
+ *
+ * Usage: LoggingChannelBenchmark [calls=1000000] [policy=all|file|none]
+ */
+public class LoggingChannelBenchmark {
+	
+	
+	private static final String INFO = "info depth 12 seldepth 18 time 1234 nodes 1234567 nps 1000000 score cp 25 pv e2e4 e7e5 g1f3 b8c6 f1b5 a7a6";
+	
+	
+	public static void main(String[] args) {
+		
+		int calls = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		
+		String policy = args.length > 1 ? args[1] : "all";
+		
+		try {
+			
+			if (!policy.equals("none")) {
+				
+				new File("./log").mkdirs();
+				
+				PrintStream file = new PrintStream(new BufferedOutputStream(new FileOutputStream("./log/LoggingChannelBenchmark.log")), false);
+				
+				run("file", new Channel_Base(new ByteArrayInputStream(new byte[0]), new NullOutputStream(), file), calls);
+			}
+			
+			if (!policy.equals("file")) {
+				
+				run("none", new Channel_Base(new ByteArrayInputStream(new byte[0]), new NullOutputStream(), new DummyPrintStream()), calls);
+			}
+			
+		} catch (IOException e) {
+			
+			e.printStackTrace();
+			
+			System.exit(1);
+		}
+		
+		System.exit(0);
+	}
+	
+	
+	private static void run(String policy, Channel_Base channel, int calls) throws IOException {
+		
+		//Warm up
+		for (int i = 0; i < calls / 10; i++) {
+			channel.sendCommandToGUI(INFO);
+		}
+		channel.flushLog();
+		
+		long start = System.nanoTime();
+		for (int i = 0; i < calls; i++) {
+			channel.sendCommandToGUI(INFO);
+		}
+		long send_time = System.nanoTime() - start;
+		
+		channel.flushLog();
+		
+		start = System.nanoTime();
+		for (int i = 0; i < calls; i++) {
+			channel.dump("Search iteration " + i + " finished");
+		}
+		long dump_time = System.nanoTime() - start;
+		
+		channel.flushLog();
+		
+		start = System.nanoTime();
+		for (int i = 0; i < calls; i++) {
+			final int iteration = i;
+			channel.dump(new ILogMessage() {
+				
+				@Override
+				public String getMessage() {
+					return "Search iteration " + iteration + " finished";
+				}
+			});
+		}
+		long lazy_dump_time = System.nanoTime() - start;
+		
+		channel.flushLog();
+		
+		start = System.nanoTime();
+		for (int i = 0; i < calls; i++) {
+			if (channel.isDumpEnabled()) channel.dump("Search iteration " + i + " finished");
+		}
+		long guarded_dump_time = System.nanoTime() - start;
+		
+		start = System.nanoTime();
+		channel.sendCommandToGUI("bestmove e2e4 ponder e7e5");
+		long bestmove_time = System.nanoTime() - start;
+		
+		System.out.println("LoggingChannelBenchmark: logging " + policy
+				+ ", sendCommandToGUI " + (send_time / calls) + "ns"
+				+ ", dump " + (dump_time / calls) + "ns"
+				+ ", lazy dump " + (lazy_dump_time / calls) + "ns"
+				+ ", guarded dump " + (guarded_dump_time / calls) + "ns"
+				+ ", bestmove with log flush " + (bestmove_time / 1000) + "us"
+				+ ", dropped messages " + channel.getDroppedLogMessagesCount());
+		
+		channel.close();
+	}
+	
+	
+	private static final class NullOutputStream extends OutputStream {
+		
+		
+		@Override
+		public void write(int b) {
+			//Do nothing
+		}
+		
+		
+		@Override
+		public void write(byte[] b, int off, int len) {
+			//Do nothing
+		}
+	}
+}
@@ -0,0 +1,223 @@
+/*
+ *  BagaturChess (UCI chess engine and tools)
+ *  Copyright (C) 2005 Krasimir I. Topchiyski (k_topchiyski@yahoo.com)
+ *  
+ *  Open Source project location: http://sourceforge.net/projects/bagaturchess/develop
+ *  SVN repository https://bagaturchess.svn.sourceforge.net/svnroot/bagaturchess
+ *
+ *  This file is part of BagaturChess program.
+ * 
+ *  BagaturChess is open software: you can redistribute it and/or modify
+ *  it under the terms of the Eclipse Public License version 1.0 as published by
+ *  the Eclipse Foundation.
+ *
+ *  BagaturChess is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  Eclipse Public License for more details.
+ *
+ *  You should have received a copy of the Eclipse Public License version 1.0
+ *  along with BagaturChess. If not, see <http://www.eclipse.org/legal/epl-v10.html/>.
+ *
+ */
+package bagaturchess.engines.run;
+
+
+import java.util.concurrent.CountDownLatch;
+
+import bagaturchess.bitboard.api.BoardUtils;
+import bagaturchess.bitboard.api.IBitBoard;
+import bagaturchess.bitboard.impl.Constants;
+import bagaturchess.engines.cfg.base.RootSearchConfig_BaseImpl_SMP_Threads;
+import bagaturchess.engines.cfg.base.TimeConfigImpl;
+import bagaturchess.search.api.IRootSearch;
+import bagaturchess.search.api.internal.ISearchMediator;
+import bagaturchess.search.impl.alg.impl1.Search_PVS_NWS;
+import bagaturchess.search.impl.env.SharedData;
+import bagaturchess.search.impl.rootsearch.montecarlo.MonteCarloTreeSearch;
+import bagaturchess.search.impl.uci_adaptor.UCISearchMediatorImpl_NormalSearch;
+import bagaturchess.search.impl.uci_adaptor.timemanagement.ITimeController;
+import bagaturchess.search.impl.uci_adaptor.timemanagement.TimeControllerFactory;
+import bagaturchess.uci.api.BestMoveSender;
+import bagaturchess.uci.api.ChannelManager;
+import bagaturchess.uci.impl.Channel_Console;
+import bagaturchess.uci.impl.commands.Go;
+import bagaturchess.uci.impl.commands.options.UCIOption;
+import bagaturchess.uci.impl.commands.options.UCIOptions;
+
+
+/**
+ * Measures how MonteCarloTreeSearch scales with the threads count: playouts per second for 1, 2, 4, 8, 16 and 32 threads.
+ * Each position is searched for a fixed time, the nodes of the last info are the playouts.
+ * The best move of each position is printed too, so the results of the different threads counts can be compared.
+ *
+ * Usage: MonteCarloTreeSearchBenchmark [time per position in ms] [max threads]
+ */
+public class MonteCarloTreeSearchBenchmark {
+	
+	
+	private static final int[] THREADS = new int[] {1, 2, 4, 8, 16, 32};
+	
+	
+	//The root search works on one game, so the positions are given as moves from the initial position
+	private static final String[] GAMES = new String[] {
+			"",
+			"e2e4 e7e5 g1f3 b8c6 f1b5 a7a6 b5a4 g8f6 e1g1 f8e7",
+			"d2d4 g8f6 c2c4 e7e6 b1c3 f8b4 e2e3 e8g8 f1d3 d7d5",
+			"e2e4 c7c5 g1f3 d7d6 d2d4 c5d4 f3d4 g8f6 b1c3 a7a6",
+			"d2d4 d7d5 c2c4 e7e6 b1c3 g8f6 c1g5 f8e7 e2e3 e8g8 g1f3 b8d7",
+			"c2c4 e7e5 b1c3 g8f6 g1f3 b8c6 g2g3 d7d5 c4d5 f6d5 f1g2 d5b6",
+	};
+	
+	
+	public static void main(String[] args) {
+		
+		int time_per_position = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+		
+		int max_threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+		
+		ChannelManager.setChannel(new Channel_Console(System.in, System.out, System.out));
+		
+		StringBuilder results = new StringBuilder();
+		
+		long pps_1_thread = 0;
+		
+		for (int t = 0; t < THREADS.length && THREADS[t] <= max_threads; t++) {
+			
+			StringBuilder best_moves = new StringBuilder();
+			
+			long[] time_and_playouts = run(THREADS[t], time_per_position, best_moves);
+			
+			long pps = time_and_playouts[1] * 1000 / Math.max(1, time_and_playouts[0]);
+			
+			if (t == 0) {
+				
+				pps_1_thread = Math.max(1, pps);
+			}
+			
+			results.append("MonteCarloTreeSearchBenchmark: threads=" + THREADS[t] + ", time per position=" + time_per_position + "ms"
+					+ ", playouts=" + time_and_playouts[1]
+					+ ", playouts per second=" + pps + " (speedup " + String.format("%.2f", pps / (double) pps_1_thread) + ")"
+					+ ", best moves=" + best_moves + "\r\n");
+		}
+		
+		System.out.println(results);
+		
+		System.exit(0);
+	}
+	
+	
+	private static long[] run(int threads, int time_per_position, StringBuilder best_moves) {
+		
+		RootSearchConfig_BaseImpl_SMP_Threads cfg = new RootSearchConfig_BaseImpl_SMP_Threads(
+				
+				new String[] {
+								Search_PVS_NWS.class.getName(),
+								bagaturchess.engines.cfg.base.SearchConfigImpl_AB.class.getName(),
+								bagaturchess.learning.goldmiddle.impl4.cfg.BoardConfigImpl_V20.class.getName(),
+								bagaturchess.learning.goldmiddle.impl4.cfg.EvaluationConfig_V20.class.getName(),
+					}
+				);
+		
+		setOption(cfg, UCIOptions.OPTION_NAME_SMP_Threads, threads);
+		
+		SharedData sharedData = new SharedData(ChannelManager.getChannel(), cfg);
+		
+		IRootSearch search = new MonteCarloTreeSearch(new Object[] {cfg, sharedData});
+		
+		search.createBoard(BoardUtils.createBoard_WithPawnsCache(Constants.INITIAL_BOARD, cfg.getBoardConfig()));
+		
+		long total_playouts = 0;
+		
+		long total_time = 0;
+		
+		for (int i = 0; i < GAMES.length; i++) {
+			
+			IBitBoard bitboard = BoardUtils.createBoard_WithPawnsCache(Constants.INITIAL_BOARD, cfg.getBoardConfig());
+			
+			BoardUtils.playGameUCI(bitboard, GAMES[i]);
+			
+			long start_time = System.currentTimeMillis();
+			
+			int[] best_move = new int[1];
+			
+			total_playouts += search(search, bitboard, time_per_position, best_move);
+			
+			total_time += System.currentTimeMillis() - start_time;
+			
+			best_moves.append((i == 0 ? "" : " ") + bitboard.getMoveOps().moveToString(best_move[0]));
+		}
+		
+		search.shutDown();
+		
+		sharedData.clear();
+		
+		return new long[] {total_time, total_playouts};
+	}
+	
+	
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static void setOption(RootSearchConfig_BaseImpl_SMP_Threads cfg, String name, Object value) {
+		
+		UCIOption[] options = cfg.getSupportedOptions();
+		
+		for (int i = 0; i < options.length; i++) {
+			
+			if (options[i].getName().equals(name)) {
+				
+				options[i].setValue(value);
+				
+				return;
+			}
+		}
+		
+		throw new IllegalStateException("Option not found: " + name);
+	}
+	
+	
+	private static long search(IRootSearch search, IBitBoard bitboard, int time_per_position, int[] best_move) {
+		
+		final CountDownLatch finished = new CountDownLatch(1);
+		
+		Go go = new Go(ChannelManager.getChannel(), "go movetime " + time_per_position);
+		
+		ITimeController timeController = TimeControllerFactory.createTimeController(new TimeConfigImpl(), bitboard.getColourToMove(), go);
+		
+		ISearchMediator mediator = new UCISearchMediatorImpl_NormalSearch(ChannelManager.getChannel(),
+				
+				go,
+				
+				timeController,
+				
+				bitboard.getColourToMove(),
+				
+				new BestMoveSender() {
+					@Override
+					public void sendBestMove() {
+						finished.countDown();
+					}
+				},
+				
+				search, false);
+		
+		search.negamax(bitboard, mediator, timeController, go);
+		
+		try {
+			
+			finished.await();
+			
+		} catch (InterruptedException e) {
+			
+			throw new IllegalStateException(e);
+		}
+		
+		if (mediator.getLastInfo() == null) {
+			
+			return 0;
+		}
+		
+		best_move[0] = mediator.getLastInfo().getBestMove();
+		
+		return mediator.getLastInfo().getSearchedNodes();
+	}
+}
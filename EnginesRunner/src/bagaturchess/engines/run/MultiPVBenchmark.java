@@ -0,0 +1,217 @@
+/*
+ *  BagaturChess (UCI chess engine and tools)
+ *  Copyright (C) 2005 Krasimir I. Topchiyski (k_topchiyski@yahoo.com)
+ *
+ *  Open Source project location: http://sourceforge.net/projects/bagaturchess/develop
+ *  SVN repository https://bagaturchess.svn.sourceforge.net/svnroot/bagaturchess
+ *
+ *  This file is part of BagaturChess program.
+ *
+ *  BagaturChess is open software: you can redistribute it and/or modify
+ *  it under the terms of the Eclipse Public License version 1.0 as published by
+ *  the Eclipse Foundation.
+ *
+ *  BagaturChess is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  Eclipse Public License for more details.
+ *
+ *  You should have received a copy of the Eclipse Public License version 1.0
+ *  along with BagaturChess. If not, see <http://www.eclipse.org/legal/epl-v10.html/>.
+ *
+ */
+package bagaturchess.engines.run;
+
+
+import java.util.concurrent.CountDownLatch;
+
+import bagaturchess.bitboard.api.BoardUtils;
+import bagaturchess.bitboard.api.IBitBoard;
+import bagaturchess.bitboard.impl.Constants;
+import bagaturchess.engines.cfg.base.RootSearchConfig_BaseImpl_1Core;
+import bagaturchess.engines.cfg.base.TimeConfigImpl;
+import bagaturchess.search.api.IRootSearch;
+import bagaturchess.search.api.internal.ISearchMediator;
+import bagaturchess.search.impl.alg.impl1.Search_PVS_NWS;
+import bagaturchess.search.impl.env.SharedData;
+import bagaturchess.search.impl.rootsearch.multipv.MultiPVRootSearch;
+import bagaturchess.search.impl.rootsearch.multipv.MultiPVRootSearch_PerMove;
+import bagaturchess.search.impl.rootsearch.sequential.SequentialSearch_MTD;
+import bagaturchess.search.impl.uci_adaptor.UCISearchMediatorImpl_NormalSearch;
+import bagaturchess.search.impl.uci_adaptor.timemanagement.ITimeController;
+import bagaturchess.search.impl.uci_adaptor.timemanagement.TimeControllerFactory;
+import bagaturchess.uci.api.BestMoveSender;
+import bagaturchess.uci.api.ChannelManager;
+import bagaturchess.uci.impl.Channel_Console;
+import bagaturchess.uci.impl.commands.Go;
+import bagaturchess.uci.impl.commands.options.UCIOption;
+import bagaturchess.uci.impl.commands.options.UCIOptions;
+
+
+/**
+ * Compares the searched nodes and the time to a fixed depth of the MultiPV searches:
+ * MultiPVRootSearch (all lines in one iterative deepening loop) and MultiPVRootSearch_PerMove (one search per root move).
+ * Each search runs with a new SharedData, so both start with an empty transposition table.
+ *
+ * Usage: MultiPVBenchmark [depth=8] [MultiPV=4]
+ */
+public class MultiPVBenchmark {
+	
+	
+	//The root search works on one game, so the positions are given as moves from the initial position
+	private static final String[] GAMES = new String[] {
+			"",
+			"e2e4 e7e5 g1f3 b8c6 f1b5 a7a6 b5a4 g8f6 e1g1 f8e7",
+			"d2d4 g8f6 c2c4 e7e6 b1c3 f8b4 e2e3 e8g8 f1d3 d7d5",
+			"e2e4 c7c5 g1f3 d7d6 d2d4 c5d4 f3d4 g8f6 b1c3 a7a6",
+			"d2d4 d7d5 c2c4 e7e6 b1c3 g8f6 c1g5 f8e7 e2e3 e8g8 g1f3 b8d7",
+			"c2c4 e7e5 b1c3 g8f6 g1f3 b8c6 g2g3 d7d5 c4d5 f6d5 f1g2 d5b6",
+	};
+	
+	
+	public static void main(String[] args) {
+		
+		int depth = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+		
+		int multipv = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+		
+		ChannelManager.setChannel(new Channel_Console(System.in, System.out, System.out));
+		
+		StringBuilder results = new StringBuilder();
+		
+		long total_nodes_per_move = 0;
+		long total_nodes_in_tree = 0;
+		long total_time_per_move = 0;
+		long total_time_in_tree = 0;
+		
+		for (int i = 0; i < GAMES.length; i++) {
+			
+			long[] per_move = run(false, GAMES[i], depth, multipv);
+			long[] in_tree = run(true, GAMES[i], depth, multipv);
+			
+			results.append("MultiPVBenchmark: moves=[" + GAMES[i] + "]"
+					+ " per move: nodes=" + per_move[1] + ", time=" + per_move[0] + "ms"
+					+ ", in tree: nodes=" + in_tree[1] + ", time=" + in_tree[0] + "ms"
+					+ ", nodes ratio=" + String.format("%.2f", per_move[1] / (double) Math.max(1, in_tree[1])) + "\r\n");
+			
+			total_time_per_move += per_move[0];
+			total_nodes_per_move += per_move[1];
+			total_time_in_tree += in_tree[0];
+			total_nodes_in_tree += in_tree[1];
+		}
+		
+		results.append("MultiPVBenchmark: depth=" + depth + ", MultiPV=" + multipv
+				+ ", per move: nodes=" + total_nodes_per_move + ", time=" + total_time_per_move + "ms"
+				+ ", in tree: nodes=" + total_nodes_in_tree + ", time=" + total_time_in_tree + "ms"
+				+ ", nodes ratio=" + String.format("%.2f", total_nodes_per_move / (double) Math.max(1, total_nodes_in_tree)) + "\r\n");
+		
+		System.out.println(results);
+		
+		System.exit(0);
+	}
+	
+	
+	private static long[] run(boolean in_tree, String game, int depth, int multipv) {
+		
+		RootSearchConfig_BaseImpl_1Core cfg = new RootSearchConfig_BaseImpl_1Core(
+				
+				new String[] {
+								Search_PVS_NWS.class.getName(),
+								bagaturchess.engines.cfg.base.SearchConfigImpl_AB.class.getName(),
+								bagaturchess.learning.goldmiddle.impl4.cfg.BoardConfigImpl_V20.class.getName(),
+								bagaturchess.learning.goldmiddle.impl4.cfg.EvaluationConfig_V20.class.getName(),
+					}
+				);
+		
+		setOption(cfg, UCIOptions.OPTION_NAME_MultiPV, multipv);
+		
+		SharedData sharedData = new SharedData(ChannelManager.getChannel(), cfg);
+		
+		IRootSearch root_search = new SequentialSearch_MTD(new Object[] {cfg, sharedData});
+		
+		IRootSearch search = in_tree ? new MultiPVRootSearch(cfg, root_search) : new MultiPVRootSearch_PerMove(cfg, root_search);
+		
+		//The same as in UCISearchAdaptorImpl_Base
+		root_search.createBoard(BoardUtils.createBoard_WithPawnsCache(Constants.INITIAL_BOARD, cfg.getBoardConfig()));
+		search.createBoard(BoardUtils.createBoard_WithPawnsCache(Constants.INITIAL_BOARD, cfg.getBoardConfig()));
+		
+		IBitBoard bitboard = BoardUtils.createBoard_WithPawnsCache(Constants.INITIAL_BOARD, cfg.getBoardConfig());
+		
+		BoardUtils.playGameUCI(bitboard, game);
+		
+		long start_time = System.currentTimeMillis();
+		
+		long nodes = search(search, bitboard, depth);
+		
+		long time = System.currentTimeMillis() - start_time;
+		
+		search.shutDown();
+		
+		root_search.shutDown();
+		
+		sharedData.clear();
+		
+		return new long[] {time, nodes};
+	}
+	
+	
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static void setOption(RootSearchConfig_BaseImpl_1Core cfg, String name, Object value) {
+		
+		UCIOption[] options = cfg.getSupportedOptions();
+		
+		for (int i = 0; i < options.length; i++) {
+			
+			if (options[i].getName().equals(name)) {
+				
+				options[i].setValue(value);
+				
+				return;
+			}
+		}
+		
+		throw new IllegalStateException("Option not found: " + name);
+	}
+	
+	
+	private static long search(IRootSearch search, IBitBoard bitboard, int depth) {
+		
+		final CountDownLatch finished = new CountDownLatch(1);
+		
+		search.getSharedData().newSearch();
+		
+		Go go = new Go(ChannelManager.getChannel(), "go depth " + depth);
+		
+		ITimeController timeController = TimeControllerFactory.createTimeController(new TimeConfigImpl(), bitboard.getColourToMove(), go);
+		
+		ISearchMediator mediator = new UCISearchMediatorImpl_NormalSearch(ChannelManager.getChannel(),
+				
+				go,
+				
+				timeController,
+				
+				bitboard.getColourToMove(),
+				
+				new BestMoveSender() {
+					@Override
+					public void sendBestMove() {
+						finished.countDown();
+					}
+				},
+				
+				search, false);
+		
+		search.negamax(bitboard, mediator, timeController, go);
+		
+		try {
+			
+			finished.await();
+		
+		} catch (InterruptedException e) {
+			
+			throw new IllegalStateException(e);
+		}
+		
+		return mediator.getLastInfo() == null ? 0 : mediator.getLastInfo().getSearchedNodes();
+	}
+}
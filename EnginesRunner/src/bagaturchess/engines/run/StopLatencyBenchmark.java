@@ -0,0 +1,225 @@
+/*
+ *  BagaturChess (UCI chess engine and tools)
+ *  Copyright (C) 2005 Krasimir I. Topchiyski (k_topchiyski@yahoo.com)
+ *  
+ *  Open Source project location: http://sourceforge.net/projects/bagaturchess/develop
+ *  SVN repository https://bagaturchess.svn.sourceforge.net/svnroot/bagaturchess
+ *
+ *  This file is part of BagaturChess program.
+ * 
+ *  BagaturChess is open software: you can redistribute it and/or modify
+ *  it under the terms of the Eclipse Public License version 1.0 as published by
+ *  the Eclipse Foundation.
+ *
+ *  BagaturChess is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  Eclipse Public License for more details.
+ *
+ *  You should have received a copy of the Eclipse Public License version 1.0
+ *  along with BagaturChess. If not, see <http://www.eclipse.org/legal/epl-v10.html/>.
+ *
+ */
+package bagaturchess.engines.run;
+
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+import bagaturchess.bitboard.api.BoardUtils;
+import bagaturchess.bitboard.api.IBitBoard;
+import bagaturchess.bitboard.impl.Constants;
+import bagaturchess.bitboard.impl.utils.ReflectionUtils;
+import bagaturchess.engines.cfg.base.RootSearchConfig_BaseImpl_SMP_Threads;
+import bagaturchess.engines.cfg.base.TimeConfigImpl;
+import bagaturchess.search.api.IRootSearch;
+import bagaturchess.search.api.internal.ISearchMediator;
+import bagaturchess.search.impl.alg.impl1.Search_PVS_NWS;
+import bagaturchess.search.impl.env.SharedData;
+import bagaturchess.search.impl.rootsearch.parallel.MTDParallelSearch_ThreadsImpl;
+import bagaturchess.search.impl.uci_adaptor.UCISearchMediatorImpl_NormalSearch;
+import bagaturchess.search.impl.uci_adaptor.timemanagement.ITimeController;
+import bagaturchess.search.impl.uci_adaptor.timemanagement.TimeControllerFactory;
+import bagaturchess.uci.api.BestMoveSender;
+import bagaturchess.uci.api.ChannelManager;
+import bagaturchess.uci.impl.Channel_Console;
+import bagaturchess.uci.impl.commands.Go;
+import bagaturchess.uci.impl.commands.options.UCIOption;
+import bagaturchess.uci.impl.commands.options.UCIOptions;
+
+
+/**
+ * Measures how fast a root search reacts on the end of the search:
+ * 1. stop latency - the time from the stop (as sent by the UCI adaptor) of an infinite search until the best move is sent
+ * 2. movetime overshoot - the time after the end of 'go movetime' until the best move is sent
+ * Prints the minimum, average and maximum of both.
+ *
+ * Usage: StopLatencyBenchmark [threads] [runs] [root search class name]
+ */
+public class StopLatencyBenchmark {
+	
+	
+	private static final int MOVETIME = 300;
+	
+	
+	public static void main(String[] args) {
+		
+		int threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+		
+		int runs = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+		
+		String root_search_class = args.length > 2 ? args[2] : MTDParallelSearch_ThreadsImpl.class.getName();
+		
+		
+		RootSearchConfig_BaseImpl_SMP_Threads cfg = new RootSearchConfig_BaseImpl_SMP_Threads(
+				
+				new String[] {
+								Search_PVS_NWS.class.getName(),
+								bagaturchess.engines.cfg.base.SearchConfigImpl_AB.class.getName(),
+								bagaturchess.learning.goldmiddle.impl4.cfg.BoardConfigImpl_V20.class.getName(),
+								bagaturchess.learning.goldmiddle.impl4.cfg.EvaluationConfig_V20.class.getName(),
+					}
+				);
+		
+		setOption(cfg, UCIOptions.OPTION_NAME_SMP_Threads, threads);
+		
+		ChannelManager.setChannel(new Channel_Console(System.in, System.out, System.out));
+		
+		SharedData sharedData = new SharedData(ChannelManager.getChannel(), cfg);
+		
+		IRootSearch search = (IRootSearch) ReflectionUtils.createObjectByClassName_ObjectsConstructor(root_search_class, new Object[] {cfg, sharedData});
+		
+		search.createBoard(BoardUtils.createBoard_WithPawnsCache(Constants.INITIAL_BOARD, cfg.getBoardConfig()));
+		
+		IBitBoard bitboard = BoardUtils.createBoard_WithPawnsCache(Constants.INITIAL_BOARD, cfg.getBoardConfig());
+		
+		Random random = new Random(1);
+		
+		long[] stop_latencies = new long[runs];
+		
+		long[] movetime_overshoots = new long[runs];
+		
+		for (int i = 0; i < runs; i++) {
+			
+			//The stop comes at different moments of the search
+			stop_latencies[i] = search(search, bitboard, "go infinite", 100 + random.nextInt(400));
+			
+			movetime_overshoots[i] = search(search, bitboard, "go movetime " + MOVETIME, -1) - MOVETIME * 1000000L;
+		}
+		
+		search.shutDown();
+		
+		System.out.println("StopLatencyBenchmark: root search=" + root_search_class + ", threads=" + threads + ", runs=" + runs);
+		System.out.println("StopLatencyBenchmark: stop latency " + statistics(stop_latencies));
+		System.out.println("StopLatencyBenchmark: movetime " + MOVETIME + "ms overshoot " + statistics(movetime_overshoots));
+		
+		System.exit(0);
+	}
+	
+	
+	/**
+	 * @return nanoseconds from the stop (if stop_after_ms is not negative) or from the start of the search until the best move is sent
+	 */
+	private static long search(IRootSearch search, IBitBoard bitboard, String go_command, int stop_after_ms) {
+		
+		final CountDownLatch finished = new CountDownLatch(1);
+		
+		final long[] finish_time = new long[1];
+		
+		search.getSharedData().newSearch();
+		
+		Go go = new Go(ChannelManager.getChannel(), go_command);
+		
+		ITimeController timeController = TimeControllerFactory.createTimeController(new TimeConfigImpl(), bitboard.getColourToMove(), go);
+		
+		ISearchMediator mediator = new UCISearchMediatorImpl_NormalSearch(ChannelManager.getChannel(),
+				
+				go,
+				
+				timeController,
+				
+				bitboard.getColourToMove(),
+				
+				new BestMoveSender() {
+					@Override
+					public void sendBestMove() {
+						finish_time[0] = System.nanoTime();
+						finished.countDown();
+					}
+				},
+				
+				search, stop_after_ms >= 0);
+		
+		long start_time = System.nanoTime();
+		
+		search.negamax(bitboard, mediator, timeController, go);
+		
+		try {
+			
+			if (stop_after_ms >= 0) {
+				
+				Thread.sleep(stop_after_ms);
+				
+				start_time = System.nanoTime();
+				
+				//The same as UCISearchAdaptorImpl_Base on 'stop'
+				mediator.getStopper().markStopped();
+				
+				if (!search.isStopped()) {
+					
+					search.stopSearchAndWait();
+				}
+			}
+			
+			finished.await();
+			
+		} catch (InterruptedException e) {
+			
+			throw new IllegalStateException(e);
+		}
+		
+		//The best move is sent after the search is marked as stopped, so the next search can start
+		while (!search.isStopped()) {
+			
+			Thread.yield();
+		}
+		
+		return finish_time[0] - start_time;
+	}
+	
+	
+	private static String statistics(long[] values_ns) {
+		
+		long min = Long.MAX_VALUE;
+		long max = Long.MIN_VALUE;
+		long sum = 0;
+		
+		for (int i = 0; i < values_ns.length; i++) {
+			
+			min = Math.min(min, values_ns[i]);
+			max = Math.max(max, values_ns[i]);
+			sum += values_ns[i];
+		}
+		
+		return String.format("min=%.2fms, avg=%.2fms, max=%.2fms", min / 1000000d, sum / (1000000d * values_ns.length), max / 1000000d);
+	}
+	
+	
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static void setOption(RootSearchConfig_BaseImpl_SMP_Threads cfg, String name, Object value) {
+		
+		UCIOption[] options = cfg.getSupportedOptions();
+		
+		for (int i = 0; i < options.length; i++) {
+			
+			if (options[i].getName().equals(name)) {
+				
+				options[i].setValue(value);
+				
+				return;
+			}
+		}
+		
+		throw new IllegalStateException("Option not found: " + name);
+	}
+}
@@ -0,0 +1,412 @@
+/*
+ *  BagaturChess (UCI chess engine and tools)
+ *  Copyright (C) 2005 Krasimir I. Topchiyski (k_topchiyski@yahoo.com)
+ *
+ *  Open Source project location: http://sourceforge.net/projects/bagaturchess/develop
+ *  SVN repository https://bagaturchess.svn.sourceforge.net/svnroot/bagaturchess
+ *
+ *  This file is part of BagaturChess program.
+ *
+ *  BagaturChess is open software: you can redistribute it and/or modify
+ *  it under the terms of the Eclipse Public License version 1.0 as published by
+ *  the Eclipse Foundation.
+ *
+ *  BagaturChess is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  Eclipse Public License for more details.
+ *
+ *  You should have received a copy of the Eclipse Public License version 1.0
+ *  along with BagaturChess. If not, see <http://www.eclipse.org/legal/epl-v10.html/>.
+ *
+ */
+
+
+package bagaturchess.engines.run;
+
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import bagaturchess.bitboard.api.BoardUtils;
+import bagaturchess.bitboard.api.IBitBoard;
+import bagaturchess.bitboard.impl.movelist.BaseMoveList;
+import bagaturchess.egtb.syzygy.SyzygyTBProbing;
+import bagaturchess.search.impl.eval.cache.EvalCache_Impl3;
+import bagaturchess.search.impl.eval.cache.EvalEntry_BaseImpl;
+import bagaturchess.search.impl.eval.cache.IEvalEntry;
+import bagaturchess.uci.api.ChannelManager;
+import bagaturchess.uci.impl.Channel_Console;
+
+
+/**
+ * Probes the Syzygy tablebases from many threads at the same time, in the same way as Search_PVS_NWS does:
+ * WDL and DTZ probes through one cache shared by all threads, and direct probes, which always call the native library.
+ * The positions are random walks from endgame positions, the results of each thread are compared with the results of a single threaded run.
+ * Each thread replays the walks of one start position on its own board, the neighbour threads use different start positions,
+ * so all tables are probed at the same time and the memory grows only with one board per thread.
+ *
+ * Usage: SyzygyStressTest <syzygy path> [threads] [rounds]
+ * The path can be omitted, if the environment variable SYZYGY_HOME is set.
+ * The tablebases and libJSyzygy of the repository are in Resources/bin/engine/egtb, e.g.:
+ * java -Djava.library.path=Resources/bin/engine/egtb/bin bagaturchess.engines.run.SyzygyStressTest Resources/bin/engine/egtb 64
+ * Without the native library only the WDL probes of the Java reader are tested.
+ */
+public class SyzygyStressTest {
+
+
+	private static final String[] FENS = new String[] {
+		"8/8/8/8/8/7k/5Kp1/8 b - - 0 1",
+		"4k3/8/8/8/8/8/3R4/4K3 w - - 0 1",
+		"8/8/4k3/8/8/8/2Q5/4K2r w - - 0 1",
+		"8/4k3/8/8/8/8/1B4N1/4K3 w - - 0 1",
+		"8/4k3/8/3p4/8/8/8/4KR2 w - - 0 1",
+	};
+
+	private static final int WALKS_PER_FEN 		= 40;
+
+	private static final int WALK_LENGTH 		= 30;
+
+	private static final long CACHE_SIZE 		= 16 * 1024 * 1024;
+
+
+	public static void main(String[] args) {
+
+		boolean ok = run(args);
+
+		//The console channel has a non-daemon thread
+		System.exit(ok ? 0 : 1);
+	}
+
+
+	/**
+	 * @return false if a probe result differs from the single threaded results
+	 */
+	private static boolean run(String[] args) {
+
+		String path 	= args.length > 0 ? args[0] : System.getenv("SYZYGY_HOME");
+		int threads 	= args.length > 1 ? Integer.parseInt(args[1]) : 64;
+		int rounds 		= args.length > 2 ? Integer.parseInt(args[2]) : 100;
+
+		ChannelManager.setChannel(new Channel_Console(System.in, System.out, System.out));
+
+		if (SyzygyTBProbing.getSingleton() == null) {
+
+			System.out.println("SyzygyStressTest: the JSyzygy library is not loaded");
+
+			return true;
+		}
+
+		SyzygyTBProbing.getSingleton().load(path);
+
+		int cardinality = SyzygyTBProbing.getSingleton().getCardinality();
+
+		if (cardinality <= 0) {
+
+			System.out.println("SyzygyStressTest: no tablebases loaded from " + path);
+
+			return true;
+		}
+
+
+		//Single threaded reference results, grouped by start position
+		final List<List<Walk>> walks = new ArrayList<List<Walk>>();
+
+		Random random = new Random(1);
+
+		for (int i = 0; i < FENS.length; i++) {
+
+			IBitBoard board = BoardUtils.createBoard_WithPawnsCache(FENS[i]);
+
+			if (board.getMaterialState().getPiecesCount() > cardinality) {
+
+				System.out.println("SyzygyStressTest: " + FENS[i] + " skipped, it has more pieces than the tablebases");
+
+				continue;
+			}
+
+			List<Walk> fen_walks = new ArrayList<Walk>();
+
+			for (int j = 0; j < WALKS_PER_FEN; j++) {
+
+				fen_walks.add(new Walk(i, board, random));
+			}
+
+			walks.add(fen_walks);
+		}
+
+		if (walks.size() == 0) {
+
+			System.out.println("SyzygyStressTest: all positions skipped");
+
+			return true;
+		}
+
+		int positions = 0;
+
+		for (int i = 0; i < walks.size(); i++) {
+
+			for (int j = 0; j < walks.get(i).size(); j++) {
+
+				positions += walks.get(i).get(j).wdl.length;
+			}
+		}
+
+		System.out.println("SyzygyStressTest: " + (walks.size() * WALKS_PER_FEN) + " walks with " + positions + " positions, threads=" + threads + ", rounds=" + rounds);
+
+
+		final EvalCache_Impl3.SharedTable cache = new EvalCache_Impl3.SharedTable(CACHE_SIZE);
+
+		final AtomicLong probes 	= new AtomicLong();
+		final AtomicLong errors 	= new AtomicLong();
+
+		final CountDownLatch start 	= new CountDownLatch(1);
+		final CountDownLatch done 	= new CountDownLatch(threads);
+
+		final int rounds_final 		= rounds;
+
+		List<EvalCache_Impl3> views = new ArrayList<EvalCache_Impl3>();
+
+		for (int t = 0; t < threads; t++) {
+
+			final EvalCache_Impl3 view = new EvalCache_Impl3(cache);
+
+			views.add(view);
+
+			final int thread_index = t;
+
+			Thread thread = new Thread(new Runnable() {
+
+
+				@Override
+				public void run() {
+
+					try {
+
+						start.await();
+
+						IEvalEntry entry = new EvalEntry_BaseImpl();
+
+						List<Walk> thread_walks = walks.get(thread_index % walks.size());
+
+						//One board of the start position, the walks are replayed on it
+						IBitBoard board = BoardUtils.createBoard_WithPawnsCache(FENS[thread_walks.get(0).fen_index]);
+
+						long count = 0;
+
+						for (int round = 0; round < rounds_final; round++) {
+
+							//The threads with the same start position start from different walks, so they probe different positions at the same time
+							for (int i = 0; i < thread_walks.size(); i++) {
+
+								Walk walk = thread_walks.get((i + thread_index / walks.size()) % thread_walks.size());
+
+								//Direct probes in each second round, so the native library is called by many threads at the same time
+								count += walk.verify(board, view, entry, (round & 1) == 1, errors);
+							}
+						}
+
+						probes.addAndGet(count);
+
+					} catch (Throwable t) {
+
+						t.printStackTrace();
+
+						errors.incrementAndGet();
+
+					} finally {
+
+						done.countDown();
+					}
+				}
+			});
+
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+		long start_time = System.currentTimeMillis();
+
+		start.countDown();
+
+		try {
+
+			done.await();
+
+		} catch (InterruptedException e) {
+
+			throw new IllegalStateException(e);
+		}
+
+		long time = Math.max(1, System.currentTimeMillis() - start_time);
+
+		int hitrate = 0;
+
+		for (int i = 0; i < views.size(); i++) {
+
+			hitrate += views.get(i).getHitRate();
+		}
+
+		System.out.println("SyzygyStressTest: probes=" + probes.get() + ", time=" + time + "ms, probes per second=" + (1000 * probes.get() / time)
+				+ ", cache hitrate=" + (hitrate / views.size()) + "%, errors=" + errors.get());
+
+		if (errors.get() != 0) {
+
+			System.out.println("SyzygyStressTest: " + errors.get() + " probes differ from the single threaded results");
+
+			return false;
+		}
+
+		return true;
+	}
+
+
+	/**
+	 * Random legal moves from a start position, together with the WDL and DTZ results of each position.
+	 * Each thread replays the moves on its own board of the start position.
+	 */
+	private static final class Walk {
+
+
+		private final int fen_index;
+
+		private final int[] moves;
+
+		private final int[] wdl;
+
+		private final int[] dtz;
+
+
+		Walk(int _fen_index, IBitBoard board, Random random) {
+
+			fen_index = _fen_index;
+
+			List<Integer> moves_list = new ArrayList<Integer>();
+
+			BaseMoveList list = new BaseMoveList();
+
+			for (int ply = 0; ply < WALK_LENGTH; ply++) {
+
+				list.clear();
+
+				board.genAllMoves(list);
+
+				List<Integer> legal = new ArrayList<Integer>();
+
+				int move;
+
+				while ((move = list.next()) != 0) {
+
+					int colour = board.getColourToMove();
+
+					board.makeMoveForward(move);
+
+					if (!board.isInCheck(colour)) {
+
+						legal.add(move);
+					}
+
+					board.makeMoveBackward(move);
+				}
+
+				if (legal.size() == 0) {
+
+					break;
+				}
+
+				move = legal.get(random.nextInt(legal.size()));
+
+				board.makeMoveForward(move);
+
+				moves_list.add(move);
+			}
+
+			moves = new int[moves_list.size()];
+
+			for (int i = 0; i < moves.length; i++) {
+
+				moves[i] = moves_list.get(i);
+			}
+
+			//Back to the start position
+			for (int i = moves.length - 1; i >= 0; i--) {
+
+				board.makeMoveBackward(moves[i]);
+			}
+
+			wdl = new int[moves.length + 1];
+
+			dtz = new int[moves.length + 1];
+
+			for (int i = 0; i <= moves.length; i++) {
+
+				wdl[i] = SyzygyTBProbing.getSingleton().probeWDL(board);
+
+				dtz[i] = SyzygyTBProbing.getSingleton().probeDTZ(board);
+
+				if (i < moves.length) {
+
+					board.makeMoveForward(moves[i]);
+				}
+			}
+
+			for (int i = moves.length - 1; i >= 0; i--) {
+
+				board.makeMoveBackward(moves[i]);
+			}
+		}
+
+
+		/**
+		 * @return the number of probes
+		 */
+		int verify(IBitBoard board, EvalCache_Impl3 cache, IEvalEntry entry, boolean direct, AtomicLong errors) {
+
+			for (int i = 0; i <= moves.length; i++) {
+
+				int wdl_result = direct ? SyzygyTBProbing.getSingleton().probeWDL(board) : probeWithCache(cache, entry, board, false);
+
+				int dtz_result = direct ? SyzygyTBProbing.getSingleton().probeDTZ(board) : probeWithCache(cache, entry, board, true);
+
+				if (wdl_result != wdl[i] || dtz_result != dtz[i]) {
+
+					errors.incrementAndGet();
+				}
+
+				if (i < moves.length) {
+
+					board.makeMoveForward(moves[i]);
+				}
+			}
+
+			for (int i = moves.length - 1; i >= 0; i--) {
+
+				board.makeMoveBackward(moves[i]);
+			}
+
+			return 2 * (moves.length + 1);
+		}
+
+
+		private static int probeWithCache(EvalCache_Impl3 cache, IEvalEntry entry, IBitBoard board, boolean dtz) {
+
+			long hashkey = SyzygyTBProbing.getCacheKey(board, dtz);
+
+			cache.get(hashkey, entry);
+
+			if (!entry.isEmpty()) {
+
+				return entry.getEval();
+			}
+
+			int probe_result = dtz ? SyzygyTBProbing.getSingleton().probeDTZ(board) : SyzygyTBProbing.getSingleton().probeWDL(board);
+
+			cache.put(hashkey, 5, probe_result);
+
+			return probe_result;
+		}
+	}
+}
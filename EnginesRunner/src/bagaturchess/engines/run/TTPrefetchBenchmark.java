@@ -0,0 +1,194 @@
+/*
+ *  BagaturChess (UCI chess engine and tools)
+ *  Copyright (C) 2005 Krasimir I. Topchiyski (k_topchiyski@yahoo.com)
+ *  
+ *  Open Source project location: http://sourceforge.net/projects/bagaturchess/develop
+ *  SVN repository https://bagaturchess.svn.sourceforge.net/svnroot/bagaturchess
+ *
+ *  This file is part of BagaturChess program.
+ * 
+ *  BagaturChess is open software: you can redistribute it and/or modify
+ *  it under the terms of the Eclipse Public License version 1.0 as published by
+ *  the Eclipse Foundation.
+ *
+ *  BagaturChess is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  Eclipse Public License for more details.
+ *
+ *  You should have received a copy of the Eclipse Public License version 1.0
+ *  along with BagaturChess. If not, see <http://www.eclipse.org/legal/epl-v10.html/>.
+ *
+ */
+
+
+package bagaturchess.engines.run;
+
+
+import java.util.concurrent.CountDownLatch;
+
+import bagaturchess.bitboard.api.BoardUtils;
+import bagaturchess.bitboard.api.IBitBoard;
+import bagaturchess.bitboard.impl.Constants;
+import bagaturchess.engines.cfg.base.RootSearchConfig_BaseImpl_1Core;
+import bagaturchess.engines.cfg.base.TimeConfigImpl;
+import bagaturchess.search.api.IRootSearch;
+import bagaturchess.search.api.internal.ISearchMediator;
+import bagaturchess.search.impl.alg.impl1.Search_PVS_NWS;
+import bagaturchess.search.impl.env.SharedData;
+import bagaturchess.search.impl.rootsearch.sequential.SequentialSearch_MTD;
+import bagaturchess.search.impl.uci_adaptor.UCISearchMediatorImpl_NormalSearch;
+import bagaturchess.search.impl.uci_adaptor.timemanagement.ITimeController;
+import bagaturchess.search.impl.uci_adaptor.timemanagement.TimeControllerFactory;
+import bagaturchess.uci.api.BestMoveSender;
+import bagaturchess.uci.api.ChannelManager;
+import bagaturchess.uci.impl.Channel_Console;
+import bagaturchess.uci.impl.commands.Go;
+import bagaturchess.uci.impl.commands.options.UCIOption;
+import bagaturchess.uci.impl.commands.options.UCIOptions;
+
+
+/**
+ * Measures the NPS of Search_PVS_NWS with the prefetching of the transposition table buckets selected by Search_PVS_NWS.USE_TT_PREFETCH.
+ * The gain is visible only if the table is much bigger than the CPU caches, so an off-heap table of several GB is used.
+ * To compare, run it once with each value of USE_TT_PREFETCH, e.g.:
+ * java -XX:MaxDirectMemorySize=5g bagaturchess.engines.run.TTPrefetchBenchmark 4096 14
+ *
+ * Usage: TTPrefetchBenchmark [OffHeapHash in MB] [depth]
+ */
+public class TTPrefetchBenchmark {
+
+
+	//The root search works on one game, so the positions are given as moves from the initial position
+	private static final String[] GAMES = new String[] {
+			"",
+			"e2e4 e7e5 g1f3 b8c6 f1b5 a7a6 b5a4 g8f6 e1g1 f8e7",
+			"d2d4 g8f6 c2c4 e7e6 b1c3 f8b4 e2e3 e8g8 f1d3 d7d5",
+			"e2e4 c7c5 g1f3 d7d6 d2d4 c5d4 f3d4 g8f6 b1c3 a7a6",
+			"d2d4 d7d5 c2c4 e7e6 b1c3 g8f6 c1g5 f8e7 e2e3 e8g8 g1f3 b8d7",
+			"c2c4 e7e5 b1c3 g8f6 g1f3 b8c6 g2g3 d7d5 c4d5 f6d5 f1g2 d5b6",
+	};
+
+
+	public static void main(String[] args) {
+
+		int hash_mb = args.length > 0 ? Integer.parseInt(args[0]) : 4096;
+
+		int depth = args.length > 1 ? Integer.parseInt(args[1]) : 14;
+
+
+		RootSearchConfig_BaseImpl_1Core cfg = new RootSearchConfig_BaseImpl_1Core(
+
+				new String[] {
+								Search_PVS_NWS.class.getName(),
+								bagaturchess.engines.cfg.base.SearchConfigImpl_AB.class.getName(),
+								bagaturchess.learning.goldmiddle.impl4.cfg.BoardConfigImpl_V20.class.getName(),
+								bagaturchess.learning.goldmiddle.impl4.cfg.EvaluationConfig_V20.class.getName(),
+					}
+				);
+
+		setOption(cfg, UCIOptions.OPTION_NAME_TranspositionTableType, "off heap");
+		setOption(cfg, UCIOptions.OPTION_NAME_OffHeapHash, hash_mb);
+
+		ChannelManager.setChannel(new Channel_Console(System.in, System.out, System.out));
+
+		SharedData sharedData = new SharedData(ChannelManager.getChannel(), cfg);
+
+		IRootSearch search = new SequentialSearch_MTD(new Object[] {cfg, sharedData});
+
+
+		long total_nodes = 0;
+
+		long total_time = 0;
+
+		search.createBoard(BoardUtils.createBoard_WithPawnsCache(Constants.INITIAL_BOARD, cfg.getBoardConfig()));
+
+		for (int i = 0; i < GAMES.length; i++) {
+
+			IBitBoard bitboard = BoardUtils.createBoard_WithPawnsCache(Constants.INITIAL_BOARD, cfg.getBoardConfig());
+
+			BoardUtils.playGameUCI(bitboard, GAMES[i]);
+
+			long start_time = System.currentTimeMillis();
+
+			long nodes = search(search, bitboard, depth);
+
+			long time = Math.max(1, System.currentTimeMillis() - start_time);
+
+			System.out.println("TTPrefetchBenchmark: moves=[" + GAMES[i] + "] nodes=" + nodes + ", time=" + time + "ms, NPS=" + (nodes * 1000 / time));
+
+			total_nodes += nodes;
+
+			total_time += time;
+		}
+
+		System.out.println("TTPrefetchBenchmark: prefetch=" + Search_PVS_NWS.USE_TT_PREFETCH + ", OffHeapHash=" + hash_mb + "MB, depth=" + depth
+				+ ", nodes=" + total_nodes + ", time=" + total_time + "ms, NPS=" + (total_nodes * 1000 / Math.max(1, total_time)));
+
+		search.shutDown();
+
+		System.exit(0);
+	}
+
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static void setOption(RootSearchConfig_BaseImpl_1Core cfg, String name, Object value) {
+
+		UCIOption[] options = cfg.getSupportedOptions();
+
+		for (int i = 0; i < options.length; i++) {
+
+			if (options[i].getName().equals(name)) {
+
+				options[i].setValue(value);
+
+				return;
+			}
+		}
+
+		throw new IllegalStateException("Option not found: " + name);
+	}
+
+
+	private static long search(IRootSearch search, IBitBoard bitboard, int depth) {
+
+		final CountDownLatch finished = new CountDownLatch(1);
+
+		//Each position is a new search, so the transposition table entries of the previous positions age
+		search.getSharedData().newSearch();
+
+		Go go = new Go(ChannelManager.getChannel(), "go depth " + depth);
+
+		ITimeController timeController = TimeControllerFactory.createTimeController(new TimeConfigImpl(), bitboard.getColourToMove(), go);
+
+		ISearchMediator mediator = new UCISearchMediatorImpl_NormalSearch(ChannelManager.getChannel(),
+
+				go,
+
+				timeController,
+
+				bitboard.getColourToMove(),
+
+				new BestMoveSender() {
+					@Override
+					public void sendBestMove() {
+						finished.countDown();
+					}
+				},
+
+				search, false);
+
+		search.negamax(bitboard, mediator, timeController, go);
+
+		try {
+
+			finished.await();
+
+		} catch (InterruptedException e) {
+
+			throw new IllegalStateException(e);
+		}
+
+		return mediator.getLastInfo() == null ? 0 : mediator.getLastInfo().getSearchedNodes();
+	}
+}
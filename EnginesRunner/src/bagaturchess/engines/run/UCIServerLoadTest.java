@@ -0,0 +1,264 @@
+/*
+ *  BagaturChess (UCI chess engine and tools)
+ *  Copyright (C) 2005 Krasimir I. Topchiyski (k_topchiyski@yahoo.com)
+ *
+ *  Open Source project location: http://sourceforge.net/projects/bagaturchess/develop
+ *  SVN repository https://bagaturchess.svn.sourceforge.net/svnroot/bagaturchess
+ *
+ *  This file is part of BagaturChess program.
+ *
+ *  BagaturChess is open software: you can redistribute it and/or modify
+ *  it under the terms of the Eclipse Public License version 1.0 as published by
+ *  the Eclipse Foundation.
+ *
+ *  BagaturChess is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  Eclipse Public License for more details.
+ *
+ *  You should have received a copy of the Eclipse Public License version 1.0
+ *  along with BagaturChess. If not, see <http://www.eclipse.org/legal/epl-v10.html/>.
+ *
+ */
+
+
+package bagaturchess.engines.run;
+
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import bagaturchess.uci.remote.UCIServer;
+
+
+/**
+ * Starts a local UCIServer and drives many concurrent sessions against it.
+ * Each client plays the same short game: for each position it sends the moves and a fixed depth search and waits for the best move.
+ * All sessions are connected at the same time, so the server holds all engine instances at once.
+ * Besides the memory of the caches, each engine instance needs about 20MB for the move generators of its boards (e.g. -Xmx3g for 100 sessions).
+ *
+ * Usage: UCIServerLoadTest [sessions=100] [depth=6] [positions per session=4] [memory per session in MB=4]
+ */
+public class UCIServerLoadTest {
+
+
+	private static final String[] GAME = new String[] {"e2e4", "e7e5", "g1f3", "b8c6", "f1b5", "a7a6", "b5a4", "g8f6"};
+
+
+	public static void main(String[] args) {
+
+		final int sessions 		= args.length > 0 ? Integer.parseInt(args[0]) : 100;
+		final int depth 		= args.length > 1 ? Integer.parseInt(args[1]) : 6;
+		final int positions 	= args.length > 2 ? Integer.parseInt(args[2]) : 4;
+		int memory 				= args.length > 3 ? Integer.parseInt(args[3]) : 4;
+
+		final UCIServer server = new UCIServer(0, sessions, 1, memory, new String[] {
+				"bagaturchess.engines.cfg.base.UCIConfig_BaseImpl",
+				"bagaturchess.search.impl.uci_adaptor.UCISearchAdaptorImpl_PonderingOpponentMove",
+				"bagaturchess.engines.cfg.base.UCISearchAdaptorConfig_BaseImpl",
+				"bagaturchess.search.impl.rootsearch.sequential.SequentialSearch_MTD",
+				"bagaturchess.engines.cfg.base.RootSearchConfig_BaseImpl_1Core",
+				"bagaturchess.search.impl.alg.impl1.Search_PVS_NWS",
+				"bagaturchess.engines.cfg.base.SearchConfigImpl_AB",
+				"bagaturchess.learning.goldmiddle.impl4.cfg.BoardConfigImpl_V20",
+				"bagaturchess.learning.goldmiddle.impl4.cfg.EvaluationConfig_V20", });
+
+		Thread acceptor = new Thread(new Runnable() {
+
+
+			@Override
+			public void run() {
+
+				server.start();
+			}
+		});
+
+		acceptor.setDaemon(true);
+		acceptor.start();
+
+
+		final CountDownLatch connected = new CountDownLatch(sessions);
+
+		final AtomicInteger max_sessions = new AtomicInteger();
+
+		final AtomicInteger failed = new AtomicInteger();
+
+		final AtomicLong searches = new AtomicLong();
+
+		final long[] latencies = new long[sessions * positions];
+
+		final AtomicInteger latencies_count = new AtomicInteger();
+
+		List<Thread> clients = new ArrayList<Thread>();
+
+		long start = System.currentTimeMillis();
+
+		for (int i = 0; i < sessions; i++) {
+
+			Thread client = new Thread(new Runnable() {
+
+
+				@Override
+				public void run() {
+
+					Socket socket = null;
+
+					try {
+
+						socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+
+						BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+						BufferedWriter out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()));
+
+						send(out, "uci");
+						waitFor(in, "uciok");
+
+						send(out, "isready");
+						waitFor(in, "readyok");
+
+						//All sessions are created before the first search
+						connected.countDown();
+
+						updateMax(max_sessions, server.getSessionsCount());
+
+						connected.await();
+
+						for (int p = 0; p < positions; p++) {
+
+							StringBuilder position = new StringBuilder("position startpos moves");
+
+							for (int m = 0; m <= p % GAME.length; m++) {
+
+								position.append(' ').append(GAME[m]);
+							}
+
+							long search_start = System.nanoTime();
+
+							send(out, position.toString());
+							send(out, "go depth " + depth);
+
+							String bestmove = waitFor(in, "bestmove");
+
+							latencies[latencies_count.getAndIncrement()] = System.nanoTime() - search_start;
+
+							if (bestmove.trim().split(" ").length < 2) {
+
+								throw new IllegalStateException("No best move: " + bestmove);
+							}
+
+							searches.incrementAndGet();
+						}
+
+						send(out, "quit");
+
+					} catch (Throwable t) {
+
+						failed.incrementAndGet();
+
+						connected.countDown();
+
+						System.out.println("UCIServerLoadTest: session failed: " + t);
+
+					} finally {
+
+						if (socket != null) {
+
+							try {
+
+								socket.close();
+
+							} catch (IOException e) {}
+						}
+					}
+				}
+			});
+
+			clients.add(client);
+
+			client.start();
+		}
+
+		for (int i = 0; i < clients.size(); i++) {
+
+			try {
+
+				clients.get(i).join();
+
+			} catch (InterruptedException e) {
+
+				throw new IllegalStateException(e);
+			}
+		}
+
+		long time = System.currentTimeMillis() - start;
+
+		long[] sorted = Arrays.copyOf(latencies, latencies_count.get());
+
+		Arrays.sort(sorted);
+
+		System.out.println("UCIServerLoadTest: sessions " + sessions + ", max concurrent " + max_sessions.get() + ", failed " + failed.get()
+				+ ", searches " + searches.get() + " in " + time + "ms");
+
+		if (sorted.length > 0) {
+
+			System.out.println("UCIServerLoadTest: search latency p50 " + (sorted[sorted.length / 2] / 1000000) + "ms"
+					+ ", p99 " + (sorted[(int) (0.99 * (sorted.length - 1))] / 1000000) + "ms"
+					+ ", max " + (sorted[sorted.length - 1] / 1000000) + "ms");
+		}
+
+		System.out.println("UCIServerLoadTest: heap used " + ((Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory()) / (1024 * 1024)) + "MB");
+
+		server.stop();
+
+		System.exit(failed.get() == 0 ? 0 : 1);
+	}
+
+
+	private static void updateMax(AtomicInteger max, int value) {
+
+		int current = max.get();
+
+		while (value > current && !max.compareAndSet(current, value)) {
+
+			current = max.get();
+		}
+	}
+
+
+	private static void send(BufferedWriter out, String command) throws IOException {
+
+		out.write(command);
+		out.write("\n");
+		out.flush();
+	}
+
+
+	private static String waitFor(BufferedReader in, String prefix) throws IOException {
+
+		while (true) {
+
+			String line = in.readLine();
+
+			if (line == null) {
+
+				throw new IOException("Connection closed while waiting for " + prefix);
+			}
+
+			if (line.startsWith(prefix)) {
+
+				return line;
+			}
+		}
+	}
+}
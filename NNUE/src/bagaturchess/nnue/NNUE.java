@@ -2,10 +2,11 @@ package bagaturchess.nnue;
 
 
 import java.io.File;
+import java.io.RandomAccessFile;
 import java.net.URI;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
-import java.nio.file.Files;
+import java.nio.channels.FileChannel;
 import java.nio.file.Paths;
 import java.util.Arrays;
 
@@ -52,7 +53,8 @@ public class NNUE {
     private static final int[] output_biases = new int[1];
 
     private static final int[] ft_biases = new int[kHalfDimensions];
-    private static final int[] ft_weights = new int[kHalfDimensions * FtInDims];
+    //The weights are shorts in the file, so short[] uses half of the memory of int[]
+    private static final short[] ft_weights = new short[kHalfDimensions * FtInDims];
 
     private static final int NnueVersion = 0x7AF32F16;
     private static final int TransformerStart = 3 * 4 + 177;
@@ -78,18 +80,24 @@ public class NNUE {
 
     private static boolean load_eval_file(URI evalFile) {
         try {
-            byte[] evalData = Files.readAllBytes(Paths.get(evalFile));
-            if (!verify_net(evalData)) return false;
-            init_weights(evalData);
-            return true;
+            //The file is memory-mapped instead of copied into a byte array
+            RandomAccessFile file = new RandomAccessFile(Paths.get(evalFile).toFile(), "r");
+            try {
+                ByteBuffer evalData = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+                if (!verify_net(evalData)) return false;
+                init_weights(evalData);
+                return true;
+            } finally {
+                file.close();
+            }
         } catch (Exception e) {
             e.printStackTrace();
             return false;
         }
     }
 
-    private static boolean verify_net(byte[] evalData) {
-        ByteBuffer buffer = ByteBuffer.wrap(evalData).order(ByteOrder.LITTLE_ENDIAN);
+    private static boolean verify_net(ByteBuffer evalData) {
+        ByteBuffer buffer = evalData.duplicate().order(ByteOrder.LITTLE_ENDIAN);
         if (buffer.getInt(0) != NnueVersion) return false;
         if (buffer.getInt(4) != 0x3e5aa6ee) return false;
         if (buffer.getInt(8) != 177) return false;
@@ -98,8 +106,8 @@ public class NNUE {
         return true;
     }
 
-    private static void init_weights(byte[] evalData) {
-        ByteBuffer buffer = ByteBuffer.wrap(evalData).order(ByteOrder.LITTLE_ENDIAN);
+    private static void init_weights(ByteBuffer evalData) {
+        ByteBuffer buffer = evalData.duplicate().order(ByteOrder.LITTLE_ENDIAN);
         int offset = TransformerStart + 4;
 
         // Read transformer
@@ -107,10 +115,9 @@ public class NNUE {
             ft_biases[i] = buffer.getShort(offset);
             offset += 2;
         }
-        for (int i = 0; i < kHalfDimensions * FtInDims; i++) {
-            ft_weights[i] = buffer.getShort(offset);
-            offset += 2;
-        }
+        buffer.position(offset);
+        buffer.slice().order(ByteOrder.LITTLE_ENDIAN).asShortBuffer().get(ft_weights);
+        offset += 2 * ft_weights.length;
 
         // Read network
         offset += 4;
@@ -0,0 +1,337 @@
+package bagaturchess.nnue_v2;
+
+
+import bagaturchess.bitboard.api.IBitBoard;
+import bagaturchess.bitboard.common.MoveListener;
+import bagaturchess.bitboard.impl.Constants;
+
+
+/**
+ * Keeps one pair of accumulators per ply of the board.
+ * The moves only record which features are removed and added, the accumulators are computed lazily,
+ * when a position is evaluated, starting from the nearest already computed ply.
+ * A perspective is refreshed from the board if its king changes the input bucket, the refresh uses the FinnyTable.
+ */
+public class AccumulatorStack implements MoveListener {
+
+
+	private static final int INITIAL_SIZE = 256;
+
+	//A move removes and adds one piece, a capture removes one more piece. Castling is not recorded, it refreshes the accumulators.
+	private static final int MAX_CHANGES = 2;
+
+
+	private final NNUE network;
+
+	private final IBitBoard bitboard;
+
+	private final NNUEProbeUtils.Input input;
+
+	private final FinnyTable finny_table;
+
+	private Entry[] entries;
+
+	private int ply;
+
+
+	public AccumulatorStack(NNUE _network, IBitBoard _bitboard) {
+
+		network = _network;
+
+		bitboard = _bitboard;
+
+		input = new NNUEProbeUtils.Input();
+
+		finny_table = new FinnyTable(network);
+
+		entries = new Entry[INITIAL_SIZE];
+
+		//The first position is always computed from the board
+		entries[0] = new Entry(network);
+		entries[0].clear();
+	}
+
+
+	public Accumulators getAccumulators() {
+
+		Entry entry = entries[ply];
+
+		boolean input_filled = false;
+
+		for (int perspective = NNUE.WHITE; perspective <= NNUE.BLACK; perspective++) {
+
+			if (entry.computed[perspective]) {
+
+				continue;
+			}
+
+			int start = findComputedPly(perspective);
+
+			//Each ply changes up to 3 features, so after many plies a refresh is faster
+			if (start != -1 && 3 * (ply - start) > bitboard.getMaterialState().getPiecesCount()) {
+
+				start = -1;
+			}
+
+			if (start == -1) {
+
+				if (!input_filled) {
+
+					NNUEProbeUtils.fillInput(bitboard, input);
+
+					input_filled = true;
+				}
+
+				refresh(entry, perspective);
+
+			} else {
+
+				for (int i = start + 1; i <= ply; i++) {
+
+					update(entries[i - 1], entries[i], perspective);
+				}
+			}
+		}
+
+		return entry.accumulators;
+	}
+
+
+	/**
+	 * @return the nearest ply, which accumulator of the given perspective is already computed,
+	 * or -1 if the accumulator has to be refreshed from the board
+	 */
+	private int findComputedPly(int perspective) {
+
+		for (int i = ply; i > 0; i--) {
+
+			if (entries[i].refresh[perspective]) {
+
+				return -1;
+			}
+
+			if (entries[i - 1].computed[perspective]) {
+
+				return i - 1;
+			}
+		}
+
+		return -1;
+	}
+
+
+	private void refresh(Entry entry, int perspective) {
+
+		finny_table.refresh(getAccumulator(entry, perspective), perspective, input);
+
+		entry.computed[perspective] = true;
+	}
+
+
+	private void update(Entry previous, Entry entry, int perspective) {
+
+		NNUE.NNUEAccumulator accumulator = getAccumulator(entry, perspective);
+
+		accumulator.copyFrom(getAccumulator(previous, perspective));
+
+		if (entry.sub_count == 1 && entry.add_count == 1) {
+
+			accumulator.addsub(NNUE.getIndex(entry.add_square[0], entry.add_color[0], entry.add_piece[0], perspective),
+					NNUE.getIndex(entry.sub_square[0], entry.sub_color[0], entry.sub_piece[0], perspective));
+
+		} else {
+
+			for (int i = 0; i < entry.sub_count; i++) {
+
+				accumulator.sub(NNUE.getIndex(entry.sub_square[i], entry.sub_color[i], entry.sub_piece[i], perspective));
+			}
+
+			for (int i = 0; i < entry.add_count; i++) {
+
+				accumulator.add(NNUE.getIndex(entry.add_square[i], entry.add_color[i], entry.add_piece[i], perspective));
+			}
+		}
+
+		entry.computed[perspective] = true;
+	}
+
+
+	private static NNUE.NNUEAccumulator getAccumulator(Entry entry, int perspective) {
+
+		return perspective == NNUE.WHITE ? entry.accumulators.getWhiteAccumulator() : entry.accumulators.getBlackAccumulator();
+	}
+
+
+	@Override
+	public final void postForwardMove(int color, int move) {
+
+		ply++;
+
+		if (ply == entries.length) {
+
+			Entry[] new_entries = new Entry[2 * entries.length];
+
+			System.arraycopy(entries, 0, new_entries, 0, entries.length);
+
+			entries = new_entries;
+		}
+
+		if (entries[ply] == null) {
+
+			entries[ply] = new Entry(network);
+		}
+
+		Entry entry = entries[ply];
+
+		entry.clear();
+
+
+		color = NNUEProbeUtils.convertColor(color);
+
+		int pieceType = bitboard.getMoveOps().getFigureType(move);
+		int square_from = NNUEProbeUtils.convertSquare(bitboard.getMoveOps().getFromFieldID(move));
+		int square_to = NNUEProbeUtils.convertSquare(bitboard.getMoveOps().getToFieldID(move));
+
+		if (bitboard.getMoveOps().isCastling(move)) {
+
+			//Rare and the rook squares depend on the chess variant, so both perspectives are computed from the board
+			entry.refresh[NNUE.WHITE] = true;
+			entry.refresh[NNUE.BLACK] = true;
+
+			return;
+		}
+
+		if (pieceType == Constants.TYPE_KING
+				&& NNUE.chooseInputBucket(square_from, color) != NNUE.chooseInputBucket(square_to, color)) {
+
+			entry.refresh[color] = true;
+		}
+
+		int piece = NNUEProbeUtils.convertPiece(pieceType, color);
+
+		entry.addSub(color, piece, square_from);
+
+		if (bitboard.getMoveOps().isPromotion(move)) {
+
+			entry.addAdd(color, NNUEProbeUtils.convertPiece(bitboard.getMoveOps().getPromotionFigureType(move), color), square_to);
+
+		} else {
+
+			entry.addAdd(color, piece, square_to);
+		}
+
+		if (bitboard.getMoveOps().isEnpassant(move)) {
+
+			//The captured pawn is behind the destination square
+			entry.addSub(1 - color, NNUEProbeUtils.convertPiece(Constants.TYPE_PAWN, 1 - color), color == NNUE.WHITE ? square_to - 8 : square_to + 8);
+
+		} else if (bitboard.getMoveOps().isCapture(move)) {
+
+			entry.addSub(1 - color, NNUEProbeUtils.convertPiece(bitboard.getMoveOps().getCapturedFigureType(move), 1 - color), square_to);
+		}
+	}
+
+
+	@Override
+	public final void postBackwardMove(int color, int move) {
+
+		if (ply == 0) {
+
+			//The board goes back before the position, in which the stack was created, so it is computed from the board again
+			entries[0].clear();
+
+			return;
+		}
+
+		//The accumulators of the previous ply are still valid
+		ply--;
+	}
+
+
+	@Override
+	public final void preForwardMove(int color, int move) {
+
+		//Do nothing
+	}
+
+
+	@Override
+	public final void preBackwardMove(int color, int move) {
+
+		//Do nothing
+	}
+
+
+	@Override
+	public final void addPiece_Special(int color, int type) {
+
+		//Do nothing
+	}
+
+
+	@Override
+	public final void initially_addPiece(int color, int type, long bb_pieces) {
+
+		//Do nothing
+	}
+
+
+	private static final class Entry {
+
+
+		private final Accumulators accumulators;
+
+		private final boolean[] computed = new boolean[2];
+
+		private final boolean[] refresh = new boolean[2];
+
+		private int sub_count;
+		private final int[] sub_color = new int[MAX_CHANGES];
+		private final int[] sub_piece = new int[MAX_CHANGES];
+		private final int[] sub_square = new int[MAX_CHANGES];
+
+		private int add_count;
+		private final int[] add_color = new int[MAX_CHANGES];
+		private final int[] add_piece = new int[MAX_CHANGES];
+		private final int[] add_square = new int[MAX_CHANGES];
+
+
+		Entry(NNUE network) {
+
+			accumulators = new Accumulators(network);
+		}
+
+
+		void clear() {
+
+			computed[NNUE.WHITE] = false;
+			computed[NNUE.BLACK] = false;
+
+			refresh[NNUE.WHITE] = false;
+			refresh[NNUE.BLACK] = false;
+
+			sub_count = 0;
+			add_count = 0;
+		}
+
+
+		void addSub(int color, int piece, int square) {
+
+			sub_color[sub_count] = color;
+			sub_piece[sub_count] = piece;
+			sub_square[sub_count] = square;
+
+			sub_count++;
+		}
+
+
+		void addAdd(int color, int piece, int square) {
+
+			add_color[add_count] = color;
+			add_piece[add_count] = piece;
+			add_square[add_count] = square;
+
+			add_count++;
+		}
+	}
+}
@@ -14,26 +14,28 @@ public class Accumulators
 	
 	public void fullAccumulatorUpdate(int white_king_sq, int black_king_sq, int[] white_pieces, int[] white_squares, int[] black_pieces, int[] black_squares)
 	{
-		whiteAccumulator.reset();
-		blackAccumulator.reset();
+		fullAccumulatorUpdate(whiteAccumulator, NNUE.WHITE, white_king_sq, white_pieces, white_squares, black_pieces, black_squares);
+		fullAccumulatorUpdate(blackAccumulator, NNUE.BLACK, black_king_sq, white_pieces, white_squares, black_pieces, black_squares);
+	}
+	
+	public static void fullAccumulatorUpdate(NNUE.NNUEAccumulator accumulator, int perspective, int king_sq, int[] white_pieces, int[] white_squares, int[] black_pieces, int[] black_squares)
+	{
+		accumulator.reset();
 		
-		whiteAccumulator.setBucketIndex(NNUE.chooseInputBucket(white_king_sq, NNUE.WHITE));
-		blackAccumulator.setBucketIndex(NNUE.chooseInputBucket(black_king_sq, NNUE.BLACK));
+		accumulator.setBucketIndex(NNUE.chooseInputBucket(king_sq, perspective));
 		
 		for (int i = 0; i < white_pieces.length; i++) {
 			if (white_pieces[i] == -1) {
 				break;
 			}
-			whiteAccumulator.add(NNUE.getIndex(white_squares[i], NNUE.WHITE, white_pieces[i], NNUE.WHITE));
-			blackAccumulator.add(NNUE.getIndex(white_squares[i], NNUE.WHITE, white_pieces[i], NNUE.BLACK));
+			accumulator.add(NNUE.getIndex(white_squares[i], NNUE.WHITE, white_pieces[i], perspective));
 		}
 		
 		for (int i = 0; i < black_pieces.length; i++) {
 			if (black_pieces[i] == -1) {
 				break;
 			}
-			whiteAccumulator.add(NNUE.getIndex(black_squares[i], NNUE.BLACK, black_pieces[i], NNUE.WHITE));
-			blackAccumulator.add(NNUE.getIndex(black_squares[i], NNUE.BLACK, black_pieces[i], NNUE.BLACK));
+			accumulator.add(NNUE.getIndex(black_squares[i], NNUE.BLACK, black_pieces[i], perspective));
 		}
 	}
 	
@@ -0,0 +1,113 @@
+package bagaturchess.nnue_v2;
+
+
+/**
+ * Refresh cache of the accumulators, one entry per perspective and king input bucket.
+ * Each entry keeps the accumulator and the pieces, for which it was computed last time.
+ * A refresh only removes and adds the pieces, which differ from the cached ones, instead of summing all pieces.
+ * It is not thread safe and is used by one AccumulatorStack.
+ */
+public class FinnyTable {
+
+
+	private final Entry[][] entries;
+
+	private final long[][] pieces;
+
+
+	public FinnyTable(NNUE network) {
+
+		entries = new Entry[2][NNUE.INPUT_BUCKET_SIZE];
+
+		for (int perspective = NNUE.WHITE; perspective <= NNUE.BLACK; perspective++) {
+
+			for (int bucket = 0; bucket < NNUE.INPUT_BUCKET_SIZE; bucket++) {
+
+				entries[perspective][bucket] = new Entry(network, bucket);
+			}
+		}
+
+		pieces = new long[2][6];
+	}
+
+
+	public void refresh(NNUE.NNUEAccumulator accumulator, int perspective, NNUEProbeUtils.Input input) {
+
+		int king_sq = perspective == NNUE.WHITE ? input.white_king_sq : input.black_king_sq;
+
+		Entry entry = entries[perspective][NNUE.chooseInputBucket(king_sq, perspective)];
+
+		fillPieces(input);
+
+		for (int color = NNUE.WHITE; color <= NNUE.BLACK; color++) {
+
+			for (int piece = 0; piece < 6; piece++) {
+
+				long cached = entry.pieces[color][piece];
+
+				long current = pieces[color][piece];
+
+				long removed = cached & ~current;
+
+				while (removed != 0) {
+
+					entry.accumulator.sub(NNUE.getIndex(Long.numberOfTrailingZeros(removed), color, piece, perspective));
+
+					removed &= removed - 1;
+				}
+
+				long added = current & ~cached;
+
+				while (added != 0) {
+
+					entry.accumulator.add(NNUE.getIndex(Long.numberOfTrailingZeros(added), color, piece, perspective));
+
+					added &= added - 1;
+				}
+
+				entry.pieces[color][piece] = current;
+			}
+		}
+
+		accumulator.copyFrom(entry.accumulator);
+	}
+
+
+	private void fillPieces(NNUEProbeUtils.Input input) {
+
+		for (int piece = 0; piece < 6; piece++) {
+
+			pieces[NNUE.WHITE][piece] = 0;
+			pieces[NNUE.BLACK][piece] = 0;
+		}
+
+		for (int i = 0; input.white_pieces[i] != -1; i++) {
+
+			pieces[NNUE.WHITE][input.white_pieces[i]] |= 1L << input.white_squares[i];
+		}
+
+		for (int i = 0; input.black_pieces[i] != -1; i++) {
+
+			pieces[NNUE.BLACK][input.black_pieces[i]] |= 1L << input.black_squares[i];
+		}
+	}
+
+
+	private static final class Entry {
+
+
+		private final NNUE.NNUEAccumulator accumulator;
+
+		//Squares of the pieces per colour and piece type, which are included in the accumulator
+		private final long[][] pieces;
+
+
+		Entry(NNUE network, int bucket) {
+
+			//Initially the accumulator has only the biases and there are no pieces
+			accumulator = new NNUE.NNUEAccumulator(network, bucket);
+
+			pieces = new long[2][6];
+		}
+	}
+}
@@ -0,0 +1,26 @@
+package bagaturchess.nnue_v2;
+
+
+/**
+ * Numeric kernels of the network: the updates of the accumulators and the output layer.
+ * The implementations must return exactly the same results, they differ only in speed.
+ */
+public interface IKernel {
+	
+	
+	public String getName();
+	
+	/**
+	 * Adds weights[offset + i] to values[i] for each i of values
+	 */
+	public void add(short[] values, short[] weights, int offset);
+	
+	public void sub(short[] values, short[] weights, int offset);
+	
+	public void addsub(short[] values, short[] weights, int offset_add, int offset_sub);
+	
+	/**
+	 * @return the sum of SCReLU(us[i]) * L2Weights[i] + SCReLU(them[i]) * L2Weights[i + us.length], before the division by QA
+	 */
+	public int output(short[] us, short[] them, short[] L2Weights);
+}
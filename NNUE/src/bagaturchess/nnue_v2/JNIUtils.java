@@ -15,6 +15,8 @@ public class JNIUtils {
 	
 	private static final String FILE_SCHEME = "file";
 	
+	private static boolean loaded;
+	
 	
 	static {
 		
@@ -25,6 +27,12 @@ public class JNIUtils {
 	public static native int evaluateVectorized(short[] L2Weights, short[] UsValues, short[] ThemValues);
 
 	
+	public static boolean isLoaded() {
+		
+		return loaded;
+	}
+	
+	
 	public static void loadLib() {
 		
 		try {
@@ -50,6 +58,8 @@ public class JNIUtils {
                 }
             }
             
+            loaded = true;
+            
         } catch (Throwable t) {
         	
         	if (ChannelManager.getChannel() != null) ChannelManager.getChannel().dump("Unable to load JNNUE library " + t);
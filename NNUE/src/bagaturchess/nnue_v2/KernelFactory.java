@@ -0,0 +1,90 @@
+package bagaturchess.nnue_v2;
+
+
+import bagaturchess.uci.api.ChannelManager;
+
+
+/**
+ * Selects the kernel at startup with the system property bagatur.nnue.kernel = java | jni | vector.
+ * If the property is not set, the vector kernel is used when it is available, otherwise the java kernel.
+ * If the native library of the jni kernel cannot be loaded or the vector kernel is not available, the java kernel is used.
+ *
+ * The vector kernel is available if the JVM is started with --add-modules jdk.incubator.vector (JDK 16+)
+ * and the class Kernel_Vector, compiled from the src_vector folder, is in the classpath.
+ */
+public class KernelFactory {
+	
+	
+	public static final String PROPERTY_NAME 	= "bagatur.nnue.kernel";
+	
+	public static final String KERNEL_JAVA 		= "java";
+	public static final String KERNEL_JNI 		= "jni";
+	public static final String KERNEL_VECTOR 	= "vector";
+	
+	private static final String CLASS_NAME_VECTOR_API 		= "jdk.incubator.vector.IntVector";
+	private static final String CLASS_NAME_KERNEL_VECTOR 	= "bagaturchess.nnue_v2.Kernel_Vector";
+	
+	
+	public static IKernel create() {
+		
+		String name = System.getProperty(PROPERTY_NAME);
+		
+		if (name == null) {
+			
+			name = createVector() != null ? KERNEL_VECTOR : KERNEL_JAVA;
+		}
+		
+		return create(name);
+	}
+	
+	
+	public static IKernel create(String name) {
+		
+		IKernel kernel;
+		
+		if (KERNEL_JAVA.equals(name)) {
+			
+			kernel = new Kernel_Java();
+			
+		} else if (KERNEL_JNI.equals(name)) {
+			
+			kernel = JNIUtils.isLoaded() ? new Kernel_JNI() : new Kernel_Java();
+			
+		} else if (KERNEL_VECTOR.equals(name)) {
+			
+			kernel = createVector();
+			
+			if (kernel == null) {
+				
+				kernel = new Kernel_Java();
+			}
+			
+		} else {
+			
+			throw new IllegalStateException(PROPERTY_NAME + " set to illegal value = " + name);
+		}
+		
+		if (ChannelManager.getChannel() != null) ChannelManager.getChannel().dump("NNUE kernel: requested=" + name + ", used=" + kernel.getName());
+		
+		return kernel;
+	}
+	
+	
+	/**
+	 * @return the vector kernel or null, if the Vector API module is not present or the kernel class is not compiled
+	 */
+	private static IKernel createVector() {
+		
+		try {
+			
+			Class.forName(CLASS_NAME_VECTOR_API);
+			
+			return (IKernel) Class.forName(CLASS_NAME_KERNEL_VECTOR).newInstance();
+			
+		} catch (Throwable t) {
+			
+			//ClassNotFoundException, if the module is not added, or UnsupportedClassVersionError on older JVMs
+			return null;
+		}
+	}
+}
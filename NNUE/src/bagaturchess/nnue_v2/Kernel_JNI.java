@@ -0,0 +1,22 @@
+package bagaturchess.nnue_v2;
+
+
+/**
+ * The output layer is computed by the native VectorEval library with SIMD instructions, the accumulators are updated as in Kernel_Java.
+ */
+public class Kernel_JNI extends Kernel_Java {
+	
+	
+	@Override
+	public String getName() {
+		
+		return "jni";
+	}
+	
+	
+	@Override
+	public int output(short[] us, short[] them, short[] L2Weights) {
+		
+		return JNIUtils.evaluateVectorized(L2Weights, us, them);
+	}
+}
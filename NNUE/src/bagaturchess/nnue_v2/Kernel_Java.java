@@ -0,0 +1,84 @@
+package bagaturchess.nnue_v2;
+
+
+/**
+ * Pure Java implementation.
+ * The accumulator loops are simple counted loops over flat arrays, which the C2 compiler translates to SIMD instructions.
+ * The output layer uses a lookup table for SCReLU, because C2 does not vectorize the clamp and the int sum of this loop
+ * and the table is faster than the computed clamp (measured with KernelsBenchmark on JDK 17).
+ */
+public class Kernel_Java implements IKernel {
+	
+	
+	private static final int[] screlu = new int[Short.MAX_VALUE - Short.MIN_VALUE + 1];
+	
+	
+	static
+	{
+		for(int i = Short.MIN_VALUE; i <= Short.MAX_VALUE;i ++)
+		{
+			screlu[i - (int) Short.MIN_VALUE] = screlu((short)(i));
+		}
+	}
+	
+	
+	private static int screlu(short i)
+	{
+		int v = Math.max(0, Math.min(i, NNUE.QA));
+		return v * v;
+	}
+	
+	
+	@Override
+	public String getName() {
+		
+		return "java";
+	}
+	
+	
+	@Override
+	public void add(short[] values, short[] weights, int offset) {
+		
+		for (int i = 0; i < values.length; i++)
+		{
+			values[i] += weights[offset + i];
+		}
+	}
+	
+	
+	@Override
+	public void sub(short[] values, short[] weights, int offset) {
+		
+		for (int i = 0; i < values.length; i++)
+		{
+			values[i] -= weights[offset + i];
+		}
+	}
+	
+	
+	@Override
+	public void addsub(short[] values, short[] weights, int offset_add, int offset_sub) {
+		
+		for (int i = 0; i < values.length; i++)
+		{
+			values[i] += weights[offset_add + i] - weights[offset_sub + i];
+		}
+	}
+	
+	
+	@Override
+	public int output(short[] us, short[] them, short[] L2Weights) {
+		
+		int size = us.length;
+		
+		int eval = 0;
+		
+		for (int i = 0; i < size; i++)
+		{
+			eval += screlu[us[i] - Short.MIN_VALUE] * L2Weights[i]
+					+ screlu[them[i] - Short.MIN_VALUE] * L2Weights[i + size];
+		}
+		
+		return eval;
+	}
+}
@@ -0,0 +1,147 @@
+package bagaturchess.nnue_v2;
+
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+
+/**
+ * Compares the speed of the java, jni and vector kernels and checks that their results are equal.
+ * The java kernel is compared also with an output layer, which computes the SCReLU clamp instead of using the lookup table.
+ * Random weights with the sizes of the network are used, so no network file is necessary.
+ *
+ * Usage: KernelsBenchmark [iterations in millions]
+ * The vector kernel is measured only if the JVM is started with --add-modules jdk.incubator.vector and src_vector is compiled (see KernelFactory).
+ */
+public class KernelsBenchmark {
+
+
+	private static final int HIDDEN_SIZE 	= 1024;
+
+	private static final int WEIGHTS_ROWS 	= 64;
+
+	private static final int ROUNDS 		= 5;
+
+
+	public static void main(String[] args) {
+
+		int iterations = (args.length > 0 ? Integer.parseInt(args[0]) : 2) * 1000000;
+
+		Random random = new Random(1);
+
+		short[] weights = new short[WEIGHTS_ROWS * HIDDEN_SIZE];
+
+		for (int i = 0; i < weights.length; i++) {
+			weights[i] = (short) (random.nextInt(256) - 128);
+		}
+
+		short[] L2Weights = new short[2 * HIDDEN_SIZE];
+
+		for (int i = 0; i < L2Weights.length; i++) {
+			L2Weights[i] = (short) (random.nextInt(128) - 64);
+		}
+
+
+		List<IKernel> kernels = new ArrayList<IKernel>();
+
+		kernels.add(KernelFactory.create(KernelFactory.KERNEL_JAVA));
+		kernels.add(new Kernel_JavaClamp());
+
+		if (JNIUtils.isLoaded()) {
+
+			kernels.add(KernelFactory.create(KernelFactory.KERNEL_JNI));
+
+		} else {
+
+			System.out.println("KernelsBenchmark: the JNI kernel is skipped, because the VectorEval library is not loaded");
+		}
+
+		IKernel vector = KernelFactory.create(KernelFactory.KERNEL_VECTOR);
+
+		if (KernelFactory.KERNEL_VECTOR.equals(vector.getName())) {
+
+			kernels.add(vector);
+
+		} else {
+
+			System.out.println("KernelsBenchmark: the vector kernel is skipped, because the Vector API module or the Kernel_Vector class is not available");
+		}
+
+
+		long expected_checksum = 0;
+
+		for (int round = 0; round < ROUNDS; round++) {
+
+			for (int k = 0; k < kernels.size(); k++) {
+
+				IKernel kernel = kernels.get(k);
+
+				short[] us = new short[HIDDEN_SIZE];
+				short[] them = new short[HIDDEN_SIZE];
+
+				long checksum = 0;
+
+				long start_time = System.nanoTime();
+
+				for (int i = 0; i < iterations; i++) {
+
+					int row1 = (i & (WEIGHTS_ROWS - 1)) * HIDDEN_SIZE;
+					int row2 = ((i + 7) & (WEIGHTS_ROWS - 1)) * HIDDEN_SIZE;
+
+					//Similar to a quiet move: add and sub for both perspectives and one evaluation
+					kernel.addsub(us, weights, row1, row2);
+					kernel.add(them, weights, row2);
+					kernel.sub(them, weights, row1);
+
+					checksum += kernel.output(us, them, L2Weights);
+				}
+
+				long time = Math.max(1, System.nanoTime() - start_time);
+
+				if (k == 0) {
+
+					expected_checksum = checksum;
+
+				} else if (checksum != expected_checksum) {
+
+					throw new IllegalStateException("Kernel " + kernel.getName() + " has checksum " + checksum + " but " + expected_checksum + " is expected");
+				}
+
+				System.out.println("KernelsBenchmark: round=" + (round + 1) + ", kernel=" + kernel.getName()
+						+ ", time=" + (time / 1000000) + "ms, ns per iteration=" + (time / (double) iterations));
+			}
+		}
+	}
+
+
+	private static class Kernel_JavaClamp extends Kernel_Java {
+
+
+		@Override
+		public String getName() {
+
+			return "java-clamp";
+		}
+
+
+		@Override
+		public int output(final short[] us, final short[] them, final short[] L2Weights) {
+
+			final int size = us.length;
+
+			int eval = 0;
+
+			for (int i = 0; i < size; i++)
+			{
+				int us_value = Math.max(0, Math.min(us[i], NNUE.QA));
+				int them_value = Math.max(0, Math.min(them[i], NNUE.QA));
+
+				eval += us_value * us_value * L2Weights[i]
+						+ them_value * them_value * L2Weights[i + size];
+			}
+
+			return eval;
+		}
+	}
+}
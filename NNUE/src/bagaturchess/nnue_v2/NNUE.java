@@ -1,14 +1,10 @@
 package bagaturchess.nnue_v2;
 
 
-import java.io.DataInputStream;
 import java.io.IOException;
-import java.io.BufferedInputStream;
-import java.io.FileInputStream;
+import java.util.Arrays;
 
 import bagaturchess.bitboard.api.IBitBoard;
-import bagaturchess.bitboard.common.MoveListener;
-import bagaturchess.bitboard.impl.Constants;
 
 
 /**
@@ -17,7 +13,10 @@ import bagaturchess.bitboard.impl.Constants;
 public class NNUE
 {
 	
-	public static final boolean DO_INCREMENTAL_UPDATES = false;
+	public static final boolean DO_INCREMENTAL_UPDATES = true;
+	
+	//Compares each incrementally updated accumulator with a full refresh, only for debugging because it is slow
+	public static final boolean CHECK_INCREMENTAL_UPDATES = false;
 	
 	public static final int WHITE = 0;
 	public static final int BLACK = 1;
@@ -29,7 +28,7 @@ public class NNUE
 	private static final int FEATURE_SIZE = 768;
 	private static final int OUTPUT_BUCKETS = 8;
 	private static final int DIVISOR = (32 + OUTPUT_BUCKETS - 1) / OUTPUT_BUCKETS;
-	private static final int INPUT_BUCKET_SIZE = 7;
+	static final int INPUT_BUCKET_SIZE = 7;
 	// @formatter:off
 	private static final int[] INPUT_BUCKETS = new int[]
 	{
@@ -45,82 +44,31 @@ public class NNUE
 	// @formatter:on
 
 	private static final int SCALE = 400;
-	private static final int QA = 255;
+	static final int QA = 255;
 	private static final int QB = 64;
 
-	private final short[][] L1Weights;
+	private final short[] L1Weights;
 	private final short[] L1Biases;
 	private final short[][] L2Weights;
 	private final short outputBiases[];
 	
-	private final static int screlu[] = new int[Short.MAX_VALUE - Short.MIN_VALUE + 1];
+	private static final IKernel KERNEL = KernelFactory.create();
 	
 	
-	private IncrementalUpdates incremental_updates;
-	private DirtyPieces dirtyPieces;
+	private AccumulatorStack accumulator_stack;
 	private Accumulators accumulators;
 	private NNUEProbeUtils.Input input;
 	private IBitBoard bitboard;
 	
 	
-	static
-	{
-		for(int i = Short.MIN_VALUE; i <= Short.MAX_VALUE;i ++)
-		{
-			screlu[i - (int) Short.MIN_VALUE] = screlu((short)(i));
-		}
-	}
-	
-	private static int screlu(short i)
-	{
-		int v = Math.max(0, Math.min(i, QA));
-		return v * v;
-	}
-	
 	public NNUE(String filePath, IBitBoard _bitboard) throws IOException
 	{
-		DataInputStream networkData = new DataInputStream(new BufferedInputStream(new FileInputStream(filePath), 16 * 4096));
+		NetworkWeights weights = NetworkWeights.load(filePath, FEATURE_SIZE * INPUT_BUCKET_SIZE, HIDDEN_SIZE, OUTPUT_BUCKETS);
 		
-		L1Weights = new short[FEATURE_SIZE * INPUT_BUCKET_SIZE][HIDDEN_SIZE];
-
-		for (int i = 0; i < FEATURE_SIZE * INPUT_BUCKET_SIZE; i++)
-		{
-			for (int j = 0; j < HIDDEN_SIZE; j++)
-			{
-				L1Weights[i][j] = toLittleEndian(networkData.readShort());
-			}
-		}
-
-		L1Biases = new short[HIDDEN_SIZE];
-
-		for (int i = 0; i < HIDDEN_SIZE; i++)
-		{
-			L1Biases[i] = toLittleEndian(networkData.readShort());
-		}
-
-		L2Weights = new short[OUTPUT_BUCKETS][HIDDEN_SIZE * 2];
-
-		for (int i = 0; i < HIDDEN_SIZE * 2; i++)
-		{
-			for (int j = 0; j < OUTPUT_BUCKETS; j++)
-			{
-				L2Weights[j][i] = toLittleEndian(networkData.readShort());
-			}
-		}
-
-		outputBiases = new short[OUTPUT_BUCKETS];
-
-		for (int i = 0; i < OUTPUT_BUCKETS; i++)
-		{
-			outputBiases[i] = toLittleEndian(networkData.readShort());
-		}
-		
-		//24 non zero shorts left at the end of the file
-		/*for (int i = 0; i < 24; i++) {
-			System.out.println(toLittleEndian(networkData.readShort()));
-		}*/
-		
-		networkData.close();
+		L1Weights = weights.L1Weights;
+		L1Biases = weights.L1Biases;
+		L2Weights = weights.L2Weights;
+		outputBiases = weights.outputBiases;
 		
 		bitboard = _bitboard;
 		
@@ -130,76 +78,57 @@ public class NNUE
 		
 		if (DO_INCREMENTAL_UPDATES) {
 			
-			dirtyPieces = new DirtyPieces();
-			
-			incremental_updates = new IncrementalUpdates(bitboard);
-			bitboard.addMoveListener(incremental_updates);
+			accumulator_stack = new AccumulatorStack(this, bitboard);
+			bitboard.addMoveListener(accumulator_stack);
 		}
 	}
 
 	
-	private static short toLittleEndian(short input)
-	{
-		return (short) (((input & 0xFF) << 8) | ((input & 0xFF00) >> 8));
-	}
-	
-	
 	public int evaluate() {
 		
-		if (DO_INCREMENTAL_UPDATES && !incremental_updates.must_refresh) {
+		Accumulators current;
+		
+		if (DO_INCREMENTAL_UPDATES) {
+			
+			current = accumulator_stack.getAccumulators();
 			
-			incremental_update_accumulators();
+			if (CHECK_INCREMENTAL_UPDATES) {
+				
+				checkAccumulators(current);
+			}
 			
 		} else {
 			
 			NNUEProbeUtils.fillInput(bitboard, input);
 			
 			accumulators.fullAccumulatorUpdate(input.white_king_sq, input.black_king_sq, input.white_pieces, input.white_squares, input.black_pieces, input.black_squares);
+			
+			current = accumulators;
 		}
 		
 		int pieces_count = bitboard.getMaterialState().getPiecesCount();
 		
 		int eval = bitboard.getColourToMove() == NNUE.WHITE ?
-		        evaluate(this, accumulators.getWhiteAccumulator(), accumulators.getBlackAccumulator(), pieces_count)
+		        evaluate(this, current.getWhiteAccumulator(), current.getBlackAccumulator(), pieces_count)
 		        :
-		        evaluate(this, accumulators.getBlackAccumulator(), accumulators.getWhiteAccumulator(), pieces_count);
+		        evaluate(this, current.getBlackAccumulator(), current.getWhiteAccumulator(), pieces_count);
 		        
 		return eval;
 	}
 	
 	
-    private void incremental_update_accumulators() {
+	private void checkAccumulators(Accumulators current) {
 		
-		for (int i = 0; i < dirtyPieces.dirtyNum; i++) {
-			
-			if (dirtyPieces.from[i] == dirtyPieces.to[i]) {
-				
-				continue;
-			}
-			
-			int piece_color = dirtyPieces.c[i];
-			
-			int piece = dirtyPieces.pc[i];
-			
-			int index_to_remove = dirtyPieces.from[i];
-			
-			if (dirtyPieces.from[i] < 64) {//>=64 marks no entry e.g. during capture or promotion
-				
-				accumulators.getWhiteAccumulator().sub(getIndex(index_to_remove, piece_color, piece, WHITE));
-				accumulators.getBlackAccumulator().sub(getIndex(index_to_remove, piece_color, piece, BLACK));
-			}
-			
-			int index_to_add = dirtyPieces.to[i];
+		NNUEProbeUtils.fillInput(bitboard, input);
+		
+		accumulators.fullAccumulatorUpdate(input.white_king_sq, input.black_king_sq, input.white_pieces, input.white_squares, input.black_pieces, input.black_squares);
+		
+		if (!current.getWhiteAccumulator().hasSameValues(accumulators.getWhiteAccumulator())
+				|| !current.getBlackAccumulator().hasSameValues(accumulators.getBlackAccumulator())) {
 			
-			if (dirtyPieces.to[i] < 64) {
-				
-				accumulators.getWhiteAccumulator().add(getIndex(index_to_add, piece_color, piece, WHITE));
-				accumulators.getBlackAccumulator().add(getIndex(index_to_add, piece_color, piece, BLACK));
-			}
+			throw new IllegalStateException("Incrementally updated accumulators differ from the full refresh: " + bitboard);
 		}
-		
-    	incremental_updates.reset();
-    }
+	}
     
     
 	public static int evaluate(NNUE network, NNUEAccumulator us, NNUEAccumulator them, int pieces_count)
@@ -209,15 +138,7 @@ public class NNUE
 		short[] UsValues = us.values;
 		short[] ThemValues = them.values;
 		
-		int eval = 0;
-		
-		for (int i = 0; i < HIDDEN_SIZE; i++)
-		{
-			eval += screlu[UsValues[i] - Short.MIN_VALUE] * L2Weights[i]
-					+ screlu[ThemValues[i] - Short.MIN_VALUE] * L2Weights[i + HIDDEN_SIZE];
-		}
-		
-		//int eval = JNIUtils.evaluateVectorized(L2Weights, UsValues, ThemValues);
+		int eval = KERNEL.output(UsValues, ThemValues, L2Weights);
 		
 		eval /= QA;
 		eval += network.outputBiases[chooseOutputBucket(pieces_count)];
@@ -228,23 +149,6 @@ public class NNUE
 		return eval;
 	}
 	
-	/*private static int evaluateVectorized(short[] L2Weights, short[] UsValues, short[] ThemValues) {
-		
-		int eval = 0;
-		
-		for (int i = 0; i < HIDDEN_SIZE; i++)
-		{
-			int us_value = Math.max(0, Math.min(UsValues[i], QA));
-			int them_value = Math.max(0, Math.min(ThemValues[i], QA));
-			
-			eval += us_value * us_value * L2Weights[i]
-					+ them_value * them_value * L2Weights[i + HIDDEN_SIZE];
-		}
-		
-		return eval;
-	}*/
-	
-	
 	public static int chooseOutputBucket(int pieces_count)
 	{
 		return (pieces_count - 2) / DIVISOR;
@@ -289,259 +193,31 @@ public class NNUE
 			this.bucketIndex = bucketIndex;
 		}
 
+		public void copyFrom(NNUEAccumulator other)
+		{
+			System.arraycopy(other.values, 0, values, 0, HIDDEN_SIZE);
+			bucketIndex = other.bucketIndex;
+		}
+
+		public boolean hasSameValues(NNUEAccumulator other)
+		{
+			return bucketIndex == other.bucketIndex && Arrays.equals(values, other.values);
+		}
+
 		public void add(int featureIndex)
 		{
-			for (int i = 0; i < HIDDEN_SIZE; i++)
-			{
-				values[i] += network.L1Weights[featureIndex + bucketIndex * FEATURE_SIZE][i];
-			}
+			KERNEL.add(values, network.L1Weights, (featureIndex + bucketIndex * FEATURE_SIZE) * HIDDEN_SIZE);
 		}
 		
 		public void sub(int featureIndex)
 		{
-			for (int i = 0; i < HIDDEN_SIZE; i++)
-			{
-				values[i] -= network.L1Weights[featureIndex + bucketIndex * FEATURE_SIZE][i];
-			}
+			KERNEL.sub(values, network.L1Weights, (featureIndex + bucketIndex * FEATURE_SIZE) * HIDDEN_SIZE);
 		}
 
 		public void addsub(int featureIndexToAdd, int featureIndexToSubtract)
 		{
-			for (int i = 0; i < HIDDEN_SIZE; i++)
-			{
-				values[i] += network.L1Weights[featureIndexToAdd + bucketIndex * FEATURE_SIZE][i]
-						- network.L1Weights[featureIndexToSubtract + bucketIndex * FEATURE_SIZE][i];
-			}
+			KERNEL.addsub(values, network.L1Weights, (featureIndexToAdd + bucketIndex * FEATURE_SIZE) * HIDDEN_SIZE,
+					(featureIndexToSubtract + bucketIndex * FEATURE_SIZE) * HIDDEN_SIZE);
 		}
 	}
-	
-	
-    private class IncrementalUpdates implements MoveListener {
-    	
-    	
-    	private IBitBoard bitboard;
-    	private boolean must_refresh; 
-    	private int capture_marker; //Necessary because we cannot identify correctly the captured piece in addDurtyPiece
-    	private int promotion_marker; //Necessary because we cannot identify correctly the captured piece in addDurtyPiece
-    	
-    	IncrementalUpdates(IBitBoard _bitboard) {
-    		
-    		bitboard = _bitboard;
-    		must_refresh = true;
-    		capture_marker = 64;
-    		promotion_marker = 128;
-    	}
-    	
-    	int all;
-    	int refreshes;
-    	
-    	void reset() {
-    		all++;
-    		if (must_refresh) refreshes++;
-    		if (all % 100000 == 0) {
-    			//System.out.println("refreshes=" + (refreshes / (double) all));
-    		}
-    		
-    		
-    		must_refresh = false;
-    		dirtyPieces.dirtyNum = 0;
-    		capture_marker = 64;//reset it to not have type overflow
-    		promotion_marker = 128;//reset it to not have type overflow
-    	}
-    	
-    	
-    	//@Override
-    	public final void preForwardMove(int color, int move) {
-
-    		//Do nothing
-    	}
-    	
-    	
-    	//@Override
-    	public final void postForwardMove(int color, int move) {
-    		
-    		if (2 * dirtyPieces.dirtyNum >= bitboard.getMaterialState().getPiecesCount()) {
-    			//Refresh will be faster
-    			must_refresh = true;
-    		}
-    		
-    		if (must_refresh) {
-    			
-    			return;
-    		}
-    		
-       		int pieceType = bitboard.getMoveOps().getFigureType(move);
-    		int fromFieldID = bitboard.getMoveOps().getFromFieldID(move);
-    		int toFieldID = bitboard.getMoveOps().getToFieldID(move);   		
-    		
-    		if (pieceType == Constants.TYPE_KING
-    				|| bitboard.getMoveOps().isCastling(move)
-    				|| bitboard.getMoveOps().isEnpassant(move)
-    				//|| bitboard.getMoveOps().isCapture(move)
-    				//|| bitboard.getMoveOps().isPromotion(move)
-    				) {
-    			
-    			must_refresh = true;
-    			
-    		} else {
-    			
-    			color = NNUEProbeUtils.convertColor(color);
-    			int piece = NNUEProbeUtils.convertPiece(pieceType, color);
-    			int square_from = NNUEProbeUtils.convertSquare(fromFieldID);
-    			int square_to = NNUEProbeUtils.convertSquare(toFieldID);
-    			
-    			addDurtyPiece(color, piece, square_from, square_to);
-    			
-    			if (bitboard.getMoveOps().isCapture(move)) {
-    				
-    				int color_op = 1 - color;
-        	        
-                	int piece_captured = bitboard.getMoveOps().getCapturedFigureType(move);
-                	piece_captured = NNUEProbeUtils.convertPiece(piece_captured, color_op);
-                	
-                	addDurtyPiece(color_op, piece_captured, square_to, capture_marker++);
-    			}
-    			
-    			if (bitboard.getMoveOps().isPromotion(move)) {
-        	        
-                	int piece_promoted = bitboard.getMoveOps().getPromotionFigureType(move);
-                	piece_promoted = NNUEProbeUtils.convertPiece(piece_promoted, color);
-                	
-                	addDurtyPiece(color, piece_promoted, promotion_marker++, square_to);
-                	addDurtyPiece(color, piece, square_to, promotion_marker++);
-    			}
-    		}
-    	}
-
-		//@Override
-    	public final void preBackwardMove(int color, int move) {
-    		//Do nothing
-    	}
-    	
-    	//@Override
-    	public final void postBackwardMove(int color, int move) {
-    		
-    		if (2 * dirtyPieces.dirtyNum >= bitboard.getMaterialState().getPiecesCount()) {
-    			//Refresh will be faster
-    			must_refresh = true;
-    		}
-    		
-    		if (must_refresh) {
-    			
-    			return;
-    		}
-    		
-       		int pieceType = bitboard.getMoveOps().getFigureType(move);
-    		int fromFieldID = bitboard.getMoveOps().getFromFieldID(move);
-    		int toFieldID = bitboard.getMoveOps().getToFieldID(move);   		
-    		
-    		if (pieceType == Constants.TYPE_KING
-    				|| bitboard.getMoveOps().isCastling(move)
-    				|| bitboard.getMoveOps().isEnpassant(move)
-    				//|| bitboard.getMoveOps().isCapture(move)
-    				//|| bitboard.getMoveOps().isPromotion(move)
-    				) {
-    			
-    			must_refresh = true;
-    			
-    		} else {
-    			
-    			color = NNUEProbeUtils.convertColor(color);
-    			int piece = NNUEProbeUtils.convertPiece(pieceType, color);
-    			int square_from = NNUEProbeUtils.convertSquare(fromFieldID);
-    			int square_to = NNUEProbeUtils.convertSquare(toFieldID);
-    			
-    			addDurtyPiece(color, piece, square_to, square_from);
-    			
-    			if (bitboard.getMoveOps().isCapture(move)) {
-    				
-    				int op_color = 1 - color;
-        	        
-                	int piece_captured = bitboard.getMoveOps().getCapturedFigureType(move);
-                	piece_captured = NNUEProbeUtils.convertPiece(piece_captured, op_color);
-                	
-                	addDurtyPiece(op_color, piece_captured, capture_marker++, square_to);
-                	
-                	//System.out.println("capture_marker=" + capture_marker);
-    			}
-    			
-    			if (bitboard.getMoveOps().isPromotion(move)) {
-        	        
-                	int piece_promoted = bitboard.getMoveOps().getPromotionFigureType(move);
-                	piece_promoted = NNUEProbeUtils.convertPiece(piece_promoted, color);
-                	
-                	addDurtyPiece(color, piece_promoted, square_to, promotion_marker++);
-                	addDurtyPiece(color, piece, promotion_marker++, square_to);
-    			}
-    		}
-    	}
-    	
-    	
-    	private void addDurtyPiece(int color, int piece, int square_remove, int square_add) {
-		
-    		DirtyPieces dirty_pieces = dirtyPieces;
-    		
-    		int index = 0;
-    		if (square_remove < 64 && square_add < 64) {
-    			
-        		for (int i = 0; i < dirty_pieces.dirtyNum; i++) {
-        			if (piece == dirty_pieces.pc[i]) {
-        				if (square_remove == dirty_pieces.to[i]) {
-        					break;
-        				}
-        			}
-        			index++;
-        		}
-    		} else {
-    			
-    			index = dirty_pieces.dirtyNum;
-    		}
-    		
-    		if (index < dirty_pieces.dirtyNum) {
-    			
-    			if (dirty_pieces.c[index] != color) {
-    				
-    				throw new IllegalStateException();
-    			}
-    			
-    			if (dirty_pieces.to[index] != square_remove) {
-    				
-    				throw new IllegalStateException("dirty_pieces.to[index]=" + dirty_pieces.to[index] + ", square_from=" + square_remove + ", piece=" + piece);
-    			}
-        		//dirty_pieces.from[index] = square_from;
-        		dirty_pieces.to[index] = square_add;
-    			
-    		} else {
-    			
-    			dirty_pieces.dirtyNum++;
-    			
-    			dirty_pieces.c[index] = color;
-        		dirty_pieces.pc[index] = piece;
-        		dirty_pieces.from[index] = square_remove;
-        		dirty_pieces.to[index] = square_add;
-    		}
-		}
-    	
-    	
-    	//@Override
-    	public final void addPiece_Special(int color, int type) {
-    		//Do nothing
-    	}
-    	
-    	
-    	//@Override
-    	public final void initially_addPiece(int color, int type, long bb_pieces) {
-    		
-    		//Do nothing
-    	}
-    }
-    
-    
-    private static class DirtyPieces {
-        int dirtyNum;
-        int[] c = new int[300];
-        int[] pc = new int[300];
-        int[] from = new int[300];
-        int[] to = new int[300];
-    }
 }
@@ -0,0 +1,104 @@
+package bagaturchess.nnue_v2;
+
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Map;
+
+import bagaturchess.uci.api.ChannelManager;
+
+
+/**
+ * The weights of the network, loaded once per file and shared by all NNUE objects (all searcher threads).
+ * The file is memory-mapped and the little-endian shorts are copied with bulk reads,
+ * so the operating system can share the file pages between the processes and the loading takes milliseconds.
+ * The first layer is one flat array: the weights of feature i are at [i * HIDDEN_SIZE, (i + 1) * HIDDEN_SIZE).
+ */
+public class NetworkWeights {
+
+
+	private static final Map<String, NetworkWeights> loaded = new HashMap<String, NetworkWeights>();
+
+
+	final short[] L1Weights;
+	final short[] L1Biases;
+	final short[][] L2Weights;
+	final short[] outputBiases;
+
+
+	private NetworkWeights(String filePath, int feature_rows, int hidden_size, int output_buckets) throws IOException {
+
+		long start_time = System.currentTimeMillis();
+
+		RandomAccessFile file = new RandomAccessFile(filePath, "r");
+
+		try {
+
+			FileChannel channel = file.getChannel();
+
+			long expected_size = 2L * ((long) feature_rows * hidden_size + hidden_size + 2 * hidden_size * output_buckets + output_buckets);
+
+			if (channel.size() < expected_size) {
+
+				throw new IOException("Network file " + filePath + " has " + channel.size() + " bytes, but at least " + expected_size + " are expected");
+			}
+
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, expected_size);
+
+			ShortBuffer shorts = buffer.order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
+
+			L1Weights = new short[feature_rows * hidden_size];
+			shorts.get(L1Weights);
+
+			L1Biases = new short[hidden_size];
+			shorts.get(L1Biases);
+
+			//The file has the output buckets as the inner dimension
+			short[] L2Weights_file = new short[2 * hidden_size * output_buckets];
+			shorts.get(L2Weights_file);
+
+			L2Weights = new short[output_buckets][2 * hidden_size];
+
+			for (int i = 0; i < 2 * hidden_size; i++) {
+				for (int j = 0; j < output_buckets; j++) {
+					L2Weights[j][i] = L2Weights_file[i * output_buckets + j];
+				}
+			}
+
+			outputBiases = new short[output_buckets];
+			shorts.get(outputBiases);
+
+		} finally {
+
+			file.close();
+		}
+
+		if (ChannelManager.getChannel() != null) ChannelManager.getChannel().dump("NetworkWeights: " + filePath + " loaded in " + (System.currentTimeMillis() - start_time) + "ms");
+	}
+
+
+	static NetworkWeights load(String filePath, int feature_rows, int hidden_size, int output_buckets) throws IOException {
+
+		String key = new File(filePath).getCanonicalPath();
+
+		synchronized (loaded) {
+
+			NetworkWeights weights = loaded.get(key);
+
+			if (weights == null) {
+
+				weights = new NetworkWeights(filePath, feature_rows, hidden_size, output_buckets);
+
+				loaded.put(key, weights);
+			}
+
+			return weights;
+		}
+	}
+}
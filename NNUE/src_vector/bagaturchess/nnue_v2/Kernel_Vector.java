@@ -0,0 +1,141 @@
+package bagaturchess.nnue_v2;
+
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+
+/**
+ * Implementation with the Vector API (jdk.incubator.vector, JDK 16+).
+ * The class is in a separate source folder, because the rest of the project is compiled for Java 1.7.
+ * It is loaded by KernelFactory with reflection, only if the JVM is started with --add-modules jdk.incubator.vector.
+ *
+ * The output layer widens the shorts to ints, computes SCReLU with min/max instead of the lookup table of Kernel_Java
+ * and keeps the sum in an int vector, which is reduced once at the end.
+ * The int additions are the same as in Kernel_Java, only in other order, so the result is exactly the same also on overflow.
+ */
+public class Kernel_Vector implements IKernel {
+
+
+	private static final VectorSpecies<Short> SHORTS 	= ShortVector.SPECIES_PREFERRED;
+
+	private static final VectorSpecies<Integer> INTS 	= IntVector.SPECIES_PREFERRED;
+
+	//Shorts with the count of lanes of INTS, so one load is widened to one int vector
+	private static final VectorSpecies<Short> SHORTS_HALF = VectorSpecies.of(short.class, VectorShape.forBitSize(INTS.vectorBitSize() / 2));
+
+
+	@Override
+	public String getName() {
+
+		return "vector";
+	}
+
+
+	@Override
+	public void add(short[] values, short[] weights, int offset) {
+
+		int upper = SHORTS.loopBound(values.length);
+
+		int i = 0;
+
+		for (; i < upper; i += SHORTS.length())
+		{
+			ShortVector.fromArray(SHORTS, values, i)
+				.add(ShortVector.fromArray(SHORTS, weights, offset + i))
+				.intoArray(values, i);
+		}
+
+		for (; i < values.length; i++)
+		{
+			values[i] += weights[offset + i];
+		}
+	}
+
+
+	@Override
+	public void sub(short[] values, short[] weights, int offset) {
+
+		int upper = SHORTS.loopBound(values.length);
+
+		int i = 0;
+
+		for (; i < upper; i += SHORTS.length())
+		{
+			ShortVector.fromArray(SHORTS, values, i)
+				.sub(ShortVector.fromArray(SHORTS, weights, offset + i))
+				.intoArray(values, i);
+		}
+
+		for (; i < values.length; i++)
+		{
+			values[i] -= weights[offset + i];
+		}
+	}
+
+
+	@Override
+	public void addsub(short[] values, short[] weights, int offset_add, int offset_sub) {
+
+		int upper = SHORTS.loopBound(values.length);
+
+		int i = 0;
+
+		for (; i < upper; i += SHORTS.length())
+		{
+			ShortVector.fromArray(SHORTS, values, i)
+				.add(ShortVector.fromArray(SHORTS, weights, offset_add + i))
+				.sub(ShortVector.fromArray(SHORTS, weights, offset_sub + i))
+				.intoArray(values, i);
+		}
+
+		for (; i < values.length; i++)
+		{
+			values[i] += weights[offset_add + i] - weights[offset_sub + i];
+		}
+	}
+
+
+	@Override
+	public int output(short[] us, short[] them, short[] L2Weights) {
+
+		int size = us.length;
+
+		int upper = INTS.loopBound(size);
+
+		IntVector sum = IntVector.zero(INTS);
+
+		int i = 0;
+
+		for (; i < upper; i += INTS.length())
+		{
+			IntVector us_clamped 	= widen(us, i).max(0).min(NNUE.QA);
+			IntVector them_clamped 	= widen(them, i).max(0).min(NNUE.QA);
+
+			sum = sum.add(us_clamped.mul(us_clamped).mul(widen(L2Weights, i)))
+					.add(them_clamped.mul(them_clamped).mul(widen(L2Weights, i + size)));
+		}
+
+		int eval = sum.reduceLanes(VectorOperators.ADD);
+
+		for (; i < size; i++)
+		{
+			int us_clamped 		= Math.max(0, Math.min(us[i], NNUE.QA));
+			int them_clamped 	= Math.max(0, Math.min(them[i], NNUE.QA));
+
+			eval += us_clamped * us_clamped * L2Weights[i]
+					+ them_clamped * them_clamped * L2Weights[i + size];
+		}
+
+		return eval;
+	}
+
+
+	private static IntVector widen(short[] array, int offset) {
+
+		return (IntVector) ShortVector.fromArray(SHORTS_HALF, array, offset).convertShape(VectorOperators.S2I, INTS, 0);
+	}
+}
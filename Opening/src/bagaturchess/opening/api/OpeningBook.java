@@ -23,10 +23,7 @@
 package bagaturchess.opening.api;
 
 
-import java.io.Serializable;
-
-
-public interface OpeningBook extends Serializable {
+public interface OpeningBook extends OpeningBookReader {
 	
 	
 	public static final int OPENING_BOOK_MODE_POWER0 = 1;
@@ -36,10 +33,6 @@ public interface OpeningBook extends Serializable {
 	public static final int OPENING_BOOK_MIN_MOVES	  = 7;
 	
 	
-	public IOpeningEntry getEntry(long hashkey, int colour);
-	public int[][] getAllMovesAndCounts(long hashkey, int colour);
-	public int get(long hashkey, int colour);
-	
 	public void store(String outFileName);
 	public void add(long hashkey, int move);
 	public void add(long hashkey, int move, int result);
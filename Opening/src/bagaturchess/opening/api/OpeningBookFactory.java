@@ -31,6 +31,7 @@ import java.io.InputStream;
 import java.io.ObjectInputStream;
 
 import bagaturchess.bitboard.impl.Figures;
+import bagaturchess.opening.impl.model.OpeningBookImpl_Binary;
 
 
 public class OpeningBookFactory {
@@ -62,6 +63,21 @@ public class OpeningBookFactory {
 		return ob;
 	}
 	
+	public static OpeningBook initBook_Binary(String whiteFileName, String blackFileName) {
+		if (ob == null) {
+			synchronized (OpeningBookFactory.class) {
+				if (ob == null) {
+					try {
+						ob = OpeningBookFactory.loadBinary(whiteFileName, blackFileName);
+					} catch (Throwable t) {
+						throw new IllegalStateException("No book");
+					}
+				}
+			}
+		}
+		return ob;
+	}
+	
 	public static OpeningBook load(String inFilePathName) throws FileNotFoundException, IOException, ClassNotFoundException {
 		ObjectInputStream is = new ObjectInputStream(new BufferedInputStream(new FileInputStream(inFilePathName), BUFFER_SIZE));
 		OpeningBook result = (OpeningBook) is.readObject();
@@ -107,16 +123,25 @@ public class OpeningBookFactory {
 		}
 	}
 	
+	/**
+	 * Memory-maps the books in the binary format, created by BinaryBookConverter. It is much faster than the deserialization and uses almost no heap.
+	 */
+	public static OpeningBook loadBinary(String whiteFileName, String blackFileName) throws IOException {
+		OpeningBookReader white = new OpeningBookImpl_Binary(whiteFileName);
+		OpeningBookReader black = new OpeningBookImpl_Binary(blackFileName);
+		return new OpeningBookWithBothPlayersImpl(white, black);
+	}
+	
 	private static class OpeningBookWithBothPlayersImpl implements OpeningBook {
 
 		
 		private static final long serialVersionUID = 8664931488023105907L;
 		
-		private OpeningBook whiteOpening;
-		private OpeningBook blackOpening;
+		private OpeningBookReader whiteOpening;
+		private OpeningBookReader blackOpening;
 		
 		
-		public OpeningBookWithBothPlayersImpl(OpeningBook _whiteOpening, OpeningBook _blackOpening) {
+		public OpeningBookWithBothPlayersImpl(OpeningBookReader _whiteOpening, OpeningBookReader _blackOpening) {
 			whiteOpening = _whiteOpening;
 			blackOpening = _blackOpening;
 		}
@@ -169,6 +169,10 @@ public class Entry_BaseImpl implements IOpeningEntry, Serializable {
 	
 	
 	public int getRandomEntry(int power) {
+		return getRandomEntry(moves, counts, power);
+	}
+	
+	static int getRandomEntry(int[] moves, int[] counts, int power) {
 		
 		int all_probs = 0;
 		for (int i=0; i<counts.length; i++) {
@@ -243,4 +247,14 @@ public class Entry_BaseImpl implements IOpeningEntry, Serializable {
 	public int[] getCounts() {
 		return counts;
 	}
+	
+	/**
+	 * @return wins minus losses of the given move, or 0 if the results are not available (they are not serialized)
+	 */
+	int getResult(int index) {
+		if (probsWin == null) {
+			return 0;
+		}
+		return probsWin[index] - probsLose[index];
+	}
 }
@@ -0,0 +1,334 @@
+/*
+ *  BagaturChess (UCI chess engine and tools)
+ *  Copyright (C) 2005 Krasimir I. Topchiyski (k_topchiyski@yahoo.com)
+ *  
+ *  Open Source project location: http://sourceforge.net/projects/bagaturchess/develop
+ *  SVN repository https://bagaturchess.svn.sourceforge.net/svnroot/bagaturchess
+ *
+ *  This file is part of BagaturChess program.
+ * 
+ *  BagaturChess is open software: you can redistribute it and/or modify
+ *  it under the terms of the Eclipse Public License version 1.0 as published by
+ *  the Eclipse Foundation.
+ *
+ *  BagaturChess is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  Eclipse Public License for more details.
+ *
+ *  You should have received a copy of the Eclipse Public License version 1.0
+ *  along with BagaturChess. If not, see <http://www.eclipse.org/legal/epl-v10.html/>.
+ *
+ */
+package bagaturchess.opening.impl.model;
+
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import bagaturchess.opening.api.IOpeningEntry;
+import bagaturchess.opening.api.OpeningBookReader;
+
+
+/**
+ * Read-only book, which is memory-mapped from a binary file. It implements only OpeningBookReader, so it has no methods for changing it.
+ * The file has a header (magic, version, records count) followed by records of (hashkey, move, count, result),
+ * sorted by hashkey, so all moves of one position are consecutive.
+ * The lookup is an interpolation search, because the hashkeys are uniformly distributed, and it ends with a binary search.
+ * Loading does not read the file and the book uses almost no heap, the operating system caches the pages.
+ * The files are created from the serialized books by BinaryBookConverter.
+ * As with the serialized books, there is one file per colour and the book of the colour is selected by OpeningBookFactory,
+ * so the colour argument of the lookup methods is not used.
+ */
+public class OpeningBookImpl_Binary implements OpeningBookReader {
+	
+	
+	private static final long serialVersionUID = -2284720587004321795L;
+	
+	
+	public static final int MAGIC 						= 0x424F4F4B; //"BOOK"
+	
+	public static final int VERSION 					= 1;
+	
+	private static final int HEADER_SIZE 				= 4 + 4 + 8;
+	
+	//hashkey (long), move (int), count (int), result (int)
+	private static final int RECORD_SIZE 				= 8 + 4 + 4 + 4;
+	
+	//Below this range of records, the search continues with bisection
+	private static final int MIN_INTERPOLATION_RANGE 	= 16;
+	
+	//Protects from slow convergence, if the hashkeys are not uniformly distributed
+	private static final int MAX_INTERPOLATION_STEPS 	= 8;
+	
+	
+	private transient MappedByteBuffer buffer;
+	
+	private transient int records_count;
+	
+	
+	public OpeningBookImpl_Binary(String inFileName) throws IOException {
+		
+		RandomAccessFile file = new RandomAccessFile(inFileName, "r");
+		
+		try {
+			
+			FileChannel channel = file.getChannel();
+			
+			if (channel.size() < HEADER_SIZE || channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("Book file " + inFileName + " has invalid size " + channel.size());
+			}
+			
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			
+		} finally {
+			
+			//The mapping stays valid after the file is closed
+			file.close();
+		}
+		
+		if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+			throw new IOException("Book file " + inFileName + " is not a binary book of version " + VERSION);
+		}
+		
+		long count = buffer.getLong(8);
+		
+		if (count < 0 || HEADER_SIZE + count * RECORD_SIZE != buffer.capacity()) {
+			throw new IOException("Book file " + inFileName + " has " + buffer.capacity() + " bytes, which does not match the records count " + count);
+		}
+		
+		records_count = (int) count;
+	}
+	
+	
+	public IOpeningEntry getEntry(long hashkey, int colour) {
+		
+		int first = findFirst(hashkey);
+		
+		if (first == -1) {
+			return null;
+		}
+		
+		int last = first + 1;
+		
+		while (last < records_count && getHashkey(last) == hashkey) {
+			last++;
+		}
+		
+		int[] moves = new int[last - first];
+		int[] counts = new int[last - first];
+		
+		int weight = 0;
+		
+		for (int i = first; i < last; i++) {
+			
+			int offset = HEADER_SIZE + i * RECORD_SIZE;
+			
+			moves[i - first] = buffer.getInt(offset + 8);
+			counts[i - first] = buffer.getInt(offset + 12);
+			
+			weight += counts[i - first];
+		}
+		
+		return new Entry(hashkey, weight, moves, counts);
+	}
+	
+	
+	public int[][] getAllMovesAndCounts(long hashkey, int colour) {
+		
+		IOpeningEntry entry = getEntry(hashkey, colour);
+		
+		if (entry == null) {
+			return null;
+		}
+		
+		return new int[][] {entry.getMoves(), entry.getCounts()};
+	}
+	
+	
+	public int get(long hashkey, int colour) {
+		
+		IOpeningEntry entry = getEntry(hashkey, colour);
+		
+		if (entry != null) {
+			return entry.getRandomEntry(0);
+		}
+		
+		return 0;
+	}
+	
+	
+	public int size() {
+		return records_count;
+	}
+	
+	
+	/**
+	 * @return the index of the first record with the given hashkey or -1 if there is no such record
+	 */
+	private int findFirst(long hashkey) {
+		
+		int low = 0;
+		int high = records_count - 1;
+		
+		int steps = 0;
+		
+		while (low <= high) {
+			
+			long key_low = getHashkey(low);
+			long key_high = getHashkey(high);
+			
+			if (hashkey < key_low || hashkey > key_high) {
+				return -1;
+			}
+			
+			int pos;
+			
+			if (key_low == key_high) {
+				
+				pos = low;
+				
+			} else if (high - low < MIN_INTERPOLATION_RANGE || steps >= MAX_INTERPOLATION_STEPS) {
+				
+				pos = (low + high) >>> 1;
+				
+			} else {
+				
+				pos = low + (int) (((double) hashkey - key_low) / ((double) key_high - key_low) * (high - low));
+				
+				pos = Math.max(low, Math.min(high, pos));
+				
+				steps++;
+			}
+			
+			long key = getHashkey(pos);
+			
+			if (key < hashkey) {
+				
+				low = pos + 1;
+				
+			} else if (key > hashkey) {
+				
+				high = pos - 1;
+				
+			} else {
+				
+				while (pos > 0 && getHashkey(pos - 1) == hashkey) {
+					pos--;
+				}
+				
+				return pos;
+			}
+		}
+		
+		return -1;
+	}
+	
+	
+	private long getHashkey(int index) {
+		return buffer.getLong(HEADER_SIZE + index * RECORD_SIZE);
+	}
+	
+	
+	/**
+	 * Writes the entries of the given book in the binary format.
+	 * The results are available only if the book is built from PGN games and not loaded from a serialized file, otherwise they are 0.
+	 */
+	public static void store(OpeningBookImpl_FullEntries book, String outFileName) throws IOException {
+		
+		Object[] values = book.entries.getAllValues();
+		
+		Entry_BaseImpl[] entries = new Entry_BaseImpl[values.length];
+		
+		long records = 0;
+		
+		for (int i = 0; i < values.length; i++) {
+			
+			entries[i] = (Entry_BaseImpl) values[i];
+			
+			records += entries[i].getMoves().length;
+		}
+		
+		Arrays.sort(entries, new Comparator<Entry_BaseImpl>() {
+			@Override
+			public int compare(Entry_BaseImpl e1, Entry_BaseImpl e2) {
+				return Long.compare(e1.getHashkey(), e2.getHashkey());
+			}
+		});
+		
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(outFileName), 1024 * 1024));
+		
+		try {
+			
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(records);
+			
+			for (Entry_BaseImpl entry: entries) {
+				
+				int[] moves = entry.getMoves();
+				int[] counts = entry.getCounts();
+				
+				for (int i = 0; i < moves.length; i++) {
+					
+					out.writeLong(entry.getHashkey());
+					out.writeInt(moves[i]);
+					out.writeInt(counts[i]);
+					out.writeInt(entry.getResult(i));
+				}
+			}
+			
+		} finally {
+			
+			out.close();
+		}
+	}
+	
+	
+	private static final class Entry implements IOpeningEntry {
+		
+		
+		private final long hashkey;
+		
+		private final int weight;
+		
+		private final int[] moves;
+		
+		private final int[] counts;
+		
+		
+		Entry(long _hashkey, int _weight, int[] _moves, int[] _counts) {
+			hashkey = _hashkey;
+			weight = _weight;
+			moves = _moves;
+			counts = _counts;
+		}
+		
+		public int getRandomEntry(int power) {
+			return Entry_BaseImpl.getRandomEntry(moves, counts, power);
+		}
+		
+		public long getHashkey() {
+			return hashkey;
+		}
+		
+		public int getWeight() {
+			return weight;
+		}
+		
+		public int[] getMoves() {
+			return moves;
+		}
+		
+		public int[] getCounts() {
+			return counts;
+		}
+	}
+}
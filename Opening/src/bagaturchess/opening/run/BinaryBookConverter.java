@@ -0,0 +1,74 @@
+/*
+ *  BagaturChess (UCI chess engine and tools)
+ *  Copyright (C) 2005 Krasimir I. Topchiyski (k_topchiyski@yahoo.com)
+ *  
+ *  Open Source project location: http://sourceforge.net/projects/bagaturchess/develop
+ *  SVN repository https://bagaturchess.svn.sourceforge.net/svnroot/bagaturchess
+ *
+ *  This file is part of BagaturChess program.
+ * 
+ *  BagaturChess is open software: you can redistribute it and/or modify
+ *  it under the terms of the Eclipse Public License version 1.0 as published by
+ *  the Eclipse Foundation.
+ *
+ *  BagaturChess is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  Eclipse Public License for more details.
+ *
+ *  You should have received a copy of the Eclipse Public License version 1.0
+ *  along with BagaturChess. If not, see <http://www.eclipse.org/legal/epl-v10.html/>.
+ *
+ */
+package bagaturchess.opening.run;
+
+
+import bagaturchess.opening.api.OpeningBook;
+import bagaturchess.opening.api.OpeningBookFactory;
+import bagaturchess.opening.impl.model.OpeningBookImpl_Binary;
+import bagaturchess.opening.impl.model.OpeningBookImpl_FullEntries;
+
+
+/**
+ * Converts the serialized books (w.ob and b.ob) to the memory-mapped binary format (w.obb and b.obb).
+ * 
+ * Usage: BinaryBookConverter [input white book] [input black book] [output white book] [output black book]
+ */
+public class BinaryBookConverter {
+	
+	
+	public static void main(String args[]) {
+		try {
+			
+			String input_w 	= args.length > 0 ? args[0] : "./data/w.ob";
+			String input_b 	= args.length > 1 ? args[1] : "./data/b.ob";
+			String output_w = args.length > 2 ? args[2] : "./data/w.obb";
+			String output_b = args.length > 3 ? args[3] : "./data/b.obb";
+			
+			convert(input_w, output_w);
+			convert(input_b, output_b);
+			
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+	}
+	
+	
+	private static void convert(String input, String output) throws Exception {
+		
+		long start_time = System.currentTimeMillis();
+		
+		OpeningBook ob = OpeningBookFactory.load(input);
+		
+		if (!(ob instanceof OpeningBookImpl_FullEntries)) {
+			throw new IllegalStateException("Only books with full entries are supported, but " + input + " is " + ob.getClass().getName());
+		}
+		
+		OpeningBookImpl_Binary.store((OpeningBookImpl_FullEntries) ob, output);
+		
+		OpeningBookImpl_Binary result = new OpeningBookImpl_Binary(output);
+		
+		System.out.println(input + " -> " + output + ": entries=" + ((OpeningBookImpl_FullEntries) ob).size()
+				+ ", records=" + result.size() + ", time=" + (System.currentTimeMillis() - start_time) + "ms");
+	}
+}
@@ -0,0 +1,488 @@
+/*
+ *  BagaturChess (UCI chess engine and tools)
+ *  Copyright (C) 2005 Krasimir I. Topchiyski (k_topchiyski@yahoo.com)
+ *  
+ *  Open Source project location: http://sourceforge.net/projects/bagaturchess/develop
+ *  SVN repository https://bagaturchess.svn.sourceforge.net/svnroot/bagaturchess
+ *
+ *  This file is part of BagaturChess program.
+ * 
+ *  BagaturChess is open software: you can redistribute it and/or modify
+ *  it under the terms of the Eclipse Public License version 1.0 as published by
+ *  the Eclipse Foundation.
+ *
+ *  BagaturChess is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  Eclipse Public License for more details.
+ *
+ *  You should have received a copy of the Eclipse Public License version 1.0
+ *  along with BagaturChess. If not, see <http://www.eclipse.org/legal/epl-v10.html/>.
+ *
+ */
+package bagaturchess.tools.pgn.api;
+
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import bagaturchess.bitboard.api.IBoard;
+import bagaturchess.bitboard.impl.movelist.BaseMoveList;
+import bagaturchess.bitboard.impl.movelist.IMoveList;
+import bagaturchess.tools.pgn.impl.GameDatabaseFormat;
+
+
+/**
+ * Read-only access to the binary game database, created by GameDatabaseWriter (see GameDatabaseFormat for the files).
+ *
+ * The positions index and the games offsets are memory-mapped in segments, so they are not limited to 2GB and use almost no heap.
+ * The games are read with positional reads and only the header strings are loaded in memory.
+ * The lookup of a position is an interpolation search, because the hashkeys are uniformly distributed,
+ * and the bounds of its records are found with binary searches in the already narrowed range.
+ * All methods can be called from many threads.
+ */
+public class GameDatabase {
+	
+	
+	//Multiple of the record sizes, so a record is never split between two segments
+	private static final int SEGMENT_BITS 				= 30;
+	private static final long SEGMENT_MASK 				= (1L << SEGMENT_BITS) - 1;
+	
+	//Below this range of records, the search continues with bisection
+	private static final long MIN_INTERPOLATION_RANGE 	= 16;
+	
+	//Protects from slow convergence, if the hashkeys are not uniformly distributed
+	private static final int MAX_INTERPOLATION_STEPS 	= 8;
+	
+	
+	private MappedByteBuffer[] positions;
+	
+	private long positionsCount;
+	
+	private MappedByteBuffer[] offsets;
+	
+	private int gamesCount;
+	
+	private FileChannel games;
+	
+	private String[] strings;
+	
+	
+	public GameDatabase(File dir) throws IOException {
+		
+		positions = map(new File(dir, GameDatabaseFormat.FILE_POSITIONS), GameDatabaseFormat.MAGIC_POSITIONS);
+		
+		positionsCount = getLong(positions, GameDatabaseFormat.HEADER_SIZE);
+		
+		long positions_size = GameDatabaseFormat.POSITIONS_HEADER_SIZE + positionsCount * GameDatabaseFormat.POSITION_RECORD_SIZE;
+		
+		if (positionsCount < 0 || positions_size != size(positions)) {
+			throw new IOException("Positions file has " + size(positions) + " bytes, which does not match the records count " + positionsCount);
+		}
+		
+		offsets = map(new File(dir, GameDatabaseFormat.FILE_GAMES_OFFSETS), GameDatabaseFormat.MAGIC_GAMES_OFFSETS);
+		
+		long offsets_count = (size(offsets) - GameDatabaseFormat.HEADER_SIZE) / 8;
+		
+		if (offsets_count < 1 || offsets_count - 1 > Integer.MAX_VALUE) {
+			throw new IOException("Games offsets file has invalid size " + size(offsets));
+		}
+		
+		gamesCount = (int) (offsets_count - 1);
+		
+		games = new RandomAccessFile(new File(dir, GameDatabaseFormat.FILE_GAMES), "r").getChannel();
+		
+		if (games.size() != getGameOffset(gamesCount)) {
+			games.close();
+			throw new IOException("Games file has " + games.size() + " bytes, but the offsets end at " + getGameOffset(gamesCount));
+		}
+		
+		strings = readHeaders(new File(dir, GameDatabaseFormat.FILE_HEADERS));
+	}
+	
+	
+	public int getGamesCount() {
+		return gamesCount;
+	}
+	
+	
+	public long getPositionsCount() {
+		return positionsCount;
+	}
+	
+	
+	/**
+	 * @return the number of plies of all games, after which the position with the given hashkey is on the board
+	 */
+	public long countPositions(long hashkey) {
+		
+		long[] range = findRange(hashkey);
+		
+		return range == null ? 0 : range[1] - range[0];
+	}
+	
+	
+	/**
+	 * Fills the games and plies of the position with the given hashkey, ordered by game index and ply.
+	 * @return the number of filled elements, which is at most the length of the arrays
+	 */
+	public int findPositions(long hashkey, int[] games, int[] plies) {
+		
+		long[] range = findRange(hashkey);
+		
+		if (range == null) {
+			return 0;
+		}
+		
+		int count = (int) Math.min(range[1] - range[0], Math.min(games.length, plies.length));
+		
+		for (int i = 0; i < count; i++) {
+			long offset = getPositionOffset(range[0] + i);
+			games[i] = getInt(positions, offset + 8);
+			plies[i] = getInt(positions, offset + 12);
+		}
+		
+		return count;
+	}
+	
+	
+	/**
+	 * @return the distinct indexes of the games, which reach the position with the given hashkey, in ascending order
+	 */
+	public int[] findGames(long hashkey, int maxGames) {
+		
+		long[] range = findRange(hashkey);
+		
+		if (range == null) {
+			return new int[0];
+		}
+		
+		int[] result = new int[(int) Math.min(range[1] - range[0], maxGames)];
+		
+		int count = 0;
+		
+		for (long i = range[0]; i < range[1] && count < result.length; i++) {
+			
+			int game = getInt(positions, getPositionOffset(i) + 8);
+			
+			//The records are sorted by game index, so a repeated position of a game is next to the previous one
+			if (count == 0 || result[count - 1] != game) {
+				result[count++] = game;
+			}
+		}
+		
+		if (count < result.length) {
+			int[] new_result = new int[count];
+			System.arraycopy(result, 0, new_result, 0, count);
+			result = new_result;
+		}
+		
+		return result;
+	}
+	
+	
+	public Game getGame(int index) throws IOException {
+		
+		if (index < 0 || index >= gamesCount) {
+			throw new IllegalStateException("index=" + index + ", gamesCount=" + gamesCount);
+		}
+		
+		long start = getGameOffset(index);
+		long end = getGameOffset(index + 1);
+		
+		ByteBuffer buffer = ByteBuffer.allocate((int) (end - start));
+		
+		while (buffer.hasRemaining()) {
+			if (games.read(buffer, start + buffer.position()) < 0) {
+				throw new IOException("Unexpected end of the games file at game " + index);
+			}
+		}
+		
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(buffer.array()));
+		
+		String[] tags = new String[GameDatabaseFormat.TAGS.length];
+		
+		for (int i = 0; i < tags.length; i++) {
+			int id = GameDatabaseFormat.readVarInt(in);
+			tags[i] = id == 0 ? null : strings[id];
+		}
+		
+		short[] moves = new short[GameDatabaseFormat.readVarInt(in)];
+		
+		for (int i = 0; i < moves.length; i++) {
+			moves[i] = in.readShort();
+		}
+		
+		return new Game(index, tags, moves);
+	}
+	
+	
+	public void close() throws IOException {
+		//The mappings are released by the garbage collector
+		games.close();
+	}
+	
+	
+	/**
+	 * @return the range [first, end) of the records with the given hashkey or null if there are no such records
+	 */
+	private long[] findRange(long hashkey) {
+		
+		long low = 0;
+		long high = positionsCount - 1;
+		
+		int steps = 0;
+		
+		while (low <= high) {
+			
+			long key_low = getHashkey(low);
+			long key_high = getHashkey(high);
+			
+			if (hashkey < key_low || hashkey > key_high) {
+				return null;
+			}
+			
+			long pos;
+			
+			if (key_low == key_high) {
+				
+				pos = low;
+			
+			} else if (high - low < MIN_INTERPOLATION_RANGE || steps >= MAX_INTERPOLATION_STEPS) {
+				
+				pos = (low + high) >>> 1;
+			
+			} else {
+				
+				pos = low + (long) (((double) hashkey - key_low) / ((double) key_high - key_low) * (high - low));
+				
+				pos = Math.max(low, Math.min(high, pos));
+				
+				steps++;
+			}
+			
+			long key = getHashkey(pos);
+			
+			if (key < hashkey) {
+				
+				low = pos + 1;
+			
+			} else if (key > hashkey) {
+				
+				high = pos - 1;
+			
+			} else {
+				
+				//All records before low are smaller and all records after high are bigger than the hashkey
+				return new long[] {bound(hashkey, low, pos, false), bound(hashkey, pos + 1, high + 1, true)};
+			}
+		}
+		
+		return null;
+	}
+	
+	
+	/**
+	 * @return the first index in [low, high) with a hashkey bigger than the given one (or equal to it, if not upper), or high if there is no such index
+	 */
+	private long bound(long hashkey, long low, long high, boolean upper) {
+		
+		while (low < high) {
+			
+			long middle = (low + high) >>> 1;
+			
+			long key = getHashkey(middle);
+			
+			if (key < hashkey || (upper && key == hashkey)) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		
+		return low;
+	}
+	
+	
+	private long getHashkey(long index) {
+		return getLong(positions, getPositionOffset(index));
+	}
+	
+	
+	private static long getPositionOffset(long index) {
+		return GameDatabaseFormat.POSITIONS_HEADER_SIZE + index * GameDatabaseFormat.POSITION_RECORD_SIZE;
+	}
+	
+	
+	private long getGameOffset(int index) {
+		return getLong(offsets, GameDatabaseFormat.HEADER_SIZE + 8L * index);
+	}
+	
+	
+	private static long getLong(MappedByteBuffer[] segments, long offset) {
+		return segments[(int) (offset >>> SEGMENT_BITS)].getLong((int) (offset & SEGMENT_MASK));
+	}
+	
+	
+	private static int getInt(MappedByteBuffer[] segments, long offset) {
+		return segments[(int) (offset >>> SEGMENT_BITS)].getInt((int) (offset & SEGMENT_MASK));
+	}
+	
+	
+	private static long size(MappedByteBuffer[] segments) {
+		return ((long) (segments.length - 1) << SEGMENT_BITS) + segments[segments.length - 1].capacity();
+	}
+	
+	
+	private static MappedByteBuffer[] map(File file, int magic) throws IOException {
+		
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		
+		try {
+			
+			FileChannel channel = raf.getChannel();
+			
+			long size = channel.size();
+			
+			if (size < GameDatabaseFormat.HEADER_SIZE) {
+				throw new IOException("File " + file + " has invalid size " + size);
+			}
+			
+			MappedByteBuffer[] segments = new MappedByteBuffer[(int) ((size + SEGMENT_MASK) >>> SEGMENT_BITS)];
+			
+			for (int i = 0; i < segments.length; i++) {
+				long position = (long) i << SEGMENT_BITS;
+				segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(size - position, 1L << SEGMENT_BITS));
+			}
+			
+			if (segments[0].getInt(0) != magic || segments[0].getInt(4) != GameDatabaseFormat.VERSION) {
+				throw new IOException("File " + file + " is not a game database file of version " + GameDatabaseFormat.VERSION);
+			}
+			
+			return segments;
+		
+		} finally {
+			
+			//The mappings stay valid after the file is closed
+			raf.close();
+		}
+	}
+	
+	
+	private static String[] readHeaders(File file) throws IOException {
+		
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1024 * 1024));
+		
+		try {
+			
+			if (in.readInt() != GameDatabaseFormat.MAGIC_HEADERS || in.readInt() != GameDatabaseFormat.VERSION) {
+				throw new IOException("File " + file + " is not a game database file of version " + GameDatabaseFormat.VERSION);
+			}
+			
+			String[] result = new String[in.readInt()];
+			
+			for (int i = 0; i < result.length; i++) {
+				result[i] = in.readUTF();
+			}
+			
+			return result;
+		
+		} finally {
+			
+			in.close();
+		}
+	}
+	
+	
+	public static final class Game {
+		
+		
+		private final int index;
+		
+		private final String[] tags;
+		
+		private final short[] moves;
+		
+		
+		Game(int _index, String[] _tags, short[] _moves) {
+			index = _index;
+			tags = _tags;
+			moves = _moves;
+		}
+		
+		
+		public int getIndex() {
+			return index;
+		}
+		
+		
+		/**
+		 * @return the value of one of GameDatabaseFormat.TAGS or null if the game has no such tag
+		 */
+		public String getTag(String name) {
+			
+			for (int i = 0; i < GameDatabaseFormat.TAGS.length; i++) {
+				if (GameDatabaseFormat.TAGS[i].equals(name)) {
+					return tags[i];
+				}
+			}
+			
+			throw new IllegalStateException("Tag " + name + " is not stored");
+		}
+		
+		
+		public int getPliesCount() {
+			return moves.length;
+		}
+		
+		
+		/**
+		 * Makes the first plies of the game on the board, which must be in the initial position.
+		 * @return the moves of the board
+		 */
+		public int[] play(IBoard bitboard, int plies) {
+			
+			IMoveList movesBuffer = new BaseMoveList(150);
+			
+			int[] result = new int[Math.min(plies, moves.length)];
+			
+			for (int i = 0; i < result.length; i++) {
+				
+				result[i] = GameDatabaseFormat.decodeMove(bitboard, moves[i], movesBuffer);
+				
+				if (result[i] == 0) {
+					throw new IllegalStateException("Move " + (i + 1) + " of game " + index + " is not found");
+				}
+				
+				bitboard.makeMoveForward(result[i]);
+			}
+			
+			return result;
+		}
+		
+		
+		@Override
+		public String toString() {
+			
+			StringBuilder result = new StringBuilder();
+			
+			for (int i = 0; i < tags.length; i++) {
+				if (tags[i] != null) {
+					result.append("[" + GameDatabaseFormat.TAGS[i] + " \"" + tags[i] + "\"] ");
+				}
+			}
+			
+			result.append(moves.length + " plies");
+			
+			return result.toString();
+		}
+	}
+}
@@ -0,0 +1,617 @@
+/*
+ *  BagaturChess (UCI chess engine and tools)
+ *  Copyright (C) 2005 Krasimir I. Topchiyski (k_topchiyski@yahoo.com)
+ *  
+ *  Open Source project location: http://sourceforge.net/projects/bagaturchess/develop
+ *  SVN repository https://bagaturchess.svn.sourceforge.net/svnroot/bagaturchess
+ *
+ *  This file is part of BagaturChess program.
+ * 
+ *  BagaturChess is open software: you can redistribute it and/or modify
+ *  it under the terms of the Eclipse Public License version 1.0 as published by
+ *  the Eclipse Foundation.
+ *
+ *  BagaturChess is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  Eclipse Public License for more details.
+ *
+ *  You should have received a copy of the Eclipse Public License version 1.0
+ *  along with BagaturChess. If not, see <http://www.eclipse.org/legal/epl-v10.html/>.
+ *
+ */
+package bagaturchess.tools.pgn.api;
+
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import bagaturchess.bitboard.api.BoardUtils;
+import bagaturchess.bitboard.api.IBoard;
+import bagaturchess.bitboard.impl.Constants;
+import bagaturchess.bitboard.impl.Figures;
+import bagaturchess.learning.goldmiddle.impl.cfg.bagatur.eval.BagaturPawnsEvalFactory;
+import bagaturchess.learning.goldmiddle.impl1.cfg.BoardConfigImpl_V17;
+import bagaturchess.tools.pgn.impl.ExcludedGames;
+import bagaturchess.tools.pgn.impl.PGNConstants;
+import bagaturchess.tools.pgn.impl.PGNGame;
+import bagaturchess.tools.pgn.impl.PGNGameSplitter;
+import bagaturchess.tools.pgn.impl.PGNTurn;
+import bagaturchess.tools.pgn.impl.PGNUtils;
+
+
+/**
+ * Multi-threaded version of PGNParser.
+ * 
+ * One reader thread walks the files and zip entries and splits them into game texts (see PGNGameSplitter).
+ * The worker threads parse the texts and translate the SAN moves with their own boards, which is the expensive part.
+ * The IGameIterators are called only by the thread, which calls importPGNGamesInDir, so they need not be thread safe.
+ * It replays the already translated moves on its own board.
+ * 
+ * In ordered mode the games are passed to the iterators in the order of the files, otherwise in the order in which they are parsed.
+ * The number of games in the pipeline is limited, so the memory does not depend on the size of the files.
+ * 
+ * Unlike PGNParser, an excluded game (see ExcludedGames) is skipped without skipping the rest of its file.
+ */
+public class ParallelPGNParser {
+	
+	
+	private static final int GAMES_IN_PIPELINE_PER_THREAD = 256;
+	
+	
+	private int threadsCount;
+	
+	private boolean ordered;
+	
+	private IBoard bitboard;
+	
+	
+	public ParallelPGNParser() {
+		this(Runtime.getRuntime().availableProcessors(), true);
+	}
+	
+	
+	public ParallelPGNParser(int _threadsCount, boolean _ordered) {
+		
+		if (_threadsCount < 1) {
+			throw new IllegalStateException("threadsCount=" + _threadsCount);
+		}
+		
+		threadsCount = _threadsCount;
+		ordered = _ordered;
+		bitboard = createBoard();
+	}
+	
+	
+	public void importPGNGamesInDir(File pgnFileDir, IGameIterator gi) throws Exception {
+		importPGNGamesInDir(pgnFileDir, gi, false);
+	}
+	
+	
+	public void importPGNGamesInDir(File pgnFileDir, IGameIterator gi, boolean ignoreErrors) throws Exception {
+		importPGNGamesInDir(pgnFileDir, new IGameIterator[] {gi}, ignoreErrors);
+	}
+	
+	
+	public void importPGNGamesInDir(File pgnFileDir, IGameIterator[] gi) throws Exception {
+		importPGNGamesInDir(pgnFileDir, gi, false);
+	}
+	
+	
+	public void importPGNGamesInDir(File pgnFileDir, IGameIterator[] gi, boolean ignoreErrors) throws Exception {
+		
+		if (gi != null) {
+			for (int i=0; i<gi.length; i++) {
+				gi[i].preIteration(bitboard);	
+			}
+		}
+		
+		Pipeline pipeline = new Pipeline(threadsCount, pgnFileDir);
+		
+		try {
+			
+			pipeline.start();
+			
+			if (ordered) {
+				consumeOrdered(pipeline, gi, ignoreErrors);
+			} else {
+				consumeUnordered(pipeline, gi, ignoreErrors);
+			}
+			
+		} finally {
+			pipeline.stop();
+		}
+		
+		if (gi != null) {
+			for (int i=0; i<gi.length; i++) {
+				gi[i].postIteration();	
+			}
+		}
+	}
+	
+	
+	private void consumeUnordered(Pipeline pipeline, IGameIterator[] gi, boolean ignoreErrors) throws Exception {
+		
+		while (true) {
+			
+			ParsedGame game = pipeline.takeParsed();
+			
+			if (game == null) {
+				return;
+			}
+			
+			processGame(game, gi, ignoreErrors);
+		}
+	}
+	
+	
+	private void consumeOrdered(Pipeline pipeline, IGameIterator[] gi, boolean ignoreErrors) throws Exception {
+		
+		Map<Long, ParsedGame> waiting = new HashMap<Long, ParsedGame>();
+		
+		long next = 0;
+		
+		while (true) {
+			
+			ParsedGame game = waiting.remove(next);
+			
+			if (game == null) {
+				
+				game = pipeline.takeParsed();
+				
+				if (game == null) {
+					
+					if (!waiting.isEmpty()) {
+						throw new IllegalStateException("Missing game " + next + ", waiting games " + waiting.size());
+					}
+					
+					return;
+				}
+				
+				if (game.sequence != next) {
+					waiting.put(game.sequence, game);
+					continue;
+				}
+			}
+			
+			processGame(game, gi, ignoreErrors);
+			
+			next++;
+		}
+	}
+	
+	
+	private void processGame(ParsedGame game, IGameIterator[] gi, boolean ignoreErrors) throws Exception {
+		
+		if (game.game == null) {
+			//The text of the game cannot be parsed
+			handleError(game.error, ignoreErrors);
+			return;
+		}
+		
+		if (ExcludedGames.isExcluded(game.gameID)) {
+			return;
+		}
+		
+		if (gi != null) {
+			for (int i=0; i<gi.length; i++) {
+				gi[i].preGame(game.gameCount, game.game, game.gameID, bitboard);
+			}
+		}
+		if (gi != null) {
+			for (int i=0; i<gi.length; i++) {
+				if (gi[i] instanceof IPlyIterator) {
+					replayGame(game, bitboard, (IPlyIterator) gi[i]);
+					bitboard.revert();
+				}
+			}
+		}
+		
+		if (game.error != null) {
+			handleError(game.error, ignoreErrors);
+		}
+		
+		if (gi != null) {
+			for (int i=0; i<gi.length; i++) {
+				gi[i].postGame();
+			}
+		}
+	}
+	
+	
+	private static void handleError(Exception error, boolean ignoreErrors) throws Exception {
+		if (ignoreErrors) {
+			error.printStackTrace();
+		} else {
+			throw error;
+		}
+	}
+	
+	
+	private static void replayGame(ParsedGame game, IBoard bitboard, IPlyIterator pi) {
+		
+		int colour = Figures.COLOUR_WHITE;
+		
+		for (int i=0; i<game.movesCount; i++) {
+			
+			int move = game.moves[i];
+			
+			pi.preMove(colour, move, bitboard, i + 1);
+			bitboard.makeMoveForward(move);
+			pi.postMove();
+			
+			colour = Figures.OPPONENT_COLOUR[colour];
+		}
+	}
+	
+	
+	/**
+	 * Translates the moves of the game as PGNParser.playGame and stops at the same move.
+	 */
+	private static void translateGame(ParsedGame game, IBoard bitboard) {
+		
+		List<PGNTurn> pgnMoves = game.game.getTurns();
+		
+		game.moves = new int[2 * pgnMoves.size()];
+		
+		for (int i=0; i<pgnMoves.size(); i++) {
+			
+			PGNTurn pgnMove = pgnMoves.get(i);
+			
+			String whitePly = pgnMove.getWhitePly();
+			if (whitePly == null || !translatePly(game, bitboard, Figures.COLOUR_WHITE, whitePly)) {
+				return;
+			}
+			
+			String blackPly = pgnMove.getBlackPly();
+			if (blackPly == null || !translatePly(game, bitboard, Figures.COLOUR_BLACK, blackPly)) {
+				return;
+			}
+		}
+	}
+	
+	
+	/**
+	 * @return true if the game continues after the ply
+	 */
+	private static boolean translatePly(ParsedGame game, IBoard bitboard, int colour, String ply) {
+		
+		int move = PGNUtils.translatePGNMove(bitboard, colour, ply, false, game.game);
+		if (move == -1) {
+			return false;//Wrong move
+		}
+		
+		game.moves[game.movesCount++] = move;
+		bitboard.makeMoveForward(move);
+		
+		if (bitboard.isInCheck()) {
+			return bitboard.hasMoveInCheck();
+		} else {
+			return bitboard.hasMoveInNonCheck();
+		}
+	}
+	
+	
+	private static IBoard createBoard() {
+		return BoardUtils.createBoard_WithPawnsCache(Constants.INITIAL_BOARD, BagaturPawnsEvalFactory.class.getName(), new BoardConfigImpl_V17(), 10000);
+	}
+	
+	
+	private static class ParsedGame {
+		
+		
+		//Position in the whole input, starts from 0
+		private long sequence;
+		
+		//Position in the file, starts from 1 as in PGNParser
+		private int gameCount;
+		
+		private String text;
+		
+		private File file;
+		
+		private PGNGame game;
+		
+		private String gameID;
+		
+		private int[] moves;
+		
+		private int movesCount;
+		
+		private Exception error;
+	}
+	
+	
+	private static class Pipeline {
+		
+		
+		//Marks the end of the input in the queues
+		private static final ParsedGame END = new ParsedGame();
+		
+		
+		private File root;
+		
+		private BlockingQueue<ParsedGame> texts;
+		
+		private BlockingQueue<ParsedGame> parsed;
+		
+		//Limits the games, which are read but not yet passed to the iterators
+		private Semaphore capacity;
+		
+		private List<Thread> threads;
+		
+		private volatile Exception readerError;
+		
+		private volatile boolean stopped;
+		
+		//Guarded by this
+		private int finishedWorkers;
+		
+		
+		private Pipeline(int threadsCount, File _root) {
+			
+			root = _root;
+			
+			int games = threadsCount * GAMES_IN_PIPELINE_PER_THREAD;
+			
+			texts = new ArrayBlockingQueue<ParsedGame>(games);
+			parsed = new LinkedBlockingQueue<ParsedGame>();
+			capacity = new Semaphore(games);
+			
+			threads = new ArrayList<Thread>();
+			
+			threads.add(new Thread(new Runnable() {
+				
+				@Override
+				public void run() {
+					read();
+				}
+			}, "PGNReader"));
+			
+			for (int i = 0; i < threadsCount; i++) {
+				threads.add(new Thread(new Runnable() {
+					
+					@Override
+					public void run() {
+						parse();
+					}
+				}, "PGNParser" + i));
+			}
+		}
+		
+		
+		private void start() {
+			for (int i = 0; i < threads.size(); i++) {
+				threads.get(i).setDaemon(true);
+				threads.get(i).start();
+			}
+		}
+		
+		
+		private void stop() throws InterruptedException {
+			
+			stopped = true;
+			
+			for (int i = 0; i < threads.size(); i++) {
+				threads.get(i).interrupt();
+			}
+			
+			for (int i = 0; i < threads.size(); i++) {
+				threads.get(i).join();
+			}
+		}
+		
+		
+		/**
+		 * @return the next parsed game or null after the last game
+		 */
+		private ParsedGame takeParsed() throws Exception {
+			
+			ParsedGame game = parsed.take();
+			
+			if (game == END) {
+				
+				if (readerError != null) {
+					throw readerError;
+				}
+				
+				return null;
+			}
+			
+			capacity.release();
+			
+			return game;
+		}
+		
+		
+		private void read() {
+			
+			long sequence = 0;
+			
+			try {
+				
+				List<File> files = new ArrayList<File>();
+				collectFiles(root, files);
+				
+				for (int i = 0; i < files.size(); i++) {
+					sequence = readFile(files.get(i), sequence);
+				}
+				
+			} catch (InterruptedException e) {
+				
+				return;
+				
+			} catch (Exception e) {
+				
+				readerError = e;
+			}
+			
+			try {
+				
+				for (int i = 1; i < threads.size(); i++) {
+					texts.put(END);
+				}
+				
+			} catch (InterruptedException e) {
+				//Stopped
+			}
+		}
+		
+		
+		private void collectFiles(File file, List<File> files) {
+			
+			if (file.isDirectory()) {
+				File[] children = file.listFiles();
+				if (children != null) {
+					for (int i = 0; i < children.length; i++) {
+						collectFiles(children[i], files);
+					}
+				}
+			} else {
+				files.add(file);
+			}
+		}
+		
+		
+		private long readFile(File file, long sequence) throws Exception {
+			
+			String fileName = file.getName();
+			
+			System.out.println("Processing " + fileName + " ... ");
+			
+			if (fileName.endsWith(PGNConstants.FILE_PGN_SUFFIX)) {
+				
+				sequence = readStream(new FileInputStream(file), file, sequence);
+				
+			} else if (fileName.toLowerCase().endsWith(PGNConstants.FILE_JAR_SUFFIX)
+					|| fileName.toLowerCase().endsWith(PGNConstants.FILE_ZIP_SUFFIX)) {
+				
+				ZipFile zip = new ZipFile(file);
+				
+				try {
+					
+					Enumeration<? extends ZipEntry> entries = zip.entries();
+					
+					while (entries.hasMoreElements()) {
+						ZipEntry entry = entries.nextElement();
+						if (!entry.isDirectory() && entry.getName().toLowerCase().endsWith(PGNConstants.FILE_PGN_SUFFIX)) {
+							sequence = readStream(zip.getInputStream(entry), file, sequence);
+						}
+					}
+					
+				} finally {
+					zip.close();
+				}
+			}
+			
+			return sequence;
+		}
+		
+		
+		private long readStream(InputStream is, File file, long sequence) throws Exception {
+			
+			PGNGameSplitter splitter = new PGNGameSplitter(is);
+			
+			try {
+				
+				int gameCount = 0;
+				
+				String text;
+				
+				while (!stopped && (text = splitter.readGameText()) != null) {
+					
+					capacity.acquire();
+					
+					ParsedGame game = new ParsedGame();
+					game.sequence = sequence++;
+					game.gameCount = ++gameCount;
+					game.text = text;
+					game.file = file;
+					
+					texts.put(game);
+				}
+				
+			} finally {
+				splitter.close();
+			}
+			
+			return sequence;
+		}
+		
+		
+		private void parse() {
+			
+			IBoard board = createBoard();
+			
+			try {
+				
+				while (true) {
+					
+					ParsedGame game = texts.take();
+					
+					if (game == END) {
+						
+						//The last worker signals the end of the parsed games
+						synchronized (this) {
+							if (++finishedWorkers == threads.size() - 1) {
+								parsed.put(END);
+							}
+						}
+						
+						return;
+					}
+					
+					parse(game, board);
+					
+					parsed.put(game);
+				}
+				
+			} catch (InterruptedException e) {
+				//Stopped
+			}
+		}
+		
+		
+		private void parse(ParsedGame game, IBoard board) {
+			
+			try {
+				
+				game.game = new PGNGame();
+				game.game.load(new StringBuffer(game.text));
+				game.game.setArchiveFileName(game.file.getAbsolutePath());
+				game.gameID = game.game.getStringIdentification().trim();
+				
+				game.text = null;
+				
+				if (!ExcludedGames.isExcluded(game.gameID)) {
+					translateGame(game, board);
+				}
+				
+			} catch (Exception e) {
+				
+				game.error = e;
+				
+				if (game.gameID == null) {
+					//Not parsed at all
+					game.game = null;
+				}
+				
+			} finally {
+				
+				board.revert();
+			}
+		}
+	}
+}
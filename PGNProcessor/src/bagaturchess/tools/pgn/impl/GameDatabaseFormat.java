@@ -0,0 +1,159 @@
+/*
+ *  BagaturChess (UCI chess engine and tools)
+ *  Copyright (C) 2005 Krasimir I. Topchiyski (k_topchiyski@yahoo.com)
+ *  
+ *  Open Source project location: http://sourceforge.net/projects/bagaturchess/develop
+ *  SVN repository https://bagaturchess.svn.sourceforge.net/svnroot/bagaturchess
+ *
+ *  This file is part of BagaturChess program.
+ * 
+ *  BagaturChess is open software: you can redistribute it and/or modify
+ *  it under the terms of the Eclipse Public License version 1.0 as published by
+ *  the Eclipse Foundation.
+ *
+ *  BagaturChess is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  Eclipse Public License for more details.
+ *
+ *  You should have received a copy of the Eclipse Public License version 1.0
+ *  along with BagaturChess. If not, see <http://www.eclipse.org/legal/epl-v10.html/>.
+ *
+ */
+package bagaturchess.tools.pgn.impl;
+
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import bagaturchess.bitboard.api.IBoard;
+import bagaturchess.bitboard.api.IMoveOps;
+import bagaturchess.bitboard.impl.movelist.IMoveList;
+
+
+/**
+ * Files and encodings of the game database, written by GameDatabaseWriter and read by GameDatabase.
+ *
+ * games.dat - MAGIC, VERSION and the games one after another.
+ * 		Each game is the dictionary ids of the TAGS and the plies count as variable length ints, followed by the moves as 16 bit values.
+ * games.off - MAGIC, VERSION and the offset of each game in games.dat as long, followed by the end offset of the last game.
+ * headers.dict - MAGIC, VERSION, the strings count and the strings. The id 0 is reserved for a missing tag.
+ * positions.idx - MAGIC, VERSION, the records count and the records (hashkey, game index, ply),
+ * 		sorted by hashkey and then by game index and ply, so all games of one position are consecutive.
+ *
+ * A move is encoded independently of the board implementation as from field (6 bits), to field (6 bits) and promotion figure type (3 bits).
+ * It is decoded by matching it against the moves generated in the position.
+ */
+public class GameDatabaseFormat {
+	
+	
+	public static final String FILE_GAMES 				= "games.dat";
+	public static final String FILE_GAMES_OFFSETS 		= "games.off";
+	public static final String FILE_HEADERS 			= "headers.dict";
+	public static final String FILE_POSITIONS 			= "positions.idx";
+	
+	public static final int MAGIC_GAMES 				= 0x47414D45; //"GAME"
+	public static final int MAGIC_GAMES_OFFSETS 		= 0x474F4646; //"GOFF"
+	public static final int MAGIC_HEADERS 				= 0x48445253; //"HDRS"
+	public static final int MAGIC_POSITIONS 			= 0x504F5349; //"POSI"
+	
+	public static final int VERSION 					= 1;
+	
+	public static final int HEADER_SIZE 				= 4 + 4;
+	
+	public static final int POSITIONS_HEADER_SIZE 		= HEADER_SIZE + 8;
+	
+	//hashkey (long), game index (int), ply (int)
+	public static final int POSITION_RECORD_SIZE 		= 8 + 4 + 4;
+	
+	//The tags, which are stored for each game in this order
+	public static final String[] TAGS = new String[] {
+		PGNConstants.PROPERTY_TAG_STR_EVENT,
+		PGNConstants.PROPERTY_TAG_STR_SITE,
+		PGNConstants.PROPERTY_TAG_STR_DATE,
+		PGNConstants.PROPERTY_TAG_STR_ROUND,
+		PGNConstants.PROPERTY_TAG_STR_WHITE,
+		PGNConstants.PROPERTY_TAG_STR_BLACK,
+		PGNConstants.PROPERTY_TAG_STR_RESULT,
+		PGNConstants.PROPERTY_TAG_OTHERS_WHITE_ELO,
+		PGNConstants.PROPERTY_TAG_OTHERS_BLACK_ELO,
+		PGNConstants.PROPERTY_TAG_OI_ECO,
+	};
+	
+	private static final int FIELD_MASK 				= 0x3F;
+	private static final int TO_SHIFT 					= 6;
+	private static final int PROMOTION_SHIFT 			= 12;
+	private static final int PROMOTION_MASK 			= 0x7;
+	
+	
+	public static final short encodeMove(IBoard bitboard, int move) {
+		
+		IMoveOps ops = bitboard.getMoveOps();
+		
+		int promotion = ops.isPromotion(move) ? ops.getPromotionFigureType(move) : 0;
+		
+		return (short) (ops.getFromFieldID(move)
+				| (ops.getToFieldID(move) << TO_SHIFT)
+				| (promotion << PROMOTION_SHIFT));
+	}
+	
+	
+	/**
+	 * @return the move of the board, which matches the encoded move in the current position, or 0 if there is no such move
+	 */
+	public static final int decodeMove(IBoard bitboard, short encoded, IMoveList movesBuffer) {
+		
+		int from = encoded & FIELD_MASK;
+		int to = (encoded >>> TO_SHIFT) & FIELD_MASK;
+		int promotion = (encoded >>> PROMOTION_SHIFT) & PROMOTION_MASK;
+		
+		IMoveOps ops = bitboard.getMoveOps();
+		
+		movesBuffer.clear();
+		if (bitboard.isInCheck()) {
+			bitboard.genKingEscapes(movesBuffer);
+		} else {
+			bitboard.genAllMoves(movesBuffer);
+		}
+		
+		int cur_move = 0;
+		while ((cur_move = movesBuffer.next()) != 0) {
+			if (ops.getFromFieldID(cur_move) == from
+					&& ops.getToFieldID(cur_move) == to
+					&& (ops.isPromotion(cur_move) ? ops.getPromotionFigureType(cur_move) : 0) == promotion) {
+				return cur_move;
+			}
+		}
+		
+		return 0;
+	}
+	
+	
+	/**
+	 * @return the number of written bytes
+	 */
+	public static final int writeVarInt(DataOutput out, int value) throws IOException {
+		int bytes = 1;
+		while ((value & ~0x7F) != 0) {
+			out.writeByte((value & 0x7F) | 0x80);
+			value >>>= 7;
+			bytes++;
+		}
+		out.writeByte(value);
+		return bytes;
+	}
+	
+	
+	public static final int readVarInt(DataInput in) throws IOException {
+		int value = 0;
+		int shift = 0;
+		int b;
+		do {
+			b = in.readUnsignedByte();
+			value |= (b & 0x7F) << shift;
+			shift += 7;
+		} while ((b & 0x80) != 0);
+		return value;
+	}
+}
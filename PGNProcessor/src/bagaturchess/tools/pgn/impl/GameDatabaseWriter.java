@@ -0,0 +1,421 @@
+/*
+ *  BagaturChess (UCI chess engine and tools)
+ *  Copyright (C) 2005 Krasimir I. Topchiyski (k_topchiyski@yahoo.com)
+ *  
+ *  Open Source project location: http://sourceforge.net/projects/bagaturchess/develop
+ *  SVN repository https://bagaturchess.svn.sourceforge.net/svnroot/bagaturchess
+ *
+ *  This file is part of BagaturChess program.
+ * 
+ *  BagaturChess is open software: you can redistribute it and/or modify
+ *  it under the terms of the Eclipse Public License version 1.0 as published by
+ *  the Eclipse Foundation.
+ *
+ *  BagaturChess is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  Eclipse Public License for more details.
+ *
+ *  You should have received a copy of the Eclipse Public License version 1.0
+ *  along with BagaturChess. If not, see <http://www.eclipse.org/legal/epl-v10.html/>.
+ *
+ */
+package bagaturchess.tools.pgn.impl;
+
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import bagaturchess.bitboard.api.IBoard;
+import bagaturchess.tools.pgn.api.IPlyIterator;
+
+
+/**
+ * Imports the games into the binary game database (see GameDatabaseFormat), which is read by GameDatabase.
+ * It is used as an iterator of PGNParser or ParallelPGNParser.
+ *
+ * The position after each ply is added to the index. The initial position is not indexed, because all games start from it.
+ * The index records are distributed by the high bits of the hashkey into temporary bucket files,
+ * so at the end each bucket is sorted in memory and appended to the index, without sorting all records at once.
+ * The bucket size is about the index size divided by 2^bucketsBits.
+ */
+public class GameDatabaseWriter implements IPlyIterator {
+	
+	
+	private static final int DEFAULT_BUCKETS_BITS 	= 8;
+	
+	private static final int MAX_TAG_LENGTH 		= 1024;
+	
+	private static final int BUFFER_SIZE 			= 1024 * 1024;
+	
+	private static final int BUCKET_BUFFER_SIZE 	= 64 * 1024;
+	
+	
+	private File dir;
+	
+	private int bucketsBits;
+	
+	private DataOutputStream games;
+	
+	private DataOutputStream offsets;
+	
+	private long gamesOffset;
+	
+	private int gamesCount;
+	
+	private Map<String, Integer> dictionary;
+	
+	private List<String> strings;
+	
+	private File[] bucketFiles;
+	
+	private DataOutputStream[] buckets;
+	
+	private long positionsCount;
+	
+	private int[] tagIDs;
+	
+	private short[] moves;
+	
+	private int pliesCount;
+	
+	private IBoard bitboard;
+	
+	
+	public GameDatabaseWriter(File _dir) {
+		this(_dir, DEFAULT_BUCKETS_BITS);
+	}
+	
+	
+	public GameDatabaseWriter(File _dir, int _bucketsBits) {
+		
+		if (_bucketsBits < 1 || _bucketsBits > 16) {
+			throw new IllegalStateException("bucketsBits=" + _bucketsBits);
+		}
+		
+		dir = _dir;
+		bucketsBits = _bucketsBits;
+	}
+	
+	
+	@Override
+	public void preIteration(IBoard _bitboard) {
+		
+		try {
+			
+			dir.mkdirs();
+			
+			games = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(new File(dir, GameDatabaseFormat.FILE_GAMES)), BUFFER_SIZE));
+			games.writeInt(GameDatabaseFormat.MAGIC_GAMES);
+			games.writeInt(GameDatabaseFormat.VERSION);
+			
+			offsets = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(new File(dir, GameDatabaseFormat.FILE_GAMES_OFFSETS)), BUFFER_SIZE));
+			offsets.writeInt(GameDatabaseFormat.MAGIC_GAMES_OFFSETS);
+			offsets.writeInt(GameDatabaseFormat.VERSION);
+			
+			bucketFiles = new File[1 << bucketsBits];
+			buckets = new DataOutputStream[1 << bucketsBits];
+			
+			for (int i = 0; i < buckets.length; i++) {
+				bucketFiles[i] = new File(dir, GameDatabaseFormat.FILE_POSITIONS + "." + i + ".tmp");
+				buckets[i] = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(bucketFiles[i]), BUCKET_BUFFER_SIZE));
+			}
+		
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		
+		gamesOffset = GameDatabaseFormat.HEADER_SIZE;
+		gamesCount = 0;
+		positionsCount = 0;
+		
+		dictionary = new HashMap<String, Integer>();
+		strings = new ArrayList<String>();
+		strings.add(""); //id 0 is a missing tag
+		
+		tagIDs = new int[GameDatabaseFormat.TAGS.length];
+		moves = new short[256];
+	}
+	
+	
+	@Override
+	public void preGame(int gameCount, PGNGame pgnGame, String pgnGameID, IBoard _bitboard) {
+		
+		for (int i = 0; i < tagIDs.length; i++) {
+			Object value = pgnGame.getProperties().get(GameDatabaseFormat.TAGS[i]);
+			tagIDs[i] = value == null ? 0 : getStringID(value.toString());
+		}
+		
+		pliesCount = 0;
+	}
+	
+	
+	@Override
+	public void preMove(int colour, int move, IBoard _bitboard, int moveNumber) {
+		
+		if (pliesCount == moves.length) {
+			short[] new_moves = new short[2 * moves.length];
+			System.arraycopy(moves, 0, new_moves, 0, moves.length);
+			moves = new_moves;
+		}
+		
+		moves[pliesCount] = GameDatabaseFormat.encodeMove(_bitboard, move);
+		
+		bitboard = _bitboard;
+	}
+	
+	
+	@Override
+	public void postMove() {
+		
+		pliesCount++;
+		
+		long hashkey = bitboard.getHashKey();
+		
+		//Flipping the sign bit keeps the order of the signed hashkeys in the order of the buckets
+		int bucket = (int) ((hashkey ^ Long.MIN_VALUE) >>> (64 - bucketsBits));
+		
+		try {
+			
+			buckets[bucket].writeLong(hashkey);
+			buckets[bucket].writeInt(gamesCount);
+			buckets[bucket].writeInt(pliesCount);
+		
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		
+		positionsCount++;
+	}
+	
+	
+	@Override
+	public void postGame() {
+		
+		try {
+			
+			offsets.writeLong(gamesOffset);
+			
+			for (int i = 0; i < tagIDs.length; i++) {
+				gamesOffset += GameDatabaseFormat.writeVarInt(games, tagIDs[i]);
+			}
+			
+			gamesOffset += GameDatabaseFormat.writeVarInt(games, pliesCount);
+			
+			for (int i = 0; i < pliesCount; i++) {
+				games.writeShort(moves[i]);
+			}
+			
+			gamesOffset += 2 * pliesCount;
+		
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		
+		gamesCount++;
+		
+		if (gamesCount % 100000 == 0) {
+			System.out.println("GameDatabaseWriter: " + gamesCount + " games, " + positionsCount + " positions");
+		}
+	}
+	
+	
+	@Override
+	public void postIteration() {
+		
+		try {
+			
+			//The end offset of the last game
+			offsets.writeLong(gamesOffset);
+			offsets.close();
+			
+			games.close();
+			
+			writeHeaders();
+			
+			for (int i = 0; i < buckets.length; i++) {
+				buckets[i].close();
+			}
+			
+			writePositions();
+		
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		
+		System.out.println("GameDatabaseWriter: done " + gamesCount + " games, " + positionsCount + " positions, " + (strings.size() - 1) + " header strings");
+	}
+	
+	
+	private int getStringID(String value) {
+		
+		if (value.length() > MAX_TAG_LENGTH) {
+			value = value.substring(0, MAX_TAG_LENGTH);
+		}
+		
+		Integer id = dictionary.get(value);
+		
+		if (id == null) {
+			id = strings.size();
+			strings.add(value);
+			dictionary.put(value, id);
+		}
+		
+		return id;
+	}
+	
+	
+	private void writeHeaders() throws IOException {
+		
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(new File(dir, GameDatabaseFormat.FILE_HEADERS)), BUFFER_SIZE));
+		
+		try {
+			
+			out.writeInt(GameDatabaseFormat.MAGIC_HEADERS);
+			out.writeInt(GameDatabaseFormat.VERSION);
+			out.writeInt(strings.size());
+			
+			for (String value: strings) {
+				out.writeUTF(value);
+			}
+		
+		} finally {
+			
+			out.close();
+		}
+	}
+	
+	
+	private void writePositions() throws IOException {
+		
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(new File(dir, GameDatabaseFormat.FILE_POSITIONS)), BUFFER_SIZE));
+		
+		try {
+			
+			out.writeInt(GameDatabaseFormat.MAGIC_POSITIONS);
+			out.writeInt(GameDatabaseFormat.VERSION);
+			out.writeLong(positionsCount);
+			
+			for (int i = 0; i < bucketFiles.length; i++) {
+				
+				long records = bucketFiles[i].length() / GameDatabaseFormat.POSITION_RECORD_SIZE;
+				
+				if (records > Integer.MAX_VALUE - 8) {
+					throw new IllegalStateException("Bucket " + i + " has " + records + " records, use more buckets bits than " + bucketsBits);
+				}
+				
+				long[] keys = new long[(int) records];
+				long[] values = new long[(int) records];
+				
+				DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(bucketFiles[i]), BUFFER_SIZE));
+				
+				try {
+					
+					for (int j = 0; j < keys.length; j++) {
+						keys[j] = in.readLong();
+						values[j] = ((long) in.readInt() << 32) | (in.readInt() & 0xFFFFFFFFL);
+					}
+				
+				} finally {
+					
+					in.close();
+				}
+				
+				sort(keys, values, 0, keys.length - 1);
+				
+				for (int j = 0; j < keys.length; j++) {
+					out.writeLong(keys[j]);
+					out.writeLong(values[j]);
+				}
+				
+				bucketFiles[i].delete();
+			}
+		
+		} finally {
+			
+			out.close();
+		}
+	}
+	
+	
+	/**
+	 * Quick sort of the records by hashkey and then by (game index, ply), which are packed in the values.
+	 */
+	private static void sort(long[] keys, long[] values, int low, int high) {
+		
+		while (high - low > 16) {
+			
+			int middle = (low + high) >>> 1;
+			
+			long pivot_key = keys[middle];
+			long pivot_value = values[middle];
+			
+			int i = low;
+			int j = high;
+			
+			while (i <= j) {
+				
+				while (compare(keys[i], values[i], pivot_key, pivot_value) < 0) {
+					i++;
+				}
+				
+				while (compare(keys[j], values[j], pivot_key, pivot_value) > 0) {
+					j--;
+				}
+				
+				if (i <= j) {
+					swap(keys, values, i, j);
+					i++;
+					j--;
+				}
+			}
+			
+			//Recursion on the smaller part keeps the stack depth logarithmic
+			if (j - low < high - i) {
+				sort(keys, values, low, j);
+				low = i;
+			} else {
+				sort(keys, values, i, high);
+				high = j;
+			}
+		}
+		
+		for (int i = low + 1; i <= high; i++) {
+			for (int j = i; j > low && compare(keys[j - 1], values[j - 1], keys[j], values[j]) > 0; j--) {
+				swap(keys, values, j - 1, j);
+			}
+		}
+	}
+	
+	
+	private static int compare(long key1, long value1, long key2, long value2) {
+		
+		if (key1 != key2) {
+			return Long.compare(key1, key2);
+		}
+		
+		return Long.compare(value1, value2);
+	}
+	
+	
+	private static void swap(long[] keys, long[] values, int i, int j) {
+		
+		long key = keys[i];
+		keys[i] = keys[j];
+		keys[j] = key;
+		
+		long value = values[i];
+		values[i] = values[j];
+		values[j] = value;
+	}
+}
@@ -0,0 +1,151 @@
+/*
+ *  BagaturChess (UCI chess engine and tools)
+ *  Copyright (C) 2005 Krasimir I. Topchiyski (k_topchiyski@yahoo.com)
+ *  
+ *  Open Source project location: http://sourceforge.net/projects/bagaturchess/develop
+ *  SVN repository https://bagaturchess.svn.sourceforge.net/svnroot/bagaturchess
+ *
+ *  This file is part of BagaturChess program.
+ * 
+ *  BagaturChess is open software: you can redistribute it and/or modify
+ *  it under the terms of the Eclipse Public License version 1.0 as published by
+ *  the Eclipse Foundation.
+ *
+ *  BagaturChess is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  Eclipse Public License for more details.
+ *
+ *  You should have received a copy of the Eclipse Public License version 1.0
+ *  along with BagaturChess. If not, see <http://www.eclipse.org/legal/epl-v10.html/>.
+ *
+ */
+
+
+package bagaturchess.tools.pgn.impl;
+
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+
+/**
+ * Splits a PGN stream into the texts of its games.
+ * The stream is read in large blocks and the last 5 bytes are kept in a long,
+ * so the game prefix, suffix and delimiter (see PGNConstants) are recognized with one comparison per byte.
+ * The texts are the same as the ones collected by the former byte by byte implementation of PGNInputStream.
+ */
+public class PGNGameSplitter {
+	
+	
+	private static final int BUFFER_SIZE 	= 1024 * 1024;
+	
+	private static final long WINDOW_MASK 	= 0xFFFFFFFFFFL;
+	
+	private static final long PREFIX 		= toLong(PGNConstants.PGN_GAME_PREFIX);
+	private static final int SUFFIX 		= (int) toLong(PGNConstants.PGN_GAME_SUFFIX);
+	private static final long DELIM 		= toLong(PGNConstants.PGN_GAME_DELIM);
+	
+	
+	private InputStream in;
+	
+	private byte[] buffer;
+	private int buffer_pos;
+	private int buffer_size;
+	
+	//The last 5 bytes of the stream
+	private long window;
+	
+	private byte[] game;
+	private int game_size;
+	
+	
+	public PGNGameSplitter(InputStream _in) {
+		in = _in;
+		buffer = new byte[BUFFER_SIZE];
+		game = new byte[4096];
+	}
+	
+	
+	/**
+	 * @return the text of the next game or null at the end of the stream
+	 */
+	public String readGameText() throws IOException {
+		
+		boolean inGame = false;
+		
+		game_size = 0;
+		
+		while (true) {
+			
+			if (buffer_pos == buffer_size) {
+				
+				buffer_size = in.read(buffer, 0, buffer.length);
+				buffer_pos = 0;
+				
+				if (buffer_size <= 0) {
+					buffer_size = 0;
+					break;
+				}
+			}
+			
+			int b = buffer[buffer_pos++];
+			
+			window = ((window << 8) | (b & 0xFF)) & WINDOW_MASK;
+			
+			if (window == PREFIX) {
+				
+				append(PGNConstants.PGN_GAME_PREFIX[PGNConstants.PGN_GAME_PREFIX.length - 1]);
+				inGame = true;
+				
+			} else if ((int) window == SUFFIX && window != DELIM) {
+				
+				if (inGame) {
+					//The first bytes of the suffix are already appended
+					game_size = Math.max(0, game_size - PGNConstants.PGN_GAME_SUFFIX.length + 1);
+					break;
+				}
+				
+			} else if (inGame) {
+				
+				append(b);
+			}
+		}
+		
+		if (game_size == 0) {
+			return null;
+		}
+		
+		return new String(game, 0, game_size, StandardCharsets.ISO_8859_1);
+	}
+	
+	
+	public void close() throws IOException {
+		in.close();
+	}
+	
+	
+	private void append(int b) {
+		
+		if (game_size == game.length) {
+			byte[] bigger = new byte[2 * game.length];
+			System.arraycopy(game, 0, bigger, 0, game_size);
+			game = bigger;
+		}
+		
+		game[game_size++] = (byte) b;
+	}
+	
+	
+	private static long toLong(int[] bytes) {
+		
+		long result = 0;
+		
+		for (int i = 0; i < bytes.length; i++) {
+			result = (result << 8) | (bytes[i] & 0xFF);
+		}
+		
+		return result;
+	}
+}
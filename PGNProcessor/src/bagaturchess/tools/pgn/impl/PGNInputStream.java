@@ -39,57 +39,18 @@ import java.io.InputStream;
 
 
 public class PGNInputStream {
-  //FileInputStream to PGN file
-  InputStream mNativeIS = null;
-
-  //Internal string buffer for current game
-  StringBuffer mPGNGameBuf = new StringBuffer();
-
-  private int mBufferSize = Math.max( PGNConstants.PGN_GAME_PREFIX.length,
-                                      PGNConstants.PGN_GAME_SUFFIX.length );
-
-  private byte[] mTempByteBuffer = new byte[ mBufferSize ];
-
-  private PGNGameCounter mPGNGameCounter;
-
-
-  private static void shiftLeftByteArray( byte[] aCurBuf, int aNewByte ) {
-    for ( int i = 0; i < aCurBuf.length - 1; i++ ) {
-      aCurBuf[ i ] = aCurBuf[ i + 1 ];
-    }
-
-    aCurBuf[ aCurBuf.length - 1 ] = ( byte ) aNewByte;
-  }
-
-
-  //Tests if aCurBuf ands with aTemplateArr
-  //Size of aTemplateArr is less then aCurBuf
-  private static boolean endsWithArray( byte[] aCurBuf, int[] aTemplateArr ) {
-    boolean result = false;
-
-    int sizeDif = aCurBuf.length - aTemplateArr.length;
-
-    for ( int i = aTemplateArr.length - 1; i >= 0; i-- ) {
-      if ( ( byte ) aTemplateArr[ i ] != aCurBuf[ i + sizeDif ] )
-        break;
-
-      if ( i == 0 )
-      //after 'result = true' possibly break for-cycle
-        result = true;
-    }
-
-    return result;
-  }
+  //Splits the PGN file into games
+  PGNGameSplitter mSplitter = null;
 
 
   public PGNInputStream( InputStream pPGNFileInputStream) {
-    mNativeIS = pPGNFileInputStream;
+    mSplitter = new PGNGameSplitter( pPGNFileInputStream );
   }
 
 
   public PGNInputStream( String pAbsoluteFilePathToPGN)
       throws FileNotFoundException {
-    mNativeIS = new FileInputStream( pAbsoluteFilePathToPGN );
+    mSplitter = new PGNGameSplitter( new FileInputStream( pAbsoluteFilePathToPGN ) );
   }
 
 
@@ -97,32 +58,11 @@ public class PGNInputStream {
       throws IOException {
     PGNGame tempPGNGame = null;
 
-    int tempInt;
-    boolean isInGame = false;
-
-    mPGNGameBuf.delete( 0, mPGNGameBuf.length() );
-    while ( ( tempInt = mNativeIS.read() ) != -1 ) {
-      shiftLeftByteArray( mTempByteBuffer, tempInt );
-
-      if ( endsWithArray( mTempByteBuffer, PGNConstants.PGN_GAME_PREFIX ) ) {
-        mPGNGameBuf.append( ( char ) PGNConstants.PGN_GAME_PREFIX[ PGNConstants.PGN_GAME_PREFIX.length - 1 ] );
-        isInGame = true;
-      } else if ( endsWithArray( mTempByteBuffer, PGNConstants.PGN_GAME_SUFFIX )
-          && !endsWithArray( mTempByteBuffer, PGNConstants.PGN_GAME_DELIM ) ) {
-        if ( isInGame ) {
-          mPGNGameBuf.delete( mPGNGameBuf.length() - PGNConstants.PGN_GAME_SUFFIX.length + 1, mPGNGameBuf.length() );
-          break;
-        }
-      } else {
-        if ( isInGame ) {
-          mPGNGameBuf.append( ( char ) tempInt );
-        }
-      }
-    }
+    String gameText = mSplitter.readGameText();
 
-    if ( mPGNGameBuf.length() > 0 ) {
+    if ( gameText != null ) {
     	tempPGNGame = new PGNGame();
-    	tempPGNGame.load(mPGNGameBuf);
+    	tempPGNGame.load(new StringBuffer(gameText));
     }
 
     return tempPGNGame;
@@ -131,6 +71,6 @@ public class PGNInputStream {
 
   public void close()
       throws IOException {
-    mNativeIS.close();
+    mSplitter.close();
   }
 }
@@ -24,6 +24,7 @@ package bagaturchess.tools.pgn.impl;
 
 
 import bagaturchess.bitboard.api.IBoard;
+import bagaturchess.bitboard.api.IMoveOps;
 import bagaturchess.bitboard.impl.Fields;
 import bagaturchess.bitboard.impl.Figures;
 import bagaturchess.bitboard.impl.movelist.BaseMoveList;
@@ -33,7 +34,19 @@ import bagaturchess.bitboard.impl.movelist.IMoveList;
 public class PGNUtils implements PGNConstants {
 
 	
-	private static IMoveList movesBuffer = new BaseMoveList(150);
+	//Each thread has its own buffer, so the games can be parsed in parallel (see ParallelPGNParser)
+	//Indexed by Fields.LETTER_*_ID, Fields.DIGIT_*_ID and Figures.TYPE_*
+	private static final String SAN_FILES 		= "abcdefgh";
+	private static final String SAN_RANKS 		= "12345678";
+	private static final String SAN_IDENTIFIERS = " PNBRQK";
+	
+	
+	private static final ThreadLocal<IMoveList> movesBuffers = new ThreadLocal<IMoveList>() {
+		@Override
+		protected IMoveList initialValue() {
+			return new BaseMoveList(150);
+		}
+	};
 	
 	
 	public static int translatePGNMove(IBoard bitboard, int colour, String pPGNTurn, boolean validateChechAndMate, PGNGame pgnGame) {
@@ -60,6 +73,8 @@ public class PGNUtils implements PGNConstants {
 
 	public static int makeCastleKingSide(IBoard bitboard, int colour, String pPGNTurn) {
 		
+		IMoveList movesBuffer = movesBuffers.get();
+		
 		int turnToMove = 0;
 		
 		boolean founded = false;
@@ -90,6 +105,8 @@ public class PGNUtils implements PGNConstants {
 
 	public static int makeCastleQueenSide(IBoard bitboard, int colour, String pPGNTurn) {
 		
+		IMoveList movesBuffer = movesBuffers.get();
+		
 		int turnToMove = 0;
 		
 		boolean founded = false;
@@ -132,6 +149,8 @@ public class PGNUtils implements PGNConstants {
 	
 
 	public static int makeTurnBySAN(IBoard bitboard, int colour, String pPGNTurn, boolean validateChechAndMate, PGNGame pgnGame) {
+		
+		IMoveList movesBuffer = movesBuffers.get();
 		int turnToMove = 0;
 		
 		boolean isChess = false;
@@ -315,6 +334,91 @@ public class PGNUtils implements PGNConstants {
 		return turnToMove;
 	}
 
+	/**
+	 * Inverse of translatePGNMove.
+	 * @return the SAN notation of the legal move in the current position of the board
+	 */
+	public static String getSAN(IBoard bitboard, int move) {
+		
+		IMoveOps ops = bitboard.getMoveOps();
+		
+		StringBuilder san = new StringBuilder(8);
+		
+		if (ops.isCastlingKingSide(move)) {
+			san.append(SAN_CASTLE_KING_SIDE_STR);
+		} else if (ops.isCastlingQueenSide(move)) {
+			san.append(SAN_CASTLE_QUEEN_SIDE_STR);
+		} else {
+			
+			int figureType = ops.getFigureType(move);
+			
+			if (figureType == Figures.TYPE_PAWN) {
+				
+				if (ops.isCapture(move)) {
+					san.append(SAN_FILES.charAt(ops.getFromField_File(move)));
+				}
+				
+			} else {
+				
+				san.append(SAN_IDENTIFIERS.charAt(figureType));
+				
+				//Disambiguation of the pieces of the same type, which go to the same field
+				boolean ambiguous = false;
+				boolean sameFile = false;
+				boolean sameRank = false;
+				
+				IMoveList movesBuffer = movesBuffers.get();
+				movesBuffer.clear();
+				if (bitboard.isInCheck()) {
+					bitboard.genKingEscapes(movesBuffer);
+				} else {
+					bitboard.genAllMoves(movesBuffer);
+				}
+				
+				int cur_move = 0;
+				while ((cur_move = movesBuffer.next()) != 0) {
+					if (cur_move != move
+							&& ops.getFigureType(cur_move) == figureType
+							&& ops.getToFieldID(cur_move) == ops.getToFieldID(move)) {
+						ambiguous = true;
+						sameFile |= ops.getFromField_File(cur_move) == ops.getFromField_File(move);
+						sameRank |= ops.getFromField_Rank(cur_move) == ops.getFromField_Rank(move);
+					}
+				}
+				
+				if (ambiguous) {
+					if (!sameFile) {
+						san.append(SAN_FILES.charAt(ops.getFromField_File(move)));
+					} else if (!sameRank) {
+						san.append(SAN_RANKS.charAt(ops.getFromField_Rank(move)));
+					} else {
+						san.append(SAN_FILES.charAt(ops.getFromField_File(move)));
+						san.append(SAN_RANKS.charAt(ops.getFromField_Rank(move)));
+					}
+				}
+			}
+			
+			if (ops.isCapture(move)) {
+				san.append(SAN_CAPTURE_CHAR);
+			}
+			
+			san.append(SAN_FILES.charAt(ops.getToField_File(move)));
+			san.append(SAN_RANKS.charAt(ops.getToField_Rank(move)));
+			
+			if (ops.isPromotion(move)) {
+				san.append(SAN_PROMOTIONS_CHAR);
+				san.append(SAN_IDENTIFIERS.charAt(ops.getPromotionFigureType(move)));
+			}
+		}
+		
+		if (bitboard.isCheckMove(move)) {
+			san.append(SAN_CHECK_SUFFIX_CHAR);
+		}
+		
+		return san.toString();
+	}
+	
+	
 	/*private static String getTurnsAsString(Iterator aIter) {
 		String result = "\r\nTURNS START\r\n";
 		//((TurnsReferenceIterator) aIter).goBeforeFirst();
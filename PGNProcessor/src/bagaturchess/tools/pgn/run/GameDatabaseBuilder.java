@@ -0,0 +1,160 @@
+/*
+ *  BagaturChess (UCI chess engine and tools)
+ *  Copyright (C) 2005 Krasimir I. Topchiyski (k_topchiyski@yahoo.com)
+ *  
+ *  Open Source project location: http://sourceforge.net/projects/bagaturchess/develop
+ *  SVN repository https://bagaturchess.svn.sourceforge.net/svnroot/bagaturchess
+ *
+ *  This file is part of BagaturChess program.
+ * 
+ *  BagaturChess is open software: you can redistribute it and/or modify
+ *  it under the terms of the Eclipse Public License version 1.0 as published by
+ *  the Eclipse Foundation.
+ *
+ *  BagaturChess is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  Eclipse Public License for more details.
+ *
+ *  You should have received a copy of the Eclipse Public License version 1.0
+ *  along with BagaturChess. If not, see <http://www.eclipse.org/legal/epl-v10.html/>.
+ *
+ */
+package bagaturchess.tools.pgn.run;
+
+
+import java.io.File;
+import java.util.Arrays;
+
+import bagaturchess.bitboard.api.BoardUtils;
+import bagaturchess.bitboard.api.IBitBoard;
+import bagaturchess.tools.pgn.api.GameDatabase;
+import bagaturchess.tools.pgn.api.ParallelPGNParser;
+import bagaturchess.tools.pgn.impl.GameDatabaseWriter;
+
+
+/**
+ * Imports PGN games into the binary game database, checks that the positions of the first games are found in the index
+ * and measures the lookups of the positions after a few openings.
+ * Without an existing PGN file or directory, a file with random games is generated.
+ *
+ * Usage: GameDatabaseBuilder [PGN file or directory | games to generate=20000] [database directory=./gamedb] [threads=available processors]
+ */
+public class GameDatabaseBuilder {
+	
+	
+	private static final int VERIFIED_GAMES = 1000;
+	
+	private static final String[][] QUERIES = new String[][] {
+		{"e2e4"},
+		{"e2e4", "c7c5"},
+		{"e2e4", "e7e5", "g1f3", "b8c6"},
+		{"d2d4", "g8f6", "c2c4", "e7e6"},
+		{"g1f3", "d7d5", "g2g3"},
+	};
+	
+	
+	public static void main(String[] args) {
+		
+		try {
+			
+			File pgn;
+			
+			if (args.length > 0 && new File(args[0]).exists()) {
+				pgn = new File(args[0]);
+			} else {
+				pgn = new File("GameDatabaseBuilder.pgn");
+				PGNParserBenchmark.generate(pgn, args.length > 0 ? Integer.parseInt(args[0]) : 20000);
+			}
+			
+			File dir = new File(args.length > 1 ? args[1] : "./gamedb");
+			
+			int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+			
+			long time = System.currentTimeMillis();
+			new ParallelPGNParser(threads, true).importPGNGamesInDir(pgn, new GameDatabaseWriter(dir), true);
+			System.out.println("GameDatabaseBuilder: imported " + pgn + " into " + dir + " in " + (System.currentTimeMillis() - time) + "ms");
+			
+			GameDatabase db = new GameDatabase(dir);
+			
+			try {
+				
+				verify(db);
+				
+				for (String[] query: QUERIES) {
+					query(db, query);
+				}
+			
+			} finally {
+				
+				db.close();
+			}
+			
+			System.out.println("GameDatabaseBuilder: OK");
+		
+		} catch (Throwable t) {
+			
+			t.printStackTrace();
+			
+			System.exit(1);
+		}
+		
+		System.exit(0);
+	}
+	
+	
+	/**
+	 * Replays the first games from the database and checks that each of their positions is found with the game.
+	 */
+	private static void verify(GameDatabase db) throws Exception {
+		
+		IBitBoard board = BoardUtils.createBoard_WithPawnsCache();
+		
+		int games = Math.min(VERIFIED_GAMES, db.getGamesCount());
+		
+		long plies = 0;
+		
+		for (int index = 0; index < games; index++) {
+			
+			GameDatabase.Game game = db.getGame(index);
+			
+			for (int ply = 1; ply <= game.getPliesCount(); ply++) {
+				
+				game.play(board, ply);
+				
+				//The games are in ascending order, so this game is among the first index + 1 found games
+				int[] found = db.findGames(board.getHashKey(), index + 1);
+				
+				if (Arrays.binarySearch(found, index) < 0) {
+					throw new IllegalStateException("Position after ply " + ply + " of game " + index + " is not found");
+				}
+				
+				board.revert();
+				
+				plies++;
+			}
+		}
+		
+		System.out.println("GameDatabaseBuilder: verified " + games + " games, " + plies + " plies");
+	}
+	
+	
+	private static void query(GameDatabase db, String[] moves) throws Exception {
+		
+		IBitBoard board = BoardUtils.createBoard_WithPawnsCache();
+		
+		for (String move: moves) {
+			board.makeMoveForward(move);
+		}
+		
+		long start = System.nanoTime();
+		
+		long positions = db.countPositions(board.getHashKey());
+		int[] games = db.findGames(board.getHashKey(), 100);
+		
+		long time = System.nanoTime() - start;
+		
+		System.out.println("GameDatabaseBuilder: " + String.join(" ", moves) + ": " + positions + " positions, first "
+				+ games.length + " games in " + (time / 1000) + "us" + (games.length > 0 ? ", first game " + db.getGame(games[0]) : ""));
+	}
+}
@@ -0,0 +1,250 @@
+/*
+ *  BagaturChess (UCI chess engine and tools)
+ *  Copyright (C) 2005 Krasimir I. Topchiyski (k_topchiyski@yahoo.com)
+ *  
+ *  Open Source project location: http://sourceforge.net/projects/bagaturchess/develop
+ *  SVN repository https://bagaturchess.svn.sourceforge.net/svnroot/bagaturchess
+ *
+ *  This file is part of BagaturChess program.
+ * 
+ *  BagaturChess is open software: you can redistribute it and/or modify
+ *  it under the terms of the Eclipse Public License version 1.0 as published by
+ *  the Eclipse Foundation.
+ *
+ *  BagaturChess is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  Eclipse Public License for more details.
+ *
+ *  You should have received a copy of the Eclipse Public License version 1.0
+ *  along with BagaturChess. If not, see <http://www.eclipse.org/legal/epl-v10.html/>.
+ *
+ */
+package bagaturchess.tools.pgn.run;
+
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+
+import bagaturchess.bitboard.api.BoardUtils;
+import bagaturchess.bitboard.api.IBitBoard;
+import bagaturchess.bitboard.api.IBoard;
+import bagaturchess.bitboard.impl.movelist.BaseMoveList;
+import bagaturchess.bitboard.impl.movelist.IMoveList;
+import bagaturchess.tools.pgn.api.IPlyIterator;
+import bagaturchess.tools.pgn.api.ParallelPGNParser;
+import bagaturchess.tools.pgn.api.PGNParser;
+import bagaturchess.tools.pgn.impl.PGNGame;
+import bagaturchess.tools.pgn.impl.PGNUtils;
+
+
+/**
+ * Measures the games per second of PGNParser and ParallelPGNParser (ordered and unordered) with a move counting iterator
+ * and checks that all of them deliver the same games and moves.
+ * Without an existing PGN file or directory, a file with random games is generated.
+ *
+ * Usage: PGNParserBenchmark [PGN file or directory | games to generate=20000] [threads=available processors]
+ */
+public class PGNParserBenchmark {
+	
+	
+	public static void main(String[] args) {
+		
+		try {
+			
+			File pgn;
+			
+			if (args.length > 0 && new File(args[0]).exists()) {
+				pgn = new File(args[0]);
+			} else {
+				pgn = new File("PGNParserBenchmark.pgn");
+				generate(pgn, args.length > 0 ? Integer.parseInt(args[0]) : 20000);
+			}
+			
+			int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+			
+			CountingIterator sequential = new CountingIterator();
+			long time = System.currentTimeMillis();
+			new PGNParser().importPGNGamesInDir(pgn, sequential);
+			print("PGNParser", sequential, System.currentTimeMillis() - time);
+			
+			CountingIterator ordered = new CountingIterator();
+			time = System.currentTimeMillis();
+			new ParallelPGNParser(threads, true).importPGNGamesInDir(pgn, ordered);
+			print("ParallelPGNParser ordered, " + threads + " threads", ordered, System.currentTimeMillis() - time);
+			
+			CountingIterator unordered = new CountingIterator();
+			time = System.currentTimeMillis();
+			new ParallelPGNParser(threads, false).importPGNGamesInDir(pgn, unordered);
+			print("ParallelPGNParser unordered, " + threads + " threads", unordered, System.currentTimeMillis() - time);
+			
+			if (ordered.orderedHash != sequential.orderedHash || ordered.plies != sequential.plies) {
+				throw new IllegalStateException("The ordered parallel parsing differs from the sequential one");
+			}
+			
+			if (unordered.gamesHash != sequential.gamesHash || unordered.plies != sequential.plies) {
+				throw new IllegalStateException("The unordered parallel parsing differs from the sequential one");
+			}
+			
+			System.out.println("PGNParserBenchmark: OK");
+			
+		} catch (Throwable t) {
+			
+			t.printStackTrace();
+			
+			System.exit(1);
+		}
+		
+		System.exit(0);
+	}
+	
+	
+	private static void print(String name, CountingIterator iterator, long time) {
+		
+		System.out.println("PGNParserBenchmark: " + name + ": " + iterator.games + " games, " + iterator.plies + " plies in " + time + "ms"
+				+ ", " + (1000 * iterator.games / Math.max(1, time)) + " games/sec");
+	}
+	
+	
+	/**
+	 * Plays random legal games and writes them in the format of PGNInputStream (CRLF line endings).
+	 */
+	static void generate(File file, int games) throws IOException {
+		
+		System.out.println("PGNParserBenchmark: generating " + games + " random games into " + file.getAbsolutePath());
+		
+		IBitBoard board = BoardUtils.createBoard_WithPawnsCache();
+		
+		IMoveList moves = new BaseMoveList(150);
+		
+		Random random = new Random(1);
+		
+		OutputStream os = new BufferedOutputStream(new FileOutputStream(file), 1024 * 1024);
+		
+		try {
+			
+			for (int game = 0; game < games; game++) {
+				
+				StringBuilder text = new StringBuilder(1024);
+				
+				text.append("\r\n\r\n");
+				text.append("[Event \"PGNParserBenchmark\"]\r\n");
+				text.append("[Site \"?\"]\r\n");
+				text.append("[Date \"????.??.??\"]\r\n");
+				text.append("[Round \"" + (game + 1) + "\"]\r\n");
+				text.append("[White \"Player" + random.nextInt(1000) + "\"]\r\n");
+				text.append("[Black \"Player" + random.nextInt(1000) + "\"]\r\n");
+				text.append("[Result \"*\"]\r\n");
+				text.append("\r\n");
+				
+				int plies = 20 + random.nextInt(100);
+				
+				int line_length = 0;
+				
+				for (int ply = 0; ply < plies; ply++) {
+					
+					moves.clear();
+					if (board.isInCheck()) {
+						board.genKingEscapes(moves);
+					} else {
+						board.genAllMoves(moves);
+					}
+					
+					if (moves.size() == 0 || board.isDraw50movesRule()) {
+						break;
+					}
+					
+					int index = random.nextInt(moves.size());
+					int move = 0;
+					for (int i = 0; i <= index; i++) {
+						move = moves.next();
+					}
+					
+					String san = (ply % 2 == 0 ? (ply / 2 + 1) + ". " : "") + PGNUtils.getSAN(board, move) + " ";
+					
+					if (line_length + san.length() > 80) {
+						text.append("\r\n");
+						line_length = 0;
+					}
+					
+					text.append(san);
+					line_length += san.length();
+					
+					board.makeMoveForward(move);
+				}
+				
+				text.append("*");
+				
+				board.revert();
+				
+				os.write(text.toString().getBytes("ISO-8859-1"));
+			}
+			
+			os.write("\r\n\r\n".getBytes("ISO-8859-1"));
+			
+		} finally {
+			os.close();
+		}
+	}
+	
+	
+	private static class CountingIterator implements IPlyIterator {
+		
+		
+		private long games;
+		
+		private long plies;
+		
+		//Depends on the order of the games
+		private long orderedHash;
+		
+		//Does not depend on the order of the games
+		private long gamesHash;
+		
+		private long gameHash;
+		
+		private IBoard board;
+		
+		
+		@Override
+		public void preIteration(IBoard bitboard) {
+		}
+		
+		
+		@Override
+		public void postIteration() {
+		}
+		
+		
+		@Override
+		public void preGame(int gameCount, PGNGame pgnGame, String pgnGameID, IBoard bitboard) {
+			games++;
+			gameHash = pgnGameID.hashCode();
+		}
+		
+		
+		@Override
+		public void postGame() {
+			orderedHash = 31 * orderedHash + gameHash;
+			gamesHash += gameHash;
+		}
+		
+		
+		@Override
+		public void preMove(int colour, int move, IBoard bitboard, int moveNumber) {
+			plies++;
+			gameHash = 31 * gameHash + move;
+			board = bitboard;
+		}
+		
+		
+		@Override
+		public void postMove() {
+			gameHash = 31 * gameHash + board.getHashKey();
+		}
+	}
+}
@@ -0,0 +1,31 @@
+#!/bin/bash
+# Goes to parent directory (the root of the distribution)
+cd ..
+
+# Sets path to libraries
+export BIN_PATH=./bin/
+
+
+# Sets the path to jar files containing the compiled java code of Bagatur engine
+export JARS_PATH=".:${BIN_PATH}BagaturBoard.jar:${BIN_PATH}BagaturOpening.jar:${BIN_PATH}BagaturSearch.jar:${BIN_PATH}BagaturUCI.jar:${BIN_PATH}BagaturEngines.jar:${BIN_PATH}BagaturLearningAPI.jar:${BIN_PATH}BagaturEGTB.jar:${BIN_PATH}BagaturLearningImpl.jar:"
+
+
+# Sets the memory (in megabytes) for the WHOLE java process.
+# Only one part of this memory (up to 50%) will be used for Transposition Table.
+export PROCESS_MEMORY=64G
+
+export ARGS=bagaturchess.engines.cfg.base.UCIConfig_BaseImpl
+export ARGS="${ARGS} bagaturchess.search.impl.uci_adaptor.UCISearchAdaptorImpl_PonderingOpponentMove"
+export ARGS="${ARGS} bagaturchess.engines.cfg.base.UCISearchAdaptorConfig_BaseImpl"
+export ARGS="${ARGS} bagaturchess.search.impl.rootsearch.parallel.LazySMPSearch"
+export ARGS="${ARGS} bagaturchess.engines.cfg.base.RootSearchConfig_BaseImpl_SMP_LazySMP"
+export ARGS="${ARGS} bagaturchess.search.impl.alg.impl1.Search_PVS_NWS"
+export ARGS="${ARGS} bagaturchess.engines.cfg.base.SearchConfigImpl_AB"
+export ARGS="${ARGS} bagaturchess.learning.goldmiddle.impl4.cfg.BoardConfigImpl_V20"
+# classical evaluation export ARGS="${ARGS} bagaturchess.learning.goldmiddle.impl4.cfg.EvaluationConfig_V20"
+# older Stockfish NNUE export ARGS="${ARGS} bagaturchess.deeplearning.impl_nnue_v2.java_eval.EvaluationConfig"
+export ARGS="${ARGS} bagaturchess.deeplearning.impl_nnue_v3.EvaluationConfig"
+
+# Executes the java process of the Bagatur engine with Lazy SMP parallel search. It uses all CPU Cores.
+exec java -Xmx${PROCESS_MEMORY} -Djava.library.path=${BIN_PATH} -cp "${JARS_PATH}" bagaturchess.uci.run.Boot ${ARGS}
+
@@ -29,6 +29,13 @@ import bagaturchess.bitboard.api.IBoardConfig;
 public interface IRootSearchConfig {
 	
 	
+	public static final int TPT_TYPE_ON_HEAP 	= 0;
+	public static final int TPT_TYPE_OFF_HEAP 	= 1;
+	
+	public static final int EVALCACHE_TYPE_PER_THREAD 	= 0;
+	public static final int EVALCACHE_TYPE_SHARED 		= 1;
+	
+	
 	public double get_MEMORY_USAGE_PERCENT();
 	
 	public int getTPTsCount();
@@ -53,18 +60,63 @@ public interface IRootSearchConfig {
 	
 	public boolean useOnlineSyzygy();
 	
+	/**
+	 * @return the min search depth for probing positions with the max pieces count of the tablebases, positions with less pieces are always probed
+	 */
+	public int getSyzygyProbeDepth();
+	
+	/**
+	 * @return true if the WDL tables are probed with the pure Java reader instead of the native library, which is used for DTZ
+	 */
+	public boolean useSyzygyJavaWDL();
+	
 	
 	/**
 	 * Memory Settings
 	 */
 	public boolean initCaches();
 	
+	/**
+	 * @return the memory for all caches in megabytes or 0 if it is computed from the JVM memory and the memory usage percent
+	 */
+	public int getMemoryLimit_InMegabytes();
+	
 	public double getTPTUsagePercent();
 	
 	public double getEvalCacheUsagePercent();
 	
 	public double getPawnsCacheUsagePercent();
 	
+	/**
+	 * @return one of TPT_TYPE_ON_HEAP or TPT_TYPE_OFF_HEAP
+	 */
+	public int getTPTType();
+	
+	/**
+	 * @return the size of the off-heap Transposition Table in megabytes or 0 if it should be computed from the JVM memory
+	 */
+	public int getTPTOffHeapSize_InMegabytes();
+	
+	/**
+	 * @return the file of the Transposition Table snapshot, which is loaded at startup, or empty string if not used
+	 */
+	public String getTPTSnapshotFile();
+	
+	/**
+	 * @return the minimal depth of the entries, which are saved in the Transposition Table snapshot
+	 */
+	public int getTPTSnapshotMinDepth();
+	
+	/**
+	 * @return the file, from which the off-heap Transposition Table is memory-mapped and shared with other processes, or empty string if not used
+	 */
+	public String getTPTSharedFile();
+	
+	/**
+	 * @return one of EVALCACHE_TYPE_PER_THREAD or EVALCACHE_TYPE_SHARED
+	 */
+	public int getEvalCacheType();
+	
 	
 	public int getThreadsCount();
 	
@@ -70,4 +70,12 @@ public interface ISearch {
 			boolean useMateDistancePrunning);
 	
 	public void setRootSearchFirstMoveIndex(int _root_search_first_move_index);
+	
+	/**
+	 * Used for MultiPV search: the excluded moves are not searched in the root position and the ordered moves are searched first.
+	 * Only the first count moves of each array are used, count 0 means no excluded or ordered moves.
+	 */
+	public void setRootExcludedMoves(int[] moves, int count);
+	
+	public void setRootOrderedMoves(int[] moves, int count);
 }
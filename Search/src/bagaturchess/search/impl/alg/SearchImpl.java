@@ -60,6 +60,12 @@ public abstract class SearchImpl implements ISearch {
 	
 	//Used for Lazy SMP
 	protected int root_search_first_move_index = 0;
+	
+	//Used for MultiPV
+	protected int[] root_excluded_moves 		= new int[0];
+	protected int root_excluded_moves_count 	= 0;
+	protected int[] root_ordered_moves 			= new int[0];
+	protected int root_ordered_moves_count 		= 0;
 
 	
 	public void setup(IBitBoard bitboardForSetup) {
@@ -82,6 +88,34 @@ public abstract class SearchImpl implements ISearch {
 	}
 	
 	
+	public void setRootExcludedMoves(int[] moves, int count) {
+		
+		root_excluded_moves = moves;
+		root_excluded_moves_count = count;
+	}
+	
+	
+	public void setRootOrderedMoves(int[] moves, int count) {
+		
+		root_ordered_moves = moves;
+		root_ordered_moves_count = count;
+	}
+	
+	
+	protected boolean isRootExcludedMove(int move) {
+		
+		for (int i = 0; i < root_excluded_moves_count; i++) {
+			
+			if (root_excluded_moves[i] == move) {
+				
+				return true;
+			}
+		}
+		
+		return false;
+	}
+	
+	
 	public SearchImpl(SearchEnv _env) {
 		
 		env = _env;
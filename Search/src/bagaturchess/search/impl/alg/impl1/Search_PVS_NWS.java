@@ -91,9 +91,19 @@ public class Search_PVS_NWS extends SearchImpl {
 	
 	private static final boolean USE_DTZ_CACHE 						= true;
 	
+	//Off, because TTPrefetchBenchmark shows no gain. If it is false, the prefetch calls are removed by the compiler.
+	public static final boolean USE_TT_PREFETCH 					= false;
+	
+	//Java has no prefetch instruction, so the memory is loaded into the CPU cache by reads, which results are kept here.
+	//The field belongs to the search thread, so the writes do not make other threads reload its cache line.
+	private long prefetch_sink;
+	
 	
 	private IEvalEntry temp_cache_entry;
 	
+	//True if the root position is already in the tablebases, otherwise the positions are probed only after captures and pawn moves
+	private boolean tb_root_position;
+	
 	private BacktrackingInfo[] search_info 							= new BacktrackingInfo[MAX_DEPTH + 1];
 	
 	
@@ -143,11 +153,12 @@ public class Search_PVS_NWS extends SearchImpl {
 		LAZY_EVAL_MARGIN.clear();
 		LAZY_EVAL_MARGIN.addValue(250);
 		
-		if (ChannelManager.getChannel() != null) {
+		//getUsage samples the tables, so the statistics are computed only if they are logged
+		if (ChannelManager.getChannel() != null && ChannelManager.getChannel().isDumpEnabled()) {
 			
 			if (env.getTPT() != null) ChannelManager.getChannel().dump("Search_PVS_NWS.newSearch: Transposition table hitrate=" + env.getTPT().getHitRate() + ", usage=" + env.getTPT().getUsage());
 			
-			if (env.getEvalCache() != null) ChannelManager.getChannel().dump("Search_PVS_NWS.newSearch: Evaluation cache hitrate=" + env.getEvalCache().getHitRate() + ", usage=" + env.getEvalCache().getUsage());
+			if (env.getEvalCache() != null) ChannelManager.getChannel().dump("Search_PVS_NWS.newSearch: Thread " + Thread.currentThread().getName() + " evaluation cache hitrate=" + env.getEvalCache().getHitRate() + ", usage=" + env.getEvalCache().getUsage());
 			
 			if (env.getSyzygyDTZCache() != null) ChannelManager.getChannel().dump("Search_PVS_NWS.newSearch: Syzygy DTZ cache hitrate=" + env.getSyzygyDTZCache().getHitRate() + ", usage=" + env.getSyzygyDTZCache().getUsage());
 		}
@@ -198,6 +209,9 @@ public class Search_PVS_NWS extends SearchImpl {
 			info.setSelDepth(ply);
 		}
 		
+		tb_root_position = SyzygyTBProbing.getSingleton() != null
+				&& env.getBitboard().getMaterialState().getPiecesCount() <= SyzygyTBProbing.getSingleton().getCardinality();
+		
 		
 		final int alphaOrig = alpha;
 		
@@ -245,6 +259,9 @@ public class Search_PVS_NWS extends SearchImpl {
 		moveGen.generateMoves(cb);
 		moveGen.generateAttacks(cb);
 		moveGen.setRootScores(cb, parentMove, ttMove, ply);
+		if (root_ordered_moves_count > 0) {
+			moveGen.setRootOrderedScores(root_ordered_moves, root_ordered_moves_count);
+		}
 		moveGen.sort();
 			
 			
@@ -257,6 +274,11 @@ public class Search_PVS_NWS extends SearchImpl {
 				continue;
 			}
 			
+			if (root_excluded_moves_count > 0 && isRootExcludedMove(move)) {
+				
+				continue;
+			}
+			
 			//Build and sent minor info
 			info.setCurrentMove(move);
 			info.setCurrentMoveNumber((movesPerformed_attacks + movesPerformed_quiet + 1));
@@ -397,7 +419,8 @@ public class Search_PVS_NWS extends SearchImpl {
 		}
 		
 		
-		if (env.getTPT() != null) {
+		//With excluded moves, the score is not the score of the root position
+		if (env.getTPT() != null && root_excluded_moves_count == 0) {
 			
 			if (!SearchUtils.isMateVal(bestScore)) {
 				
@@ -563,7 +586,7 @@ public class Search_PVS_NWS extends SearchImpl {
 		int egtb_eval = ISearch.MIN;
 		
 		if (SyzygyTBProbing.getSingleton() != null
-    			&& SyzygyTBProbing.getSingleton().isAvailable(env.getBitboard().getMaterialState().getPiecesCount())
+    			&& isTBProbeNeeded(depth)
     			){
 			
 			/*
@@ -625,7 +648,7 @@ public class Search_PVS_NWS extends SearchImpl {
 	            	case SyzygyConstants.TB_WIN:
 	            		
 	    				//int dtz = (probe_result & SyzygyConstants.TB_RESULT_DTZ_MASK) >> SyzygyConstants.TB_RESULT_DTZ_SHIFT;
-	            		int dtz = SyzygyTBProbing.getSingleton().probeDTZ(env.getBitboard());
+	            		int dtz = probeDTZ_WithCache();
 	            		
 	    				if (dtz < 0) {
 	    					
@@ -1115,6 +1138,8 @@ public class Search_PVS_NWS extends SearchImpl {
 				int lmr_depth = new_depth - reduction;
 				
 				
+				prefetch(move);
+				
 				env.getBitboard().makeMoveForward(move);
 				
 				
@@ -1508,6 +1533,8 @@ public class Search_PVS_NWS extends SearchImpl {
 				}
 
 				
+				prefetch(move);
+				
 				env.getBitboard().makeMoveForward(move);
 				
 				boolean LMR_allowed = not_good_lmr_history;
@@ -1749,6 +1776,8 @@ public class Search_PVS_NWS extends SearchImpl {
 				}
 				
 				
+				prefetch(move);
+				
 				env.getBitboard().makeMoveForward(move);
 				
 				final int score = -qsearch(mediator, pvman, evaluator, info, cb, moveGen, -beta, -alpha, ply + 1, isPv);
@@ -1970,6 +1999,36 @@ public class Search_PVS_NWS extends SearchImpl {
 	}
 	
 	
+	/**
+	 * Touches the transposition table bucket and the evaluation cache slot of the position after the move,
+	 * so the memory loads overlap with the move making instead of stalling the probe of the child node.
+	 */
+	private void prefetch(final int move) {
+		
+		if (!USE_TT_PREFETCH) {
+			
+			return;
+		}
+		
+		if (env.getTPT() == null && env.getEvalCache() == null) {
+			
+			return;
+		}
+		
+		long hashkey_after_move = env.getBitboard().getHashKeyAfterMove(move);
+		
+		if (env.getTPT() != null) {
+			
+			prefetch_sink ^= env.getTPT().prefetch(hashkey_after_move);
+		}
+		
+		if (env.getEvalCache() != null) {
+			
+			prefetch_sink ^= env.getEvalCache().prefetch(hashkey_after_move);
+		}
+	}
+	
+	
 	private Stack<Integer> stack = new Stack<Integer>();
 	
 	
@@ -2107,40 +2166,72 @@ public class Search_PVS_NWS extends SearchImpl {
 	}
 	
 	
+	/**
+	 * The WDL result of a position changes only after captures and pawn moves,
+	 * so if the root position is not in the tablebases, the positions are probed only after these moves (when the pieces count goes down to the tablebases).
+	 * The positions with the max pieces count of the tablebases are probed only if the depth is at least the SyzygyProbeDepth option.
+	 */
+	private boolean isTBProbeNeeded(int depth) {
+		
+		int pieces_count = env.getBitboard().getMaterialState().getPiecesCount();
+		
+		if (!SyzygyTBProbing.getSingleton().isAvailable(pieces_count)) {
+			
+			return false;
+		}
+		
+		if (!tb_root_position && env.getBitboard().getDraw50movesRule() != 0) {
+			
+			return false;
+		}
+		
+		return pieces_count < SyzygyTBProbing.getSingleton().getCardinality()
+				|| depth >= env.getEngineConfiguration().getSyzygyProbeDepth();
+	}
+	
+	
 	private int probeWDL_WithCache() {
 	    
-	    if (USE_DTZ_CACHE) {
+	    if (USE_DTZ_CACHE && env.getSyzygyDTZCache() != null) {
+	    	
+	    	return probeWithCache(SyzygyTBProbing.getCacheKey(env.getBitboard(), false), false);
 	    	
-	    	long hash50movesRule = 128 + env.getBitboard().getDraw50movesRule();
-		    hash50movesRule += hash50movesRule << 8;
-		    hash50movesRule += hash50movesRule << 16;
-		    hash50movesRule += hash50movesRule << 32;
-		    
-		    long hashkey = hash50movesRule ^ env.getBitboard().getHashKey();
-		    
-	    	env.getSyzygyDTZCache().get(hashkey, temp_cache_entry);
-			
-			if (!temp_cache_entry.isEmpty()) {
-				
-				int probe_result = temp_cache_entry.getEval();
-		        
-				return probe_result;
-				
-			} else {
-		    
-		        int probe_result = SyzygyTBProbing.getSingleton().probeWDL(env.getBitboard());
-		        
-		        env.getSyzygyDTZCache().put(hashkey, 5, probe_result);
-		        
-		        return probe_result;
-			}
-			
 	    } else {
 	    	
-	    	int probe_result = SyzygyTBProbing.getSingleton().probeWDL(env.getBitboard());
-	        
-	        return probe_result;
+	    	return SyzygyTBProbing.getSingleton().probeWDL(env.getBitboard());
 	    }
-
+	}
+	
+	
+	private int probeDTZ_WithCache() {
+	    
+	    if (USE_DTZ_CACHE && env.getSyzygyDTZCache() != null) {
+	    	
+	    	return probeWithCache(SyzygyTBProbing.getCacheKey(env.getBitboard(), true), true);
+	    	
+	    } else {
+	    	
+	    	return SyzygyTBProbing.getSingleton().probeDTZ(env.getBitboard());
+	    }
+	}
+	
+	
+	/**
+	 * The cache is shared between all search threads, so a hit avoids the JNI call of this thread and also the lock of the DTZ probing.
+	 */
+	private int probeWithCache(long hashkey, boolean dtz) {
+		
+    	env.getSyzygyDTZCache().get(hashkey, temp_cache_entry);
+		
+		if (!temp_cache_entry.isEmpty()) {
+			
+			return temp_cache_entry.getEval();
+		}
+	    
+        int probe_result = dtz ? SyzygyTBProbing.getSingleton().probeDTZ(env.getBitboard()) : SyzygyTBProbing.getSingleton().probeWDL(env.getBitboard());
+        
+        env.getSyzygyDTZCache().put(hashkey, 5, probe_result);
+        
+        return probe_result;
 	}
 }
@@ -3,6 +3,7 @@ package bagaturchess.search.impl.env;
 
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
@@ -13,9 +14,12 @@ import bagaturchess.opening.api.OpeningBook;
 import bagaturchess.opening.api.OpeningBookFactory;
 import bagaturchess.search.api.IRootSearchConfig;
 import bagaturchess.search.impl.eval.cache.EvalCache_Impl2;
+import bagaturchess.search.impl.eval.cache.EvalCache_Impl3;
 import bagaturchess.search.impl.eval.cache.IEvalCache;
 import bagaturchess.search.impl.tpt.ITTable;
 import bagaturchess.search.impl.tpt.TTable_Impl2;
+import bagaturchess.search.impl.tpt.TTable_Impl3;
+import bagaturchess.search.impl.tpt.TTableSnapshot;
 import bagaturchess.uci.api.ChannelManager;
 import bagaturchess.uci.api.IChannel;
 
@@ -58,6 +62,20 @@ public class MemoryConsumers {
 		
 		try {
 			
+			if (OpeningBookFactory.getBook() == null
+					&& new File("./data/w.obb").exists() && new File("./data/b.obb").exists()) {
+				
+				//The binary format is memory-mapped and loads instantly
+				try {
+					
+					OpeningBookFactory.initBook_Binary("./data/w.obb", "./data/b.obb");
+					
+				} catch(Throwable t) {
+					
+					if (ChannelManager.getChannel() != null) ChannelManager.getChannel().dump("Unable to load the binary Openning Book, the serialized one is used: " + t.getMessage());
+				}
+			}
+			
 			if (OpeningBookFactory.getBook() == null) {
 				
 				InputStream is_w_openning_book = new FileInputStream("./data/w.ob");
@@ -77,6 +95,7 @@ public class MemoryConsumers {
 	
 	private OpeningBook openingBook;
 	
+	private List<ITTable> ttables;
 	private List<ITTable> ttable_provider;
 	private List<IEvalCache> evalCache;
 	private List<IEvalCache> syzygyDTZCache;
@@ -151,7 +170,8 @@ public class MemoryConsumers {
 		
 		//if (engineConfiguration.getThreadsCount() > 1) {
 			
-			//If there are many threads than switch off syzygy calls, because of crashes:
+			//If there are many threads than switch off syzygy calls, because of crashes.
+			//Now SyzygyJNIBridge serializes the DTZ and DTM probes, only the WDL probes run in parallel.
 			
 			/*230018 <Bagatur 3.1(0): # A fatal error has been detected by the Java Runtime Environment:
 				230018 <Bagatur 3.1(0): #
@@ -173,7 +193,7 @@ public class MemoryConsumers {
 				
 				if (TB_dir.exists()) {
 					
-					SyzygyTBProbing.getSingleton().load(engineConfiguration.getTbPath());
+					SyzygyTBProbing.getSingleton().load(engineConfiguration.getTbPath(), engineConfiguration.useSyzygyJavaWDL());
 					
 					if (ChannelManager.getChannel() != null) ChannelManager.getChannel().dump("Modules for Endgame Tablebases OK. Will try to load Tablebases from => " + engineConfiguration.getTbPath());
 					
@@ -210,8 +230,9 @@ public class MemoryConsumers {
 				throw new IllegalStateException("Memory split percents sum is incorrect: " + percents_sum + ". It should be between 0 and 1");
 			}
 			
-			long static_memory_in_bytes = STATIC_JVM_MEMORY_IN_MEGABYTES * 1024 * 1024;
-			if (ChannelManager.getChannel() != null) ChannelManager.getChannel().dump("Excluded memory for static structures is " + STATIC_JVM_MEMORY_IN_MEGABYTES + " MB");
+			//The memory limit is only for the caches of this engine instance, the static structures are shared by all instances of the JVM
+			long static_memory_in_bytes = engineConfiguration.getMemoryLimit_InMegabytes() > 0 ? 0 : STATIC_JVM_MEMORY_IN_MEGABYTES * 1024 * 1024;
+			if (ChannelManager.getChannel() != null) ChannelManager.getChannel().dump("Excluded memory for static structures is " + (static_memory_in_bytes / (1024 * 1024)) + " MB");
 			
 			long availableMemoryInBytes = getAvailableMemoryInBytes() - static_memory_in_bytes;
 			
@@ -243,8 +264,12 @@ public class MemoryConsumers {
 			
 			ChannelManager.getChannel().dump("engineConfiguration.useTPT()=" + engineConfiguration.useTPT());
 			
+			ChannelManager.getChannel().dump("engineConfiguration.getTPTType()=" + engineConfiguration.getTPTType());
+			
 			ChannelManager.getChannel().dump("engineConfiguration.useEvalCache()=" + engineConfiguration.useEvalCache());
 			
+			ChannelManager.getChannel().dump("engineConfiguration.getEvalCacheType()=" + engineConfiguration.getEvalCacheType());
+			
 			ChannelManager.getChannel().dump("engineConfiguration.useSyzygyDTZCache()=" + engineConfiguration.useSyzygyDTZCache());
 		}
 		
@@ -256,7 +281,11 @@ public class MemoryConsumers {
 		
 		long size_ec 			= Math.max(SIZE_MIN_ENTRIES_EC, (long) ((engineConfiguration.getEvalCacheUsagePercent() * availableMemoryInBytes) / THREADS_COUNT));
 		
-		long syzygy_ec 			= Math.max(SIZE_MIN_ENTRIES_EC, (long) ((MEM_USAGE_SYZYGY_DTZ_CACHE * availableMemoryInBytes) / THREADS_COUNT));
+		//The shared evaluation cache gets the memory of all per thread caches
+		long size_ec_shared		= Math.max(SIZE_MIN_ENTRIES_EC, (long) (engineConfiguration.getEvalCacheUsagePercent() * availableMemoryInBytes));
+		
+		//The Syzygy cache is always shared, because the probes are expensive and all threads search similar endgame positions
+		long syzygy_ec 			= Math.max(SIZE_MIN_ENTRIES_EC, (long) (MEM_USAGE_SYZYGY_DTZ_CACHE * availableMemoryInBytes));
 		
 		
 		//Create and use TT carefully as SMP version doesn't scale, because of many reads/writes in the arrays
@@ -272,12 +301,72 @@ public class MemoryConsumers {
 				throw new IllegalStateException("Transposition Tables count is less than 1");
 			}
 			
-			for (int i = 0; i < count_TTs; i++) {
+			String shared_file = engineConfiguration.getTPTSharedFile();
+			
+			if (!shared_file.isEmpty()) {
+				
+				//The worker processes of the master engine map the same file, so they share one off-heap table as the threads do.
+				//All of them must use the same size, otherwise the same position is stored in different buckets.
+				long size_tpt_shared = engineConfiguration.getTPTOffHeapSize_InMegabytes() > 0 ?
+						engineConfiguration.getTPTOffHeapSize_InMegabytes() * 1024L * 1024L : size_tpt;
+				
+				global_ttables.add(new TTable_Impl3(size_tpt_shared, shared_file));
 				
-				global_ttables.add(new TTable_Impl2(size_tpt / count_TTs));
+			} else if (engineConfiguration.getTPTType() == IRootSearchConfig.TPT_TYPE_OFF_HEAP) {
+				
+				//The off-heap table is lock-free and has no entries limit, so all threads share one table
+				long size_tpt_offheap = engineConfiguration.getTPTOffHeapSize_InMegabytes() > 0 ?
+						engineConfiguration.getTPTOffHeapSize_InMegabytes() * 1024L * 1024L : size_tpt;
+				
+				global_ttables.add(new TTable_Impl3(size_tpt_offheap));
+				
+			} else {
+				
+				for (int i = 0; i < count_TTs; i++) {
+					
+					global_ttables.add(new TTable_Impl2(size_tpt / count_TTs));
+				}
 			}
 		}
 		
+		ttables 				= global_ttables;
+		
+		//Warm start with the entries saved by a previous process
+		String snapshot_file = engineConfiguration.getTPTSnapshotFile();
+		
+		if (engineConfiguration.useTPT() && snapshot_file != null && !snapshot_file.isEmpty()) {
+			
+			if (new File(snapshot_file).exists()) {
+				
+				try {
+					
+					loadTPT(snapshot_file);
+					
+				} catch(Throwable t) {
+					
+					if (ChannelManager.getChannel() != null) ChannelManager.getChannel().dump("Unable to load Transposition Table snapshot " + snapshot_file + ". Error: " + t.getMessage());
+				}
+				
+			} else {
+				
+				if (ChannelManager.getChannel() != null) ChannelManager.getChannel().dump("Transposition Table snapshot " + snapshot_file + " does not exist yet");
+			}
+		}
+		
+		EvalCache_Impl3.SharedTable evalCache_shared = null;
+		
+		if (engineConfiguration.useEvalCache() && engineConfiguration.getEvalCacheType() == IRootSearchConfig.EVALCACHE_TYPE_SHARED) {
+			
+			evalCache_shared = new EvalCache_Impl3.SharedTable(size_ec_shared);
+		}
+		
+		EvalCache_Impl3.SharedTable syzygyDTZCache_shared = null;
+		
+		if (engineConfiguration.useSyzygyDTZCache()) {
+			
+			syzygyDTZCache_shared = new EvalCache_Impl3.SharedTable(syzygy_ec);
+		}
+		
 		ttable_provider 		= new Vector<ITTable>();
 		
 		evalCache 				= new Vector<IEvalCache>();
@@ -296,13 +385,56 @@ public class MemoryConsumers {
 				ttable_provider.add(null);
 			}
 			
-			evalCache.add(engineConfiguration.useEvalCache() ? new EvalCache_Impl2(size_ec) : null);
+			if (evalCache_shared != null) {
+				
+				//Each thread has its own view with its own hit rate
+				evalCache.add(new EvalCache_Impl3(evalCache_shared));
+				
+			} else {
+				
+				evalCache.add(engineConfiguration.useEvalCache() ? new EvalCache_Impl2(size_ec) : null);
+			}
 			
-			syzygyDTZCache.add(engineConfiguration.useSyzygyDTZCache() ? new EvalCache_Impl2(syzygy_ec) : null);
+			syzygyDTZCache.add(syzygyDTZCache_shared != null ? new EvalCache_Impl3(syzygyDTZCache_shared) : null);
 		}		
 	}
 	
 	
+	/**
+	 * Starts a new generation in all Transposition Tables, so the entries of the previous searches become older.
+	 * Has to be called once per search (go command), because the tables are shared between the threads.
+	 */
+	public void newSearch() {
+		
+		if (ttables != null) {
+			
+			for (int i = 0; i < ttables.size(); i++) {
+				
+				ttables.get(i).newSearch();
+			}
+		}
+	}
+	
+	
+	/**
+	 * Saves the entries of all Transposition Tables with depth >= min_depth into a file.
+	 * Has to be called when there is no running search.
+	 */
+	public long saveTPT(String file_name, int min_depth) throws IOException {
+		
+		return TTableSnapshot.save(ttables, file_name, min_depth);
+	}
+	
+	
+	/**
+	 * Loads the entries of a memory-mapped file, created by saveTPT, into all Transposition Tables.
+	 */
+	public long loadTPT(String file_name) throws IOException {
+		
+		return TTableSnapshot.load(ttables, file_name);
+	}
+	
+	
 	public OpeningBook getOpeningBook() {
 		
 		return openingBook;
@@ -329,6 +461,11 @@ public class MemoryConsumers {
 	
 	private long getAvailableMemoryInBytes() {
 		
+		if (engineConfiguration.getMemoryLimit_InMegabytes() > 0) {
+			
+			return engineConfiguration.getMemoryLimit_InMegabytes() * 1024L * 1024L;
+		}
+		
 		System.gc();
 		
 		return (long) (MEMORY_USAGE_PERCENT * Runtime.getRuntime().maxMemory());
@@ -357,6 +494,8 @@ public class MemoryConsumers {
 	
 	public void clear() {
 		
+		if (ttables != null) ttables.clear();
+		
 		if (ttable_provider != null) ttable_provider.clear();
 		
 		if (evalCache != null) evalCache.clear();
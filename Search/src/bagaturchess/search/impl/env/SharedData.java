@@ -23,6 +23,8 @@
 package bagaturchess.search.impl.env;
 
 
+import java.io.IOException;
+
 import bagaturchess.opening.api.OpeningBook;
 import bagaturchess.search.api.IEvaluatorFactory;
 import bagaturchess.search.api.IRootSearchConfig;
@@ -100,6 +102,21 @@ public class SharedData {
 	}
 	
 	
+	public void newSearch() {
+		memoryConsumers.newSearch();
+	}
+	
+	
+	public long saveTPT(String file_name, int min_depth) throws IOException {
+		return memoryConsumers.saveTPT(file_name, min_depth);
+	}
+	
+	
+	public long loadTPT(String file_name) throws IOException {
+		return memoryConsumers.loadTPT(file_name);
+	}
+	
+	
 	/*public PawnsEvalCache getAndRemovePawnsCache() {
 		return memoryConsumers.getPawnsCache().remove(0);
 	}
@@ -52,6 +52,12 @@ public class EvalCache_Impl1 extends LRUMapLongObject<IEvalEntry> implements IEv
 	}
 	
 	
+	public long prefetch(long hashkey) {
+		//Do nothing
+		return 0;
+	}
+	
+	
 	public void put(long hashkey, int _level, double _eval) {
 		
 		if (_eval == ISearch.MAX || _eval == ISearch.MIN) {
@@ -79,6 +79,12 @@ public class EvalCache_Impl2 implements IEvalCache {
 	}
 	
 	
+	@Override
+	public long prefetch(long hashkey) {
+		return keys[getIndex(hashkey)];
+	}
+	
+	
 	@Override
 	public int getUsage() {
 		return (int) (counter_usage * 100 / keys.length);
@@ -0,0 +1,228 @@
+/*
+ *  BagaturChess (UCI chess engine and tools)
+ *  Copyright (C) 2005 Krasimir I. Topchiyski (k_topchiyski@yahoo.com)
+ *
+ *  Open Source project location: http://sourceforge.net/projects/bagaturchess/develop
+ *  SVN repository https://bagaturchess.svn.sourceforge.net/svnroot/bagaturchess
+ *
+ *  This file is part of BagaturChess program.
+ *
+ *  BagaturChess is open software: you can redistribute it and/or modify
+ *  it under the terms of the Eclipse Public License version 1.0 as published by
+ *  the Eclipse Foundation.
+ *
+ *  BagaturChess is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  Eclipse Public License for more details.
+ *
+ *  You should have received a copy of the Eclipse Public License version 1.0
+ *  along with BagaturChess. If not, see <http://www.eclipse.org/legal/epl-v10.html/>.
+ *
+ */
+package bagaturchess.search.impl.eval.cache;
+
+
+import bagaturchess.uci.api.ChannelManager;
+
+
+/**
+ * Evaluation cache, which is shared between all search threads.
+ * Each thread has its own EvalCache_Impl3 object with its own hit counters, all of them read and write the same SharedTable.
+ * So an evaluation computed by one thread is reused by all other threads.
+ */
+public class EvalCache_Impl3 implements IEvalCache {
+
+
+	private final SharedTable table;
+
+	private long tries;
+
+	private long hits;
+
+
+	public EvalCache_Impl3(SharedTable _table) {
+
+		table = _table;
+	}
+
+
+	@Override
+	public void get(long key, IEvalEntry entry) {
+
+		tries++;
+
+		entry.setIsEmpty(true);
+
+		long data = table.getData(key);
+
+		if (data != 0) {
+
+			hits++;
+
+			entry.setIsEmpty(false);
+			entry.setEval((int) data);
+			entry.setLevel((byte)5);
+		}
+	}
+
+
+	@Override
+	public void put(long hashkey, int level, double eval) {
+
+		table.addValue(hashkey, (int) eval);
+	}
+
+
+	@Override
+	public long prefetch(long hashkey) {
+
+		return table.prefetch(hashkey);
+	}
+
+
+	@Override
+	public int getUsage() {
+
+		return table.getUsage();
+	}
+
+
+	@Override
+	public int getHitRate() {
+
+		if (tries == 0) return 0;
+
+		return (int) (hits * 100 / tries);
+	}
+
+
+	/**
+	 * Lock-free table of 4 entries per bucket. One bucket has 64 bytes, the size of one cache line.
+	 * Each entry has 2 longs: (key XOR data) and data, where data has the evaluation in the lower 32 bits and a non-zero marker above them.
+	 * If two threads write the same entry at the same time, the XOR check fails on read and the entry is treated as missing.
+	 */
+	public static final class SharedTable {
+
+
+		private static final int ENTRY_LONGS 			= 2;
+		private static final int BUCKET_ENTRIES 		= 4;
+		private static final int BUCKET_LONGS 			= BUCKET_ENTRIES * ENTRY_LONGS;
+
+		private static final long DATA_MARKER 			= 1L << 32;
+
+		private static final int USAGE_SAMPLE_BUCKETS 	= 250;
+
+
+		private final long[] entries;
+
+		private final long buckets_count;
+
+
+		public SharedTable(long size_in_bytes) {
+
+			if (ChannelManager.getChannel() != null) ChannelManager.getChannel().dump("EvalCache_Impl3.SharedTable: bytes_count=" + size_in_bytes);
+
+			long buckets = Math.max(1, size_in_bytes / (8 * BUCKET_LONGS));
+
+			if (buckets * BUCKET_LONGS > 1073741823) { //1073741823 = 2^30 - 1, the same limit as in EvalCache_Impl2
+				buckets = 1073741823 / BUCKET_LONGS;
+				if (ChannelManager.getChannel() != null) ChannelManager.getChannel().dump("EvalCache_Impl3.SharedTable: limited to " + (buckets * BUCKET_ENTRIES) + " entries.");
+			}
+
+			buckets_count = buckets;
+
+			if (ChannelManager.getChannel() != null) ChannelManager.getChannel().dump("EvalCache_Impl3.SharedTable: buckets_count=" + buckets_count + ", maxEntries=" + (buckets_count * BUCKET_ENTRIES));
+
+			entries = new long[(int) (buckets_count * BUCKET_LONGS)];
+		}
+
+
+		int getUsage() {
+
+			int sample_buckets = (int) Math.min(USAGE_SAMPLE_BUCKETS, buckets_count);
+
+			int count = 0;
+
+			for (int i = 0; i < sample_buckets * BUCKET_LONGS; i += ENTRY_LONGS) {
+
+				if (entries[i + 1] != 0) {
+
+					count++;
+				}
+			}
+
+			return count * 100 / (sample_buckets * BUCKET_ENTRIES);
+		}
+
+
+		long prefetch(final long key) {
+
+			return entries[getBucketStart(key)];
+		}
+
+
+		long getData(final long key) {
+
+			final int start = getBucketStart(key);
+
+			for (int i = start; i < start + BUCKET_LONGS; i += ENTRY_LONGS) {
+
+				final long stored_key 	= entries[i];
+				final long data 		= entries[i + 1];
+
+				if ((stored_key ^ data) == key && data != 0) {
+
+					return data;
+				}
+			}
+
+			return 0;
+		}
+
+
+		void addValue(final long key, final int eval) {
+
+			final long data = DATA_MARKER | (eval & 0xffffffffL);
+
+			final int start = getBucketStart(key);
+
+			//There is no depth for the evaluations, so if the key is not in the bucket and there is no empty entry, the replaced entry is selected by the upper bits of the key
+			int replaced = start + ENTRY_LONGS * (int) (key >>> 62);
+
+			for (int i = start; i < start + BUCKET_LONGS; i += ENTRY_LONGS) {
+
+				final long stored_data = entries[i + 1];
+
+				if (stored_data == 0) {
+
+					replaced = i;
+
+					break;
+				}
+
+				if ((entries[i] ^ stored_data) == key) {
+
+					//Minimize writes in the shared memory
+					if (stored_data == data) {
+
+						return;
+					}
+
+					replaced = i;
+
+					break;
+				}
+			}
+
+			entries[replaced] 		= key ^ data;
+			entries[replaced + 1] 	= data;
+		}
+
+
+		private int getBucketStart(final long key) {
+
+			return (int) (((key ^ (key >>> 32)) & Long.MAX_VALUE) % buckets_count) * BUCKET_LONGS;
+		}
+	}
+}
@@ -4,6 +4,7 @@ package bagaturchess.search.impl.eval.cache;
 public interface IEvalCache {
 	public void get(long key, IEvalEntry entry);
 	public void put(long hashkey, int level, double eval);
+	public long prefetch(long hashkey); //Loads the slot of the key into the CPU cache and returns a word of it, which the caller has to use, so the read is not eliminated
 	public int getHitRate(); //Between 0 and 100
 	public int getUsage(); //Between 0 and 100
 }
@@ -27,6 +27,8 @@ import bagaturchess.bitboard.api.BoardUtils;
 import bagaturchess.bitboard.api.IBitBoard;
 import bagaturchess.search.api.internal.ISearchInfo;
 import bagaturchess.search.impl.alg.SearchUtils;
+import bagaturchess.uci.impl.binary.BinaryInfo;
+import bagaturchess.uci.impl.binary.BinaryProtocol;
 import bagaturchess.uci.impl.commands.info.Info;
 
 
@@ -71,6 +73,47 @@ public final class SearchInfoFactory {
 	}
 	
 	
+	public ISearchInfo createSearchInfo_Minor(BinaryInfo info, IBitBoard board) {
+		
+		SearchInfoImpl result = new SearchInfoImpl();
+		
+		result.setDepth(info.getDepth());
+		result.setSelDepth(info.getSelDepth());
+		result.setSearchedNodes(info.getNodes());
+		result.setTBhits(info.getTBhits());
+		
+		if (info.getCurrentMove() != 0) {
+			result.setCurrentMove(board.getMoveOps().stringToMove(BinaryProtocol.decodeMove(info.getCurrentMove())));
+			result.setCurrentMoveNumber(info.getCurrentMoveNumber());
+		}
+		
+		return result;
+	}
+	
+	
+	/**
+	 * The eval of the binary info is the internal score of the worker, so it is not converted as the UCI mate score.
+	 */
+	public ISearchInfo createSearchInfo(BinaryInfo info, IBitBoard board) {
+		
+		SearchInfoImpl result = new SearchInfoImpl();
+		
+		result.setDepth(info.getDepth());
+		result.setSelDepth(info.getSelDepth());
+		result.setSearchedNodes(info.getNodes());
+		result.setTBhits(info.getTBhits());
+		result.setEval(info.getEval());
+		
+		result.setPV(BoardUtils.getMoves(BinaryProtocol.decodeMoves(info.getPV(), info.getPVCount()), board));
+		
+		if (result.getPV() != null && result.getPV().length > 0) {
+			result.setBestMove(result.getPV()[0]);
+		}
+		
+		return result;
+	}
+	
+	
 	public ISearchInfo createSearchInfo(Info info, IBitBoard board) {
 		
 		SearchInfoImpl result = new SearchInfoImpl();
@@ -50,6 +50,9 @@ public abstract class RootSearch_BaseImpl implements IRootSearch {
 	
 	protected ISearchStopper stopper;
 	
+	//Notified by searchFinished, after the stopper is set to null
+	private final Object finished_monitor = new Object();
+	
 	
 	public RootSearch_BaseImpl(Object[] args) {
 		
@@ -78,7 +81,7 @@ public abstract class RootSearch_BaseImpl implements IRootSearch {
 		
 		bitboardForSetup = BoardUtils.createBoard_WithPawnsCache(_bitboardForSetup.toEPD(), getRootSearchConfig().getBoardConfig());
 		
-		ChannelManager.getChannel().dump("RootSearch_BaseImpl.createBoard: [Chess960/FRC] Castling Configuration is " + bitboardForSetup.getCastlingConfig());
+if (ChannelManager.getChannel().isDumpEnabled()) ChannelManager.getChannel().dump("RootSearch_BaseImpl.createBoard: [Chess960/FRC] Castling Configuration is " + bitboardForSetup.getCastlingConfig());
 
 		for (int i=0; i<movesCount; i++) {
 			
@@ -146,19 +149,35 @@ public abstract class RootSearch_BaseImpl implements IRootSearch {
 		
 		//if (DEBUGSearch.DEBUG_MODE) ChannelManager.getChannel().dump(new Exception("Hi! Just stack dump for You!"));
 		
-		while (stopper != null) {
+		synchronized (finished_monitor) {
 			
-			try {
-				
-				Thread.sleep(15);
+			while (stopper != null) {
 				
-			} catch (InterruptedException e) {}
+				try {
+					
+					//The timeout is only for implementations, which do not call searchFinished
+					finished_monitor.wait(15);
+					
+				} catch (InterruptedException e) {}
+			}
 		}
 		
 		if (DEBUGSearch.DEBUG_MODE) ChannelManager.getChannel().dump("stopSearchAndWait - exit");
 	}
 	
 	
+	/**
+	 * Wakes up the threads in stopSearchAndWait. Has to be called after the stopper is set to null.
+	 */
+	protected void searchFinished() {
+		
+		synchronized (finished_monitor) {
+			
+			finished_monitor.notifyAll();
+		}
+	}
+	
+	
 	@Override
 	public boolean isStopped() {
 		
@@ -0,0 +1,284 @@
+/**
+ *  BagaturChess (UCI chess engine and tools)
+ *  Copyright (C) 2005 Krasimir I. Topchiyski (k_topchiyski@yahoo.com)
+ *
+ *  This file is part of BagaturChess program.
+ *
+ *  BagaturChess is open software: you can redistribute it and/or modify
+ *  it under the terms of the Eclipse Public License version 1.0 as published by
+ *  the Eclipse Foundation.
+ *
+ *  BagaturChess is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  Eclipse Public License for more details.
+ *
+ *  You should have received a copy of the Eclipse Public License version 1.0
+ *  along with BagaturChess. If not, see http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package bagaturchess.search.impl.rootsearch.montecarlo;
+
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+/**
+ * Tree of MonteCarloTreeSearch, shared by all its threads without locks.
+ * The nodes are indexes in arrays with fixed capacity, the children of a node are allocated as one block of consecutive indexes.
+ * The move, the prior probability and the children of a node are written once, before the node is published as expanded,
+ * and are read only after that. The statistics of the nodes are updated with atomic operations.
+ *
+ * The value of a node is the sum of the results of its playouts (from 0 for loss to 1 for win)
+ * for the side, which has played the move of the node, scaled to VALUE_SCALE.
+ * A thread, which selects a node, adds VIRTUAL_LOSS visits without value, so the other threads prefer other nodes
+ * until the playout result is added.
+ */
+public class MonteCarloTree {
+	
+	
+	public static final int ROOT 				= 0;
+	
+	private static final int STATE_LEAF 		= 0;
+	private static final int STATE_EXPANDING 	= 1;
+	private static final int STATE_EXPANDED 	= 2;
+	//There was no space for the children, so the node stays a leaf
+	private static final int STATE_FULL 		= 3;
+	
+	private static final long VALUE_SCALE 		= 1 << 16;
+	
+	private static final int VIRTUAL_LOSS 		= 3;
+	
+	private static final double C_PUCT 			= 1.5;
+	
+	private static final double C_UCT 			= 1.4;
+	
+	//The value of a not visited child is the value of its parent minus FPU_REDUCTION (First Play Urgency)
+	private static final double FPU_REDUCTION 	= 0.2;
+	
+	
+	private final int capacity;
+	
+	private final int[] moves;
+	private final float[] priors;
+	private final int[] first_child;
+	private final int[] children_count;
+	
+	private final AtomicIntegerArray states;
+	private final AtomicIntegerArray visits;
+	private final AtomicLongArray values;
+	
+	private final AtomicInteger nodes_count;
+	
+	
+	public MonteCarloTree(int _capacity) {
+		
+		capacity = _capacity;
+		
+		moves 			= new int[capacity];
+		priors 			= new float[capacity];
+		first_child 	= new int[capacity];
+		children_count 	= new int[capacity];
+		
+		states 			= new AtomicIntegerArray(capacity);
+		visits 			= new AtomicIntegerArray(capacity);
+		values 			= new AtomicLongArray(capacity);
+		
+		nodes_count 	= new AtomicInteger();
+		
+		clear();
+	}
+	
+	
+	/**
+	 * Leaves only the root. Has to be called when no thread uses the tree.
+	 */
+	public void clear() {
+		
+		nodes_count.set(1);
+		
+		moves[ROOT] = 0;
+		priors[ROOT] = 1;
+		
+		states.set(ROOT, STATE_LEAF);
+		visits.set(ROOT, 0);
+		values.set(ROOT, 0);
+	}
+	
+	
+	public int getNodesCount() {
+		
+		return Math.min(capacity, nodes_count.get());
+	}
+	
+	
+	public int getMove(int node) {
+		
+		return moves[node];
+	}
+	
+	
+	public int getVisits(int node) {
+		
+		return visits.get(node);
+	}
+	
+	
+	/**
+	 * @return the average result of the playouts of the node for the side, which has played its move
+	 */
+	public double getValue(int node) {
+		
+		int node_visits = visits.get(node);
+		
+		return node_visits == 0 ? 0.5 : values.get(node) / (double) (VALUE_SCALE * node_visits);
+	}
+	
+	
+	public boolean isExpanded(int node) {
+		
+		return states.get(node) == STATE_EXPANDED;
+	}
+	
+	
+	/**
+	 * @return true if the calling thread has to expand the node, false if the node is expanded or is being expanded by another thread
+	 */
+	public boolean lockExpansion(int node) {
+		
+		return states.compareAndSet(node, STATE_LEAF, STATE_EXPANDING);
+	}
+	
+	
+	/**
+	 * Adds the children of a node locked with lockExpansion and publishes it as expanded.
+	 * If there is no space for the children, the node stays a leaf.
+	 */
+	public void expand(int node, int[] child_moves, float[] child_priors, int count) {
+		
+		int first = nodes_count.getAndAdd(count);
+		
+		if (first + count > capacity) {
+			
+			states.set(node, STATE_FULL);
+			
+			return;
+		}
+		
+		for (int i = 0; i < count; i++) {
+			
+			int child = first + i;
+			
+			moves[child] = child_moves[i];
+			priors[child] = child_priors[i];
+			
+			states.set(child, STATE_LEAF);
+			visits.set(child, 0);
+			values.set(child, 0);
+		}
+		
+		first_child[node] = first;
+		children_count[node] = count;
+		
+		//The volatile write publishes the children to the threads, which read the state
+		states.set(node, STATE_EXPANDED);
+	}
+	
+	
+	public void addVirtualLoss(int node) {
+		
+		visits.addAndGet(node, VIRTUAL_LOSS);
+	}
+	
+	
+	/**
+	 * Replaces the virtual loss of the node with the result of the playout.
+	 */
+	public void update(int node, double value) {
+		
+		values.addAndGet(node, (long) (value * VALUE_SCALE));
+		
+		visits.addAndGet(node, 1 - VIRTUAL_LOSS);
+	}
+	
+	
+	/**
+	 * @return the child with the highest PUCT (with the prior probabilities) or UCT score, -1 if the node has no children
+	 */
+	public int selectChild(int node, boolean puct) {
+		
+		int first = first_child[node];
+		int count = children_count[node];
+		
+		int parent_visits = visits.get(node);
+		
+		double sqrt_parent_visits = Math.sqrt(parent_visits);
+		double log_parent_visits = Math.log(parent_visits + 1);
+		
+		double fpu_value = Math.max(0, 1 - getValue(node) - FPU_REDUCTION);
+		
+		int best_child = -1;
+		double best_score = Double.NEGATIVE_INFINITY;
+		
+		for (int child = first; child < first + count; child++) {
+			
+			int child_visits = visits.get(child);
+			
+			double value = child_visits == 0 ? fpu_value : values.get(child) / (double) (VALUE_SCALE * child_visits);
+			
+			double score;
+			if (puct) {
+				score = value + C_PUCT * priors[child] * sqrt_parent_visits / (1 + child_visits);
+			} else {
+				score = value + C_UCT * Math.sqrt(log_parent_visits / (1 + child_visits));
+			}
+			
+			if (score > best_score) {
+				best_score = score;
+				best_child = child;
+			}
+		}
+		
+		return best_child;
+	}
+	
+	
+	/**
+	 * @return the child with the most visits (the best value for equal visits), -1 if the node is not expanded or has no visited children
+	 */
+	public int getBestChild(int node) {
+		
+		if (!isExpanded(node)) {
+			
+			return -1;
+		}
+		
+		int first = first_child[node];
+		int count = children_count[node];
+		
+		int best_child = -1;
+		int best_visits = 0;
+		double best_value = 0;
+		
+		for (int child = first; child < first + count; child++) {
+			
+			int child_visits = visits.get(child);
+			
+			if (child_visits == 0) {
+				continue;
+			}
+			
+			double value = getValue(child);
+			
+			if (child_visits > best_visits || (child_visits == best_visits && value > best_value)) {
+				best_visits = child_visits;
+				best_value = value;
+				best_child = child;
+			}
+		}
+		
+		return best_child;
+	}
+}
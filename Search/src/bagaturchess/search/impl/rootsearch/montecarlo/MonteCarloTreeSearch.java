@@ -0,0 +1,766 @@
+/**
+ *  BagaturChess (UCI chess engine and tools)
+ *  Copyright (C) 2005 Krasimir I. Topchiyski (k_topchiyski@yahoo.com)
+ *
+ *  This file is part of BagaturChess program.
+ *
+ *  BagaturChess is open software: you can redistribute it and/or modify
+ *  it under the terms of the Eclipse Public License version 1.0 as published by
+ *  the Eclipse Foundation.
+ *
+ *  BagaturChess is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  Eclipse Public License for more details.
+ *
+ *  You should have received a copy of the Eclipse Public License version 1.0
+ *  along with BagaturChess. If not, see http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package bagaturchess.search.impl.rootsearch.montecarlo;
+
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import bagaturchess.bitboard.api.BoardUtils;
+import bagaturchess.bitboard.api.IBitBoard;
+import bagaturchess.bitboard.api.IGameStatus;
+import bagaturchess.bitboard.api.IInternalMoveList;
+import bagaturchess.bitboard.common.Utils;
+import bagaturchess.bitboard.impl.movelist.BaseMoveList;
+import bagaturchess.search.api.IEvaluator;
+import bagaturchess.search.api.IFinishCallback;
+import bagaturchess.search.api.internal.CompositeStopper;
+import bagaturchess.search.api.internal.ISearch;
+import bagaturchess.search.api.internal.ISearchInfo;
+import bagaturchess.search.api.internal.ISearchMediator;
+import bagaturchess.search.api.internal.ISearchStopper;
+import bagaturchess.search.api.internal.SearchInterruptedException;
+import bagaturchess.search.impl.eval.cache.EvalCache_Impl2;
+import bagaturchess.search.impl.info.SearchInfoFactory;
+import bagaturchess.search.impl.rootsearch.RootSearch_BaseImpl;
+import bagaturchess.search.impl.tpt.ITTable;
+import bagaturchess.search.impl.uci_adaptor.timemanagement.ITimeController;
+import bagaturchess.uci.api.ChannelManager;
+import bagaturchess.uci.impl.commands.Go;
+
+
+/**
+ * Multi-threaded Monte Carlo Tree Search. All threads build one MonteCarloTree without locks:
+ * each playout selects a leaf with PUCT (or UCT), expands it and plays a short game from it, which result is added to the selected nodes.
+ * Each thread has its own board and evaluator. The playout plays PLAYOUT_PLIES random moves, preferring the captures with positive SEE,
+ * then only the captures with positive SEE, and the result is the evaluation of the last position converted to a win probability.
+ * The prior probabilities of the moves are higher for the captures and promotions with positive SEE.
+ *
+ * The infos are sent by the coordinating thread, which also checks the stoppers:
+ * the principal variation is the sequence of the most visited children, the depth is its length,
+ * the seldepth is the maximal depth of the selected leafs and the nodes are the playouts (so the nps is playouts per second).
+ * There is no transposition table. With "go depth", the search stops when the principal variation reaches the depth.
+ */
+public class MonteCarloTreeSearch extends RootSearch_BaseImpl {
+	
+	
+	private static final boolean USE_PUCT 					= true;
+	
+	private static final int TREE_CAPACITY 					= 1 << 21;
+	
+	private static final int MAX_SELECTION_DEPTH 			= 256;
+	
+	private static final int PLAYOUT_PLIES 					= 6;
+	
+	private static final int PLAYOUT_MAX_CAPTURES 			= 8;
+	
+	//The evaluation difference for 10 times higher win chances
+	private static final double EVAL_SCALE 					= 400;
+	
+	//Used for the prior probabilities: a capture with SEE of a pawn is 2 times more probable than a quiet move
+	private static final double PRIOR_SEE_SCALE 			= 100;
+	
+	private static final int MAX_PV_LENGTH 					= 64;
+	
+	private static final long CHECK_INTERVAL_MS 			= 10;
+	
+	private static final long INFO_INTERVAL_MS 				= 1000;
+	
+	private static final long EVAL_CACHE_SIZE_IN_BYTES 		= 4 * 1024 * 1024;
+	
+	
+	private ExecutorService executor;
+	
+	private MonteCarloTree tree;
+	
+	private List<Worker> workers;
+	
+	private volatile boolean workers_stopped;
+	
+	
+	public MonteCarloTreeSearch(Object[] args) {
+		
+		super(args);
+		
+		int threads = Math.max(1, getRootSearchConfig().getThreadsCount());
+		
+		//The workers and the coordinating thread
+		executor = Executors.newFixedThreadPool(threads + 1);
+		
+		tree = new MonteCarloTree(TREE_CAPACITY);
+		
+		workers = new ArrayList<Worker>();
+		
+		for (int i = 0; i < threads; i++) {
+			
+			workers.add(new Worker(i));
+		}
+		
+		ChannelManager.getChannel().dump("MonteCarloTreeSearch: created " + workers.size() + " threads");
+	}
+	
+	
+	@Override
+	public void createBoard(IBitBoard _bitboardForSetup) {
+		
+		super.createBoard(_bitboardForSetup);
+		
+		for (int i = 0; i < workers.size(); i++) {
+			
+			workers.get(i).createBoard(getBitboardForSetup());
+		}
+	}
+	
+	
+	@Override
+	public void negamax(IBitBoard _bitboardForSetup, final ISearchMediator mediator, ITimeController timeController,
+			final IFinishCallback finishCallback, final Go go) {
+		
+		if (stopper != null) {
+			
+			throw new IllegalStateException("MonteCarloTreeSearch started whithout beeing stopped");
+		}
+		
+		stopper = new Stopper();
+		
+		setupBoard(_bitboardForSetup);
+		
+		for (int i = 0; i < workers.size(); i++) {
+			
+			workers.get(i).setupBoard(getBitboardForSetup());
+		}
+		
+		mediator.setStopper(new CompositeStopper(new ISearchStopper[] {mediator.getStopper(), stopper}, false));
+		
+		tree.clear();
+		
+		//The root is expanded before the threads start, so they do not wait for each other at the beginning
+		if (tree.lockExpansion(MonteCarloTree.ROOT)) {
+			
+			workers.get(0).expand(MonteCarloTree.ROOT);
+		}
+		
+		workers_stopped = false;
+		
+		final CountDownLatch workers_finished = new CountDownLatch(workers.size());
+		
+		for (int i = 0; i < workers.size(); i++) {
+			
+			final Worker worker = workers.get(i);
+			
+			executor.execute(new Runnable() {
+				
+				@Override
+				public void run() {
+					
+					try {
+						
+						worker.search();
+					
+					} catch (Throwable t) {
+						
+						ChannelManager.getChannel().dump(t);
+						
+						ChannelManager.getChannel().dump(t.getMessage());
+					
+					} finally {
+						
+						workers_finished.countDown();
+					}
+				}
+			});
+		}
+		
+		executor.execute(new Runnable() {
+			
+			@Override
+			public void run() {
+				
+				try {
+					
+					coordinate(mediator, go, workers_finished);
+					
+					if (stopper == null) {
+						
+						throw new IllegalStateException();
+					}
+					
+					stopper = null;
+					
+					searchFinished();
+					
+					
+					if (finishCallback == null) {
+						
+						//Non MultiPV search
+						mediator.getBestMoveSender().sendBestMove();
+					
+					} else {
+						
+						//MultiPV search
+						finishCallback.ready();
+					}
+				
+				} catch (Throwable t) {
+					
+					ChannelManager.getChannel().dump(t);
+					
+					ChannelManager.getChannel().dump(t.getMessage());
+				}
+			}
+		});
+	}
+	
+	
+	/**
+	 * Sends the infos until the search has to be stopped, then stops the workers and sends the last info.
+	 */
+	private void coordinate(ISearchMediator mediator, Go go, CountDownLatch workers_finished) throws InterruptedException {
+		
+		int colour = getBitboardForSetup().getColourToMove();
+		
+		long last_info_time = System.currentTimeMillis();
+		
+		int last_best_move = 0;
+		
+		try {
+			
+			while (!workers_finished.await(CHECK_INTERVAL_MS, TimeUnit.MILLISECONDS)) {
+				
+				//Throws SearchInterruptedException, if the search is stopped or there is no more time
+				mediator.getStopper().stopIfNecessary(ISearch.MAX_DEPTH, colour, ISearch.MIN, ISearch.MAX);
+				
+				ISearchInfo info = createInfo();
+				
+				if (info == null) {
+					
+					continue;
+				}
+				
+				if (go.hasNodes() && info.getSearchedNodes() >= go.getNodes()) {
+					
+					break;
+				}
+				
+				if (go.hasDepth() && info.getDepth() >= go.getDepth()) {
+					
+					break;
+				}
+				
+				long now = System.currentTimeMillis();
+				
+				if (info.getBestMove() != last_best_move || now - last_info_time >= INFO_INTERVAL_MS) {
+					
+					mediator.changedMajor(info);
+					
+					last_best_move = info.getBestMove();
+					
+					last_info_time = now;
+				}
+			}
+		
+		} catch (SearchInterruptedException sie) {
+			
+			//Do nothing
+		}
+		
+		workers_stopped = true;
+		
+		workers_finished.await();
+		
+		ISearchInfo info = createInfo();
+		
+		if (info != null) {
+			
+			mediator.changedMajor(info);
+		}
+	}
+	
+	
+	/**
+	 * @return the info of the current tree, null if the root has no visited children
+	 */
+	private ISearchInfo createInfo() {
+		
+		int[] pv = new int[MAX_PV_LENGTH];
+		
+		int pv_length = 0;
+		
+		int node = tree.getBestChild(MonteCarloTree.ROOT);
+		
+		if (node == -1) {
+			
+			return null;
+		}
+		
+		double value = tree.getValue(node);
+		
+		while (node != -1 && pv_length < MAX_PV_LENGTH) {
+			
+			pv[pv_length++] = tree.getMove(node);
+			
+			node = tree.getBestChild(node);
+		}
+		
+		long playouts = 0;
+		
+		int seldepth = 0;
+		
+		for (int i = 0; i < workers.size(); i++) {
+			
+			playouts += workers.get(i).playouts;
+			
+			seldepth = Math.max(seldepth, workers.get(i).seldepth);
+		}
+		
+		int[] result_pv = new int[pv_length];
+		
+		System.arraycopy(pv, 0, result_pv, 0, pv_length);
+		
+		ISearchInfo info = SearchInfoFactory.getFactory().createSearchInfo();
+		
+		info.setPV(result_pv);
+		info.setBestMove(pv[0]);
+		info.setEval(toEval(value));
+		info.setDepth(pv_length);
+		info.setSelDepth(Math.max(pv_length, seldepth));
+		info.setSearchedNodes(playouts);
+		
+		return info;
+	}
+	
+	
+	private static int toEval(double win_probability) {
+		
+		double probability = Math.max(0.001, Math.min(0.999, win_probability));
+		
+		return (int) (EVAL_SCALE * Math.log10(probability / (1 - probability)));
+	}
+	
+	
+	private static double toWinProbability(int eval) {
+		
+		return 1 / (1 + Math.pow(10, -eval / EVAL_SCALE));
+	}
+	
+	
+	private static boolean isGameOver(IGameStatus status) {
+		
+		return status != IGameStatus.NONE
+				&& status != IGameStatus.NO_SUFFICIENT_WHITE_MATERIAL
+				&& status != IGameStatus.NO_SUFFICIENT_BLACK_MATERIAL
+				&& status != IGameStatus.PASSER_WHITE
+				&& status != IGameStatus.PASSER_BLACK;
+	}
+	
+	
+	/**
+	 * @return the result of the finished game for the side to move: 0 if it is mated, 0.5 for draw
+	 */
+	private static double getResult(IGameStatus status) {
+		
+		if (status == IGameStatus.MATE_WHITE_WIN || status == IGameStatus.MATE_BLACK_WIN) {
+			
+			return 0;
+		}
+		
+		return 0.5;
+	}
+	
+	
+	@Override
+	public void recreateEvaluator() {
+		
+		for (int i = 0; i < workers.size(); i++) {
+			
+			workers.get(i).createEvaluator();
+		}
+	}
+	
+	
+	@Override
+	public int getTPTUsagePercent() {
+		//Do nothing
+		return 0;
+	}
+	
+	
+	@Override
+	public ITTable getTPT() {
+		
+		throw new UnsupportedOperationException();
+	}
+	
+	
+	@Override
+	public void decreaseTPTDepths(int reduction) {
+		//Do nothing
+	}
+	
+	
+	@Override
+	public void shutDown() {
+		
+		try {
+			
+			workers_stopped = true;
+			
+			executor.shutdownNow();
+		
+		} catch (Throwable t) {
+			
+			//Do nothing
+		}
+	}
+	
+	
+	/**
+	 * One search thread with its own board, evaluator and buffers.
+	 * The playouts and seldepth are written only by the thread and read by the coordinating thread.
+	 */
+	private class Worker {
+		
+		
+		private IBitBoard board;
+		
+		private IEvaluator evaluator;
+		
+		private IInternalMoveList moves_list;
+		
+		private Random random;
+		
+		private int[] path;
+		
+		private int[] playout_moves;
+		
+		private int[] child_moves;
+		
+		private float[] child_priors;
+		
+		private volatile long playouts;
+		
+		private volatile int seldepth;
+		
+		
+		public Worker(int index) {
+			
+			moves_list = new BaseMoveList(250);
+			
+			random = new Random(index);
+			
+			path = new int[MAX_SELECTION_DEPTH + 1];
+			
+			playout_moves = new int[PLAYOUT_PLIES + PLAYOUT_MAX_CAPTURES];
+			
+			child_moves = new int[250];
+			
+			child_priors = new float[250];
+		}
+		
+		
+		/**
+		 * The same as RootSearch_BaseImpl.createBoard, so the board has the played moves for the draw by repetition.
+		 */
+		public void createBoard(IBitBoard bitboardForSetup) {
+			
+			int movesCount = bitboardForSetup.getPlayedMovesCount();
+			
+			int[] moves = Utils.copy(bitboardForSetup.getPlayedMoves());
+			
+			bitboardForSetup.revert();
+			
+			board = BoardUtils.createBoard_WithPawnsCache(bitboardForSetup.toEPD(), getRootSearchConfig().getBoardConfig());
+			
+			for (int i = 0; i < movesCount; i++) {
+				
+				bitboardForSetup.makeMoveForward(moves[i]);
+				
+				board.makeMoveForward(moves[i]);
+			}
+			
+			createEvaluator();
+		}
+		
+		
+		public void createEvaluator() {
+			
+			evaluator = getSharedData().getEvaluatorFactory().create(board, new EvalCache_Impl2(EVAL_CACHE_SIZE_IN_BYTES),
+					getRootSearchConfig().getEvalConfig());
+		}
+		
+		
+		public void setupBoard(IBitBoard bitboardForSetup) {
+			
+			board.revert();
+			
+			int movesCount = bitboardForSetup.getPlayedMovesCount();
+			
+			int[] moves = bitboardForSetup.getPlayedMoves();
+			
+			for (int i = 0; i < movesCount; i++) {
+				
+				board.makeMoveForward(moves[i]);
+			}
+			
+			playouts = 0;
+			
+			seldepth = 0;
+		}
+		
+		
+		public void search() {
+			
+			while (!workers_stopped) {
+				
+				playout();
+			}
+		}
+		
+		
+		private void playout() {
+			
+			int node = MonteCarloTree.ROOT;
+			
+			int depth = 0;
+			
+			path[0] = node;
+			
+			tree.addVirtualLoss(node);
+			
+			while (depth < MAX_SELECTION_DEPTH && tree.isExpanded(node)) {
+				
+				int child = tree.selectChild(node, USE_PUCT);
+				
+				if (child == -1) {
+					
+					break;
+				}
+				
+				board.makeMoveForward(tree.getMove(child));
+				
+				tree.addVirtualLoss(child);
+				
+				node = child;
+				
+				path[++depth] = node;
+			}
+			
+			//The result for the side to move in the leaf
+			double result;
+			
+			IGameStatus status = board.getStatus();
+			
+			if (isGameOver(status)) {
+				
+				result = getResult(status);
+			
+			} else {
+				
+				if (tree.lockExpansion(node)) {
+					
+					expand(node);
+				}
+				
+				result = simulate();
+			}
+			
+			//The value of a node is for the side, which has played its move
+			double value = 1 - result;
+			
+			for (int i = depth; i >= 0; i--) {
+				
+				tree.update(path[i], value);
+				
+				value = 1 - value;
+				
+				if (i > 0) {
+					
+					board.makeMoveBackward(tree.getMove(path[i]));
+				}
+			}
+			
+			playouts++;
+			
+			if (depth > seldepth) {
+				
+				seldepth = depth;
+			}
+		}
+		
+		
+		/**
+		 * Adds the legal moves of the board as children of the node, which is locked for expansion.
+		 */
+		public void expand(int node) {
+			
+			moves_list.reserved_clear();
+			
+			if (board.isInCheck()) {
+				board.genKingEscapes(moves_list);
+			} else {
+				board.genAllMoves(moves_list);
+			}
+			
+			int count = Math.min(child_moves.length, moves_list.reserved_getCurrentSize());
+			
+			int[] buffer = moves_list.reserved_getMovesBuffer();
+			
+			double sum = 0;
+			
+			for (int i = 0; i < count; i++) {
+				
+				int move = buffer[i];
+				
+				double weight = 1;
+				
+				if (board.getMoveOps().isCaptureOrPromotion(move)) {
+					
+					int see = board.getSEEScore(move);
+					
+					if (see > 0) {
+						weight += see / PRIOR_SEE_SCALE;
+					} else if (see < 0) {
+						weight /= 2;
+					}
+				}
+				
+				child_moves[i] = move;
+				
+				child_priors[i] = (float) weight;
+				
+				sum += weight;
+			}
+			
+			for (int i = 0; i < count; i++) {
+				
+				child_priors[i] /= sum;
+			}
+			
+			tree.expand(node, child_moves, child_priors, count);
+		}
+		
+		
+		/**
+		 * @return the result of the playout for the side to move
+		 */
+		private double simulate() {
+			
+			int colour = board.getColourToMove();
+			
+			int plies = 0;
+			
+			IGameStatus status = board.getStatus();
+			
+			while (plies < playout_moves.length && !isGameOver(status)) {
+				
+				int move = selectPlayoutMove(plies < PLAYOUT_PLIES);
+				
+				if (move == 0) {
+					
+					break;
+				}
+				
+				board.makeMoveForward(move);
+				
+				playout_moves[plies++] = move;
+				
+				status = board.getStatus();
+			}
+			
+			double result;
+			
+			if (isGameOver(status)) {
+				
+				result = getResult(status);
+			
+			} else {
+				
+				result = toWinProbability(evaluator.fullEval(0, IEvaluator.MIN_EVAL, IEvaluator.MAX_EVAL, board.getColourToMove()));
+			}
+			
+			if (board.getColourToMove() != colour) {
+				
+				result = 1 - result;
+			}
+			
+			for (int i = plies - 1; i >= 0; i--) {
+				
+				board.makeMoveBackward(playout_moves[i]);
+			}
+			
+			return result;
+		}
+		
+		
+		/**
+		 * @return the capture or promotion with the best positive SEE, otherwise a random move if random moves are allowed, otherwise 0
+		 */
+		private int selectPlayoutMove(boolean random_move) {
+			
+			moves_list.reserved_clear();
+			
+			if (board.isInCheck()) {
+				board.genKingEscapes(moves_list);
+			} else {
+				board.genAllMoves(moves_list);
+			}
+			
+			int count = moves_list.reserved_getCurrentSize();
+			
+			if (count == 0) {
+				
+				return 0;
+			}
+			
+			int[] buffer = moves_list.reserved_getMovesBuffer();
+			
+			int best_move = 0;
+			
+			int best_see = 0;
+			
+			for (int i = 0; i < count; i++) {
+				
+				if (board.getMoveOps().isCaptureOrPromotion(buffer[i])) {
+					
+					int see = board.getSEEScore(buffer[i]);
+					
+					if (see > best_see) {
+						
+						best_see = see;
+						
+						best_move = buffer[i];
+					}
+				}
+			}
+			
+			if (best_move == 0 && random_move) {
+				
+				best_move = buffer[random.nextInt(count)];
+			}
+			
+			return best_move;
+		}
+	}
+}
@@ -1,12 +1,12 @@
 /*
  *  BagaturChess (UCI chess engine and tools)
  *  Copyright (C) 2005 Krasimir I. Topchiyski (k_topchiyski@yahoo.com)
- *  
+ *
  *  Open Source project location: http://sourceforge.net/projects/bagaturchess/develop
  *  SVN repository https://bagaturchess.svn.sourceforge.net/svnroot/bagaturchess
  *
  *  This file is part of BagaturChess program.
- * 
+ *
  *  BagaturChess is open software: you can redistribute it and/or modify
  *  it under the terms of the Eclipse Public License version 1.0 as published by
  *  the Eclipse Foundation.
@@ -23,116 +23,341 @@
 package bagaturchess.search.impl.rootsearch.multipv;
 
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
 import bagaturchess.bitboard.api.IBitBoard;
+import bagaturchess.bitboard.impl.movelist.BaseMoveList;
+import bagaturchess.bitboard.impl.movelist.IMoveList;
 import bagaturchess.search.api.IFinishCallback;
 import bagaturchess.search.api.IRootSearch;
 import bagaturchess.search.api.IRootSearchConfig;
+import bagaturchess.search.api.internal.CompositeStopper;
+import bagaturchess.search.api.internal.ISearch;
+import bagaturchess.search.api.internal.ISearchInfo;
 import bagaturchess.search.api.internal.ISearchMediator;
 import bagaturchess.search.api.internal.ISearchStopper;
+import bagaturchess.search.api.internal.SearchInfoUtils;
+import bagaturchess.search.api.internal.SearchInterruptedException;
+import bagaturchess.search.impl.info.SearchInfoFactory;
+import bagaturchess.search.impl.pv.PVManager;
+import bagaturchess.search.impl.pv.PVNode;
 import bagaturchess.search.impl.rootsearch.RootSearch_BaseImpl;
+import bagaturchess.search.impl.rootsearch.sequential.NPSCollectorMediator;
+import bagaturchess.search.impl.rootsearch.sequential.SequentialSearch_MTD;
 import bagaturchess.search.impl.tpt.ITTable;
 import bagaturchess.search.impl.uci_adaptor.timemanagement.ITimeController;
 import bagaturchess.uci.api.ChannelManager;
 import bagaturchess.uci.impl.commands.Go;
 
 
+/**
+ * MultiPV search inside one iterative deepening loop.
+ * On each depth, the best line is searched first, then each next line is searched with the root moves of the already found lines excluded.
+ * The root moves are ordered by the lines of the previous depth, so each line starts with the move, which was on its place before.
+ * All lines use the same searcher and transposition table. The score of a search with excluded root moves is not stored in the table for the root position.
+ * The root moves are excluded by the ISearch implementation, currently only by bagaturchess.search.impl.alg.impl1.Search_PVS_NWS.
+ *
+ * The lines are searched in one thread with the searcher of the wrapped SequentialSearch_MTD, so it uses its caches and no caches of its own.
+ * The parallel root searches (threads and processes) do not support excluded root moves,
+ * for them UCISearchAdaptorImpl_Base uses MultiPVRootSearch_PerMove, which searches through the parallel root search.
+ */
 public class MultiPVRootSearch extends RootSearch_BaseImpl {
 	
 	
+	private static final int ASPIRATION_WINDOW = 20;
+	
+	
 	private ExecutorService executor;
-	private IRootSearch rootSearch;
-	private MultiPVMediator current_mediator_multipv;
-	private ISearchStopper current_stopper;
+	private SequentialSearch_MTD rootSearch;
+	private ISearch searcher;
 	
 	
 	public MultiPVRootSearch(IRootSearchConfig _engineConfiguration, IRootSearch _rootSearch) {
 		super(new Object[] {_engineConfiguration, _rootSearch.getSharedData()});
-		rootSearch = _rootSearch;
+		
+		if (!isSupported(_rootSearch)) {
+			throw new IllegalStateException("MultiPVRootSearch supports only " + SequentialSearch_MTD.class.getName() + " root search, but it is " + _rootSearch.getClass().getName());
+		}
+		
+		rootSearch = (SequentialSearch_MTD) _rootSearch;
 		executor = Executors.newFixedThreadPool(1);
 	}
 	
 	
+	/**
+	 * @return true if the lines can be searched with the searcher of the root search, i.e. it is single threaded and in the same process
+	 */
+	public static boolean isSupported(IRootSearch _rootSearch) {
+		return _rootSearch instanceof SequentialSearch_MTD;
+	}
+	
+	
 	@Override
 	public void createBoard(IBitBoard _bitboardForSetup) {
-		super.createBoard(_bitboardForSetup); //Keep it for multipv mediator
 		
-		rootSearch.createBoard(_bitboardForSetup);
+		//Used for the count of the lines and for the info commands, the searcher uses the board of the root search
+		super.createBoard(_bitboardForSetup);
 	}
-
-
+	
+	
 	@Override
-	public void negamax(IBitBoard _bitboardForSetup, final ISearchMediator mediator, ITimeController timeController, IFinishCallback finishCallback, Go go) {
+	public void negamax(IBitBoard _bitboardForSetup, ISearchMediator mediator, ITimeController timeController,
+			final IFinishCallback finishCallback, final Go go) {
 		
-		if (current_mediator_multipv != null) {
-			throw new IllegalStateException("MultiPV search started without beeing stopped.");
+		if (stopper != null) {
+			throw new IllegalStateException("MultiPVRootSearch started whithout beeing stopped");
 		}
+		stopper = new Stopper();
+		
 		
 		setupBoard(_bitboardForSetup);
 		
-		//!!!Do not setup the board of rootSearch. multiPV mediator will set it up for each move
-		//rootSearch.setupBoard(_bitboardForSetup);
+		searcher = rootSearch.setupSearcher(_bitboardForSetup);
 		
-		//adjust go: startIteration - 1, maxIterations - 1, //Should be -1, because it plays each move and than search with depth=maxIterations
-		int max_depth = Go.UNDEF_DEPTH;
-		if (go.getDepth() != Go.UNDEF_DEPTH) {
-			max_depth = go.getDepth() - 1;
-			if (max_depth <= 0) {//Doesnt'work with 0, because getMateScores(0) throws exception
-				max_depth = 1;
-			}
-			go.setDepth(max_depth);
-		}
-		if (go.getStartDepth() != Go.UNDEF_STARTDEPTH) {
-			if (go.getStartDepth() <= 0) {//Doesnt'work with 0, because getMateScores(0) throws exception
-				go.setStartDepth(1);
-			} else {
-				go.setStartDepth(go.getStartDepth() - 1);
-			}
-		}
+		searcher.newSearch();
 		
-		current_mediator_multipv = new MultiPVMediator(getRootSearchConfig(), rootSearch,
-				getBitboardForSetup(), mediator,
-				go);
 		
-		current_stopper = mediator.getStopper();
+		final int startIteration = (go.getStartDepth() == Go.UNDEF_STARTDEPTH) ? 1 : Math.max(1, go.getStartDepth());
+		final int maxIterations = (go.getDepth() == Go.UNDEF_DEPTH) ? ISearch.MAX_DEPTH : Math.min(ISearch.MAX_DEPTH, go.getDepth());
 		
-		current_mediator_multipv.ready();
+		final int linesCount = getLinesCount();
 		
+		final NPSCollectorMediator final_mediator = new NPSCollectorMediator(mediator);
+		final_mediator.setStopper(new CompositeStopper(new ISearchStopper[] {mediator.getStopper(), stopper}, true ));
 		
-		final int final_max_depth = max_depth;
 		
 		executor.execute(new Runnable() {
-			
 			@Override
 			public void run() {
 				try {
-					while (!current_stopper.isStopped()
-							&& current_mediator_multipv.getCurrentDepth() <= final_max_depth
-							) {
+					
+					long startTime = System.currentTimeMillis();
+					
+					List<ISearchInfo> infos = new ArrayList<ISearchInfo>();
+					
+					//The lines of the last completed depth, sorted by eval
+					ISearchInfo[] lines = new ISearchInfo[linesCount];
+					int[] lines_moves = new int[linesCount];
+					int[] lines_evals = new int[linesCount];
+					int lines_found = 0;
+					
+					//The lines of the current depth, in the order of searching
+					ISearchInfo[] cur_lines = new ISearchInfo[linesCount];
+					int[] cur_lines_moves = new int[linesCount];
+					
+					for (int maxdepth = startIteration; maxdepth <= maxIterations; maxdepth++) {
+						
+						int cur_lines_found = 0;
 						
 						try {
-							Thread.sleep(15);
-						} catch (InterruptedException e) {}
+							
+							searcher.setRootOrderedMoves(lines_moves, lines_found);
+							
+							for (int line = 0; line < linesCount; line++) {
+								
+								searcher.setRootExcludedMoves(cur_lines_moves, line);
+								
+								ISearchInfo info = SearchInfoFactory.getFactory().createSearchInfo();
+								final_mediator.registerInfoObject(info);
+								infos.add(info);
+								info.setDepth(maxdepth);
+								info.setSelDepth(maxdepth);
+								
+								int eval = line < lines_found ? lines_evals[line] : (line > 0 ? cur_lines[line - 1].getEval() : 0);
+								int window = ASPIRATION_WINDOW;
+								int alpha;
+								int beta;
+								
+								PVManager pvman = new PVManager(ISearch.MAX_DEPTH);
+								
+								do {
+									
+									alpha = Math.max(ISearch.MIN, eval - window);
+									beta = Math.min(ISearch.MAX, eval + window);
+									
+									eval = searcher.pv_search(final_mediator,
+											pvman, info,
+											ISearch.PLY * maxdepth, ISearch.PLY * maxdepth, 0,
+											alpha, beta,
+											0, 0, null,
+											false, 0, searcher.getEnv().getBitboard().getColourToMove(),
+											0, 0, false, 0, !go.isPonder());
+									
+									window *= 2;
+								
+								} while (eval <= alpha || eval >= beta);
+								
+								List<Integer> pv_buffer = new ArrayList<Integer>();
+								info.setPV(PVNode.convertPV(pvman.load(0), pv_buffer));
+								info.setEval(eval);
+								
+								if (info.getPV().length == 0) {
+									//No legal moves
+									break;
+								}
+								
+								info.setBestMove(info.getPV()[0]);
+								
+								if (line > 0 && contains(cur_lines_moves, line, info.getBestMove())) {
+									//The searcher does not support excluded root moves
+									break;
+								}
+								
+								cur_lines[line] = info;
+								cur_lines_moves[line] = info.getBestMove();
+								cur_lines_found++;
+							}
+						
+						} catch(SearchInterruptedException sie) {
+							//The time is over, the lines of the last completed depth are already sent
+							break;
+						}
+						
+						if (cur_lines_found == 0) {
+							break;
+						}
+						
+						lines_found = sortLines(cur_lines, cur_lines_found, lines, lines_moves, lines_evals);
+						
+						sendLines(final_mediator, lines, lines_found, infos, startTime);
+						
+						if (final_mediator.getStopper().isStopped()) {
+							break;
+						}
 					}
 					
-					stopSearchAndWait();
-					
-					mediator.getBestMoveSender().sendBestMove();
+					searcher.setRootExcludedMoves(cur_lines_moves, 0);
+					searcher.setRootOrderedMoves(lines_moves, 0);
 					
+					if (!isStopped()) {
+						
+						if (stopper == null) {
+							throw new IllegalStateException();
+						}
+						stopper.markStopped();
+						stopper = null;
+						searchFinished();
+						
+						if (finishCallback == null) {
+							final_mediator.getBestMoveSender().sendBestMove();
+						} else {
+							finishCallback.ready();
+						}
+					}
+				
 				} catch(Throwable t) {
 					ChannelManager.getChannel().dump(t);
+					ChannelManager.getChannel().dump(t.getMessage());
 				}
 			}
 		});
 	}
 	
 	
+	/**
+	 * @return the count of the lines to search, not more than the count of the legal moves and at least 1
+	 */
+	private int getLinesCount() {
+		
+		IMoveList moves = new BaseMoveList();
+		
+		if (getBitboardForSetup().isInCheck()) {
+			getBitboardForSetup().genKingEscapes(moves);
+		} else {
+			getBitboardForSetup().genAllMoves(moves);
+		}
+		
+		return Math.max(1, Math.min(getRootSearchConfig().getMultiPVsCount(), moves.reserved_getCurrentSize()));
+	}
+	
+	
+	private static boolean contains(int[] moves, int count, int move) {
+		
+		for (int i = 0; i < count; i++) {
+			if (moves[i] == move) {
+				return true;
+			}
+		}
+		
+		return false;
+	}
+	
+	
+	/**
+	 * Sorts the lines by eval (stable, so the lines with equal evals stay in the order of searching).
+	 * @return the count of the sorted lines
+	 */
+	private static int sortLines(ISearchInfo[] cur_lines, int count, ISearchInfo[] lines, int[] lines_moves, int[] lines_evals) {
+		
+		for (int i = 0; i < count; i++) {
+			
+			ISearchInfo info = cur_lines[i];
+			
+			int j = i - 1;
+			while (j >= 0 && lines[j].getEval() < info.getEval()) {
+				lines[j + 1] = lines[j];
+				j--;
+			}
+			lines[j + 1] = info;
+		}
+		
+		for (int i = 0; i < count; i++) {
+			lines_moves[i] = lines[i].getBestMove();
+			lines_evals[i] = lines[i].getEval();
+		}
+		
+		return count;
+	}
+	
+	
+	/**
+	 * Sends the best line as major info and all lines as multipv infos, with the nodes of all searches.
+	 */
+	private void sendLines(ISearchMediator mediator, ISearchInfo[] lines, int count, List<ISearchInfo> infos, long startTime) {
+		
+		long nodes = 0;
+		long tbhits = 0;
+		int seldepth = 0;
+		
+		for (int i = 0; i < infos.size(); i++) {
+			nodes += infos.get(i).getSearchedNodes();
+			tbhits += infos.get(i).getTBhits();
+			seldepth = Math.max(seldepth, infos.get(i).getSelDepth());
+		}
+		
+		mediator.changedMajor(lines[0]);
+		
+		for (int i = 0; i < count; i++) {
+			
+			ISearchInfo info = SearchInfoFactory.getFactory().createSearchInfo();
+			
+			info.setDepth(lines[i].getDepth());
+			info.setSelDepth(seldepth);
+			info.setEval(lines[i].getEval());
+			info.setPV(lines[i].getPV());
+			info.setBestMove(lines[i].getBestMove());
+			info.setSearchedNodes(nodes);
+			info.setTBhits(tbhits);
+			
+			mediator.send(SearchInfoUtils.buildMajorInfoCommand_multipv(i + 1, info, startTime, 0, 0, getBitboardForSetup()));
+		}
+	}
+	
+	
 	@Override
 	public void shutDown() {
+		try {
+			
+			//The searcher belongs to the root search, which shuts it down
+			executor.shutdownNow();
+			searcher = null;
 		
-		rootSearch.shutDown();
+		} catch(Throwable t) {
+			//Do nothing
+		}
 	}
 	
 	
@@ -155,19 +380,4 @@ public class MultiPVRootSearch extends RootSearch_BaseImpl {
 		
 		rootSearch.decreaseTPTDepths(reduction);
 	}
-	
-	
-	@Override
-	public void stopSearchAndWait() {
-		
-		if (current_stopper != null) {
-			
-			current_stopper.markStopped();
-			
-			rootSearch.stopSearchAndWait();
-			
-			current_mediator_multipv = null;
-			current_stopper = null;
-		}
-	}
 }
@@ -0,0 +1,425 @@
+/*
+ *  BagaturChess (UCI chess engine and tools)
+ *  Copyright (C) 2005 Krasimir I. Topchiyski (k_topchiyski@yahoo.com)
+ *  
+ *  Open Source project location: http://sourceforge.net/projects/bagaturchess/develop
+ *  SVN repository https://bagaturchess.svn.sourceforge.net/svnroot/bagaturchess
+ *
+ *  This file is part of BagaturChess program.
+ * 
+ *  BagaturChess is open software: you can redistribute it and/or modify
+ *  it under the terms of the Eclipse Public License version 1.0 as published by
+ *  the Eclipse Foundation.
+ *
+ *  BagaturChess is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  Eclipse Public License for more details.
+ *
+ *  You should have received a copy of the Eclipse Public License version 1.0
+ *  along with BagaturChess. If not, see <http://www.eclipse.org/legal/epl-v10.html/>.
+ *
+ */
+package bagaturchess.search.impl.rootsearch.parallel;
+
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import bagaturchess.bitboard.api.IBitBoard;
+import bagaturchess.search.api.IFinishCallback;
+import bagaturchess.search.api.internal.CompositeStopper;
+import bagaturchess.search.api.internal.ISearchInfo;
+import bagaturchess.search.api.internal.ISearchMediator;
+import bagaturchess.search.api.internal.ISearchStopper;
+import bagaturchess.search.api.internal.SearchInterruptedException;
+import bagaturchess.search.impl.rootsearch.RootSearch_BaseImpl;
+import bagaturchess.search.impl.rootsearch.multipv.MultiPVMediator;
+import bagaturchess.search.impl.rootsearch.sequential.NPSCollectorMediator;
+import bagaturchess.search.impl.rootsearch.sequential.SequentialSearch_MTD;
+import bagaturchess.search.impl.rootsearch.sequential.mtd.Mediator_AlphaAndBestMoveWindow;
+import bagaturchess.search.impl.tpt.ITTable;
+import bagaturchess.search.impl.uci_adaptor.timemanagement.ITimeController;
+import bagaturchess.search.impl.utils.SearchMediatorProxy;
+import bagaturchess.uci.api.BestMoveSender;
+import bagaturchess.uci.api.ChannelManager;
+import bagaturchess.uci.impl.commands.Go;
+
+
+/**
+ * Lazy SMP: one main searcher and helper searchers, which search the same root position at the same time
+ * and communicate only through the transposition table (CountTranspositionTables must be 1).
+ * Only the main searcher reports infos and decides the best move, the helpers only fill the transposition table.
+ * The nodes of the helpers are added to the reported ones, but the depth, seldepth and PV are the ones of the main searcher.
+ * The helpers start at deeper depths and with other MTD(f) steps than the main searcher, so they search different trees.
+ * Each searcher has its own board, so its own history tables.
+ * There is no polling: when the main searcher finishes, the helpers are stopped and the best move is sent.
+ */
+public class LazySMPSearch extends RootSearch_BaseImpl {
+	
+	
+	//Helper i starts at depth (start depth + HELPERS_DEPTH_OFFSETS[i % length])
+	private static final int[] HELPERS_DEPTH_OFFSETS 			= new int[] {1, 2, 1, 3};
+	
+	//The MTD(f) step of helper i is the step of the main searcher multiplied by HELPERS_MTD_STEP_MULTIPLIERS[i % length]
+	private static final int[] HELPERS_MTD_STEP_MULTIPLIERS 	= new int[] {2, 1, 4, 3};
+	
+	
+	private ExecutorService executor;
+	
+	//The first one is the main searcher
+	private List<SequentialSearch_MTD> searchers;
+	
+	
+	public LazySMPSearch(Object[] args) {
+		
+		super(args);
+		
+		//Each transposition table would be used by a part of the searchers and they would not help each other
+		if (getRootSearchConfig().getTPTsCount() != 1) {
+			
+			throw new IllegalStateException("LazySMPSearch: the searchers share the search results only through the transposition table, but there are "
+					+ getRootSearchConfig().getTPTsCount() + " transposition tables. Set CountTranspositionTables to 1.");
+		}
+		
+		executor = Executors.newFixedThreadPool(1);
+		
+		searchers = new ArrayList<SequentialSearch_MTD>();
+		
+		for (int i = 0; i < getRootSearchConfig().getThreadsCount(); i++) {
+			
+			searchers.add(new SequentialSearch_MTD(new Object[] {getRootSearchConfig(), getSharedData()}));
+		}
+		
+		ChannelManager.getChannel().dump("LazySMPSearch: created " + searchers.size() + " searchers");
+	}
+	
+	
+	@Override
+	public void createBoard(IBitBoard _bitboardForSetup) {
+		
+		super.createBoard(_bitboardForSetup);
+		
+		for (int i = 0; i < searchers.size(); i++) {
+			
+			searchers.get(i).createBoard(getBitboardForSetup());
+		}
+	}
+	
+	
+	@Override
+	public void negamax(IBitBoard _bitboardForSetup, final ISearchMediator root_mediator, ITimeController timeController,
+			final IFinishCallback multiPVCallback, Go go) {
+		
+		if (stopper != null) {
+			
+			throw new IllegalStateException("LazySMPSearch started whithout beeing stopped");
+		}
+		
+		stopper = new Stopper();
+		
+		final ISearchStopper helpers_stopper = stopper;
+		
+		setupBoard(_bitboardForSetup);
+		
+		int startIteration = (go.getStartDepth() == Go.UNDEF_STARTDEPTH) ? 1 : go.getStartDepth();
+		
+		root_mediator.setStopper(new CompositeStopper(new ISearchStopper[] {root_mediator.getStopper(), stopper}, false));
+		
+		
+		//Original mediator should be an instance of UCISearchMediatorImpl_Base
+		NPSCollectorMediator nodes_collector = (root_mediator instanceof MultiPVMediator) ?
+				
+				null :
+					
+				new NPSCollectorMediator(new Mediator_AlphaAndBestMoveWindow(root_mediator));
+		
+		ISearchMediator main_mediator = (nodes_collector == null) ?
+				
+				new Mediator_AlphaAndBestMoveWindow(root_mediator) :
+					
+				nodes_collector;
+		
+		final CountDownLatch main_finished = new CountDownLatch(1);
+		
+		main_mediator = new MainMediator(main_mediator, main_finished);
+		
+		searchers.get(0).negamax(getBitboardForSetup(), main_mediator, timeController, null, go, true);
+		
+		for (int i = 1; i < searchers.size(); i++) {
+			
+			Go helper_go = new Go(ChannelManager.getChannel(), "go infinite startdepth "
+					+ (startIteration + HELPERS_DEPTH_OFFSETS[i % HELPERS_DEPTH_OFFSETS.length]));
+			
+			ISearchMediator helper_mediator = new HelperMediator(main_mediator, nodes_collector, helpers_stopper,
+					HELPERS_MTD_STEP_MULTIPLIERS[i % HELPERS_MTD_STEP_MULTIPLIERS.length]);
+			
+			searchers.get(i).negamax(getBitboardForSetup(), helper_mediator, timeController, null, helper_go, true);
+		}
+		
+		
+		executor.execute(new Runnable() {
+			
+			@Override
+			public void run() {
+				
+				try {
+					
+					main_finished.await();
+					
+					//The helpers throw SearchInterruptedException on the next check of the stopper
+					helpers_stopper.markStopped();
+					
+					for (int i = 1; i < searchers.size(); i++) {
+						
+						searchers.get(i).stopSearchAndWait();
+					}
+					
+					if (stopper == null) {
+						
+						throw new IllegalStateException();
+					}
+					
+					stopper = null;
+					
+					searchFinished();
+					
+					
+					if (multiPVCallback == null) {
+						
+						//Non MultiPV search
+						root_mediator.getBestMoveSender().sendBestMove();
+						
+					} else {
+						
+						//MultiPV search
+						multiPVCallback.ready();
+					}
+					
+				} catch (Throwable t) {
+					
+					ChannelManager.getChannel().dump(t);
+					
+					ChannelManager.getChannel().dump(t.getMessage());
+				}
+			}
+		});
+	}
+	
+	
+	@Override
+	public void shutDown() {
+		
+		try {
+			
+			executor.shutdownNow();
+			
+			for (int i = 0; i < searchers.size(); i++) {
+				
+				searchers.get(i).shutDown();
+			}
+			
+		} catch (Throwable t) {
+			
+			//Do nothing
+		}
+	}
+	
+	
+	@Override
+	public void recreateEvaluator() {
+		
+		for (int i = 0; i < searchers.size(); i++) {
+			
+			searchers.get(i).recreateEvaluator();
+		}
+	}
+	
+	
+	@Override
+	public int getTPTUsagePercent() {
+		
+		return searchers.get(0).getTPTUsagePercent();
+	}
+	
+	
+	@Override
+	public ITTable getTPT() {
+		
+		return searchers.get(0).getTPT();
+	}
+	
+	
+	@Override
+	public void decreaseTPTDepths(int reduction) {
+		
+		List<ITTable> decreased = new ArrayList<ITTable>();
+		
+		for (int i = 0; i < searchers.size(); i++) {
+			
+			ITTable tt = searchers.get(i).getTPT();
+			
+			//The table is shared, so its depths have to be decreased only once
+			if (tt != null && !decreased.contains(tt)) {
+				
+				tt.correctAllDepths(reduction);
+				
+				decreased.add(tt);
+			}
+		}
+	}
+	
+	
+	/**
+	 * Mediator of the main searcher. When the main searcher finishes, it releases the latch instead of sending the best move.
+	 */
+	private static class MainMediator extends SearchMediatorProxy {
+		
+		
+		private BestMoveSender bestmovesender;
+		
+		
+		public MainMediator(ISearchMediator _parent, final CountDownLatch main_finished) {
+			
+			super(_parent);
+			
+			bestmovesender = new BestMoveSender() {
+				
+				@Override
+				public void sendBestMove() {
+					
+					main_finished.countDown();
+				}
+			};
+		}
+		
+		
+		@Override
+		public BestMoveSender getBestMoveSender() {
+			
+			return bestmovesender;
+		}
+	}
+	
+	
+	/**
+	 * Mediator of a helper searcher. The infos are not reported, only their nodes are counted by the mediator of the main searcher.
+	 */
+	private static class HelperMediator extends SearchMediatorProxy {
+		
+		
+		//null for MultiPV search, then the nodes of the helper are not counted
+		private NPSCollectorMediator nodes_collector;
+		
+		private ISearchStopper stopper;
+		
+		private BestMoveSender bestmovesender;
+		
+		private int mtd_step_multiplier;
+		
+		
+		public HelperMediator(ISearchMediator main_mediator, NPSCollectorMediator _nodes_collector, final ISearchStopper helpers_stopper, int _mtd_step_multiplier) {
+			
+			super(main_mediator);
+			
+			nodes_collector = _nodes_collector;
+			
+			mtd_step_multiplier = _mtd_step_multiplier;
+			
+			bestmovesender = new BestMoveSender() {
+				
+				@Override
+				public void sendBestMove() {
+					//Do nothing
+				}
+			};
+			
+			//The helper can not stop the main searcher
+			stopper = new ISearchStopper() {
+				
+				@Override
+				public void stopIfNecessary(int maxdepth, int colour, double alpha, double beta) throws SearchInterruptedException {
+					
+					helpers_stopper.stopIfNecessary(maxdepth, colour, alpha, beta);
+				}
+				
+				@Override
+				public void markStopped() {
+					//Do nothing
+				}
+				
+				@Override
+				public boolean isStopped() {
+					
+					return helpers_stopper.isStopped();
+				}
+			};
+		}
+		
+		
+		@Override
+		public void registerInfoObject(ISearchInfo info) {
+			
+			//The depth, seldepth and PV of the helper are not reported, because it starts at deeper depths than the main searcher
+			if (nodes_collector != null) {
+				
+				nodes_collector.registerNodesInfoObject(info);
+			}
+		}
+		
+		
+		@Override
+		public void changedMajor(ISearchInfo info) {
+			//Do nothing
+		}
+		
+		
+		@Override
+		public void changedMinor(ISearchInfo info) {
+			//Do nothing
+		}
+		
+		
+		@Override
+		public void startIteration(int iteration) {
+			//Do nothing
+		}
+		
+		
+		@Override
+		public void send(String msg) {
+			//Do nothing
+		}
+		
+		
+		@Override
+		public int getTrustWindow_MTD_Step() {
+			
+			return mtd_step_multiplier * super.getTrustWindow_MTD_Step();
+		}
+		
+		
+		@Override
+		public ISearchStopper getStopper() {
+			
+			return stopper;
+		}
+		
+		
+		@Override
+		public void setStopper(ISearchStopper _stopper) {
+			
+			stopper = _stopper;
+		}
+		
+		
+		@Override
+		public BestMoveSender getBestMoveSender() {
+			
+			return bestmovesender;
+		}
+	}
+}
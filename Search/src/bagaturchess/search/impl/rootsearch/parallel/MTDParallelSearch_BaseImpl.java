@@ -29,12 +29,11 @@ import java.util.List;
 import java.util.Set;
 import java.util.Vector;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.SynchronousQueue;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
 
 
 import bagaturchess.bitboard.api.IBitBoard;
@@ -73,6 +72,13 @@ public abstract class MTDParallelSearch_BaseImpl extends RootSearch_BaseImpl {
 	
 	private final VarStatistic stat_cpus_load 	= new VarStatistic(false);
 	
+	//The coordinator is woken up by the searchers (new major info or finished search) and by stopSearchAndWait.
+	//Without such event, it wakes up at the end of the available time or at least after MAX_WAIT_INTERVAL,
+	//because some stoppers (e.g. after ponderhit or with nodes limit) do not send events.
+	private static final long MAX_WAIT_INTERVAL = 15;
+	
+	private volatile Thread coordinator;
+	
 	
 	/**
 	 * TODO: IMPORTANT
@@ -86,10 +92,9 @@ public abstract class MTDParallelSearch_BaseImpl extends RootSearch_BaseImpl {
 		
 		super(args);
 		
-		//executor 				= Executors.newFixedThreadPool(2);
-		//executor_start_stop 	= Executors.newFixedThreadPool(getRootSearchConfig().getThreadsCount());
-		executor 				= new ThreadPoolExecutor(2, Integer.MAX_VALUE, Integer.MAX_VALUE, TimeUnit.SECONDS, new SynchronousQueue<Runnable>());
-		executor_start_stop 	= new ThreadPoolExecutor(getRootSearchConfig().getThreadsCount(), Integer.MAX_VALUE, Integer.MAX_VALUE, TimeUnit.SECONDS, new SynchronousQueue<Runnable>());
+		//One coordinator thread per search and one thread per searcher for the blocking stopSearchAndWait calls
+		executor 				= Executors.newFixedThreadPool(1);
+		executor_start_stop 	= Executors.newFixedThreadPool(getRootSearchConfig().getThreadsCount());
 		
 		searchers_ready 		= new Vector<IRootSearch>();
 		searchers_notready 		= new Vector<IRootSearch>();
@@ -149,7 +154,7 @@ public abstract class MTDParallelSearch_BaseImpl extends RootSearch_BaseImpl {
 		
 		super.createBoard(_bitboardForSetup);
 		
-		ChannelManager.getChannel().dump("MTDParallelSearch_BaseImpl createBoard called. Will transfer " + searchers_notready.size() + " searchers from searchers_notready to searchers_ready");
+		if (ChannelManager.getChannel().isDumpEnabled()) ChannelManager.getChannel().dump("MTDParallelSearch_BaseImpl createBoard called. Will transfer " + searchers_notready.size() + " searchers from searchers_notready to searchers_ready");
 		
 		for (int i = 0; i < searchers_notready.size(); i++) {
 			IRootSearch searcher = searchers_notready.get(i);
@@ -168,7 +173,10 @@ public abstract class MTDParallelSearch_BaseImpl extends RootSearch_BaseImpl {
 		if (stopper != null) {
 			throw new IllegalStateException("MTDParallelSearch started whithout beeing stopped");
 		}
-		stopper = new Stopper();
+		stopper = new CoordinatorStopper();
+		
+		//Stops the searchers, which check the stoppers of their BucketMediators
+		final ISearchStopper searchers_stopper = new Stopper();
 		
 		
 		setupBoard(_bitboardForSetup);
@@ -244,25 +252,26 @@ public abstract class MTDParallelSearch_BaseImpl extends RootSearch_BaseImpl {
 				
 				try {
 					
+					coordinator = Thread.currentThread();
 					
 					final List<ISearchMediator> mediators = new ArrayList<ISearchMediator>();
 					final List<BucketMediator> mediators_bucket = new ArrayList<BucketMediator>();
 					
 					//Create all mediators, which will be potentially used by the searchers
 					for (int i = 0; i < getRootSearchConfig().getThreadsCount(); i++) {
-						BucketMediator cur_bucket = new BucketMediator(final_mediator);
+						BucketMediator cur_bucket = new BucketMediator(final_mediator, searchers_stopper);
 						mediators_bucket.add(cur_bucket);
 						mediators.add(sequentialSearchers_WrapMediator(cur_bucket));
 					}
 					
-					ChannelManager.getChannel().dump("MTDParallelSearch: mediators size is " + mediators.size());
+					if (ChannelManager.getChannel().isDumpEnabled()) ChannelManager.getChannel().dump("MTDParallelSearch: mediators size is " + mediators.size());
 					
 					//Start searchers initially
-					final AtomicInteger semaphore_start = new AtomicInteger(0);
+					final CountDownLatch semaphore_start = new CountDownLatch(searchers_ready.size());
 					
 					for (int i = 0; i < searchers_ready.size(); i++) {
 						
-						ChannelManager.getChannel().dump("MTDParallelSearch: starting searchers_ready[" + (i + 1) + "/" + searchers_ready.size() + "]");
+						if (ChannelManager.getChannel().isDumpEnabled()) ChannelManager.getChannel().dump("MTDParallelSearch: starting searchers_ready[" + (i + 1) + "/" + searchers_ready.size() + "]");
 						
 							
 						if (!searchers_ready.get(i).isStopped()) {
@@ -273,7 +282,6 @@ public abstract class MTDParallelSearch_BaseImpl extends RootSearch_BaseImpl {
 						final ISearchMediator currentSearchMediator = mediators.get(i);
 						final Go cur_go = new Go(ChannelManager.getChannel(), "go infinite");
 						final ITimeController cur_timecontroller = timeController;
-						semaphore_start.incrementAndGet();
 						
 						executor_start_stop.execute(new Runnable() {
 							@Override
@@ -282,19 +290,17 @@ public abstract class MTDParallelSearch_BaseImpl extends RootSearch_BaseImpl {
 									synchronized(synch_Board) {
 										sequentialSearchers_Negamax(currentRootSearch, getBitboardForSetup(), currentSearchMediator, cur_timecontroller, multiPVCallback, cur_go, true);
 									}
-									semaphore_start.decrementAndGet();
 								} catch (Throwable t) {
 									ChannelManager.getChannel().dump(t);
+								} finally {
+									semaphore_start.countDown();
 								}
 							}
 						});
 					}
 					
 					
-					while (semaphore_start.get() != 0) {
-						ChannelManager.getChannel().dump("MTDParallelSearch: starting semaphore.get() != 0");
-						Thread.sleep(15);
-					}
+					semaphore_start.await();
 					
 					
 					long start_time = System.currentTimeMillis();
@@ -315,49 +321,52 @@ public abstract class MTDParallelSearch_BaseImpl extends RootSearch_BaseImpl {
 							//if (DEBUGSearch.DEBUG_MODE) ChannelManager.getChannel().dump("MTDParallelSearch: Loop > before start threads");
 							
 							if (restartSearchersOnNewDepth()) {
-								final AtomicInteger semaphore_restart = new AtomicInteger(0);
 								
+								List<Integer> to_restart = new ArrayList<Integer>();
 								for (int i = 0; i < searchers_ready.size(); i++) {
-									
 									if (searchers_ready.get(i).isStopped()) {
-										ChannelManager.getChannel().dump("MTDParallelSearch: restarting ...");
-											
-										if (!searchers_ready.get(i).isStopped()) {
-											throw new IllegalStateException("MTDParallelSearch: attempt to restart sequential search, but it is already started");
-										}
-										
-										BucketMediator cur_bucket = new BucketMediator(final_mediator);
-										mediators_bucket.remove(i);
-										mediators_bucket.add(i, cur_bucket);
-										mediators.remove(i);
-										mediators.add(i, sequentialSearchers_WrapMediator(cur_bucket));
-										
-										final IRootSearch currentRootSearch = searchers_ready.get(i);
-										final ISearchMediator currentSearchMediator = mediators.get(i);
-										final Go cur_go = new Go(ChannelManager.getChannel(), "go infinite");
-										final ITimeController cur_timecontroller = timeController;
-										semaphore_restart.incrementAndGet();
+										to_restart.add(i);
+									}
+								}
+								
+								final CountDownLatch semaphore_restart = new CountDownLatch(to_restart.size());
+								
+								for (int i : to_restart) {
+									
+									ChannelManager.getChannel().dump("MTDParallelSearch: restarting ...");
 										
-										executor_start_stop.execute(new Runnable() {
-											@Override
-											public void run() {
-												try {
-													synchronized(synch_Board) {
-														sequentialSearchers_Negamax(currentRootSearch, getBitboardForSetup(), currentSearchMediator, cur_timecontroller, multiPVCallback, cur_go, true);
-													}
-													semaphore_restart.decrementAndGet();
-												} catch (Throwable t) {
-													ChannelManager.getChannel().dump(t);
+									if (!searchers_ready.get(i).isStopped()) {
+										throw new IllegalStateException("MTDParallelSearch: attempt to restart sequential search, but it is already started");
+									}
+									
+									BucketMediator cur_bucket = new BucketMediator(final_mediator, searchers_stopper);
+									mediators_bucket.remove(i);
+									mediators_bucket.add(i, cur_bucket);
+									mediators.remove(i);
+									mediators.add(i, sequentialSearchers_WrapMediator(cur_bucket));
+									
+									final IRootSearch currentRootSearch = searchers_ready.get(i);
+									final ISearchMediator currentSearchMediator = mediators.get(i);
+									final Go cur_go = new Go(ChannelManager.getChannel(), "go infinite");
+									final ITimeController cur_timecontroller = timeController;
+									
+									executor_start_stop.execute(new Runnable() {
+										@Override
+										public void run() {
+											try {
+												synchronized(synch_Board) {
+													sequentialSearchers_Negamax(currentRootSearch, getBitboardForSetup(), currentSearchMediator, cur_timecontroller, multiPVCallback, cur_go, true);
 												}
+											} catch (Throwable t) {
+												ChannelManager.getChannel().dump(t);
+											} finally {
+												semaphore_restart.countDown();
 											}
-										});
-									}
+										}
+									});
 								}
 								
-								while (semaphore_restart.get() != 0) {
-									ChannelManager.getChannel().dump("MTDParallelSearch: starting semaphore.get() != 0");
-									Thread.sleep(15);
-								}
+								semaphore_restart.await();
 							}
 							
 							//Start all stopped searchers
@@ -421,7 +430,7 @@ public abstract class MTDParallelSearch_BaseImpl extends RootSearch_BaseImpl {
 							
 							if (nextDepthReached && restartSearchersOnNewDepth()) {
 								
-								final AtomicInteger semaphore_stop = new AtomicInteger(0);
+								List<IRootSearch> to_stop = new ArrayList<IRootSearch>();
 								
 								for (int i = 0; i < searchers_ready.size(); i++) {
 									
@@ -430,34 +439,20 @@ public abstract class MTDParallelSearch_BaseImpl extends RootSearch_BaseImpl {
 									if (!currentRootSearch.isStopped()) {
 										
 										if (searchersInfo.needRestart(currentRootSearch)) {
-											semaphore_stop.incrementAndGet();
 											
-											executor_start_stop.execute(new Runnable() {
-												@Override
-												public void run() {
-													try {
-														currentRootSearch.stopSearchAndWait();
-														semaphore_stop.decrementAndGet();
-													} catch (Throwable t) {
-														ChannelManager.getChannel().dump(t);
-													}
-												}
-											});
+											to_stop.add(currentRootSearch);
+											
 											if (DEBUGSearch.DEBUG_MODE) ChannelManager.getChannel().dump("MTDParallelSearch: restarted searcher " + i);
 										}
 									}
 								}
 								
-								while (semaphore_stop.get() != 0) {
-									ChannelManager.getChannel().dump("MTDParallelSearch: stoping semaphore.get() != 0");
-									Thread.sleep(15);
-								}
+								stopSearchers(to_stop);
 							}
 							
 							
-							//Wait some time and than make check again
-							Thread.sleep(15);
-							//System.out.println("SLEEP");
+							//Wait for the next event of the searchers, a stop or the end of the available time
+							awaitEvent(timeController);
 							
 							try {
 								
@@ -484,37 +479,23 @@ public abstract class MTDParallelSearch_BaseImpl extends RootSearch_BaseImpl {
 					}
 					
 					
-					ChannelManager.getChannel().dump("MTDParallelSearch: Out of loop final_mediator.getStopper().isStopped()=" + final_mediator.getStopper().isStopped());
+					if (ChannelManager.getChannel().isDumpEnabled()) ChannelManager.getChannel().dump("MTDParallelSearch: Out of loop final_mediator.getStopper().isStopped()=" + final_mediator.getStopper().isStopped());
 					
 					
-					final AtomicInteger semaphore_stop = new AtomicInteger(0);
+					//All searchers in this process throw SearchInterruptedException on their next check of the stopper
+					searchers_stopper.markStopped();
+					
+					List<IRootSearch> to_stop = new ArrayList<IRootSearch>();
 					
 					for (int i = 0; i < searchers_ready.size(); i++) {
 						
-						final IRootSearch currentRootSearch = searchers_ready.get(i);
-						
-						if (!currentRootSearch.isStopped()) {
-							
-							semaphore_stop.incrementAndGet();
+						if (!searchers_ready.get(i).isStopped()) {
 							
-							executor_start_stop.execute(new Runnable() {
-								@Override
-								public void run() {
-									try {
-										currentRootSearch.stopSearchAndWait();
-										semaphore_stop.decrementAndGet();
-									} catch (Throwable t) {
-										ChannelManager.getChannel().dump(t);
-									}
-								}
-							});
+							to_stop.add(searchers_ready.get(i));
 						}
 					}
 					
-					while (semaphore_stop.get() != 0) {
-						ChannelManager.getChannel().dump("MTDParallelSearch: stoping semaphore.get() != 0");
-						Thread.sleep(15);
-					}
+					stopSearchers(to_stop);
 					
 					
 					ChannelManager.getChannel().dump("MTDParallelSearch: Searchers are stopped");
@@ -530,9 +511,13 @@ public abstract class MTDParallelSearch_BaseImpl extends RootSearch_BaseImpl {
 					}
 					
 					
+					coordinator = null;
+					
 					stopper.markStopped();
 					stopper = null;
 					
+					searchFinished();
+					
 					
 					if (multiPVCallback == null) {//Non multiPV search
 						final_mediator.getBestMoveSender().sendBestMove();
@@ -625,14 +610,9 @@ public abstract class MTDParallelSearch_BaseImpl extends RootSearch_BaseImpl {
 					
 					
 					//Add major infos
-					for (int i_major = cur_mediator.lastSendMajorIndex + 1; i_major < cur_mediator.majorInfos.size() ; i_major++) {							
-						
-						ISearchInfo cur_info = cur_mediator.majorInfos.get(i_major);
-						
-						if (cur_info == null) { //Because of multi threaded access to arraylist
-							
-							continue;
-						}
+					ISearchInfo cur_info;
+					
+					while ((cur_info = cur_mediator.majorInfos.poll()) != null) {
 						
 						/*ChannelManager.getChannel().dump("MTDParallelSearch: select info from mediator (" + i_mediator + ")"
 								+ ", cur_info.getDepth()=" + cur_info.getDepth()
@@ -642,8 +622,6 @@ public abstract class MTDParallelSearch_BaseImpl extends RootSearch_BaseImpl {
 								+ (cur_info.getPV() == null ? "" : ", info.getPV().length=" + cur_info.getPV().length)
 								);*/
 						
-						cur_mediator.lastSendMajorIndex = i_major;
-						
 						searchersInfo.updateMajor(searchers_ready.get(i_mediator), cur_info);
 					}
 				}
@@ -653,6 +631,60 @@ public abstract class MTDParallelSearch_BaseImpl extends RootSearch_BaseImpl {
 	}
 	
 	
+	/**
+	 * Stops the given searchers in parallel and returns after all of them are stopped.
+	 */
+	private void stopSearchers(List<IRootSearch> to_stop) throws InterruptedException {
+		
+		final CountDownLatch semaphore_stop = new CountDownLatch(to_stop.size());
+		
+		for (int i = 0; i < to_stop.size(); i++) {
+			
+			final IRootSearch currentRootSearch = to_stop.get(i);
+			
+			executor_start_stop.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						currentRootSearch.stopSearchAndWait();
+					} catch (Throwable t) {
+						ChannelManager.getChannel().dump(t);
+					} finally {
+						semaphore_stop.countDown();
+					}
+				}
+			});
+		}
+		
+		semaphore_stop.await();
+	}
+	
+	
+	private void awaitEvent(ITimeController timeController) {
+		
+		long wait_interval = MAX_WAIT_INTERVAL;
+		
+		if (timeController != null) {
+			
+			wait_interval = Math.max(1, Math.min(wait_interval, timeController.getRemainningTime()));
+		}
+		
+		//Returns immediately, if signalEvent was called after the previous awaitEvent
+		LockSupport.parkNanos(this, wait_interval * 1000000L);
+	}
+	
+	
+	private void signalEvent() {
+		
+		Thread current_coordinator = coordinator;
+		
+		if (current_coordinator != null) {
+			
+			LockSupport.unpark(current_coordinator);
+		}
+	}
+	
+	
 	@Override
 	public void shutDown() {
 		try {
@@ -741,26 +773,39 @@ public abstract class MTDParallelSearch_BaseImpl extends RootSearch_BaseImpl {
 	}
 	
 	
-	private static class BucketMediator extends SearchMediatorProxy {
+	/**
+	 * Wakes up the coordinator, when the search is stopped by stopSearchAndWait.
+	 */
+	private class CoordinatorStopper extends Stopper {
+		
+		@Override
+		public void markStopped() {
+			super.markStopped();
+			signalEvent();
+		}
+	}
+	
+	
+	private class BucketMediator extends SearchMediatorProxy {
 		
 		
-		protected int lastSendMajorIndex = -1;
 		protected Set<ISearchInfo> allInfos;
-		protected List<ISearchInfo> majorInfos;
+		//New major infos, which are not processed by the coordinator yet
+		protected ConcurrentLinkedQueue<ISearchInfo> majorInfos;
 		
 		private ISearchStopper stopper;
 		//private ISearchStopper root_stopper;
 		private BestMoveSender bestmovesender;
 		
 		
-		public BucketMediator(ISearchMediator _parent) {
+		public BucketMediator(ISearchMediator _parent, final ISearchStopper searchers_stopper) {
 			
 			super(_parent);
 			
 			//root_stopper = _parent.getStopper();
 			
 			allInfos 	= ConcurrentHashMap.newKeySet();
-			majorInfos = new ArrayList<ISearchInfo>();
+			majorInfos = new ConcurrentLinkedQueue<ISearchInfo>();
 			
 			
 			
@@ -768,7 +813,8 @@ public abstract class MTDParallelSearch_BaseImpl extends RootSearch_BaseImpl {
 				
 				@Override
 				public void sendBestMove() {
-					//Do nothing
+					//The searcher has finished
+					signalEvent();
 				}
 			};
 			
@@ -778,7 +824,7 @@ public abstract class MTDParallelSearch_BaseImpl extends RootSearch_BaseImpl {
 				@Override
 				public void stopIfNecessary(int maxdepth, int colour, double alpha,
 						double beta) throws SearchInterruptedException {
-					//Do nothing
+					searchers_stopper.stopIfNecessary(maxdepth, colour, alpha, beta);
 				}
 				
 				@Override
@@ -788,7 +834,7 @@ public abstract class MTDParallelSearch_BaseImpl extends RootSearch_BaseImpl {
 				
 				@Override
 				public boolean isStopped() {
-					return false;//root_stopper.isStopped();
+					return searchers_stopper.isStopped();//root_stopper.isStopped();
 				}
 			};
 		}
@@ -808,6 +854,8 @@ public abstract class MTDParallelSearch_BaseImpl extends RootSearch_BaseImpl {
 					);
 			
 			allInfos.add(info);
+			
+			signalEvent();
 		}
 		
 		
@@ -77,6 +77,9 @@ public class MTDParallelSearch_ProcessesImpl extends MTDParallelSearch_BaseImpl
 							SequentialSearch_SeparateProcess searcher = (SequentialSearch_SeparateProcess)
 									ReflectionUtils.createObjectByClassName_ObjectsConstructor(SequentialSearch_SeparateProcess.class.getName(), new Object[] {getRootSearchConfig(), getSharedData()});
 							
+							//The first worker process saves the Transposition Table, the others would overwrite the same file
+							searcher.setSaveHashOnShutDown(false);
+							
 							if (!isTerminated()) {
 								addSearcher(searcher);
 							} else {
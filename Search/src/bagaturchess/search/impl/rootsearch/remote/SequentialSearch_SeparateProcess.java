@@ -50,6 +50,9 @@ import bagaturchess.uci.engine.EngineProcess.LineCallBack;
 import bagaturchess.uci.engine.EngineProcess_BagaturImpl_DistributionImpl;
 import bagaturchess.uci.engine.EngineProcess_BagaturImpl_WorkspaceImpl;
 import bagaturchess.uci.engine.UCIEnginesManager;
+import bagaturchess.uci.impl.binary.BinaryConnection;
+import bagaturchess.uci.impl.binary.BinaryInfo;
+import bagaturchess.uci.impl.binary.BinaryProtocol;
 import bagaturchess.uci.impl.commands.Go;
 import bagaturchess.uci.impl.commands.info.Info;
 import bagaturchess.uci.impl.commands.options.UCIOptions;
@@ -58,6 +61,12 @@ import bagaturchess.uci.impl.commands.options.UCIOptions;
 public class SequentialSearch_SeparateProcess extends RootSearch_BaseImpl {
 	
 	
+	//If true, the position, go, stop, info and best move are exchanged as binary frames with the worker process, if it supports them
+	public static boolean USE_BINARY_PROTOCOL 			= true;
+	
+	private static final int BINARY_CONNECT_TIMEOUT 	= 5000;
+	
+	
 	private ExecutorService executor;
 	
 	private UCIEnginesManager runner;
@@ -66,6 +75,14 @@ public class SequentialSearch_SeparateProcess extends RootSearch_BaseImpl {
 	
 	private final Object sync_stop = new Object();
 	
+	private BinaryConnection binary;
+	
+	//The played moves of the worker process, after the last binary position setup
+	private short[] binaryMoves = new short[0];
+	
+	//Only one of the worker processes of a parallel search saves its Transposition Table on shutdown
+	private boolean saveHashOnShutDown = true;
+	
 	
 	public SequentialSearch_SeparateProcess(Object[] args) {
 		
@@ -106,6 +123,16 @@ public class SequentialSearch_SeparateProcess extends RootSearch_BaseImpl {
 			options.add("setoption name Ponder value false");
 			//The UCI options of the slave engine should be set as for the master engine, especially the UCI option for Memory Optimizations.
 			options.add("setoption name SyzygyPath value " + getRootSearchConfig().getTbPath());
+			//The worker process starts with the Transposition Table saved by the previous worker process
+			if (!getRootSearchConfig().getTPTSnapshotFile().isEmpty()) {
+				options.add("setoption name HashFile value " + getRootSearchConfig().getTPTSnapshotFile());
+				options.add("setoption name HashFileMinDepth value " + getRootSearchConfig().getTPTSnapshotMinDepth());
+			}
+			//All worker processes map the same off-heap Transposition Table, with the same size
+			if (!getRootSearchConfig().getTPTSharedFile().isEmpty()) {
+				options.add("setoption name OffHeapHash value " + getRootSearchConfig().getTPTOffHeapSize_InMegabytes());
+				options.add("setoption name SharedHashFile value " + getRootSearchConfig().getTPTSharedFile());
+			}
 			
 			//options.add("setoption name Openning Mode value random intermediate");
 			
@@ -127,6 +154,20 @@ public class SequentialSearch_SeparateProcess extends RootSearch_BaseImpl {
 			ChannelManager.getChannel().dump("SequentialSearch_SeparateProcess: isReady");
 			runner.isReady();
 			
+			if (USE_BINARY_PROTOCOL) {
+				
+				if (engine.startBinary(BINARY_CONNECT_TIMEOUT)) {
+					
+					binary = engine.getBinaryConnection();
+					
+					ChannelManager.getChannel().dump("SequentialSearch_SeparateProcess: binary protocol started");
+					
+				} else {
+					
+					ChannelManager.getChannel().dump("SequentialSearch_SeparateProcess: the worker process doesn't support the binary protocol, UCI is used");
+				}
+			}
+			
 			runner.disable();
 			
 		} catch (Throwable t) {
@@ -147,6 +188,17 @@ public class SequentialSearch_SeparateProcess extends RootSearch_BaseImpl {
 		
 		try {
 			
+			if (binary != null) {
+				
+				binary.writeNewGame();
+				
+				binary.writePosition(getEnginePosition(_bitboardForSetup));
+				
+				binaryMoves = encodePlayedMoves(_bitboardForSetup);
+				
+				return;
+			}
+			
 			runner.newGame();
 			
 			setUpEnginePosition(_bitboardForSetup);
@@ -160,6 +212,15 @@ public class SequentialSearch_SeparateProcess extends RootSearch_BaseImpl {
 	private void setUpEnginePosition(IBitBoard _bitboardForSetup)
 			throws IOException {
 		
+		runner.setupPosition(getEnginePosition(_bitboardForSetup));
+	}
+	
+	
+	/**
+	 * @return the arguments of the UCI position command with the initial FEN and the played moves
+	 */
+	private String getEnginePosition(IBitBoard _bitboardForSetup) {
+		
 		//Initialize engine by FEN and moves
 		
 		int movesCount = _bitboardForSetup.getPlayedMovesCount();
@@ -176,19 +237,124 @@ public class SequentialSearch_SeparateProcess extends RootSearch_BaseImpl {
 		String allMovesStr = BoardUtils.getPlayedMoves(_bitboardForSetup);
 		
 		if (initialFEN.equals(Constants.INITIAL_BOARD)) {
-			runner.setupPosition("startpos moves " + allMovesStr);	
+			return "startpos moves " + allMovesStr;	
 		} else {
-			runner.setupPosition("fen " + initialFEN + " moves " + allMovesStr);	
+			return "fen " + initialFEN + " moves " + allMovesStr;	
+		}
+	}
+	
+	
+	private static short[] encodePlayedMoves(IBitBoard board) {
+		
+		int count = board.getPlayedMovesCount();
+		int[] moves = board.getPlayedMoves();
+		
+		short[] result = new short[count];
+		
+		for (int i = 0; i < count; i++) {
+			result[i] = BinaryProtocol.encodeMove(board.getMoveOps().moveToString(moves[i]));
+		}
+		
+		return result;
+	}
+	
+	
+	/**
+	 * Sends only the moves after the common part of the current game and the game of the worker process.
+	 * The worker has also played its last best move, it is taken back if the game continues differently.
+	 */
+	private void setUpEnginePosition_Binary() throws IOException {
+		
+		short[] moves = encodePlayedMoves(getBitboardForSetup());
+		
+		int kept = 0;
+		
+		while (kept < moves.length && kept < binaryMoves.length && moves[kept] == binaryMoves[kept]) {
+			kept++;
+		}
+		
+		binary.writeMoves(kept, moves, moves.length);
+		
+		binaryMoves = moves;
+	}
+	
+	
+	/**
+	 * Reads the info frames of the worker process until its best move.
+	 */
+	private void readBinaryInfos(ISearchMediator mediator) throws IOException {
+		
+		BinaryInfo info = new BinaryInfo();
+		
+		boolean hasPV = false;
+		
+		while (true) {
+			
+			int type = binary.readFrame();
+			
+			if (type == -1) {
+				
+				throw new IllegalStateException("The binary connection is closed");
+				
+			} else if (type == BinaryProtocol.FRAME_INFO) {
+				
+				info.read(binary.getPayload());
+				
+				if (info.isMajor()) {
+					
+					if (!info.isUpperBound()) {
+						
+						ISearchInfo searchInfo = SearchInfoFactory.getFactory().createSearchInfo(info, getBitboardForSetup());
+						if (searchInfo.getPV() != null && searchInfo.getPV().length > 0) {
+							hasPV = true;
+							mediator.changedMajor(searchInfo);
+						}
+					}
+					
+				} else {
+					
+					hashfull = info.getHashfull() / 10;
+					
+					mediator.changedMinor(SearchInfoFactory.getFactory().createSearchInfo_Minor(info, getBitboardForSetup()));
+				}
+				
+			} else if (type == BinaryProtocol.FRAME_BESTMOVE) {
+				
+				if (!hasPV) {
+					throw new IllegalStateException("No pv");
+				}
+				
+				return;
+				
+			} else {
+				
+				throw new IllegalStateException("Unexpected frame type " + type);
+			}
 		}
 	}
 	
 	
+	public void setSaveHashOnShutDown(boolean _saveHashOnShutDown) {
+		
+		saveHashOnShutDown = _saveHashOnShutDown;
+	}
+	
+	
 	@Override
 	public void shutDown() {
 		try {
 			
 			runner.stopEngines();
 			
+			if (saveHashOnShutDown && !getRootSearchConfig().getTPTSnapshotFile().isEmpty()) {
+				
+				//Keep the hash knowledge of the worker process for the next one
+				runner.saveHash(getRootSearchConfig().getTPTSnapshotFile(), getRootSearchConfig().getTPTSnapshotMinDepth());
+				
+				//Waits until the file is written
+				runner.isReady();
+			}
+			
 			runner.destroyEngines();
 			
 			//runner.enable();
@@ -221,12 +387,21 @@ public class SequentialSearch_SeparateProcess extends RootSearch_BaseImpl {
 			String allMovesStr = BoardUtils.getPlayedMoves(getBitboardForSetup());
 			if (DEBUGSearch.DEBUG_MODE) ChannelManager.getChannel().dump(Thread.currentThread().getName() + " " + "SequentialSearch_SeparateProcess: allMovesStr=" + allMovesStr);
 			
-			//runner.setupPosition("startpos moves " + allMovesStr);
-			runner.setupPosition("moves " + allMovesStr);
-			
-			runner.go(go);
-			
-			runner.disable();
+			if (binary != null) {
+				
+				setUpEnginePosition_Binary();
+				
+				binary.writeGo(go.getCommandLine());
+				
+			} else {
+				
+				//runner.setupPosition("startpos moves " + allMovesStr);
+				runner.setupPosition("moves " + allMovesStr);
+				
+				runner.go(go);
+				
+				runner.disable();
+			}
 			
 			
 			final ISearchMediator final_mediator = mediator;
@@ -256,7 +431,11 @@ public class SequentialSearch_SeparateProcess extends RootSearch_BaseImpl {
 								
 								if (DEBUGSearch.DEBUG_MODE) ChannelManager.getChannel().dump(Thread.currentThread().getName() + " " + "SequentialSearch_SeparateProcess: OutboundQueueProcessor - stopping engine and exit the queue");
 								
-								runner.stopEngines();
+								if (binary != null) {
+									binary.writeStop();
+								} else {
+									runner.stopEngines();
+								}
 								//runner.enable();	
 							}
 						}
@@ -347,14 +526,21 @@ public class SequentialSearch_SeparateProcess extends RootSearch_BaseImpl {
 							}	
 						};
 						
-						List<String> infos = runner.getInfoLines(callback);
-						
-						if (infos.size() > 1) {
-							throw new IllegalStateException("Only one engine is supported");
-						}
-						
-						if (infos.size() == 0 || infos.get(0) == null) {
-							throw new IllegalStateException("infos.size() == 0 || infos.get(0) == null");
+						if (binary != null) {
+							
+							readBinaryInfos(final_mediator);
+							
+						} else {
+							
+							List<String> infos = runner.getInfoLines(callback);
+							
+							if (infos.size() > 1) {
+								throw new IllegalStateException("Only one engine is supported");
+							}
+							
+							if (infos.size() == 0 || infos.get(0) == null) {
+								throw new IllegalStateException("infos.size() == 0 || infos.get(0) == null");
+							}
 						}
 
 						if (DEBUGSearch.DEBUG_MODE) ChannelManager.getChannel().dump(Thread.currentThread().getName() + " " + "SequentialSearch_SeparateProcess: InboundQueueProcessor after loop stopped="
@@ -17,6 +17,9 @@ public class NPSCollectorMediator extends SearchMediatorProxy {
 	
 	private List<ISearchInfo> infos;
 	
+	//Infos of searchers, which do not report their results (e.g. the helpers of the Lazy SMP search), only their nodes are counted
+	private List<ISearchInfo> nodes_infos;
+	
 	private long startTime = System.currentTimeMillis();
 	
 	
@@ -24,6 +27,8 @@ public class NPSCollectorMediator extends SearchMediatorProxy {
 		super(_parent);
 		
 		infos = new ArrayList<ISearchInfo>();
+		
+		nodes_infos = new ArrayList<ISearchInfo>();
 	}
 
 
@@ -35,6 +40,16 @@ public class NPSCollectorMediator extends SearchMediatorProxy {
 	}
 	
 	
+	/**
+	 * The nodes and tbhits of the info are added to the reported ones, but its depth, seldepth and PV are not used.
+	 */
+	public void registerNodesInfoObject(ISearchInfo info) {
+		synchronized (infos) {
+			nodes_infos.add(info);
+		}
+	}
+	
+	
 	//Do not change original info object
 	public synchronized void changedMajor(ISearchInfo info) {
 		
@@ -91,6 +106,15 @@ public class NPSCollectorMediator extends SearchMediatorProxy {
 					result.setSelDepth(cur.getSelDepth());
 				}
 			}
+			
+			for (int i = 0; i < nodes_infos.size(); i++) {
+				
+				ISearchInfo cur = nodes_infos.get(i);
+				
+				result.setSearchedNodes(result.getSearchedNodes() + cur.getSearchedNodes());
+				
+				result.setTBhits(result.getTBhits() + cur.getTBhits());
+			}
 		}
 		
 		return result;
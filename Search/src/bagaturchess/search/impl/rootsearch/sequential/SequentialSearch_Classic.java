@@ -220,6 +220,7 @@ public class SequentialSearch_Classic extends RootSearch_BaseImpl {
 						}
 						stopper.markStopped();
 						stopper = null;
+						searchFinished();
 						
 						
 						if (multiPVCallback == null) {//Non multiPV search
@@ -108,6 +108,18 @@ public class SequentialSearch_MTD extends RootSearch_BaseImpl {
 	}
 	
 	
+	/**
+	 * Sets up the board of this root search and returns its searcher.
+	 * Used by MultiPVRootSearch, which searches with the same searcher and caches while this root search is not running.
+	 */
+	public ISearch setupSearcher(IBitBoard _bitboardForSetup) {
+		
+		setupBoard(_bitboardForSetup);
+		
+		return searcher;
+	}
+	
+	
 	@Override
 	public void negamax(IBitBoard _bitboardForSetup, ISearchMediator mediator, ITimeController timeController,
 			final IFinishCallback multiPVCallback, final Go go) {
@@ -192,7 +204,7 @@ public class SequentialSearch_MTD extends RootSearch_BaseImpl {
 						task.run();
 					}
 					
-					ChannelManager.getChannel().dump("MTDSequentialSearch after loop final_mediator.getStopper().isStopped()="
+					if (ChannelManager.getChannel().isDumpEnabled()) ChannelManager.getChannel().dump("MTDSequentialSearch after loop final_mediator.getStopper().isStopped()="
 							+ final_mediator.getStopper().isStopped()
 							+ ", distribution.getCurrentDepth()=" + distribution.getCurrentDepth() + ", distribution.getMaxIterations()=" + distribution.getMaxIterations());
 					
@@ -209,6 +221,8 @@ public class SequentialSearch_MTD extends RootSearch_BaseImpl {
 						
 						stopper = null;
 						
+						searchFinished();
+						
 						
 						if (multiPVCallback == null) {
 							
@@ -25,6 +25,9 @@ public interface ITTable {
 	public void get(long key, ITTEntry entry);
 	public void put(long hashkey, int depth, int eval, int alpha, int beta, int bestmove);
 	public void correctAllDepths(int reduction);
+	public void newSearch();
+	public long prefetch(long key); //Loads the bucket of the key into the CPU cache and returns a word of it, which the caller has to use, so the read is not eliminated
+	public void visitEntries(ITTEntriesVisitor visitor);
 	public int getUsage();
 	public int getHitRate();
 }
\ No newline at end of file
@@ -0,0 +1,365 @@
+/**
+ *  BagaturChess (UCI chess engine and tools)
+ *  Copyright (C) 2005 Krasimir I. Topchiyski (k_topchiyski@yahoo.com)
+ *  
+ *  This file is part of BagaturChess program.
+ * 
+ *  BagaturChess is open software: you can redistribute it and/or modify
+ *  it under the terms of the Eclipse Public License version 1.0 as published by
+ *  the Eclipse Foundation.
+ *
+ *  BagaturChess is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  Eclipse Public License for more details.
+ *
+ *  You should have received a copy of the Eclipse Public License version 1.0
+ *  along with BagaturChess. If not, see http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package bagaturchess.search.impl.tpt;
+
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+
+import bagaturchess.uci.api.ChannelManager;
+
+
+/**
+ * Saves the entries of the Transposition Tables into a file and loads them back.
+ * So repeated analysis of the same positions, also in another process, starts with the knowledge of the previous searches.
+ *
+ * The file has a header of 16 bytes (magic number and entries count) and 16 bytes per entry: key and packed data.
+ * The data is packed as SCORE (32 bits), MOVE (22 bits), FLAG (2 bits) and DEPTH (8 bits).
+ * The keys are Zobrist keys of impl1.internal.Zobrist, which are constants, so the file is valid for all processes.
+ *
+ * The file is read and written with FileChannel and a buffer, not memory-mapped,
+ * because a mapped file stays open until the garbage collector releases the mapping and on Windows such a file can not be replaced.
+ */
+public class TTableSnapshot {
+	
+	
+	private static final long MAGIC 			= 0x42475454534E5031L; //"BGTTSNP1"
+	
+	private static final int HEADER_SIZE 		= 16;
+	
+	private static final int ENTRY_SIZE 		= 16;
+	
+	private static final int BUFFER_ENTRIES 	= 64 * 1024;
+	
+	
+	/**
+	 * Writes all entries with depth >= min_depth into the file.
+	 * The file is written under a unique temporary name and renamed at the end, so other processes never read half written files
+	 * and two processes, which save at the same time, do not write into the same temporary file.
+	 * The temporary file is deleted if the save fails.
+	 * Has to be called when there is no running search.
+	 * 
+	 * @return the count of the saved entries
+	 */
+	public static long save(List<ITTable> tables, String file_name, int min_depth) throws IOException {
+		
+		File file = new File(file_name);
+		
+		File file_tmp = File.createTempFile(file.getName(), ".tmp", file.getAbsoluteFile().getParentFile());
+		
+		boolean saved = false;
+		
+		long count;
+		
+		try {
+			
+			RandomAccessFile raf = new RandomAccessFile(file_tmp, "rw");
+			
+			try {
+				
+				FileChannel channel = raf.getChannel();
+				
+				EntriesWriter writer = new EntriesWriter(channel, min_depth);
+				
+				for (int i = 0; i < tables.size(); i++) {
+					
+					tables.get(i).visitEntries(writer);
+				}
+				
+				count = writer.finish();
+				
+				ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+				header.putLong(MAGIC);
+				header.putLong(count);
+				header.flip();
+				
+				writeFully(channel, header, 0);
+				
+				channel.force(true);
+				
+			} finally {
+				
+				raf.close();
+			}
+			
+			try {
+				
+				Files.move(file_tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+				
+			} catch (AtomicMoveNotSupportedException e) {
+				
+				Files.move(file_tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+			
+			saved = true;
+			
+		} finally {
+			
+			if (!saved) {
+				
+				file_tmp.delete();
+			}
+		}
+		
+		if (ChannelManager.getChannel() != null) ChannelManager.getChannel().dump("TTableSnapshot.save: file=" + file.getAbsolutePath()
+				+ ", min_depth=" + min_depth + ", entries=" + count);
+		
+		return count;
+	}
+	
+	
+	/**
+	 * Puts all entries of the file into each of the tables.
+	 * The loaded entries get the current search generation of the tables.
+	 * 
+	 * @return the count of the loaded entries
+	 */
+	public static long load(List<ITTable> tables, String file_name) throws IOException {
+		
+		File file = new File(file_name);
+		
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		
+		long count;
+		
+		try {
+			
+			FileChannel channel = raf.getChannel();
+			
+			if (channel.size() < HEADER_SIZE) {
+				
+				throw new IllegalStateException("TTableSnapshot.load: file " + file.getAbsolutePath() + " is too short");
+			}
+			
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			
+			readFully(channel, header, 0);
+			
+			if (header.getLong(0) != MAGIC) {
+				
+				throw new IllegalStateException("TTableSnapshot.load: file " + file.getAbsolutePath() + " is not a transposition table snapshot");
+			}
+			
+			count = header.getLong(8);
+			
+			if (count < 0 || HEADER_SIZE + count * ENTRY_SIZE > channel.size()) {
+				
+				throw new IllegalStateException("TTableSnapshot.load: file " + file.getAbsolutePath() + " is corrupted, entries count is " + count);
+			}
+			
+			ByteBuffer buffer = ByteBuffer.allocate(BUFFER_ENTRIES * ENTRY_SIZE);
+			
+			long position = HEADER_SIZE;
+			
+			long loaded = 0;
+			
+			while (loaded < count) {
+				
+				int entries = (int) Math.min(BUFFER_ENTRIES, count - loaded);
+				
+				buffer.clear();
+				buffer.limit(entries * ENTRY_SIZE);
+				
+				readFully(channel, buffer, position);
+				
+				buffer.flip();
+				
+				for (int i = 0; i < entries; i++) {
+					
+					long key 		= buffer.getLong();
+					long data 		= buffer.getLong();
+					
+					int depth 		= getDepth(data);
+					int flag 		= getFlag(data);
+					int eval 		= getScore(data);
+					int bestmove 	= getMove(data);
+					
+					//The put method computes the flag from the alpha-beta window
+					int alpha 		= (flag == ITTEntry.FLAG_UPPER) ? eval : eval - 1;
+					int beta 		= (flag == ITTEntry.FLAG_LOWER) ? eval : eval + 1;
+					
+					for (int j = 0; j < tables.size(); j++) {
+						
+						tables.get(j).put(key, depth, eval, alpha, beta, bestmove);
+					}
+				}
+				
+				position += entries * ENTRY_SIZE;
+				
+				loaded += entries;
+			}
+			
+		} finally {
+			
+			raf.close();
+		}
+		
+		if (ChannelManager.getChannel() != null) ChannelManager.getChannel().dump("TTableSnapshot.load: file=" + file.getAbsolutePath() + ", entries=" + count);
+		
+		return count;
+	}
+	
+	
+	private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		
+		while (buffer.hasRemaining()) {
+			
+			position += channel.write(buffer, position);
+		}
+	}
+	
+	
+	private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		
+		while (buffer.hasRemaining()) {
+			
+			int read = channel.read(buffer, position);
+			
+			if (read < 0) {
+				
+				throw new IllegalStateException("TTableSnapshot.load: unexpected end of file at position " + position);
+			}
+			
+			position += read;
+		}
+	}
+	
+	
+	private static long createData(long depth, long flag, long eval, long bestmove) {
+		return eval << 32 | (bestmove & 0x3fffff) << 10 | (flag & 3) << 8 | (depth & 0xff);
+	}
+	
+	
+	private static int getScore(long data) {
+		return (int) (data >> 32);
+	}
+	
+	
+	private static int getMove(long data) {
+		return (int) (data >>> 10 & 0x3fffff);
+	}
+	
+	
+	private static int getFlag(long data) {
+		return (int) (data >>> 8 & 3);
+	}
+	
+	
+	private static int getDepth(long data) {
+		return (int) (data & 0xff);
+	}
+	
+	
+	/**
+	 * Writes the visited entries after the header. The visitor can not throw IOException, so the first error is kept and thrown by finish.
+	 */
+	private static final class EntriesWriter implements ITTEntriesVisitor {
+		
+		
+		private final FileChannel channel;
+		
+		private final int min_depth;
+		
+		private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_ENTRIES * ENTRY_SIZE);
+		
+		private long position = HEADER_SIZE;
+		
+		private long count;
+		
+		private IOException error;
+		
+		
+		EntriesWriter(FileChannel _channel, int _min_depth) {
+			
+			channel = _channel;
+			
+			min_depth = _min_depth;
+		}
+		
+		
+		@Override
+		public void visit(long key, int depth, int flag, int eval, int bestmove) {
+			
+			if (depth < min_depth || error != null) {
+				
+				return;
+			}
+			
+			buffer.putLong(key);
+			buffer.putLong(createData(depth, flag, eval, bestmove));
+			
+			count++;
+			
+			if (!buffer.hasRemaining()) {
+				
+				flush();
+			}
+		}
+		
+		
+		/**
+		 * @return the count of the written entries
+		 */
+		long finish() throws IOException {
+			
+			flush();
+			
+			if (error != null) {
+				
+				throw error;
+			}
+			
+			return count;
+		}
+		
+		
+		private void flush() {
+			
+			if (error != null) {
+				
+				return;
+			}
+			
+			buffer.flip();
+			
+			try {
+				
+				long size = buffer.remaining();
+				
+				writeFully(channel, buffer, position);
+				
+				position += size;
+				
+			} catch (IOException e) {
+				
+				error = e;
+			}
+			
+			buffer.clear();
+		}
+	}
+}
@@ -55,6 +55,28 @@ public class TTable_Impl1 extends LRUMapLongObject<TTable_Impl1.TPTEntry> implem
 	}
 	
 	
+	@Override
+	public void visitEntries(ITTEntriesVisitor visitor) {
+		
+		//Do nothing, the LRU map visits only the values and the keys are not available
+	}
+	
+	
+	@Override
+	public long prefetch(long key) {
+		
+		//Do nothing
+		return 0;
+	}
+	
+	
+	@Override
+	public void newSearch() {
+		
+		//Do nothing, the LRU order takes care for the old entries
+	}
+	
+	
 	/* (non-Javadoc)
 	 * @see bagaturchess.search.impl.tpt.ITTable#get(long, bagaturchess.search.impl.tpt.ITTEntry)
 	 */
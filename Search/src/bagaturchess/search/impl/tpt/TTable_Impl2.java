@@ -35,14 +35,20 @@ public class TTable_Impl2 implements ITTable {
 	
 	private static final int FLAG = 9; //12
 	private static final int MOVE = 11; //14
+	private static final int GENERATION = 33;
 	private static final int SCORE = 45; //48
 	
+	//One search generation of age costs as much as this depth in the replacement score
+	private static final int AGE_DEPTH_WEIGHT = 8;
+	
+	private static final int USAGE_SAMPLE_SIZE = 1000;
+	
 	
 	private long[] keys;
 	
 	private long[] values;
 	
-	private long counter_usage;
+	private volatile int generation;
 	
 	private long counter_tries;
 	
@@ -73,7 +79,25 @@ public class TTable_Impl2 implements ITTable {
 	@Override
 	public final int getUsage() {
 		
-		return (int) (counter_usage * 100 / keys.length);
+		//Counts only the entries of the current search generation inside the first entries of the table
+		int sample_size = Math.min(USAGE_SAMPLE_SIZE, keys.length);
+		
+		if (sample_size == 0) {
+			
+			return 0;
+		}
+		
+		int count = 0;
+		
+		for (int i = 0; i < sample_size; i++) {
+			
+			if (keys[i] != 0 && getGeneration(values[i]) == generation) {
+				
+				count++;
+			}
+		}
+		
+		return count * 100 / sample_size;
 	}
 	
 	
@@ -93,16 +117,49 @@ public class TTable_Impl2 implements ITTable {
 	}
 	
 	
+	@Override
+	public final void newSearch() {
+		
+		generation = (generation + 1) & 0xff;
+	}
+	
+	
+	@Override
+	public final void visitEntries(final ITTEntriesVisitor visitor) {
+		
+		for (int i = 0; i < keys.length; i++) {
+			
+			long stored_key 	= keys[i];
+			
+			long value 			= values[i];
+			
+			//Skips the empty entries and the entries, which are currently written by another thread
+			if (stored_key != 0 && value != 0) {
+				
+				visitor.visit(stored_key ^ value, getDepth(value), getFlag(value), getScore(value), getMove(value));
+			}
+		}
+	}
+	
+	
+	@Override
+	public final long prefetch(final long key) {
+		
+		return keys[getIndex(key)];
+	}
+	
+	
 	@Override
 	public final void get(long key, ITTEntry entry) {
 		
 		counter_tries++;
 		
-		if (counter_tries % 100000000 == 0) {
+		//The constant is checked first, so the whole block is removed by the compiler
+		if (DEBUGSearch.DEBUG_MODE && counter_tries % 100000000 == 0) {
 			
-			if (ChannelManager.getChannel() != null) {
+			if (ChannelManager.getChannel() != null && ChannelManager.getChannel().isDumpEnabled()) {
 				
-				if (DEBUGSearch.DEBUG_MODE) ChannelManager.getChannel().dump(
+				ChannelManager.getChannel().dump(
 						"TTable_Impl2.get: TableID=" + this.hashCode() +
 						", HitRate=" + getHitRate() +
 						"%, Usage=" + getUsage() + "%");
@@ -193,11 +250,11 @@ public class TTable_Impl2 implements ITTable {
 			//Assert.isTrue(MoveUtil.getSourcePieceIndex(move) != 0);
 		}
 
-		final long new_value 		= createValue(score, new_move, flag, new_depth);
+		final long new_value 		= createValue(score, new_move, flag, new_depth, generation);
 		
 		final int start_index_entry = getIndex(new_key);
 		
-		int replaced_min_depth 		= Integer.MAX_VALUE;
+		int replaced_min_score 		= Integer.MAX_VALUE;
 		int replaced_index 			= -1;
 
 		for (int i = start_index_entry; i < start_index_entry + 4; i++) {
@@ -206,9 +263,8 @@ public class TTable_Impl2 implements ITTable {
 
 			if (stored_key == 0) {
 				
-				replaced_min_depth 	= 0;
+				replaced_min_score 	= 0;
 				replaced_index 		= i;
-				counter_usage++;
 				
 				break;
 			}
@@ -225,9 +281,10 @@ public class TTable_Impl2 implements ITTable {
 					return;
 				}
 				
-				if (new_depth >= stored_depth) {
+				//Entries from the previous searches are always refreshed with the current generation
+				if (new_depth >= stored_depth || getGeneration(stored_value) != generation) {
 					
-					replaced_min_depth = stored_depth;
+					replaced_min_score = stored_depth;
 					
 					replaced_index = i;
 					
@@ -239,10 +296,12 @@ public class TTable_Impl2 implements ITTable {
 				}
 			}
 			
-			// keep the lowest depth and its index 
-			if (stored_depth < replaced_min_depth) {
+			// keep the lowest replacement score (depth reduced by the age) and its index
+			int stored_score = stored_depth - AGE_DEPTH_WEIGHT * getAge(stored_value);
+			
+			if (stored_score < replaced_min_score) {
 				
-				replaced_min_depth = stored_depth;
+				replaced_min_score = stored_score;
 				
 				replaced_index = i;
 			}
@@ -291,12 +350,23 @@ public class TTable_Impl2 implements ITTable {
 	}
 	
 	
-	// SCORE,HALF_MOVE_COUNTER,MOVE,FLAG,DEPTH
-	private static long createValue(final long score, final long move, final long flag, final long depth) {
+	private static int getGeneration(final long value) {
+		return (int) (value >>> GENERATION & 0xff);
+	}
+	
+	
+	private final int getAge(final long value) {
+		return (generation - getGeneration(value)) & 0xff;
+	}
+	
+	
+	// SCORE,GENERATION,MOVE,FLAG,DEPTH
+	private static long createValue(final long score, final long move, final long flag, final long depth, final long generation) {
 		if (EngineConstants.ASSERT) {
 			//Assert.isTrue(score >= Util.SHORT_MIN && score <= Util.SHORT_MAX);
 			Assert.isTrue(depth <= 255);
+			Assert.isTrue(generation <= 255);
 		}
-		return score << SCORE | move << MOVE | flag << FLAG | depth;
+		return score << SCORE | generation << GENERATION | move << MOVE | flag << FLAG | depth;
 	}
 }
@@ -0,0 +1,479 @@
+/*
+ *  BagaturChess (UCI chess engine and tools)
+ *  Copyright (C) 2005 Krasimir I. Topchiyski (k_topchiyski@yahoo.com)
+ *
+ *  Open Source project location: http://sourceforge.net/projects/bagaturchess/develop
+ *  SVN repository https://bagaturchess.svn.sourceforge.net/svnroot/bagaturchess
+ *
+ *  This file is part of BagaturChess program.
+ *
+ *  BagaturChess is open software: you can redistribute it and/or modify
+ *  it under the terms of the Eclipse Public License version 1.0 as published by
+ *  the Eclipse Foundation.
+ *
+ *  BagaturChess is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  Eclipse Public License for more details.
+ *
+ *  You should have received a copy of the Eclipse Public License version 1.0
+ *  along with BagaturChess. If not, see <http://www.eclipse.org/legal/epl-v10.html/>.
+ *
+ */
+package bagaturchess.search.impl.tpt;
+
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+import bagaturchess.bitboard.impl1.internal.Assert;
+import bagaturchess.bitboard.impl1.internal.EngineConstants;
+import bagaturchess.uci.api.ChannelManager;
+
+
+/**
+ * Off-heap transposition table, which is shared between all search threads.
+ * The memory is allocated with direct byte buffers, so it is not scanned by the GC and is not limited to 2^30 entries.
+ *
+ * Each entry has 16 bytes: (key XOR value) and value, both stored as longs without any locking.
+ * If two threads write the same entry at the same time, the XOR check fails on read and the entry is treated as missing.
+ * 4 entries build one bucket of 64 bytes, which is aligned to the cache line.
+ *
+ * The table can also be memory-mapped from a file (e.g. in /dev/shm). All processes, which map the same file with the same size,
+ * share the table in the same lock-free way as the threads of one process. Each process has its own search generation.
+ */
+public class TTable_Impl3 implements ITTable {
+
+
+	private static final int FLAG 					= 9;
+	private static final int MOVE 					= 11;
+	private static final int GENERATION 			= 33;
+	private static final int SCORE 					= 45;
+
+	//One search generation of age costs as much as this depth in the replacement score
+	private static final int AGE_DEPTH_WEIGHT 		= 8;
+
+	private static final int USAGE_SAMPLE_BUCKETS 	= 250;
+
+	private static final int ENTRY_SIZE 			= 16;
+	private static final int BUCKET_ENTRIES 		= 4;
+	private static final int BUCKET_SIZE 			= BUCKET_ENTRIES * ENTRY_SIZE;
+
+	//2^30 bytes per direct buffer, ByteBuffer indexes are int.
+	private static final int CHUNK_BITS 			= 30;
+	private static final int BUCKETS_PER_CHUNK_BITS = CHUNK_BITS - 6; //BUCKET_SIZE = 2^6
+	private static final long BUCKETS_PER_CHUNK 	= 1L << BUCKETS_PER_CHUNK_BITS;
+
+
+	private ByteBuffer[] chunks;
+
+	private long buckets_count;
+
+	private volatile int generation;
+
+
+	public TTable_Impl3(long size_in_bytes) {
+
+		this(size_in_bytes, null);
+	}
+
+
+	/**
+	 * @param shared_file if not null, the table is memory-mapped from this file and shared with the other processes, which map it with the same size
+	 */
+	public TTable_Impl3(long size_in_bytes, String shared_file) {
+
+		if (ChannelManager.getChannel() != null) ChannelManager.getChannel().dump("TTable_Impl3: bytes_count=" + size_in_bytes + ", shared_file=" + shared_file);
+
+		buckets_count = Math.max(1, size_in_bytes / BUCKET_SIZE);
+
+		int chunks_count = (int) ((buckets_count + BUCKETS_PER_CHUNK - 1) / BUCKETS_PER_CHUNK);
+
+		if (shared_file == null) {
+
+			chunks = new ByteBuffer[chunks_count];
+
+			for (int i = 0; i < chunks_count; i++) {
+
+				long chunk_buckets = Math.min(BUCKETS_PER_CHUNK, buckets_count - i * BUCKETS_PER_CHUNK);
+
+				//Allocate one bucket more, so the aligned slice has the same capacity
+				ByteBuffer buffer = ByteBuffer.allocateDirect((int) ((chunk_buckets + 1) * BUCKET_SIZE));
+
+				int offset = getAlignmentOffset(buffer);
+
+				buffer.position(offset);
+				buffer.limit(offset + (int) (chunk_buckets * BUCKET_SIZE));
+
+				chunks[i] = buffer.slice().order(ByteOrder.nativeOrder());
+			}
+
+		} else {
+
+			chunks = mapChunks(shared_file, chunks_count);
+		}
+
+		if (ChannelManager.getChannel() != null) ChannelManager.getChannel().dump("TTable_Impl3: buckets_count=" + buckets_count + ", chunks_count=" + chunks_count
+				+ ", maxEntries=" + (buckets_count * BUCKET_ENTRIES));
+	}
+
+
+	/**
+	 * ByteBuffer.alignedSlice and alignmentOffset are available only since Java 9, so they are called with reflection
+	 * and on Java 8 the address of the buffer is read. If both fail, the buckets are not aligned.
+	 * @return the count of bytes from the start of the direct buffer to the first address aligned to BUCKET_SIZE
+	 */
+	private static int getAlignmentOffset(ByteBuffer buffer) {
+
+		try {
+
+			Method alignmentOffset = ByteBuffer.class.getMethod("alignmentOffset", int.class, int.class);
+
+			int misalignment = (Integer) alignmentOffset.invoke(buffer, 0, BUCKET_SIZE);
+
+			return (BUCKET_SIZE - misalignment) % BUCKET_SIZE;
+
+		} catch (Throwable t) {
+
+			//Java 8
+		}
+
+		try {
+
+			Field address = Buffer.class.getDeclaredField("address");
+
+			address.setAccessible(true);
+
+			int misalignment = (int) (address.getLong(buffer) & (BUCKET_SIZE - 1));
+
+			return (BUCKET_SIZE - misalignment) % BUCKET_SIZE;
+
+		} catch (Throwable t) {
+
+			return 0;
+		}
+	}
+
+
+	/**
+	 * The mappings start at page boundaries, so the buckets are aligned to the cache line as with the direct buffers.
+	 * A new file is filled with zeros by the operating system, which are empty entries.
+	 */
+	private ByteBuffer[] mapChunks(String shared_file, int chunks_count) {
+
+		ByteBuffer[] result = new ByteBuffer[chunks_count];
+
+		long size = buckets_count * BUCKET_SIZE;
+
+		try {
+
+			RandomAccessFile file = new RandomAccessFile(new File(shared_file), "rw");
+
+			try {
+
+				FileChannel channel = file.getChannel();
+
+				if (channel.size() != size) {
+
+					//The processes should use the same size, otherwise they put the same positions in different buckets
+					if (channel.size() != 0) {
+
+						if (ChannelManager.getChannel() != null) ChannelManager.getChannel().dump("TTable_Impl3: " + shared_file + " has " + channel.size() + " bytes, but " + size + " are expected");
+					}
+
+					if (channel.size() < size) {
+
+						file.setLength(size);
+					}
+				}
+
+				for (int i = 0; i < chunks_count; i++) {
+
+					long chunk_buckets = Math.min(BUCKETS_PER_CHUNK, buckets_count - i * BUCKETS_PER_CHUNK);
+
+					result[i] = channel.map(FileChannel.MapMode.READ_WRITE, i * BUCKETS_PER_CHUNK * BUCKET_SIZE, chunk_buckets * BUCKET_SIZE).order(ByteOrder.nativeOrder());
+				}
+
+			} finally {
+
+				//The mappings stay valid after the file is closed
+				file.close();
+			}
+
+		} catch (IOException e) {
+
+			throw new IllegalStateException("Unable to map the shared Transposition Table file " + shared_file, e);
+		}
+
+		return result;
+	}
+
+
+	@Override
+	public final int getUsage() {
+
+		//Counts only the entries of the current search generation inside the first buckets of the table
+		int sample_buckets = (int) Math.min(USAGE_SAMPLE_BUCKETS, buckets_count);
+
+		int count = 0;
+
+		for (int offset = 0; offset < sample_buckets * BUCKET_SIZE; offset += ENTRY_SIZE) {
+
+			if (chunks[0].getLong(offset) != 0 && getGeneration(chunks[0].getLong(offset + 8)) == generation) {
+
+				count++;
+			}
+		}
+
+		return count * 100 / (sample_buckets * BUCKET_ENTRIES);
+	}
+
+
+	/**
+	 * The hits are not counted, because the table is shared by all threads and the counters would be written by all of them on each probe.
+	 */
+	@Override
+	public final int getHitRate() {
+
+		return 0;
+	}
+
+
+	@Override
+	public final void correctAllDepths(final int reduction) {
+
+		//Do nothing
+	}
+
+
+	@Override
+	public final void newSearch() {
+
+		generation = (generation + 1) & 0xff;
+	}
+
+
+	@Override
+	public final void visitEntries(final ITTEntriesVisitor visitor) {
+
+		for (int i = 0; i < chunks.length; i++) {
+
+			final ByteBuffer chunk = chunks[i];
+
+			for (int offset = 0; offset + ENTRY_SIZE <= chunk.capacity(); offset += ENTRY_SIZE) {
+
+				long stored_key 	= chunk.getLong(offset);
+
+				long value 			= chunk.getLong(offset + 8);
+
+				//Skips the empty entries and the entries, which are currently written by another thread
+				if (stored_key != 0 && value != 0) {
+
+					visitor.visit(stored_key ^ value, getDepth(value), getFlag(value), getScore(value), getMove(value));
+				}
+			}
+		}
+	}
+
+
+	@Override
+	public final long prefetch(final long key) {
+
+		final long bucket = getBucketIndex(key);
+
+		return chunks[(int) (bucket >>> BUCKETS_PER_CHUNK_BITS)].getLong((int) (bucket & (BUCKETS_PER_CHUNK - 1)) * BUCKET_SIZE);
+	}
+
+
+	@Override
+	public final void get(long key, ITTEntry entry) {
+
+		entry.setIsEmpty(true);
+
+
+		long value = getTTValue(key);
+
+		if (value != 0) {
+
+			entry.setIsEmpty(false);
+
+			entry.setDepth(getDepth(value));
+			entry.setFlag(getFlag(value));
+			entry.setEval(getScore(value));
+			entry.setBestMove(getMove(value));
+		}
+	}
+
+
+	@Override
+	public final void put(long hashkey, int depth, int eval, int alpha, int beta, int bestmove) {
+
+		int flag = ITTEntry.FLAG_EXACT;
+
+		if (eval >= beta) {
+
+			flag = ITTEntry.FLAG_LOWER;
+
+		} else if (eval <= alpha) {
+
+			flag = ITTEntry.FLAG_UPPER;
+		}
+
+		addValue(hashkey, eval, depth, flag, bestmove);
+	}
+
+
+	private final long getTTValue(final long key) {
+
+		final long bucket = getBucketIndex(key);
+
+		final ByteBuffer chunk = chunks[(int) (bucket >>> BUCKETS_PER_CHUNK_BITS)];
+
+		final int start_offset = (int) (bucket & (BUCKETS_PER_CHUNK - 1)) * BUCKET_SIZE;
+
+		for (int offset = start_offset; offset < start_offset + BUCKET_SIZE; offset += ENTRY_SIZE) {
+
+			long stored_key 	= chunk.getLong(offset);
+
+			long value 			= chunk.getLong(offset + 8);
+
+			if ((stored_key ^ value) == key) {
+
+				return value;
+			}
+		}
+
+		return 0;
+	}
+
+
+	private final long getBucketIndex(final long key) {
+
+		return ((key ^ (key >>> 32)) & Long.MAX_VALUE) % buckets_count;
+	}
+
+
+	private final void addValue(final long new_key, int score, final int new_depth, final int flag, final int new_move) {
+
+		if (EngineConstants.ASSERT) {
+			Assert.isTrue(new_depth >= 0);
+		}
+
+		final long new_value 		= createValue(score, new_move, flag, new_depth, generation);
+
+		final long bucket 			= getBucketIndex(new_key);
+
+		final ByteBuffer chunk 		= chunks[(int) (bucket >>> BUCKETS_PER_CHUNK_BITS)];
+
+		final int start_offset 		= (int) (bucket & (BUCKETS_PER_CHUNK - 1)) * BUCKET_SIZE;
+
+		int replaced_min_score 		= Integer.MAX_VALUE;
+		int replaced_offset 		= -1;
+
+		for (int offset = start_offset; offset < start_offset + BUCKET_SIZE; offset += ENTRY_SIZE) {
+
+			long stored_key = chunk.getLong(offset);
+
+			if (stored_key == 0) {
+
+				replaced_min_score 	= 0;
+				replaced_offset 	= offset;
+
+				break;
+			}
+
+			long stored_value = chunk.getLong(offset + 8);
+
+			int stored_depth = getDepth(stored_value);
+
+			if ((stored_key ^ stored_value) == new_key) {
+
+				//Minimize writes in the shared memory, because in multi-threaded case it impacts performance.
+				if (new_value == stored_value) {
+
+					return;
+				}
+
+				//Entries from the previous searches are always refreshed with the current generation
+				if (new_depth >= stored_depth || getGeneration(stored_value) != generation) {
+
+					replaced_min_score = stored_depth;
+
+					replaced_offset = offset;
+
+					break;
+
+				} else {
+
+					return;
+				}
+			}
+
+			// keep the lowest replacement score (depth reduced by the age) and its offset
+			int stored_score = stored_depth - AGE_DEPTH_WEIGHT * getAge(stored_value);
+
+			if (stored_score < replaced_min_score) {
+
+				replaced_min_score = stored_score;
+
+				replaced_offset = offset;
+			}
+		}
+
+		if (replaced_offset == -1) {
+
+			throw new IllegalStateException();
+		}
+
+		chunk.putLong(replaced_offset, new_key ^ new_value);
+		chunk.putLong(replaced_offset + 8, new_value);
+	}
+
+
+	private static int getScore(final long value) {
+
+		return (int) (value >> SCORE);
+	}
+
+
+	private static int getDepth(final long value) {
+		return (int) (value & 0xff);
+	}
+
+
+	private static int getFlag(final long value) {
+		return (int) (value >>> FLAG & 3);
+	}
+
+
+	private static int getMove(final long value) {
+		return (int) (value >>> MOVE & 0x3fffff);
+	}
+
+
+	private static int getGeneration(final long value) {
+		return (int) (value >>> GENERATION & 0xff);
+	}
+
+
+	private final int getAge(final long value) {
+		return (generation - getGeneration(value)) & 0xff;
+	}
+
+
+	// SCORE,GENERATION,MOVE,FLAG,DEPTH
+	private static long createValue(final long score, final long move, final long flag, final long depth, final long generation) {
+		if (EngineConstants.ASSERT) {
+			Assert.isTrue(depth <= 255);
+			Assert.isTrue(generation <= 255);
+		}
+		return score << SCORE | generation << GENERATION | move << MOVE | flag << FLAG | depth;
+	}
+}
@@ -48,6 +48,40 @@ public class TranspositionTableProvider implements ITTable {
 	}
 	
 	
+	@Override
+	public void newSearch() {
+		
+		for (int i = 0; i < tpts.size(); i++) {
+			
+			tpts.get(i).newSearch();
+		}
+	}
+	
+	
+	@Override
+	public void visitEntries(ITTEntriesVisitor visitor) {
+		
+		for (int i = 0; i < tpts.size(); i++) {
+			
+			tpts.get(i).visitEntries(visitor);
+		}
+	}
+	
+	
+	@Override
+	public long prefetch(long key) {
+		
+		long result = 0;
+		
+		for (int i = 0; i < tpts.size(); i++) {
+			
+			result ^= tpts.get(i).prefetch(key);
+		}
+		
+		return result;
+	}
+	
+	
 	public void clear() {
 		
 		tpts.clear();
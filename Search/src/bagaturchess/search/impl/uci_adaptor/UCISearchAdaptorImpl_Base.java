@@ -23,6 +23,8 @@
 package bagaturchess.search.impl.uci_adaptor;
 
 
+import java.io.IOException;
+
 import bagaturchess.bitboard.api.IBitBoard;
 import bagaturchess.bitboard.impl.utils.ReflectionUtils;
 import bagaturchess.search.api.IRootSearch;
@@ -32,6 +34,7 @@ import bagaturchess.search.api.internal.ISearchMediator;
 import bagaturchess.search.impl.env.MemoryConsumers;
 import bagaturchess.search.impl.env.SharedData;
 import bagaturchess.search.impl.rootsearch.multipv.MultiPVRootSearch;
+import bagaturchess.search.impl.rootsearch.multipv.MultiPVRootSearch_PerMove;
 import bagaturchess.search.impl.uci_adaptor.timemanagement.ITimeController;
 import bagaturchess.uci.api.BestMoveSender;
 import bagaturchess.uci.api.ChannelManager;
@@ -72,7 +75,13 @@ public abstract class UCISearchAdaptorImpl_Base implements IUCISearchAdaptor_Ext
 		
 		searcherNormal = createRootSearcher();
 		searcherPonder = searcherNormal;//createRootSearcher();
-		searcherNormalMultiPV = new MultiPVRootSearch(rootSearchCfg, searcherNormal);
+		
+		//The parallel root searches do not support excluded root moves, so their MultiPV search plays each root move and searches after it
+		if (MultiPVRootSearch.isSupported(searcherNormal)) {
+			searcherNormalMultiPV = new MultiPVRootSearch(rootSearchCfg, searcherNormal);
+		} else {
+			searcherNormalMultiPV = new MultiPVRootSearch_PerMove(rootSearchCfg, searcherNormal);
+		}
 		
 		//Should be created always in the beginning of the game because later the initial board position (fen) is not available.
 		searcherNormal.createBoard(boardForSetup);
@@ -129,6 +138,63 @@ public abstract class UCISearchAdaptorImpl_Base implements IUCISearchAdaptor_Ext
 	}
 	
 	
+	@Override
+	public void saveHash(String file, int min_depth) {
+		
+		if (file == null) {
+			
+			file = rootSearchCfg.getTPTSnapshotFile();
+		}
+		
+		if (min_depth == -1) {
+			
+			min_depth = rootSearchCfg.getTPTSnapshotMinDepth();
+		}
+		
+		if (file == null || file.isEmpty()) {
+			
+			throw new IllegalStateException("UCISearchAdaptorImpl_Base: saveHash: file is not defined");
+		}
+		
+		try {
+			
+			long count = sharedData.saveTPT(file, min_depth);
+			
+			ChannelManager.getChannel().sendLogToGUI("UCISearchAdaptorImpl_Base: saveHash: " + count + " entries saved into " + file);
+			
+		} catch (IOException e) {
+			
+			throw new IllegalStateException(e);
+		}
+	}
+	
+	
+	@Override
+	public void loadHash(String file) {
+		
+		if (file == null) {
+			
+			file = rootSearchCfg.getTPTSnapshotFile();
+		}
+		
+		if (file == null || file.isEmpty()) {
+			
+			throw new IllegalStateException("UCISearchAdaptorImpl_Base: loadHash: file is not defined");
+		}
+		
+		try {
+			
+			long count = sharedData.loadTPT(file);
+			
+			ChannelManager.getChannel().sendLogToGUI("UCISearchAdaptorImpl_Base: loadHash: " + count + " entries loaded from " + file);
+			
+		} catch (IOException e) {
+			
+			throw new IllegalStateException(e);
+		}
+	}
+	
+	
 	private IRootSearch createRootSearcher() {
 		String rootSearchClassName = searchAdaptorCfg.getRootSearchClassName();
 		IRootSearch _searcher = (IRootSearch)
@@ -146,13 +212,18 @@ public abstract class UCISearchAdaptorImpl_Base implements IUCISearchAdaptor_Ext
 		}*/
 		
 		
-		IRootSearch searcher = getSearcher(ponderSearch);
+		//Transposition Table entries of the previous searches become older
+		sharedData.newSearch();
 		
-		currentMediator.dump("ROOT SEARCHER: " + searcher);
-		currentMediator.dump("Ponder: " + ponderSearch);
+		IRootSearch searcher = getSearcher(ponderSearch);
 		
 		boolean isEndlessSearch = isEndlessSearch(currentGoCommand);
-		currentMediator.dump("IsEndlessSearch: " + isEndlessSearch);
+		
+		if (ChannelManager.getChannel().isDumpEnabled()) {
+			currentMediator.dump("ROOT SEARCHER: " + searcher);
+			currentMediator.dump("Ponder: " + ponderSearch);
+			currentMediator.dump("IsEndlessSearch: " + isEndlessSearch);
+		}
 		
 		currentGoCommand.setPonder(isEndlessSearch);
 		
@@ -170,14 +241,14 @@ public abstract class UCISearchAdaptorImpl_Base implements IUCISearchAdaptor_Ext
 			
 			if (!moveSent) {
 				
-				currentMediator.dump("Normal search started with GO: " + currentGoCommand);
+				if (ChannelManager.getChannel().isDumpEnabled()) currentMediator.dump("Normal search started with GO: " + currentGoCommand);
 				
 				searcher.negamax(boardForSetup, currentMediator, timeController, currentGoCommand);
 			}
 			
 		} else {
 			
-			currentMediator.dump("Endless search started with GO: " + currentGoCommand);
+			if (ChannelManager.getChannel().isDumpEnabled()) currentMediator.dump("Endless search started with GO: " + currentGoCommand);
 			
 			searcher.negamax(boardForSetup, currentMediator, timeController, currentGoCommand);
 		}
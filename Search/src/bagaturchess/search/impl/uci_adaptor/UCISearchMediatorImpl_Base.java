@@ -25,6 +25,7 @@ package bagaturchess.search.impl.uci_adaptor;
 
 import java.io.IOException;
 
+import bagaturchess.bitboard.api.IBitBoard;
 import bagaturchess.search.api.IRootSearch;
 import bagaturchess.search.api.internal.ISearchInfo;
 import bagaturchess.search.api.internal.ISearchMediator;
@@ -32,6 +33,9 @@ import bagaturchess.search.api.internal.ISearchStopper;
 import bagaturchess.search.api.internal.SearchInfoUtils;
 import bagaturchess.uci.api.BestMoveSender;
 import bagaturchess.uci.api.IChannel;
+import bagaturchess.uci.impl.binary.BinaryInfo;
+import bagaturchess.uci.impl.binary.BinaryProtocol;
+import bagaturchess.uci.impl.binary.Channel_BinaryInfo;
 import bagaturchess.uci.impl.commands.Go;
 
 
@@ -114,6 +118,11 @@ public abstract class UCISearchMediatorImpl_Base implements ISearchMediator {
 			lastinfo = info;
 		}
 		
+		if (channel instanceof Channel_BinaryInfo) {
+			sendBinaryInfo(info, true);
+			return;
+		}
+		
 		String message = SearchInfoUtils.buildMajorInfoCommand(info, getStartTime(), rootSearch.getTPTUsagePercent(), 0, rootSearch.getBitboardForSetup());
 		send(message);
 		
@@ -122,7 +131,12 @@ public abstract class UCISearchMediatorImpl_Base implements ISearchMediator {
 	
 	
 	public void changedMinor(ISearchInfo info) {
-
+		
+		if (channel instanceof Channel_BinaryInfo) {
+			sendBinaryInfo(info, false);
+			return;
+		}
+		
 		String message = SearchInfoUtils.buildMinorInfoCommand(info, getStartTime(), rootSearch.getTPTUsagePercent(), 0, rootSearch.getBitboardForSetup());
 		send(message);
 		
@@ -162,6 +176,50 @@ public abstract class UCISearchMediatorImpl_Base implements ISearchMediator {
 	}
 	
 	
+	/**
+	 * The search is started by the master engine with a binary go frame, so the info is sent without building and parsing the UCI info line.
+	 */
+	private void sendBinaryInfo(ISearchInfo info, boolean major) {
+		
+		IBitBoard board = rootSearch.getBitboardForSetup();
+		
+		BinaryInfo result = new BinaryInfo();
+		
+		result.setMajor(major);
+		result.setUpperBound(info.isUpperBound());
+		result.setLowerBound(info.isLowerBound());
+		result.setDepth(info.getDepth());
+		result.setSelDepth(info.getSelDepth());
+		result.setTime(System.currentTimeMillis() - getStartTime());
+		result.setNodes(info.getSearchedNodes());
+		result.setTBhits(info.getTBhits());
+		result.setEval(info.getEval());
+		result.setHashfull(10 * rootSearch.getTPTUsagePercent());
+		
+		if (info.getCurrentMove() != 0) {
+			result.setCurrentMove(BinaryProtocol.encodeMove(board.getMoveOps().moveToString(info.getCurrentMove())));
+			result.setCurrentMoveNumber(info.getCurrentMoveNumber());
+		}
+		
+		if (major && !info.isUpperBound() && info.getPV() != null) {
+			
+			int[] pv = info.getPV();
+			
+			result.setPVCount(pv.length);
+			
+			for (int i = 0; i < pv.length; i++) {
+				result.getPV()[i] = BinaryProtocol.encodeMove(board.getMoveOps().moveToString(pv[i]));
+			}
+		}
+		
+		try {
+			((Channel_BinaryInfo) channel).sendInfo(result);
+		} catch (IOException e) {
+			channel.dump(e);
+		}
+	}
+	
+	
 	private void stopIfMateIsFound() {
 		
 		//channel.dump("In stopIfMateIsFound method");
@@ -41,7 +41,7 @@ public class UCISearchMediatorImpl_NormalSearch extends UCISearchMediatorImpl_Ba
 			BestMoveSender _sender, IRootSearch _rootSearch, boolean isEndlessSearch) {
 		super(_channel, _go, _colourToMove, _sender, _rootSearch, isEndlessSearch);
 		timeController = _timeController;
-		_channel.dump(timeController.toString());
+		if (_channel.isDumpEnabled()) _channel.dump(timeController.toString());
 		setStopper(new GlobalStopperImpl(timeController, _go.getNodes()));
 	}
 	
@@ -5,10 +5,17 @@ public class ChannelManager {
 	
 	private static IChannel channel;
 	
+	//The channel of the server session, which runs in the current thread. The threads created by the session (e.g. the search threads) inherit it.
+	private static final InheritableThreadLocal<IChannel> session_channel = new InheritableThreadLocal<IChannel>();
+	
 	public static IChannel getChannel() {
 		/*if (channel == null) {
 			System.err.println("Channel not initialized!");
 		}*/
+		IChannel session = session_channel.get();
+		if (session != null) {
+			return session;
+		}
 		return channel;
 	}
 	
@@ -18,4 +25,12 @@ public class ChannelManager {
 		}
 		channel = _channel;
 	}
+	
+	public static void setSessionChannel(IChannel _channel) {
+		session_channel.set(_channel);
+	}
+	
+	public static void removeSessionChannel() {
+		session_channel.remove();
+	}
 }
@@ -29,6 +29,18 @@ public interface IChannel {
 
 	public abstract void dump(Throwable t);
 
+	public abstract void dump(ILogMessage message);
+
+	/**
+	 * @return false if the messages passed to dump are thrown away, so the callers can skip building them
+	 */
+	public abstract boolean isDumpEnabled();
+
+	/**
+	 * Waits until the messages dumped so far are written into the log.
+	 */
+	public abstract void flushLog();
+
 	public void initLogging(IUCIConfig engineBootCfg) throws FileNotFoundException;
 	
 	public BufferedReader getIn();
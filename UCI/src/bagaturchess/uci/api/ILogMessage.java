@@ -0,0 +1,13 @@
+package bagaturchess.uci.api;
+
+
+/**
+ * Lazy log message.
+ * The message is built by the log thread and only if the logging is enabled,
+ * so the searching threads do not pay for the String concatenations.
+ */
+public interface ILogMessage {
+	
+	
+	public String getMessage();
+}
@@ -35,4 +35,8 @@ public interface IUCISearchAdaptor {
 	public int[] stopSearch(); // returns best move and ponder move in array
 	
 	public void shutDown();
+	
+	public void saveHash(String file, int min_depth); // file == null and min_depth == -1 mean the values of the UCI options
+	
+	public void loadHash(String file); // file == null means the value of the UCI option
 }
@@ -29,10 +29,17 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
 import java.util.ArrayList;
 import java.util.List;
 
 import bagaturchess.uci.api.ChannelManager;
+import bagaturchess.uci.impl.Protocol;
+import bagaturchess.uci.impl.binary.BinaryConnection;
+import bagaturchess.uci.impl.binary.BinaryProtocol;
 import bagaturchess.uci.impl.commands.Go;
 
 
@@ -50,6 +57,8 @@ public class EngineProcess {
 	
 	private EngineProcessDummperThread dummper;
 	
+	private BinaryConnection binary;
+	
 	
 	public EngineProcess(String _startCommand, String[] _props, String _workDir) {
 		//System.out.println(_startCommand);
@@ -115,6 +124,10 @@ public class EngineProcess {
 		
 		//ChannelManager.getChannel().sendLogToGUI("EngineProcess: destroy ...");
 		
+		if (binary != null) {
+			binary.close();
+		}
+		
 		if (process != null) {
 			process.destroy();
 		}
@@ -171,6 +184,89 @@ public class EngineProcess {
 	}
 	
 	
+	/**
+	 * Asks the engine to connect to a loopback port and to accept the binary frames of BinaryProtocol on it.
+	 * Any local process can connect to the port, so the connections, which do not send the random token of the binary command
+	 * as their first frame, are closed.
+	 * @return false if the engine doesn't connect in the given time, e.g. because it doesn't support the binary frames
+	 */
+	public boolean startBinary(int timeout_ms) throws IOException {
+		
+		ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+		
+		try {
+			
+			String token = BinaryProtocol.createToken();
+			
+			os.write(Protocol.COMMAND_TO_ENGINE_BINARY_STR + " " + server.getLocalPort() + " " + token);
+			os.newLine();
+			os.flush();
+			
+			long end_time = System.currentTimeMillis() + timeout_ms;
+			
+			while (true) {
+				
+				int remaining = (int) (end_time - System.currentTimeMillis());
+				
+				if (remaining <= 0) {
+					
+					return false;
+				}
+				
+				server.setSoTimeout(remaining);
+				
+				Socket socket = server.accept();
+				
+				try {
+					
+					//The hello frame has to be received in the remaining time
+					socket.setSoTimeout(remaining);
+					
+					BinaryConnection connection = new BinaryConnection(socket);
+					
+					if (connection.readHello(token)) {
+						
+						socket.setSoTimeout(0);
+						
+						binary = connection;
+						
+						return true;
+					}
+					
+				} catch (IOException e) {
+					
+					//Wrong or incomplete hello frame
+				}
+				
+				socket.close();
+			}
+			
+		} catch (SocketTimeoutException e) {
+			
+			return false;
+			
+		} finally {
+			
+			server.close();
+		}
+	}
+	
+	
+	/**
+	 * @return the connection created by startBinary or null
+	 */
+	public BinaryConnection getBinaryConnection() {
+		return binary;
+	}
+	
+	
+	public void saveHash(String file, int min_depth) throws IOException {
+		os.write("savehash " + file + " mindepth " + min_depth);
+		os.newLine();
+		os.flush();
+	}
+	
+	
 	public void setupPossition(String position) throws IOException {
 		os.write("position " + position);	
 		os.newLine();
@@ -115,6 +115,18 @@ public class UCIEnginesManager {
 	}
 	
 	
+	public void saveHash(String file, int min_depth) throws IOException {
+		
+		disable();
+		
+		for (EngineProcess engine: engines) {			
+			engine.saveHash(file, min_depth);
+		}
+		
+		enable();
+	}
+	
+	
 	public void newGame() throws IOException {
 		
 		disable();
@@ -34,27 +34,66 @@ import java.io.OutputStreamWriter;
 import java.io.PrintStream;
 import java.io.PrintWriter;
 import java.io.StringWriter;
-import java.lang.reflect.InvocationTargetException;
-import java.util.ArrayList;
 import java.util.Date;
-import java.util.List;
-import java.util.Queue;
-import java.util.StringTokenizer;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
 
 
 import bagaturchess.uci.api.IChannel;
+import bagaturchess.uci.api.ILogMessage;
 import bagaturchess.uci.api.IUCIConfig;
 import bagaturchess.uci.impl.utils.DEBUGUCI;
 
 
+/**
+ * The log messages are written by a separate thread, so the searching threads and the UCI thread do not wait for the IO.
+ * The messages are passed through a bounded ring buffer with preallocated slots: many producers, one consumer (the log thread).
+ * The producers only store the raw message (e.g. the UCI command) and the time, the log line is built by the log thread.
+ * If the buffer is full, the message is dropped and counted, so the memory is bounded even if the log is slow or not yet initialized.
+ * The log is flushed after each bestmove command, so the log of a search is complete when the GUI receives its best move.
+ */
 public class Channel_Base implements IChannel {
 	
 	
-	protected PrintStream dump;
-	protected Queue<Object> dumps;
+	private static final int LOG_BUFFER_SIZE 			= 4096;
+	private static final int LOG_BUFFER_MASK 			= LOG_BUFFER_SIZE - 1;
+	
+	private static final long LOG_THREAD_PARK_NANOS 	= 100 * 1000000L;
+	private static final long FLUSH_TIMEOUT_MILLIS 		= 1000;
+	
+	private static final byte KIND_MESSAGE 				= 0;
+	private static final byte KIND_LAZY_MESSAGE 		= 1;
+	private static final byte KIND_THROWABLE 			= 2;
+	private static final byte KIND_TO_GUI 				= 3;
+	private static final byte KIND_TO_GUI_LOG 			= 4;
+	private static final byte KIND_FROM_GUI 			= 5;
+	
+	
+	protected volatile PrintStream dump;
 	protected Thread logThread;
 	
+	//The log thread writes the remaining messages and exits after the channel is closed
+	private volatile boolean closed;
+	
+	//Ring buffer of the log messages
+	private final Object[] log_messages;
+	private final byte[] log_kinds;
+	private final long[] log_times;
+	//The slot i is published, when log_sequences[i] == its position + 1
+	private final AtomicLongArray log_sequences;
+	//The next free position, incremented by the producers
+	private final AtomicLong log_tail;
+	//The next position to be read, incremented only by the log thread
+	private volatile long log_head;
+	//All positions before log_written are written into the dump stream
+	private volatile long log_written;
+	private final AtomicLong log_dropped;
+	
+	private volatile boolean log_thread_parked;
+	private final Object flush_lock;
+	private volatile int flush_waiters;
+	
 	protected BufferedReader in;
 	protected BufferedWriter out;
 
@@ -76,9 +115,16 @@ public class Channel_Base implements IChannel {
 		out = new BufferedWriter(new OutputStreamWriter(_out));
 		dump = _dump;
 		
-		dumps = new ConcurrentLinkedQueue<Object>();		
+		log_messages 	= new Object[LOG_BUFFER_SIZE];
+		log_kinds 		= new byte[LOG_BUFFER_SIZE];
+		log_times 		= new long[LOG_BUFFER_SIZE];
+		log_sequences 	= new AtomicLongArray(LOG_BUFFER_SIZE);
+		log_tail 		= new AtomicLong();
+		log_dropped 	= new AtomicLong();
+		flush_lock 		= new Object();
 		
 		logThread = new Thread(new LogRunnable(this));
+		logThread.setDaemon(true);
 		logThread.start();
 	}
 	
@@ -121,6 +167,8 @@ public class Channel_Base implements IChannel {
 	 */
 	@Override
 	public void close() {
+		closed = true;
+		LockSupport.unpark(logThread);
 		try {
 			in.close();
 		} catch (Exception e) {
@@ -142,7 +190,7 @@ public class Channel_Base implements IChannel {
 		
 		try {
 			out.write("LOG " + command + NEW_LINE);
-			dump("TO_GUI{" + new Date() + "}>" + " LOG " + command + NEW_LINE);
+			addLogMessage(KIND_TO_GUI_LOG, command);
 			out.flush();
 		} catch (IOException e) {
 		}
@@ -164,8 +212,13 @@ public class Channel_Base implements IChannel {
 	@Override
 	public void sendCommandToGUI_no_newline(String command) throws IOException {
 		out.write(command);
-		dump("TO_GUI{" + new Date() + "}>" + command + NEW_LINE);
+		addLogMessage(KIND_TO_GUI, command);
 		out.flush();
+		
+		//The GUI has already received the best move, the log is flushed after that
+		if (command.startsWith(Protocol.COMMAND_TO_GUI_BESTMOVE_STR)) {
+			flushLog();
+		}
 	}
 	
 	
@@ -175,104 +228,262 @@ public class Channel_Base implements IChannel {
 	@Override
 	public String receiveCommandFromGUI() throws IOException {
 		String command = in.readLine();
-		dump("FROM_GUI{" + new Date() + "}>" + command + NEW_LINE);
+		addLogMessage(KIND_FROM_GUI, command);
 		return command;
 	}
 	
 	
 	public void dump(String message) {
+		addLogMessage(KIND_MESSAGE, message);
+	}
+	
+	
+	public void dump(Throwable t) {
+		addLogMessage(KIND_THROWABLE, t);
+	}
+	
+	
+	public void dump(ILogMessage message) {
+		addLogMessage(KIND_LAZY_MESSAGE, message);
+	}
+	
+	
+	public boolean isDumpEnabled() {
+		return DEBUGUCI.DEBUG_MODE && !(dump instanceof DummyPrintStream);
+	}
+	
+	
+	public long getDroppedLogMessagesCount() {
+		return log_dropped.get();
+	}
+	
+	
+	public void flushLog() {
 		
-		if (!DEBUGUCI.DEBUG_MODE) return;
+		//Nothing will write the messages, if there is no log stream yet or the log thread has exited
+		if (dump == null || closed || Thread.currentThread() == logThread) {
+			return;
+		}
 		
-		dumps.add(message);
+		long target = log_tail.get();
 		
-		/*try {
-			if (message == null) {
-				message = "null";
-			}
+		if (log_written >= target) {
+			return;
+		}
+		
+		long end_time = System.currentTimeMillis() + FLUSH_TIMEOUT_MILLIS;
+		
+		synchronized (flush_lock) {
 			
-			dump.write((message.trim() + NEW_LINE).getBytes());
-			dump.flush();
-		} catch (IOException e) {
-		}*/
+			flush_waiters++;
+			
+			try {
+				
+				LockSupport.unpark(logThread);
+				
+				while (log_written < target) {
+					
+					long remaining = end_time - System.currentTimeMillis();
+					
+					if (remaining <= 0 || closed) {
+						break;
+					}
+					
+					try {
+						flush_lock.wait(remaining);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						break;
+					}
+				}
+				
+			} finally {
+				flush_waiters--;
+			}
+		}
 	}
 	
 	
-	public void dump(Throwable t) {
-		dumps.add(t);
+	private void addLogMessage(byte kind, Object message) {
+		
+		if (!isDumpEnabled()) return;
+		
+		long position;
+		
+		do {
+			
+			position = log_tail.get();
+			
+			if (position - log_head >= LOG_BUFFER_SIZE) {
+				log_dropped.incrementAndGet();
+				return;
+			}
+			
+		} while (!log_tail.compareAndSet(position, position + 1));
+		
+		int index = (int) (position & LOG_BUFFER_MASK);
 		
-		/*t.printStackTrace(dump);
-		dump.flush();*/
+		log_messages[index] = message;
+		log_kinds[index] = kind;
+		log_times[index] = System.currentTimeMillis();
+		
+		//Publishes the slot to the log thread
+		log_sequences.set(index, position + 1);
+		
+		if (log_thread_parked) {
+			LockSupport.unpark(logThread);
+		}
 	}
 	
 	
 	private static class LogRunnable implements Runnable {
 		
-		Channel_Base channel;
+		
+		private Channel_Base channel;
+		
+		private StringBuilder line;
+		
 		
 		private LogRunnable(Channel_Base _channel) {
 			channel = _channel;
+			line = new StringBuilder(256);
 		}
 		
 		
 		@Override
 		public void run() {
+			
+			long reported_dropped = 0;
+			
 			while (true) {
-				try {
-					if (channel.dump == null) {
+				
+				PrintStream dump = channel.dump;
+				
+				boolean written = false;
+				
+				if (dump != null) {
+					
+					long dropped = channel.log_dropped.get();
+					
+					if (dropped != reported_dropped) {
+						writeLines(dump, "Log buffer full: " + (dropped - reported_dropped) + " messages dropped");
+						reported_dropped = dropped;
+						written = true;
+					}
+					
+					long head = channel.log_head;
+					
+					while (true) {
+						
+						int index = (int) (head & LOG_BUFFER_MASK);
+						
+						if (channel.log_sequences.get(index) != head + 1) {
+							break;
+						}
+						
+						Object message = channel.log_messages[index];
+						byte kind = channel.log_kinds[index];
+						long time = channel.log_times[index];
+						channel.log_messages[index] = null;
+						
+						//Frees the slot for the producers
+						head++;
+						channel.log_head = head;
+						
 						try {
-							Thread.sleep(100);
-						} catch (InterruptedException e) {}
-					} else {
-						Object cur = channel.dumps.poll();
-						if (cur != null) {
-							if (cur instanceof Throwable) {
-								
-								sendLines(getLines(getStackTrace((Throwable) cur)));
-								//((Throwable)cur).printStackTrace(channel.dump);
-								channel.dump.flush();
-								
-							} else {
-								
-								if (!(cur instanceof String)) {
-									throw new IllegalStateException("!(cur instanceof String): cur=" + cur);
-								}
-								
-								sendLines(getLines((String)cur));
-								//channel.dump.write((((String)cur).trim() + NEW_LINE).getBytes());
-								channel.dump.flush();
-							}
-						} else {
-							try {
-								Thread.sleep(10);
-							} catch (InterruptedException e) {}
+							writeLines(dump, format(kind, time, message));
+						} catch (Throwable t) {
+							writeLines(dump, getStackTrace(t));
+						}
+						
+						written = true;
+					}
+					
+					if (written) {
+						dump.flush();
+						channel.log_written = head;
+					}
+					
+					if (channel.flush_waiters > 0) {
+						synchronized (channel.flush_lock) {
+							channel.flush_lock.notifyAll();
 						}
 					}
-				} catch (IOException e) {
-					e.printStackTrace();
+				}
+				
+				if (!written) {
+					
+					if (channel.closed) {
+						return;
+					}
+					
+					//Parks until a producer publishes a message, the timeout covers the setting of the log stream
+					channel.log_thread_parked = true;
+					
+					int index = (int) (channel.log_head & LOG_BUFFER_MASK);
+					if (channel.log_sequences.get(index) != channel.log_head + 1 || channel.dump == null) {
+						LockSupport.parkNanos(channel, LOG_THREAD_PARK_NANOS);
+					}
+					
+					channel.log_thread_parked = false;
 				}
 			}
 		}
 		
 		
-		private List<String> getLines(String msg) {
-			
-			msg = msg.trim();
+		private String format(byte kind, long time, Object message) {
 			
-			List<String> lines = new ArrayList<String>();  
-			StringTokenizer st = new StringTokenizer(msg, "\r\n");
-			while (st.hasMoreTokens()) {
-				lines.add(st.nextToken());
+			switch (kind) {
+				
+				case KIND_MESSAGE:
+					return String.valueOf(message);
+					
+				case KIND_LAZY_MESSAGE:
+					return ((ILogMessage) message).getMessage();
+					
+				case KIND_THROWABLE:
+					return getStackTrace((Throwable) message);
+					
+				case KIND_TO_GUI:
+					return "TO_GUI{" + new Date(time) + "}>" + message;
+					
+				case KIND_TO_GUI_LOG:
+					return "TO_GUI{" + new Date(time) + "}>" + " LOG " + message;
+					
+				case KIND_FROM_GUI:
+					return "FROM_GUI{" + new Date(time) + "}>" + message;
+					
+				default:
+					throw new IllegalStateException("kind=" + kind);
 			}
-			
-			return lines;
 		}
 		
 		
-		private void sendLines(List<String> lines) throws IOException {
-			for (int i=0; i <lines.size(); i++) {
-				String line = "info string " + lines.get(i) + "\r\n";
-				channel.dump.write(line.getBytes());
+		private void writeLines(PrintStream dump, String msg) {
+			
+			if (msg == null) {
+				msg = "null";
+			}
+			
+			msg = msg.trim();
+			
+			int length = msg.length();
+			int start = 0;
+			
+			while (start < length) {
+				
+				int end = start;
+				while (end < length && msg.charAt(end) != '\r' && msg.charAt(end) != '\n') {
+					end++;
+				}
+				
+				if (end > start) {
+					line.setLength(0);
+					line.append("info string ").append(msg, start, end).append(NEW_LINE);
+					dump.print(line);
+				}
+				
+				start = end + 1;
 			}
 		}
 		
@@ -64,8 +64,8 @@ public class Channel_Console extends Channel_Base {
 	
 	private void setPrintStream_SystemOut() {
 		if (dump != null) {
-			dumps.add("Switching logging to 'none'");
-			try {Thread.sleep(500);} catch (InterruptedException e) {e.printStackTrace();}
+			dump("Switching logging to 'none'");
+			flushLog();
 			dump.close();
 		}
 		dump = System.out;
@@ -75,8 +75,8 @@ public class Channel_Console extends Channel_Base {
 	
 	private void setPrintStream_MFiles() throws FileNotFoundException {
 		if (dump != null) {
-			dumps.add("Switching logging to multiple files");
-			try {Thread.sleep(500);} catch (InterruptedException e) {e.printStackTrace();}
+			dump("Switching logging to multiple files");
+			flushLog();
 			dump.close();
 		}
 		createLogDir();
@@ -87,8 +87,8 @@ public class Channel_Console extends Channel_Base {
 	
 	private void setPrintStream_1File() throws FileNotFoundException {
 		if (dump != null) {
-			dumps.add("Switching logging to single file");
-			try {Thread.sleep(500);} catch (InterruptedException e) {e.printStackTrace();}
+			dump("Switching logging to single file");
+			flushLog();
 			dump.close();
 		}
 		createLogDir();
@@ -99,8 +99,8 @@ public class Channel_Console extends Channel_Base {
 	
 	private void setPrintStream_None() throws FileNotFoundException {
 		if (dump != null) {
-			dumps.add("Switching logging to 'none'");
-			try {Thread.sleep(500);} catch (InterruptedException e) {e.printStackTrace();}
+			dump("Switching logging to 'none'");
+			flushLog();
 			dump.close();
 		}
 		dump = new DummyPrintStream();
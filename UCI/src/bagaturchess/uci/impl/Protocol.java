@@ -64,6 +64,10 @@ public class Protocol {
 	
 	public static final String COMMAND_TO_ENGINE_STOP_STR = "stop";
 	public static final String COMMAND_TO_ENGINE_QUIT_STR = "quit";
+	public static final String COMMAND_TO_ENGINE_SAVEHASH_STR = "savehash";//Custom command: savehash [<file>] [mindepth <depth>], saves the Transposition Table into a file.
+	public static final String COMMAND_TO_ENGINE_SAVEHASH_MINDEPTH_STR = "mindepth";
+	public static final String COMMAND_TO_ENGINE_LOADHASH_STR = "loadhash";//Custom command: loadhash [<file>], loads the Transposition Table from a file created by savehash.
+	public static final String COMMAND_TO_ENGINE_BINARY_STR = "binary";//Custom command: binary <port> <token>, connects to the loopback port of the master engine, sends the token and starts reading binary frames from it (see BinaryProtocol).
 	
 	public static final String COMMAND_TO_GUI_ID_STR = "id";
 	public static final String COMMAND_TO_GUI_ID_NAME_STR = "name";
@@ -85,6 +89,9 @@ public class Protocol {
 	public static final int COMMAND_TO_ENGINE_SETOPTION = 6;
 	public static final int COMMAND_TO_ENGINE_STOP = 7;
 	public static final int COMMAND_TO_ENGINE_QUIT = 8;
+	public static final int COMMAND_TO_ENGINE_SAVEHASH = 9;
+	public static final int COMMAND_TO_ENGINE_LOADHASH = 10;
+	public static final int COMMAND_TO_ENGINE_BINARY = 11;
 	
 	public static final int COMMAND_TO_GUI_ID = 0;
 	public static final int COMMAND_TO_GUI_OPTION = 1;
@@ -129,6 +136,9 @@ public class Protocol {
 			toEngine_IDByCommand.put(COMMAND_TO_ENGINE_SETOPTION_STR, COMMAND_TO_ENGINE_SETOPTION);
 			toEngine_IDByCommand.put(COMMAND_TO_ENGINE_STOP_STR, COMMAND_TO_ENGINE_STOP);
 			toEngine_IDByCommand.put(COMMAND_TO_ENGINE_QUIT_STR, COMMAND_TO_ENGINE_QUIT);
+			toEngine_IDByCommand.put(COMMAND_TO_ENGINE_SAVEHASH_STR, COMMAND_TO_ENGINE_SAVEHASH);
+			toEngine_IDByCommand.put(COMMAND_TO_ENGINE_LOADHASH_STR, COMMAND_TO_ENGINE_LOADHASH);
+			toEngine_IDByCommand.put(COMMAND_TO_ENGINE_BINARY_STR, COMMAND_TO_ENGINE_BINARY);
 	
 			toEngine_CommandByID.put(COMMAND_TO_ENGINE_UCI, COMMAND_TO_ENGINE_UCI_STR);
 			toEngine_CommandByID.put(COMMAND_TO_ENGINE_ISREADY, COMMAND_TO_ENGINE_ISREADY_STR);
@@ -137,6 +147,9 @@ public class Protocol {
 			toEngine_CommandByID.put(COMMAND_TO_ENGINE_GO, COMMAND_TO_ENGINE_GO_STR);
 			toEngine_CommandByID.put(COMMAND_TO_ENGINE_STOP, COMMAND_TO_ENGINE_STOP_STR);
 			toEngine_CommandByID.put(COMMAND_TO_ENGINE_QUIT, COMMAND_TO_ENGINE_QUIT_STR);
+			toEngine_CommandByID.put(COMMAND_TO_ENGINE_SAVEHASH, COMMAND_TO_ENGINE_SAVEHASH_STR);
+			toEngine_CommandByID.put(COMMAND_TO_ENGINE_LOADHASH, COMMAND_TO_ENGINE_LOADHASH_STR);
+			toEngine_CommandByID.put(COMMAND_TO_ENGINE_BINARY, COMMAND_TO_ENGINE_BINARY_STR);
 		}
 	}
 
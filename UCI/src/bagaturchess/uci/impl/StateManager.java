@@ -25,6 +25,9 @@ package bagaturchess.uci.impl;
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
 import java.util.List;
 
 import bagaturchess.bitboard.api.BoardUtils;
@@ -36,6 +39,9 @@ import bagaturchess.uci.api.IUCIConfig;
 import bagaturchess.uci.api.IUCISearchAdaptor;
 import bagaturchess.uci.api.UCISearchAdaptorFactory;
 import bagaturchess.uci.impl.commands.Go;
+import bagaturchess.uci.impl.binary.BinaryConnection;
+import bagaturchess.uci.impl.binary.BinaryProtocol;
+import bagaturchess.uci.impl.binary.Channel_BinaryInfo;
 import bagaturchess.uci.impl.commands.Position;
 import bagaturchess.uci.impl.commands.options.SetOption;
 import bagaturchess.uci.impl.commands.options.UCIOptions;
@@ -62,6 +68,23 @@ public class StateManager extends Protocol implements BestMoveSender {
 	
 	private boolean mustCreateSearchAdaptor;
 	
+	private BinaryConnection binaryConnection;
+	
+	private IChannel binaryChannel;
+	
+	//True if the current search is started with a binary go frame, so the best move is sent as a binary frame
+	private volatile boolean binarySearch;
+	
+	//True from the go command until the best move is sent. The Transposition Table must not be saved or loaded during this time.
+	private volatile boolean searchRunning;
+	
+	//False for the sessions of the UCI server, which must not stop the whole JVM
+	private boolean exitOnQuit = true;
+	
+	//Held while a text command or a binary frame is executed and while the best move is sent,
+	//because the board and the search adaptor are changed by the main thread, the binary reader thread and the search threads
+	private final Object sync_state = new Object();
+	
 	
 	public StateManager(IUCIConfig _engineBootCfg) {
 		
@@ -83,6 +106,11 @@ public class StateManager extends Protocol implements BestMoveSender {
 	}
 	
 	
+	public void setExitOnQuit(boolean _exitOnQuit) {
+		exitOnQuit = _exitOnQuit;
+	}
+	
+	
 	public void communicate() throws Exception {
 		
 		sendHello();
@@ -96,6 +124,15 @@ public class StateManager extends Protocol implements BestMoveSender {
 				
 				if (fromGUILine == null) {
 					
+					if (!exitOnQuit) {
+						
+						channel.sendLogToGUI("StateManager: session closed, because the end of stream is reached");
+						
+						closeSession();
+						
+						return;
+					}
+					
 					channel.sendLogToGUI("StateManager: System.exit(0), because the end of stream is reached");
 					Thread.sleep(20);//Wait to write the log
 					System.exit(0);
@@ -114,77 +151,111 @@ public class StateManager extends Protocol implements BestMoveSender {
 					
 					channel.sendLogToGUI("StateManager: exec command " + fromGUICommandID + " > '" + fromGUILine + "'");
 					
-					switch (fromGUICommandID) {
-					
-						case COMMAND_TO_ENGINE_UCI:
-							
-							sendEngineID();
-							
-							sendOptions();
-							
-							sendUCIOK();
-							
-							break;
-							
-						case COMMAND_TO_ENGINE_ISREADY:
-							
-							handleSearchAdaptor();
-							
-							sendReadyOK();
-							
-							break;
-							
-						case COMMAND_TO_ENGINE_NEWGAME:
-							
-							createNewGame();
-							
-							break;
-							
-						case COMMAND_TO_ENGINE_POSITION:
-							
-							setupBoard(fromGUILine);
-							
-							break;
-							
-						case COMMAND_TO_ENGINE_GO:
-							
-							handleSearchAdaptor();
-							
-							goSearch(fromGUILine);
-							
-							break;
-							
-						case COMMAND_TO_ENGINE_PONDERHIT:
-							
-							ponderHit(fromGUILine);
-							
-							break;
-							
-						case COMMAND_TO_ENGINE_SETOPTION:
-							
-							setOption(fromGUILine);
-							
-							break;
-							
-						case COMMAND_TO_ENGINE_STOP:
-							
-							sendBestMove();
-							
-							break;
-							
-						case COMMAND_TO_ENGINE_QUIT:
-							
-							channel.sendLogToGUI("StateManager: System.exit(0), because of QUIT command");
-							
-							Thread.sleep(20); //Wait to write the log
-							
-							System.exit(0);
-							
-							break;
-							
-						default:
-							
-							throw new IllegalStateException();
+					synchronized (sync_state) {
+						
+						switch (fromGUICommandID) {
+						
+							case COMMAND_TO_ENGINE_UCI:
+								
+								sendEngineID();
+								
+								sendOptions();
+								
+								sendUCIOK();
+								
+								break;
+								
+							case COMMAND_TO_ENGINE_ISREADY:
+								
+								handleSearchAdaptor();
+								
+								sendReadyOK();
+								
+								break;
+								
+							case COMMAND_TO_ENGINE_NEWGAME:
+								
+								createNewGame();
+								
+								break;
+								
+							case COMMAND_TO_ENGINE_POSITION:
+								
+								setupBoard(fromGUILine);
+								
+								break;
+								
+							case COMMAND_TO_ENGINE_GO:
+								
+								handleSearchAdaptor();
+								
+								goSearch(fromGUILine);
+								
+								break;
+								
+							case COMMAND_TO_ENGINE_PONDERHIT:
+								
+								ponderHit(fromGUILine);
+								
+								break;
+								
+							case COMMAND_TO_ENGINE_SETOPTION:
+								
+								setOption(fromGUILine);
+								
+								break;
+								
+							case COMMAND_TO_ENGINE_STOP:
+								
+								sendBestMove();
+								
+								break;
+								
+							case COMMAND_TO_ENGINE_SAVEHASH:
+								
+								handleSearchAdaptor();
+								
+								saveHash(fromGUILine);
+								
+								break;
+								
+							case COMMAND_TO_ENGINE_LOADHASH:
+								
+								handleSearchAdaptor();
+								
+								loadHash(fromGUILine);
+								
+								break;
+								
+							case COMMAND_TO_ENGINE_BINARY:
+								
+								startBinary(fromGUILine);
+								
+								break;
+								
+							case COMMAND_TO_ENGINE_QUIT:
+								
+								if (!exitOnQuit) {
+									
+									channel.sendLogToGUI("StateManager: session closed, because of QUIT command");
+									
+									closeSession();
+									
+									return;
+								}
+								
+								channel.sendLogToGUI("StateManager: System.exit(0), because of QUIT command");
+								
+								Thread.sleep(20); //Wait to write the log
+								
+								System.exit(0);
+								
+								break;
+								
+							default:
+								
+								throw new IllegalStateException();
+						}
 					}
 				}
 				
@@ -248,6 +319,30 @@ public class StateManager extends Protocol implements BestMoveSender {
 	}
 	
 	
+	/**
+	 * Stops the search and releases the search adaptor without System.gc(), because the other sessions of the server are still running.
+	 */
+	private void closeSession() throws IOException {
+		
+		synchronized (sync_state) {
+			
+			IUCISearchAdaptor lastAdaptor = searchAdaptor;
+			searchAdaptor = null;
+			
+			if (lastAdaptor != null) {
+				
+				lastAdaptor.stopSearch();
+				lastAdaptor.shutDown();
+			}
+			
+			if (binaryConnection != null) {
+				
+				binaryConnection.close();
+			}
+		}
+	}
+	
+	
 	private void handleSearchAdaptor() throws FileNotFoundException {
 		
 		if (searchAdaptor == null) {
@@ -415,11 +510,215 @@ public class StateManager extends Protocol implements BestMoveSender {
 	
 	
 	private void goSearch(String fromGUILine) throws IOException {
+		goSearch(channel, fromGUILine);
+	}
+	
+	
+	private void goSearch(IChannel searchChannel, String fromGUILine) throws IOException {
 		channel.sendLogToGUI("StateManager: goSearch called");
 		Go go = new Go(channel, fromGUILine);	
 		channel.sendLogToGUI(go.toString());
 		
-		searchAdaptor.goSearch(channel, this, go);
+		searchRunning = true;
+		
+		searchAdaptor.goSearch(searchChannel, this, go);
+	}
+	
+	
+	/**
+	 * Connects to the master engine and reads the binary frames in a separate thread.
+	 * The UCI commands are still read from the channel, the frames and the commands are executed one by one under sync_state.
+	 */
+	private void startBinary(String fromGUILine) throws IOException {
+		
+		channel.sendLogToGUI("StateManager: startBinary called with " + fromGUILine);
+		
+		String[] args = fromGUILine.substring(COMMAND_TO_ENGINE_BINARY_STR.length()).trim().split(" ");
+		
+		if (args.length != 2) {
+			
+			throw new IllegalStateException("StateManager: startBinary expects port and token, but received " + fromGUILine);
+		}
+		
+		int port = Integer.parseInt(args[0]);
+		
+		final BinaryConnection connection = new BinaryConnection(new Socket(InetAddress.getLoopbackAddress(), port));
+		
+		//The master accepts the connection only with the token of the binary command
+		connection.writeHello(args[1]);
+		
+		binaryConnection = connection;
+		
+		binaryChannel = new Channel_BinaryInfo(channel, connection);
+		
+		Thread reader = new Thread(new Runnable() {
+			
+			
+			@Override
+			public void run() {
+				
+				communicateBinary(connection);
+			}
+		}, "BinaryProtocolReader");
+		
+		reader.setDaemon(true);
+		
+		reader.start();
+	}
+	
+	
+	private void communicateBinary(BinaryConnection connection) {
+		
+		try {
+			
+			while (true) {
+				
+				int type = connection.readFrame();
+				
+				if (type == -1) {
+					
+					channel.sendLogToGUI("StateManager: the binary connection is closed");
+					
+					return;
+				}
+				
+				try {
+					
+					synchronized (sync_state) {
+						
+						switch (type) {
+						
+							case BinaryProtocol.FRAME_NEWGAME:
+								
+								createNewGame();
+								
+								break;
+								
+							case BinaryProtocol.FRAME_POSITION:
+								
+								setupBoard(COMMAND_TO_ENGINE_POSITION_STR + IChannel.WHITE_SPACE + connection.getPayloadAsString());
+								
+								break;
+								
+							case BinaryProtocol.FRAME_MOVES:
+								
+								setupMoves(connection.getPayload());
+								
+								break;
+								
+							case BinaryProtocol.FRAME_GO:
+								
+								handleSearchAdaptor();
+								
+								binarySearch = true;
+								
+								goSearch(binaryChannel, connection.getPayloadAsString());
+								
+								break;
+								
+							case BinaryProtocol.FRAME_STOP:
+								
+								sendBestMove();
+								
+								break;
+								
+							case BinaryProtocol.FRAME_PING:
+								
+								connection.writePong(connection.getPayload().getLong());
+								
+								break;
+								
+							default:
+								
+								throw new IllegalStateException("Unknown frame type " + type);
+						}
+					}
+					
+				} catch(Throwable t) {
+					
+					channel.dump(t);
+					
+					channel.sendLogToGUI("StateManager: Error: " + t.getMessage());
+				}
+			}
+			
+		} catch (IOException e) {
+			
+			channel.dump(e);
+		}
+	}
+	
+	
+	/**
+	 * Takes back the played moves after the kept ones and plays the new moves.
+	 */
+	private void setupMoves(ByteBuffer payload) {
+		
+		int kept = payload.getShort();
+		int count = payload.getShort();
+		
+		int played = board.getPlayedMovesCount();
+		int[] moves = board.getPlayedMoves();
+		
+		if (kept > played) {
+			
+			throw new IllegalStateException("kept=" + kept + ", played=" + played);
+		}
+		
+		for (int i = played - 1; i >= kept; i--) {
+			
+			board.makeMoveBackward(moves[i]);
+		}
+		
+		for (int i = 0; i < count; i++) {
+			
+			board.makeMoveForward(BinaryProtocol.decodeMove(payload.getShort()));
+		}
+	}
+	
+	
+	private void saveHash(String fromGUILine) {
+		
+		channel.sendLogToGUI("StateManager: saveHash called with " + fromGUILine);
+		
+		if (searchRunning) {
+			
+			channel.sendLogToGUI("StateManager: saveHash rejected, because the search is running");
+			
+			return;
+		}
+		
+		String args = fromGUILine.substring(COMMAND_TO_ENGINE_SAVEHASH_STR.length()).trim();
+		
+		int min_depth = -1;
+		
+		String[] tokens = args.split(" ");
+		
+		if (tokens.length >= 2 && tokens[tokens.length - 2].equals(COMMAND_TO_ENGINE_SAVEHASH_MINDEPTH_STR)) {
+			
+			min_depth = Integer.parseInt(tokens[tokens.length - 1]);
+			
+			args = args.substring(0, args.lastIndexOf(COMMAND_TO_ENGINE_SAVEHASH_MINDEPTH_STR)).trim();
+		}
+		
+		searchAdaptor.saveHash(args.isEmpty() ? null : args, min_depth);
+	}
+	
+	
+	private void loadHash(String fromGUILine) {
+		
+		channel.sendLogToGUI("StateManager: loadHash called with " + fromGUILine);
+		
+		if (searchRunning) {
+			
+			channel.sendLogToGUI("StateManager: loadHash rejected, because the search is running");
+			
+			return;
+		}
+		
+		String args = fromGUILine.substring(COMMAND_TO_ENGINE_LOADHASH_STR.length()).trim();
+		
+		searchAdaptor.loadHash(args.isEmpty() ? null : args);
 	}
 	
 	
@@ -432,51 +731,97 @@ public class StateManager extends Protocol implements BestMoveSender {
 	@Override
 	public void sendBestMove() {
 		
-		channel.sendLogToGUI("StateManager: sendBestMove called");
-		
-		if (searchAdaptor == null) {
-			channel.sendLogToGUI("StateManager: sendBestMove searchAdaptor is null");
-			return;
-		}
-		
-		int[] moveAndPonder = searchAdaptor.stopSearch();
-		int move = moveAndPonder[0];
-		int ponder = moveAndPonder[1];
-		if (move != 0) {
+		//The search thread and the stop command or frame can call it at the same time.
+		//The second call finds no search in the adaptor, so the best move is sent only once.
+		synchronized (sync_state) {
 			
-			String result = board.getMoveOps().moveToString(move);
-			board.makeMoveForward(move);
+			channel.sendLogToGUI("StateManager: sendBestMove called");
 			
-			String bestMoveCommand = COMMAND_TO_GUI_BESTMOVE_STR + IChannel.WHITE_SPACE + result;
-			if (ponder != 0) {
-				bestMoveCommand += IChannel.WHITE_SPACE + COMMAND_TO_GUI_BESTMOVE_PONDER_STR + IChannel.WHITE_SPACE;
-				result = board.getMoveOps().moveToString(ponder);
-				bestMoveCommand += result;
+			if (searchAdaptor == null) {
+				channel.sendLogToGUI("StateManager: sendBestMove searchAdaptor is null");
+				return;
 			}
 			
-			channel.sendLogToGUI("StateManager: sendBestMove bestMoveCommand=" + bestMoveCommand);
+			int[] moveAndPonder = searchAdaptor.stopSearch();
 			
+			searchRunning = false;
 			
-			try {
+			int move = moveAndPonder[0];
+			int ponder = moveAndPonder[1];
+			
+			if (binarySearch) {
+				
+				binarySearch = false;
+				
+				sendBestMove_Binary(move, ponder);
 				
-				channel.sendCommandToGUI(bestMoveCommand);
+			} else if (move != 0) {
 				
-				channel.sendLogToGUI("StateManager: bestMoveCommand send");
+				String result = board.getMoveOps().moveToString(move);
+				board.makeMoveForward(move);
+				
+				String bestMoveCommand = COMMAND_TO_GUI_BESTMOVE_STR + IChannel.WHITE_SPACE + result;
+				if (ponder != 0) {
+					bestMoveCommand += IChannel.WHITE_SPACE + COMMAND_TO_GUI_BESTMOVE_PONDER_STR + IChannel.WHITE_SPACE;
+					result = board.getMoveOps().moveToString(ponder);
+					bestMoveCommand += result;
+				}
+				
+				channel.sendLogToGUI("StateManager: sendBestMove bestMoveCommand=" + bestMoveCommand);
+				
+				
+				try {
+					
+					channel.sendCommandToGUI(bestMoveCommand);
+					
+					channel.sendLogToGUI("StateManager: bestMoveCommand send");
+					
+				} catch (IOException e) {
+					
+					channel.dump(e);
+				}
 				
-			} catch (IOException e) {
+			} else {
 				
-				channel.dump(e);
+				//throw new IllegalStateException("StateManager: ERROR: move returned from UCI Search adaptor is '0' and is not sent to the UCI platform");
+				channel.sendLogToGUI("StateManager: WARNING: StateManager -> move returned from UCI Search adaptor is '0' and is not sent to the UCI platform");
 			}
 			
-		} else {
 			
-			//throw new IllegalStateException("StateManager: ERROR: move returned from UCI Search adaptor is '0' and is not sent to the UCI platform");
-			channel.sendLogToGUI("StateManager: WARNING: StateManager -> move returned from UCI Search adaptor is '0' and is not sent to the UCI platform");
+			if (GC_AFTER_MOVE) {
+				System.gc();
+			}
 		}
+	}
+	
+	
+	/**
+	 * The master engine waits for the best move frame, so it is sent even if the move is 0.
+	 */
+	private void sendBestMove_Binary(int move, int ponder) {
 		
+		short move_code = 0;
+		short ponder_code = 0;
 		
-		if (GC_AFTER_MOVE) {
-			System.gc();
+		if (move != 0) {
+			
+			move_code = BinaryProtocol.encodeMove(board.getMoveOps().moveToString(move));
+			
+			if (ponder != 0) {
+				
+				ponder_code = BinaryProtocol.encodeMove(board.getMoveOps().moveToString(ponder));
+			}
+			
+			board.makeMoveForward(move);
+		}
+		
+		try {
+			
+			binaryConnection.writeBestMove(move_code, ponder_code);
+			
+		} catch (IOException e) {
+			
+			channel.dump(e);
 		}
 	}
 	
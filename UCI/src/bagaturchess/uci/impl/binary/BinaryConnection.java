@@ -0,0 +1,256 @@
+package bagaturchess.uci.impl.binary;
+
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+
+/**
+ * One end of the binary connection between the master engine and a worker process.
+ * The frames are read by one thread. They can be written by many threads, each frame is written and flushed atomically.
+ */
+public class BinaryConnection {
+	
+	
+	private static final int HEADER_SIZE 	= 5;
+	
+	
+	private Socket socket;
+	
+	private DataInputStream in;
+	private DataOutputStream out;
+	
+	private ByteBuffer in_payload 			= ByteBuffer.allocate(1024);
+	private ByteBuffer out_frame 			= ByteBuffer.allocate(1024);
+	
+	
+	public BinaryConnection(Socket _socket) throws IOException {
+		
+		socket = _socket;
+		
+		//The frames are small and each one is waited for
+		socket.setTcpNoDelay(true);
+		
+		in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+		out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+	}
+	
+	
+	/**
+	 * Blocks until the next frame is received. Its payload is returned by getPayload() until the next call.
+	 * @return the type of the frame or -1 if the connection is closed
+	 */
+	public int readFrame() throws IOException {
+		
+		int type = in.read();
+		
+		if (type == -1) {
+			
+			return -1;
+		}
+		
+		int length = in.readInt();
+		
+		if (length < 0 || length > BinaryProtocol.MAX_PAYLOAD_SIZE) {
+			
+			throw new IOException("Illegal frame length " + length + " of frame type " + type);
+		}
+		
+		if (in_payload.capacity() < length) {
+			
+			in_payload = ByteBuffer.allocate(Math.max(length, 2 * in_payload.capacity()));
+		}
+		
+		in_payload.clear();
+		
+		in.readFully(in_payload.array(), 0, length);
+		
+		in_payload.limit(length);
+		
+		return type;
+	}
+	
+	
+	public ByteBuffer getPayload() {
+		
+		return in_payload;
+	}
+	
+	
+	public String getPayloadAsString() {
+		
+		return new String(in_payload.array(), 0, in_payload.limit(), StandardCharsets.UTF_8);
+	}
+	
+	
+	/**
+	 * Reads the first frame of the worker.
+	 * @return true if it is FRAME_HELLO with the given token
+	 */
+	public boolean readHello(String token) throws IOException {
+		
+		if (readFrame() != BinaryProtocol.FRAME_HELLO) {
+			
+			return false;
+		}
+		
+		byte[] expected = token.getBytes(StandardCharsets.UTF_8);
+		byte[] received = new byte[in_payload.limit()];
+		
+		in_payload.get(received);
+		
+		//Constant time comparison, so the token cannot be guessed byte by byte
+		return MessageDigest.isEqual(expected, received);
+	}
+	
+	
+	public synchronized void writeHello(String token) throws IOException {
+		
+		writeString(BinaryProtocol.FRAME_HELLO, token);
+	}
+	
+	
+	public synchronized void writeNewGame() throws IOException {
+		
+		begin(0);
+		
+		end(BinaryProtocol.FRAME_NEWGAME);
+	}
+	
+	
+	public synchronized void writePosition(String position) throws IOException {
+		
+		writeString(BinaryProtocol.FRAME_POSITION, position);
+	}
+	
+	
+	/**
+	 * @param kept the count of the played moves, which the worker keeps, the others are taken back
+	 * @param moves the new moves are moves[kept] ... moves[count - 1]
+	 */
+	public synchronized void writeMoves(int kept, short[] moves, int count) throws IOException {
+		
+		begin(4 + 2 * (count - kept));
+		
+		out_frame.putShort((short) kept);
+		out_frame.putShort((short) (count - kept));
+		
+		for (int i = kept; i < count; i++) {
+			
+			out_frame.putShort(moves[i]);
+		}
+		
+		end(BinaryProtocol.FRAME_MOVES);
+	}
+	
+	
+	public synchronized void writeGo(String go) throws IOException {
+		
+		writeString(BinaryProtocol.FRAME_GO, go);
+	}
+	
+	
+	public synchronized void writeStop() throws IOException {
+		
+		begin(0);
+		
+		end(BinaryProtocol.FRAME_STOP);
+	}
+	
+	
+	public synchronized void writeInfo(BinaryInfo info) throws IOException {
+		
+		begin(BinaryInfo.getSize(info.getPVCount()));
+		
+		info.write(out_frame);
+		
+		end(BinaryProtocol.FRAME_INFO);
+	}
+	
+	
+	public synchronized void writeBestMove(short move, short ponder) throws IOException {
+		
+		begin(4);
+		
+		out_frame.putShort(move);
+		out_frame.putShort(ponder);
+		
+		end(BinaryProtocol.FRAME_BESTMOVE);
+	}
+	
+	
+	public synchronized void writePing(long value) throws IOException {
+		
+		begin(8);
+		
+		out_frame.putLong(value);
+		
+		end(BinaryProtocol.FRAME_PING);
+	}
+	
+	
+	public synchronized void writePong(long value) throws IOException {
+		
+		begin(8);
+		
+		out_frame.putLong(value);
+		
+		end(BinaryProtocol.FRAME_PONG);
+	}
+	
+	
+	public void close() {
+		
+		try {
+			
+			socket.close();
+			
+		} catch (IOException e) {
+			//Do nothing
+		}
+	}
+	
+	
+	private void writeString(int type, String value) throws IOException {
+		
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		
+		begin(bytes.length);
+		
+		out_frame.put(bytes);
+		
+		end(type);
+	}
+	
+	
+	private void begin(int payload_size) {
+		
+		if (out_frame.capacity() < HEADER_SIZE + payload_size) {
+			
+			out_frame = ByteBuffer.allocate(Math.max(HEADER_SIZE + payload_size, 2 * out_frame.capacity()));
+		}
+		
+		out_frame.clear();
+		
+		out_frame.position(HEADER_SIZE);
+	}
+	
+	
+	private void end(int type) throws IOException {
+		
+		int size = out_frame.position();
+		
+		out_frame.put(0, (byte) type);
+		out_frame.putInt(1, size - HEADER_SIZE);
+		
+		out.write(out_frame.array(), 0, size);
+		out.flush();
+	}
+}
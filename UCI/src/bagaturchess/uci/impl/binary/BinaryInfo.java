@@ -0,0 +1,243 @@
+package bagaturchess.uci.impl.binary;
+
+
+import java.nio.ByteBuffer;
+
+
+/**
+ * Structured search info of a worker process, which replaces the UCI info line.
+ * The eval is the internal score of the search, so the mate scores are not converted.
+ */
+public class BinaryInfo {
+	
+	
+	private static final int FLAG_MAJOR 		= 1;
+	private static final int FLAG_UPPERBOUND 	= 2;
+	private static final int FLAG_LOWERBOUND 	= 4;
+	
+	
+	private boolean major;
+	private boolean upperbound;
+	private boolean lowerbound;
+	
+	private int depth;
+	private int seldepth;
+	private long time;
+	private long nodes;
+	private long tbhits;
+	private int eval;
+	private int hashfull;
+	
+	private short currmove;
+	private int currmovenumber;
+	
+	private short[] pv = new short[0];
+	private int pv_count;
+	
+	
+	public BinaryInfo() {
+	}
+	
+	
+	void write(ByteBuffer buffer) {
+		
+		int flags = (major ? FLAG_MAJOR : 0) | (upperbound ? FLAG_UPPERBOUND : 0) | (lowerbound ? FLAG_LOWERBOUND : 0);
+		
+		buffer.put((byte) flags);
+		buffer.putShort((short) depth);
+		buffer.putShort((short) seldepth);
+		buffer.putLong(time);
+		buffer.putLong(nodes);
+		buffer.putLong(tbhits);
+		buffer.putInt(eval);
+		buffer.putShort((short) hashfull);
+		buffer.putShort(currmove);
+		buffer.putShort((short) currmovenumber);
+		buffer.putShort((short) pv_count);
+		
+		for (int i = 0; i < pv_count; i++) {
+			
+			buffer.putShort(pv[i]);
+		}
+	}
+	
+	
+	static int getSize(int pv_count) {
+		
+		return 41 + 2 * pv_count;
+	}
+	
+	
+	public void read(ByteBuffer buffer) {
+		
+		int flags = buffer.get();
+		
+		major 			= (flags & FLAG_MAJOR) != 0;
+		upperbound 		= (flags & FLAG_UPPERBOUND) != 0;
+		lowerbound 		= (flags & FLAG_LOWERBOUND) != 0;
+		
+		depth 			= buffer.getShort();
+		seldepth 		= buffer.getShort();
+		time 			= buffer.getLong();
+		nodes 			= buffer.getLong();
+		tbhits 			= buffer.getLong();
+		eval 			= buffer.getInt();
+		hashfull 		= buffer.getShort();
+		currmove 		= buffer.getShort();
+		currmovenumber 	= buffer.getShort();
+		
+		setPVCount(buffer.getShort());
+		
+		for (int i = 0; i < pv_count; i++) {
+			
+			pv[i] = buffer.getShort();
+		}
+	}
+	
+	
+	public boolean isMajor() {
+		return major;
+	}
+	
+	
+	public void setMajor(boolean _major) {
+		major = _major;
+	}
+	
+	
+	public boolean isUpperBound() {
+		return upperbound;
+	}
+	
+	
+	public void setUpperBound(boolean _upperbound) {
+		upperbound = _upperbound;
+	}
+	
+	
+	public boolean isLowerBound() {
+		return lowerbound;
+	}
+	
+	
+	public void setLowerBound(boolean _lowerbound) {
+		lowerbound = _lowerbound;
+	}
+	
+	
+	public int getDepth() {
+		return depth;
+	}
+	
+	
+	public void setDepth(int _depth) {
+		depth = _depth;
+	}
+	
+	
+	public int getSelDepth() {
+		return seldepth;
+	}
+	
+	
+	public void setSelDepth(int _seldepth) {
+		seldepth = _seldepth;
+	}
+	
+	
+	public long getTime() {
+		return time;
+	}
+	
+	
+	public void setTime(long _time) {
+		time = _time;
+	}
+	
+	
+	public long getNodes() {
+		return nodes;
+	}
+	
+	
+	public void setNodes(long _nodes) {
+		nodes = _nodes;
+	}
+	
+	
+	public long getTBhits() {
+		return tbhits;
+	}
+	
+	
+	public void setTBhits(long _tbhits) {
+		tbhits = _tbhits;
+	}
+	
+	
+	public int getEval() {
+		return eval;
+	}
+	
+	
+	public void setEval(int _eval) {
+		eval = _eval;
+	}
+	
+	
+	/**
+	 * @return the usage of the Transposition Table in permille, as in the UCI info
+	 */
+	public int getHashfull() {
+		return hashfull;
+	}
+	
+	
+	public void setHashfull(int _hashfull) {
+		hashfull = _hashfull;
+	}
+	
+	
+	public short getCurrentMove() {
+		return currmove;
+	}
+	
+	
+	public void setCurrentMove(short _currmove) {
+		currmove = _currmove;
+	}
+	
+	
+	public int getCurrentMoveNumber() {
+		return currmovenumber;
+	}
+	
+	
+	public void setCurrentMoveNumber(int _currmovenumber) {
+		currmovenumber = _currmovenumber;
+	}
+	
+	
+	public short[] getPV() {
+		return pv;
+	}
+	
+	
+	public int getPVCount() {
+		return pv_count;
+	}
+	
+	
+	/**
+	 * Resizes the PV array if needed. The moves are set with getPV()[index] = move.
+	 */
+	public void setPVCount(int _pv_count) {
+		
+		if (pv.length < _pv_count) {
+			
+			pv = new short[_pv_count];
+		}
+		
+		pv_count = _pv_count;
+	}
+}
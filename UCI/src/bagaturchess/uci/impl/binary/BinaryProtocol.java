@@ -0,0 +1,130 @@
+package bagaturchess.uci.impl.binary;
+
+
+import java.security.SecureRandom;
+
+
+/**
+ * Binary framing of the frequent commands between the master engine and its worker processes (see SequentialSearch_SeparateProcess).
+ * The worker connects to the loopback port given with the custom UCI command 'binary <port> <token>' and sends the token in its first frame,
+ * so the master accepts only the connection of its own worker and not of any other local process.
+ * After that the position setup, go, stop, search info and best move are exchanged as frames over the socket.
+ * All other UCI commands are still sent as text.
+ * 
+ * Frame: type (1 byte), payload length (4 bytes, big endian), payload.
+ * The moves are encoded in 16 bits as in the Polyglot books: to square (6 bits), from square (6 bits) and promotion (3 bits), a1 = 0.
+ */
+public class BinaryProtocol {
+	
+	
+	//UTF-8: the arguments of the UCI position command, e.g. 'fen <fen> moves <moves>'. Used once per game.
+	public static final int FRAME_POSITION 		= 1;
+	
+	//short: count of the already played moves, which are kept, short: count of the new moves, short[]: the new moves
+	public static final int FRAME_MOVES 		= 2;
+	
+	//UTF-8: the UCI go command. It is sent once per search and has the custom fields startdepth, beta and pv.
+	public static final int FRAME_GO 			= 3;
+	
+	//Empty
+	public static final int FRAME_STOP 			= 4;
+	
+	//BinaryInfo
+	public static final int FRAME_INFO 			= 5;
+	
+	//short: best move, short: ponder move or 0
+	public static final int FRAME_BESTMOVE 		= 6;
+	
+	//long: any value. The worker replies with FRAME_PONG and the same value, after all previous frames are processed.
+	public static final int FRAME_PING 			= 7;
+	
+	//long: the value of the FRAME_PING
+	public static final int FRAME_PONG 			= 8;
+	
+	//UTF-8: the token of the binary command. It is the first frame of the worker.
+	public static final int FRAME_HELLO 		= 9;
+	
+	//Empty. The same as the UCI command ucinewgame, sent before the FRAME_POSITION of each game.
+	public static final int FRAME_NEWGAME 		= 10;
+	
+	//The frames are much smaller, a bigger length means that the data is corrupted
+	public static final int MAX_PAYLOAD_SIZE 	= 1024 * 1024;
+	
+	private static final int TOKEN_BYTES 		= 16;
+	
+	private static final SecureRandom random 	= new SecureRandom();
+	
+	
+	private static final String PROMOTIONS 		= " nbrq";
+	
+	
+	/**
+	 * @return random hex string, which the worker has to send back in FRAME_HELLO
+	 */
+	public static String createToken() {
+		
+		byte[] bytes = new byte[TOKEN_BYTES];
+		
+		random.nextBytes(bytes);
+		
+		StringBuilder result = new StringBuilder(2 * TOKEN_BYTES);
+		
+		for (int i = 0; i < bytes.length; i++) {
+			
+			result.append(Character.forDigit((bytes[i] >>> 4) & 0xF, 16));
+			result.append(Character.forDigit(bytes[i] & 0xF, 16));
+		}
+		
+		return result.toString();
+	}
+	
+	
+	public static short encodeMove(String move) {
+		
+		int from 		= (move.charAt(0) - 'a') + 8 * (move.charAt(1) - '1');
+		int to 			= (move.charAt(2) - 'a') + 8 * (move.charAt(3) - '1');
+		int promotion 	= move.length() > 4 ? PROMOTIONS.indexOf(Character.toLowerCase(move.charAt(4))) : 0;
+		
+		if (from < 0 || from > 63 || to < 0 || to > 63 || promotion < 0) {
+			
+			throw new IllegalStateException("Illegal move: " + move);
+		}
+		
+		return (short) (to | (from << 6) | (promotion << 12));
+	}
+	
+	
+	public static String decodeMove(int code) {
+		
+		int to 			= code & 0x3F;
+		int from 		= (code >>> 6) & 0x3F;
+		int promotion 	= (code >>> 12) & 0x7;
+		
+		StringBuilder result = new StringBuilder(5);
+		
+		result.append((char) ('a' + (from & 7)));
+		result.append((char) ('1' + (from >>> 3)));
+		result.append((char) ('a' + (to & 7)));
+		result.append((char) ('1' + (to >>> 3)));
+		
+		if (promotion != 0) {
+			
+			result.append(PROMOTIONS.charAt(promotion));
+		}
+		
+		return result.toString();
+	}
+	
+	
+	public static String[] decodeMoves(short[] codes, int count) {
+		
+		String[] result = new String[count];
+		
+		for (int i = 0; i < count; i++) {
+			
+			result[i] = decodeMove(codes[i]);
+		}
+		
+		return result;
+	}
+}
@@ -0,0 +1,116 @@
+package bagaturchess.uci.impl.binary;
+
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+
+import bagaturchess.uci.api.IChannel;
+import bagaturchess.uci.api.ILogMessage;
+import bagaturchess.uci.api.IUCIConfig;
+
+
+/**
+ * Channel of a search started with a binary go frame.
+ * The search info is sent as BinaryInfo frames to the master engine, all other messages go to the UCI channel.
+ */
+public class Channel_BinaryInfo implements IChannel {
+	
+	
+	private IChannel delegate;
+	
+	private BinaryConnection connection;
+	
+	
+	public Channel_BinaryInfo(IChannel _delegate, BinaryConnection _connection) {
+		
+		delegate = _delegate;
+		
+		connection = _connection;
+	}
+	
+	
+	public void sendInfo(BinaryInfo info) throws IOException {
+		
+		connection.writeInfo(info);
+	}
+	
+	
+	@Override
+	public void close() {
+		delegate.close();
+	}
+	
+	
+	@Override
+	public void sendLogToGUI(String command) {
+		delegate.sendLogToGUI(command);
+	}
+	
+	
+	@Override
+	public void sendCommandToGUI(String command) throws IOException {
+		delegate.sendCommandToGUI(command);
+	}
+	
+	
+	@Override
+	public void sendCommandToGUI_no_newline(String command) throws IOException {
+		delegate.sendCommandToGUI_no_newline(command);
+	}
+	
+	
+	@Override
+	public String receiveCommandFromGUI() throws IOException {
+		return delegate.receiveCommandFromGUI();
+	}
+	
+	
+	@Override
+	public void dump(String string) {
+		delegate.dump(string);
+	}
+	
+	
+	@Override
+	public void dump(Throwable t) {
+		delegate.dump(t);
+	}
+	
+	
+	@Override
+	public void dump(ILogMessage message) {
+		delegate.dump(message);
+	}
+	
+	
+	@Override
+	public boolean isDumpEnabled() {
+		return delegate.isDumpEnabled();
+	}
+	
+	
+	@Override
+	public void flushLog() {
+		delegate.flushLog();
+	}
+	
+	
+	@Override
+	public void initLogging(IUCIConfig engineBootCfg) throws FileNotFoundException {
+		delegate.initLogging(engineBootCfg);
+	}
+	
+	
+	@Override
+	public BufferedReader getIn() {
+		return delegate.getIn();
+	}
+	
+	
+	@Override
+	public BufferedWriter getOut() {
+		return delegate.getOut();
+	}
+}
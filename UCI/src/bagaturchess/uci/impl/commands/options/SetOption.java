@@ -27,6 +27,7 @@ public class SetOption extends Protocol {
 	private String commandLine;
 	private String name;
 	private Object value;
+	private String value_caseSensitive; //Used by string options like file paths
 
 	private IChannel channel;
 	
@@ -58,6 +59,7 @@ public class SetOption extends Protocol {
 				
 				String valueStr = line.substring(valueStartIndex + 1, valueEndIndex).toLowerCase().trim();
 				value = valueStr;
+				value_caseSensitive = line.substring(valueStartIndex + 1, valueEndIndex).trim();
 			}
 		} else {
 			//TODO: Button type option and the value will be null. Consider what to do.
@@ -101,6 +103,11 @@ public class SetOption extends Protocol {
 	}
 	
 	
+	public String getValue_CaseSensitive() {
+		return value_caseSensitive;
+	}
+	
+	
 	public static void main(String[] args) {
 		SetOption setoption = new SetOption(new Channel_Console(), "setoption name Evaluation [Piece-Square Endgame] value 10 min 0 max 20");
 		System.out.println(setoption);
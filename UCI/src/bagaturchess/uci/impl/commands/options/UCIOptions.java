@@ -21,10 +21,19 @@ public class UCIOptions {
 	public static final String OPTION_NAME_SyzygyPath 					= "SyzygyPath";
 	public static final String OPTION_NAME_SyzygyOnline 				= "SyzygyOnline";
 	public static final String OPTION_NAME_SyzygyDTZCache 				= "SyzygyDTZCache";
+	public static final String OPTION_NAME_SyzygyProbeDepth 			= "SyzygyProbeDepth";
+	public static final String OPTION_NAME_SyzygyJavaWDL 				= "SyzygyJavaWDL";
 	public static final String OPTION_NAME_MultiPV 						= "MultiPV";
 	public static final String OPTION_NAME_Opening_Mode 				= "Opening Mode";
 	public static final String OPTION_NAME_SMP_Threads 					= "SMP Threads";
 	public static final String OPTION_NAME_CountTranspositionTables 	= "CountTranspositionTables";
+	public static final String OPTION_NAME_TranspositionTableType 		= "TranspositionTableType";
+	public static final String OPTION_NAME_OffHeapHash 					= "OffHeapHash";
+	public static final String OPTION_NAME_HashFile 					= "HashFile";
+	public static final String OPTION_NAME_HashFileMinDepth 			= "HashFileMinDepth";
+	public static final String OPTION_NAME_SharedHashFile 				= "SharedHashFile";
+	public static final String OPTION_NAME_EvalCacheType 				= "EvalCacheType";
+	public static final String OPTION_NAME_MemoryLimit 					= "MemoryLimit";
 	
 	
 	private static final Set<String> Options_RecreateSearchAdaptor = new HashSet<String>();
@@ -38,7 +47,14 @@ public class UCIOptions {
 		Options_RecreateSearchAdaptor.add(UCIOptions.OPTION_NAME_EvalCache);
 		Options_RecreateSearchAdaptor.add(UCIOptions.OPTION_NAME_SyzygyOnline);
 		Options_RecreateSearchAdaptor.add(UCIOptions.OPTION_NAME_SyzygyDTZCache);
+		Options_RecreateSearchAdaptor.add(UCIOptions.OPTION_NAME_SyzygyJavaWDL);
 		Options_RecreateSearchAdaptor.add(UCIOptions.OPTION_NAME_CountTranspositionTables);
+		Options_RecreateSearchAdaptor.add(UCIOptions.OPTION_NAME_TranspositionTableType);
+		Options_RecreateSearchAdaptor.add(UCIOptions.OPTION_NAME_OffHeapHash);
+		Options_RecreateSearchAdaptor.add(UCIOptions.OPTION_NAME_HashFile);
+		Options_RecreateSearchAdaptor.add(UCIOptions.OPTION_NAME_SharedHashFile);
+		Options_RecreateSearchAdaptor.add(UCIOptions.OPTION_NAME_EvalCacheType);
+		Options_RecreateSearchAdaptor.add(UCIOptions.OPTION_NAME_MemoryLimit);
 		Options_RecreateSearchAdaptor.add(UCIOptions.OPTION_NAME_UCI_Chess960);
 	};
 	
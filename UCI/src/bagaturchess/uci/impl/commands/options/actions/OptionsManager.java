@@ -7,6 +7,7 @@ import bagaturchess.uci.api.IChannel;
 import bagaturchess.uci.api.IUCIOptionAction;
 import bagaturchess.uci.api.IUCIOptionsProvider;
 import bagaturchess.uci.impl.commands.options.UCIOption;
+import bagaturchess.uci.impl.commands.options.UCIOptionString;
 import bagaturchess.uci.impl.commands.options.UCIOptions;
 import bagaturchess.uci.impl.commands.options.SetOption;
 
@@ -49,6 +50,12 @@ public class OptionsManager {
 			
 			Object new_value = setoption.getValue();
 			
+			//File paths are case sensitive on most of the operating systems
+			if (option instanceof UCIOptionString && setoption.getValue_CaseSensitive() != null) {
+				
+				new_value = setoption.getValue_CaseSensitive();
+			}
+			
 			try {
 				
 				parseAndSetValue(option, new_value);
@@ -0,0 +1,172 @@
+package bagaturchess.uci.remote;
+
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.LinkedList;
+import java.util.Queue;
+
+import bagaturchess.uci.impl.Channel_Remote;
+import bagaturchess.uci.impl.Protocol;
+import bagaturchess.uci.impl.commands.options.UCIOptions;
+
+
+/**
+ * The channel of one session of the UCI server.
+ * It applies the thread and memory budget of the session before the first command of the client
+ * and filters the commands and options, which change the shared resources of the server (files, logging and memory).
+ */
+public class Channel_Session extends Channel_Remote {
+
+
+	private static final String[] BLOCKED_COMMANDS = new String[] {
+			Protocol.COMMAND_TO_ENGINE_SAVEHASH_STR,
+			Protocol.COMMAND_TO_ENGINE_LOADHASH_STR,
+			Protocol.COMMAND_TO_ENGINE_BINARY_STR,
+	};
+
+	private static final String[] BLOCKED_OPTIONS = new String[] {
+			UCIOptions.OPTION_NAME_Logging_Policy,
+			UCIOptions.OPTION_NAME_MemoryUsagePercent,
+			UCIOptions.OPTION_NAME_MemoryLimit,
+			UCIOptions.OPTION_NAME_OffHeapHash,
+			UCIOptions.OPTION_NAME_HashFile,
+			UCIOptions.OPTION_NAME_SharedHashFile,
+			UCIOptions.OPTION_NAME_SyzygyPath,
+			"Thread Memory (MB)",
+	};
+
+
+	private final Queue<String> budget_commands;
+
+	private final int max_threads;
+
+
+	public Channel_Session(InputStream _in, OutputStream _out, int _max_threads, int memory_in_megabytes) {
+
+		super(_in, _out);
+
+		max_threads = _max_threads;
+
+		budget_commands = new LinkedList<String>();
+		budget_commands.add(getSetOption(UCIOptions.OPTION_NAME_MemoryLimit, memory_in_megabytes));
+		budget_commands.add(getSetOption(UCIOptions.OPTION_NAME_SMP_Threads, max_threads));
+	}
+
+
+	@Override
+	public String receiveCommandFromGUI() throws IOException {
+
+		if (!budget_commands.isEmpty()) {
+
+			return budget_commands.poll();
+		}
+
+		while (true) {
+
+			String command = super.receiveCommandFromGUI();
+
+			if (command == null) {
+
+				return null;
+			}
+
+			command = filter(command.trim());
+
+			if (command != null) {
+
+				return command;
+			}
+		}
+	}
+
+
+	/**
+	 * @return the command, which is passed to the engine or null if the command is rejected
+	 */
+	private String filter(String command) throws IOException {
+
+		for (int i = 0; i < BLOCKED_COMMANDS.length; i++) {
+
+			if (command.equals(BLOCKED_COMMANDS[i]) || command.startsWith(BLOCKED_COMMANDS[i] + " ")) {
+
+				sendCommandToGUI("info string command " + BLOCKED_COMMANDS[i] + " is not allowed on this server");
+
+				return null;
+			}
+		}
+
+		if (!command.startsWith(Protocol.COMMAND_TO_ENGINE_SETOPTION_STR + " ")) {
+
+			return command;
+		}
+
+		String name = getOptionName(command);
+
+		for (int i = 0; i < BLOCKED_OPTIONS.length; i++) {
+
+			if (BLOCKED_OPTIONS[i].equalsIgnoreCase(name)) {
+
+				sendCommandToGUI("info string option " + BLOCKED_OPTIONS[i] + " is not allowed on this server");
+
+				return null;
+			}
+		}
+
+		if (UCIOptions.OPTION_NAME_SMP_Threads.equalsIgnoreCase(name)) {
+
+			int threads;
+
+			try {
+
+				threads = Integer.parseInt(getOptionValue(command));
+
+			} catch (NumberFormatException e) {
+
+				return command;
+			}
+
+			if (threads > max_threads) {
+
+				sendCommandToGUI("info string option " + UCIOptions.OPTION_NAME_SMP_Threads + " is limited to " + max_threads + " on this server");
+
+				return getSetOption(UCIOptions.OPTION_NAME_SMP_Threads, max_threads);
+			}
+		}
+
+		return command;
+	}
+
+
+	private static String getSetOption(String name, int value) {
+
+		return Protocol.COMMAND_TO_ENGINE_SETOPTION_STR + " " + Protocol.COMMAND_TO_ENGINE_SETOPTION_NAME_STR + " " + name
+				+ " " + Protocol.COMMAND_TO_ENGINE_SETOPTION_VALUE_STR + " " + value;
+	}
+
+
+	private static String getOptionName(String command) {
+
+		int name_start = command.indexOf(" " + Protocol.COMMAND_TO_ENGINE_SETOPTION_NAME_STR + " ");
+
+		if (name_start == -1) {
+
+			return "";
+		}
+
+		name_start += Protocol.COMMAND_TO_ENGINE_SETOPTION_NAME_STR.length() + 2;
+
+		int value_start = command.indexOf(" " + Protocol.COMMAND_TO_ENGINE_SETOPTION_VALUE_STR + " ", name_start);
+
+		return (value_start == -1 ? command.substring(name_start) : command.substring(name_start, value_start)).trim();
+	}
+
+
+	private static String getOptionValue(String command) {
+
+		int value_start = command.indexOf(" " + Protocol.COMMAND_TO_ENGINE_SETOPTION_VALUE_STR + " ");
+
+		return value_start == -1 ? "" : command.substring(value_start + Protocol.COMMAND_TO_ENGINE_SETOPTION_VALUE_STR.length() + 2).trim();
+	}
+}
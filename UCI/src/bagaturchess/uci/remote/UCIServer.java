@@ -4,55 +4,206 @@ package bagaturchess.uci.remote;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
+/**
+ * Runs many independent UCI sessions, one per client socket.
+ * Each session has its own channel, StateManager and engine instance and is limited to the given threads and memory for the caches.
+ * The read-only resources (opening book, tablebases and NNUE weights) are loaded once and shared by all sessions.
+ * The sessions run on virtual threads, if the JVM supports them (Java 21+), otherwise on a cached thread pool.
+ *
+ * Usage: UCIServer [port=333] [max sessions=256] [threads per session=1] [memory per session in MB=16] [engine boot classes ...]
+ */
 public class UCIServer {
-	
-	
+
+
 	private static final int PORT_LISTENING = 333;
 
+	private static final int DEFAULT_MAX_SESSIONS = 256;
+
+	private static final int DEFAULT_SESSION_THREADS = 1;
+
+	private static final int DEFAULT_SESSION_MEMORY_IN_MEGABYTES = 16;
+
+	private static final String[] DEFAULT_ENGINE_ARGS = new String[] {
+			"bagaturchess.engines.cfg.base.UCIConfig_BaseImpl",
+			"bagaturchess.search.impl.uci_adaptor.UCISearchAdaptorImpl_PonderingOpponentMove",
+			"bagaturchess.engines.cfg.base.UCISearchAdaptorConfig_BaseImpl",
+			"bagaturchess.search.impl.rootsearch.sequential.SequentialSearch_MTD",
+			"bagaturchess.engines.cfg.base.RootSearchConfig_BaseImpl_1Core",
+			"bagaturchess.search.impl.alg.impl1.Search_PVS_NWS",
+			"bagaturchess.engines.cfg.base.SearchConfigImpl_AB",
+			"bagaturchess.learning.goldmiddle.impl4.cfg.BoardConfigImpl_V20",
+			"bagaturchess.learning.goldmiddle.impl4.cfg.EvaluationConfig_V20", };
+
+
 	private ServerSocket mServer;
-	private ThreadManager mThreadManager;
-	
-	
+	private ExecutorService mExecutor;
+
+	private String[] mEngineArgs;
+	private int mMaxSessions;
+	private int mSessionThreads;
+	private int mSessionMemory;
+
+	private final AtomicInteger mSessions = new AtomicInteger();
+
+	private volatile boolean mStopped;
+
+
 	public UCIServer() {
+		this(PORT_LISTENING, DEFAULT_MAX_SESSIONS, DEFAULT_SESSION_THREADS, DEFAULT_SESSION_MEMORY_IN_MEGABYTES, DEFAULT_ENGINE_ARGS);
+	}
+
+
+	/**
+	 * @param port 0 for any free port, see getPort()
+	 * @param sessionMemory the memory of the caches (Transposition Table, Eval Cache, etc.) of one session in megabytes
+	 */
+	public UCIServer(int port, int maxSessions, int sessionThreads, int sessionMemory, String[] engineArgs) {
+
+		mMaxSessions = maxSessions;
+		mSessionThreads = sessionThreads;
+		mSessionMemory = sessionMemory;
+		mEngineArgs = engineArgs;
+
 		try {
 			System.out.println("");
-			mServer = new ServerSocket(PORT_LISTENING);
-			mThreadManager = new ThreadManager();
+			mServer = new ServerSocket(port);
+			mExecutor = createExecutor();
 			System.out.println("Bagatur UCI Server listening on port "
-					+ PORT_LISTENING);
+					+ mServer.getLocalPort() + ", max sessions " + mMaxSessions
+					+ ", threads per session " + mSessionThreads + ", memory per session " + mSessionMemory + "MB");
 		} catch (IOException e) {
 			e.printStackTrace();
 			System.out.println("Cannot instantiate server socket!");
 			System.exit(-1);
 		}
 	}
-	
-	
+
+
+	public static void main(String[] args) {
+
+		int port 			= args.length > 0 ? Integer.parseInt(args[0]) : PORT_LISTENING;
+		int maxSessions 	= args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_MAX_SESSIONS;
+		int sessionThreads 	= args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_SESSION_THREADS;
+		int sessionMemory 	= args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_SESSION_MEMORY_IN_MEGABYTES;
+
+		String[] engineArgs = DEFAULT_ENGINE_ARGS;
+
+		if (args.length > 4) {
+
+			engineArgs = new String[args.length - 4];
+
+			System.arraycopy(args, 4, engineArgs, 0, engineArgs.length);
+		}
+
+		new UCIServer(port, maxSessions, sessionThreads, sessionMemory, engineArgs).start();
+	}
+
+
+	public int getPort() {
+		return mServer.getLocalPort();
+	}
+
+
+	public int getSessionsCount() {
+		return mSessions.get();
+	}
+
+
 	public void start() {
-		
-		while (true) {
-			
+
+		while (!mStopped) {
+
 			try {
-				
-				System.out.println("\r\nWaiting client ... ");
-				
+
 				Socket clientSocket = mServer.accept();
-				
-				String canonicalHostName = clientSocket.getInetAddress()
-						.getCanonicalHostName();
-				
-				ClientProcessor client = new ClientProcessor(clientSocket,
-						canonicalHostName);
-				
-				mThreadManager.process(client);
-				System.out.println("Client " + canonicalHostName + " accepted!");
-				
+
+				String hostAddress = clientSocket.getInetAddress().getHostAddress();
+
+				if (mSessions.incrementAndGet() > mMaxSessions) {
+
+					mSessions.decrementAndGet();
+
+					reject(clientSocket);
+
+					System.out.println("Client " + hostAddress + " rejected, because the max sessions count " + mMaxSessions + " is reached");
+
+					continue;
+				}
+
+				clientSocket.setTcpNoDelay(true);
+
+				mExecutor.execute(new ClientProcessor(clientSocket, hostAddress, mEngineArgs, mSessionThreads, mSessionMemory, this));
+
+				System.out.println("Client " + hostAddress + " accepted, sessions " + mSessions.get());
+
 			} catch (IOException e) {
+				if (mStopped) {
+					break;
+				}
 				e.printStackTrace();
 				System.out.println("Failed when accepting client!");
 			}
 		}
 	}
+
+
+	/**
+	 * Stops accepting new clients. The running sessions end, when their clients send quit or close the connection.
+	 */
+	public void stop() {
+
+		mStopped = true;
+
+		try {
+			mServer.close();
+		} catch (IOException e) {
+		}
+
+		mExecutor.shutdown();
+	}
+
+
+	void sessionClosed() {
+		mSessions.decrementAndGet();
+	}
+
+
+	private static void reject(Socket clientSocket) {
+		try {
+			OutputStream out = clientSocket.getOutputStream();
+			out.write("info string server busy\r\n".getBytes());
+			out.flush();
+		} catch (IOException e) {
+		}
+		try {
+			clientSocket.close();
+		} catch (IOException e) {
+		}
+	}
+
+
+	private static ExecutorService createExecutor() {
+
+		try {
+
+			//Executors.newVirtualThreadPerTaskExecutor() is available since Java 21
+			ExecutorService executor = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+
+			System.out.println("The sessions run on virtual threads");
+
+			return executor;
+
+		} catch (Exception e) {
+
+			System.out.println("Virtual threads are not supported by this JVM, the sessions run on platform threads");
+
+			return Executors.newCachedThreadPool();
+		}
+	}
 }
@@ -55,6 +55,15 @@ public class Boot {
 
 	public static void runStateManager(String[] args, final IChannel communicationChanel) {
 		
+		runStateManager(args, communicationChanel, true);
+	}
+	
+	
+	/**
+	 * @param exitOnQuit false for the sessions of the UCI server, the method returns after the quit command or the end of the stream
+	 */
+	public static void runStateManager(String[] args, final IChannel communicationChanel, boolean exitOnQuit) {
+		
 		try {
 			
 			//ChannelManager.setChannel(new Channel_Console(System.in, System.out, System.out));
@@ -77,6 +86,7 @@ public class Boot {
 			
 			final StateManager manager = new StateManager(engineBootCfg);
 			manager.setChannel(communicationChanel);
+			manager.setExitOnQuit(exitOnQuit);
 			
 			syncInitStateManager(manager, communicationChanel, engineBootCfg);
 			